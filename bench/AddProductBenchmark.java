@@ -0,0 +1,59 @@
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ADD_PRODUCT round trips through the real server, per request format and product name length.
+ * Every call adds a new product, so the catalog grows for as long as the benchmark runs.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class AddProductBenchmark {
+    private static final AtomicLong nextProduct = new AtomicLong();
+
+    @Param({"LEGACY", "BINARY_V1", "BINARY_V2"})
+    public BenchClient.Format format;
+
+    @Param({"16", "100"})
+    public int nameLength;
+
+    private BenchClient client;
+
+    @Setup(Level.Trial)
+    public void connect() throws IOException {
+        EmbeddedServer.seed(0);
+        client = BenchClient.open(format, EmbeddedServer.HOST, EmbeddedServer.start());
+    }
+
+    @TearDown(Level.Trial)
+    public void disconnect() throws IOException {
+        client.close();
+    }
+
+    @Benchmark
+    public String addProduct() throws IOException {
+        long n = nextProduct.getAndIncrement();
+        String name = EmbeddedServer.BenchData.productName(n, nameLength);
+        BigDecimal price = EmbeddedServer.BenchData.price(n);
+        return client.addProduct(name, 1, 1, price);
+    }
+}
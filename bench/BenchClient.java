@@ -0,0 +1,167 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.math.BigDecimal;
+import java.net.Socket;
+
+/**
+ * One benchmark thread's connection to the server, in one of the formats the server accepts.
+ * Each call sends a request and waits for its reply, so a benchmark thread has at most one
+ * request outstanding whatever the format.
+ */
+interface BenchClient extends AutoCloseable {
+    enum Format {
+        /** Java-serialized commands, as sent by old GUI builds. */
+        LEGACY,
+        /** Binary frames, one request at a time per connection. */
+        BINARY_V1,
+        /** Tagged binary frames through {@link InventoryClient}'s pipelined session. */
+        BINARY_V2
+    }
+
+    static BenchClient open(Format format, String host, int port) throws IOException {
+        return switch (format) {
+            case LEGACY -> new Legacy(host, port);
+            case BINARY_V1 -> new BinaryV1(host, port);
+            case BINARY_V2 -> new BinaryV2(host, port);
+        };
+    }
+
+    /** Adds a product and returns the server's message. */
+    String addProduct(String name, int categoryId, int supplierId, BigDecimal price) throws IOException;
+
+    /** Fetches every product and returns how many came back. */
+    int viewProducts() throws IOException;
+
+    @Override
+    void close() throws IOException;
+
+    final class Legacy implements BenchClient {
+        private final Socket socket;
+        private final ObjectOutputStream out;
+        private final ObjectInputStream in;
+
+        Legacy(String host, int port) throws IOException {
+            socket = new Socket(host, port);
+            socket.setTcpNoDelay(true);
+            out = new ObjectOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.flush();
+            in = new ObjectInputStream(new BufferedInputStream(socket.getInputStream()));
+        }
+
+        @Override
+        public String addProduct(String name, int categoryId, int supplierId, BigDecimal price) throws IOException {
+            out.writeObject("ADD_PRODUCT");
+            out.writeObject(name);
+            out.writeObject(categoryId);
+            out.writeObject(supplierId);
+            out.writeObject(price.doubleValue());
+            out.flush();
+            // Nothing is shared between requests, so the stream's back-references do not pile up
+            out.reset();
+            return (String) read();
+        }
+
+        @Override
+        public int viewProducts() throws IOException {
+            out.writeObject("VIEW_PRODUCTS");
+            out.flush();
+            out.reset();
+            Object reply = read();
+            if (reply instanceof Object[][] rows) {
+                return rows.length;
+            }
+            throw new IOException("Server answered: " + reply);
+        }
+
+        private Object read() throws IOException {
+            try {
+                return in.readObject();
+            } catch (ClassNotFoundException e) {
+                throw new IOException(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    final class BinaryV1 implements BenchClient {
+        private final Socket socket;
+        private final DataOutputStream out;
+        private final DataInputStream in;
+
+        BinaryV1(String host, int port) throws IOException {
+            socket = new Socket(host, port);
+            socket.setTcpNoDelay(true);
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            WireProtocol.writeHello(out, WireProtocol.VERSION_1);
+            if (WireProtocol.readHello(in) != WireProtocol.VERSION_1) {
+                throw new IOException("Server did not accept protocol version 1.");
+            }
+        }
+
+        @Override
+        public String addProduct(String name, int categoryId, int supplierId, BigDecimal price) throws IOException {
+            WireProtocol.Frame reply = call(WireProtocol.ADD_PRODUCT, new WireProtocol.PayloadBuilder()
+                    .string(name).varInt(categoryId).varInt(supplierId).decimal(price, WireProtocol.PRICE_SCALE));
+            return WireProtocol.readString(reply.reader());
+        }
+
+        @Override
+        public int viewProducts() throws IOException {
+            WireProtocol.Frame reply = call(WireProtocol.VIEW_PRODUCTS, new WireProtocol.PayloadBuilder());
+            if (reply.type != WireProtocol.TABLE) {
+                throw new IOException("Unexpected response from server.");
+            }
+            return ResultTable.readFrom(reply.reader()).getRowCount();
+        }
+
+        private WireProtocol.Frame call(byte opcode, WireProtocol.PayloadBuilder payload) throws IOException {
+            payload.writeAsFrame(out, opcode);
+            out.flush();
+            WireProtocol.Frame reply = WireProtocol.readFrame(in);
+            if (reply.type == WireProtocol.ERROR) {
+                throw new IOException(WireProtocol.readString(reply.reader()));
+            }
+            return reply;
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    final class BinaryV2 implements BenchClient {
+        private final InventoryClient client;
+
+        BinaryV2(String host, int port) throws IOException {
+            client = new InventoryClient(host, port);
+            // Connect now rather than inside the first measured call
+            client.countProducts();
+        }
+
+        @Override
+        public String addProduct(String name, int categoryId, int supplierId, BigDecimal price) throws IOException {
+            return client.addProduct(name, categoryId, supplierId, price);
+        }
+
+        @Override
+        public int viewProducts() throws IOException {
+            return client.viewProducts().getRowCount();
+        }
+
+        @Override
+        public void close() {
+            client.close();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs every benchmark at each concurrency level in turn. Arguments, if any, are the thread
+ * counts to use (default 1, 4 and 16); each benchmark thread holds one connection.
+ */
+public class BenchmarkRunner {
+    private static final int[] DEFAULT_THREADS = {1, 4, 16};
+
+    public static void main(String[] args) throws RunnerException {
+        int[] threadCounts = DEFAULT_THREADS;
+        if (args.length > 0) {
+            threadCounts = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                threadCounts[i] = Integer.parseInt(args[i]);
+            }
+        }
+
+        for (int threads : threadCounts) {
+            Options options = new OptionsBuilder()
+                    .include(AddProductBenchmark.class.getSimpleName())
+                    .include(ViewProductsBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    // The forked JVM needs the same server and database settings as this one
+                    .jvmArgsAppend(forwardedProperties())
+                    .build();
+            new Runner(options).run();
+        }
+    }
+
+    private static String[] forwardedProperties() {
+        return System.getProperties().stringPropertyNames().stream()
+                .filter(key -> key.startsWith("inventory.") || key.startsWith("stub."))
+                .map(key -> "-D" + key + "=" + System.getProperty(key))
+                .toArray(String[]::new);
+    }
+}
@@ -0,0 +1,114 @@
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The real {@link Server}, started once per JVM for benchmarks to talk to. Unless the command
+ * line says otherwise it runs on {@link StubDriver}'s in-memory database, on port 16090, without
+ * its metrics endpoint and with its stock journal in a temporary directory. Point
+ * {@code inventory.db.url} at a MySQL server (and {@code inventory.db.name} at a scratch
+ * database) to measure against a real one.
+ */
+final class EmbeddedServer {
+    static final String HOST = "127.0.0.1";
+
+    private static final long START_TIMEOUT_MILLIS = 30_000;
+
+    private static boolean started;
+
+    private EmbeddedServer() {
+    }
+
+    /** Starts the server if this JVM has not yet, and returns its port once it accepts connections. */
+    static synchronized int start() throws IOException {
+        StubDriver.register();
+        setDefault("inventory.db.url", StubDriver.URL_PREFIX);
+        setDefault("inventory.server.port", "16090");
+        setDefault("inventory.metrics.port", "0");
+        if (System.getProperty("inventory.stock.journalDir") == null) {
+            System.setProperty("inventory.stock.journalDir", Files.createTempDirectory("bench-stock-journal").toString());
+        }
+        int port = Integer.getInteger("inventory.server.port");
+
+        if (!started) {
+            Thread.ofPlatform().name("embedded-server").daemon().start(() -> Server.main(new String[0]));
+            awaitPort(port);
+            started = true;
+        }
+        return port;
+    }
+
+    /**
+     * Makes sure there is a category and a supplier with id 1 and at least {@code products}
+     * products, adding what is missing through the server so its caches see them too.
+     */
+    static synchronized void seed(int products) throws IOException {
+        try (InventoryClient client = new InventoryClient(HOST, start())) {
+            if (client.viewCategories().getRowCount() == 0) {
+                client.addCategory("Bench category");
+            }
+            if (client.viewSuppliers().getRowCount() == 0) {
+                client.addSupplier("Bench supplier", "bench@example.com");
+            }
+            long missing = products - client.countProducts();
+            if (missing <= 0) {
+                return;
+            }
+            List<Product> rows = new ArrayList<>();
+            for (long i = 0; i < missing; i++) {
+                rows.add(new Product(0, BenchData.productName(i, 24), 1, 1, BenchData.price(i)));
+            }
+            client.addProductsBulk(rows.iterator(), ServerConfig.MAX_BATCH_SIZE, result -> { });
+        }
+    }
+
+    private static void setDefault(String key, String value) {
+        if (System.getProperty(key) == null) {
+            System.setProperty(key, value);
+        }
+    }
+
+    private static void awaitPort(int port) throws IOException {
+        long deadline = System.currentTimeMillis() + START_TIMEOUT_MILLIS;
+        while (true) {
+            try (Socket probe = new Socket()) {
+                probe.connect(new InetSocketAddress(HOST, port), 1000);
+                // A bare connect leaves the server waiting for a hello; closing it ends that session
+                return;
+            } catch (IOException e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw new IOException("Server did not start listening on port " + port + ".", e);
+                }
+            }
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the server.");
+            }
+        }
+    }
+
+    /** Names and prices of generated products. */
+    static final class BenchData {
+        private BenchData() {
+        }
+
+        /** A distinct product name of {@code length} characters (at least the digits of {@code n}). */
+        static String productName(long n, int length) {
+            StringBuilder name = new StringBuilder(length).append('P').append(n).append('-');
+            while (name.length() < length) {
+                name.append((char) ('a' + (name.length() + n) % 26));
+            }
+            return name.toString();
+        }
+
+        static BigDecimal price(long n) {
+            return BigDecimal.valueOf(100 + n % 9900, 2);
+        }
+    }
+}
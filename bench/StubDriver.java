@@ -0,0 +1,441 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory stand-in for MySQL so the server can be benchmarked without a database, registered
+ * for URLs starting with {@code jdbc:stub:}. It runs the statements of the paths the benchmarks
+ * exercise: the server's startup (schema statements are accepted and ignored), single and batched
+ * INSERTs with generated keys, upserts, and SELECTs of whole tables, by id or after an id, with
+ * an optional LIMIT and OFFSET. Anything else fails with {@link SQLFeatureNotSupportedException}.
+ *
+ * <p>Every statement can be made to take {@code -Dstub.latencyMicros} longer, standing in for
+ * the round trip to a database server, so pooling and batching changes show up in the numbers.
+ * Statements run one at a time; transactions are not isolated.
+ */
+final class StubDriver implements Driver {
+    static final String URL_PREFIX = "jdbc:stub:";
+
+    private static final long LATENCY_NANOS = Long.getLong("stub.latencyMicros", 0) * 1000;
+
+    private static final Pattern INSERT = Pattern.compile(
+            "(?is)\\s*INSERT INTO (\\w+)\\s*\\(([^)]*)\\)\\s*VALUES\\s*\\([^)]*\\)(\\s+ON DUPLICATE KEY UPDATE\\s+(.*))?");
+    private static final Pattern SELECT = Pattern.compile(
+            "(?is)\\s*SELECT (.+?) FROM (\\w+)(?: WHERE id (=|>) \\?)?(?: ORDER BY id)?( LIMIT \\?)?( OFFSET \\?)?\\s*");
+    private static final Pattern INDEX_CHECK = Pattern.compile("(?is)\\s*SELECT COUNT\\(\\*\\) FROM information_schema\\..*");
+    private static final Pattern SCHEMA = Pattern.compile("(?is)\\s*(CREATE|USE|ALTER|DROP|SET)\\b.*");
+
+    private static final Map<String, Table> TABLES = new HashMap<>();
+
+    static {
+        table("categories", true, "id", "name");
+        table("suppliers", true, "id", "name", "contact");
+        table("products", true, "id", "name", "category_id", "supplier_id", "price");
+        table("stock", false, "product_id", "quantity", "reserved");
+        table("stock_journal", false, "stripe", "flushed_sequence");
+        try {
+            DriverManager.registerDriver(new StubDriver());
+        } catch (SQLException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static void table(String name, boolean generatedIds, String... columns) {
+        TABLES.put(name, new Table(columns, generatedIds));
+    }
+
+    /** Loads the driver; call before the server opens its first connection. */
+    static void register() {
+        // Registration happens in the static initializer
+    }
+
+    /** Empties every table, for a benchmark that needs a known starting point. */
+    static void reset() {
+        synchronized (TABLES) {
+            for (Table table : TABLES.values()) {
+                table.rows.clear();
+                table.lastId = 0;
+            }
+        }
+    }
+
+    @Override
+    public Connection connect(String url, Properties info) {
+        return acceptsURL(url) ? proxy(Connection.class, new StubConnection()) : null;
+    }
+
+    @Override
+    public boolean acceptsURL(String url) {
+        return url != null && url.startsWith(URL_PREFIX);
+    }
+
+    @Override
+    public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+        return new DriverPropertyInfo[0];
+    }
+
+    @Override
+    public int getMajorVersion() {
+        return 1;
+    }
+
+    @Override
+    public int getMinorVersion() {
+        return 0;
+    }
+
+    @Override
+    public boolean jdbcCompliant() {
+        return false;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(StubDriver.class.getClassLoader(), new Class<?>[] {type}, handler));
+    }
+
+    /** Setters and clear calls the stub has no use for are accepted; any other unknown call fails. */
+    private static Object ignoredCall(Method method) throws SQLException {
+        String name = method.getName();
+        if (name.startsWith("set") || name.startsWith("clear")) {
+            return null;
+        }
+        if (name.equals("getWarnings")) {
+            return null;
+        }
+        throw new SQLFeatureNotSupportedException("Stub driver does not support " + method.getName() + ".");
+    }
+
+    private static final class Table {
+        final String[] columns;
+        final boolean generatedIds;
+        // In insertion order, which for generated ids is id order
+        final List<Object[]> rows = new ArrayList<>();
+        int lastId;
+
+        Table(String[] columns, boolean generatedIds) {
+            this.columns = columns;
+            this.generatedIds = generatedIds;
+        }
+
+        int column(String name) throws SQLException {
+            for (int i = 0; i < columns.length; i++) {
+                if (columns[i].equalsIgnoreCase(name.trim())) {
+                    return i;
+                }
+            }
+            throw new SQLException("Unknown column " + name + ".");
+        }
+    }
+
+    private static final class StubConnection implements InvocationHandler {
+        private boolean closed;
+        private boolean autoCommit = true;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws SQLException {
+            switch (method.getName()) {
+                case "createStatement":
+                    return proxy(Statement.class, new StubStatement(null));
+                case "prepareStatement":
+                    return proxy(PreparedStatement.class, new StubStatement((String) args[0]));
+                case "close":
+                    closed = true;
+                    return null;
+                case "isClosed":
+                    return closed;
+                case "isValid":
+                    return !closed;
+                case "getAutoCommit":
+                    return autoCommit;
+                case "setAutoCommit":
+                    autoCommit = (Boolean) args[0];
+                    return null;
+                case "commit":
+                case "rollback":
+                    return null;
+                case "unwrap":
+                    throw new SQLException("Not a wrapper.");
+                case "isWrapperFor":
+                    return false;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return "StubConnection";
+                default:
+                    return ignoredCall(method);
+            }
+        }
+    }
+
+    private static final class StubStatement implements InvocationHandler {
+        private final String preparedSql;
+        private final Map<Integer, Object> parameters = new HashMap<>();
+        private final List<Map<Integer, Object>> batch = new ArrayList<>();
+        private final List<Object[]> generatedKeys = new ArrayList<>();
+        private boolean closed;
+
+        StubStatement(String preparedSql) {
+            this.preparedSql = preparedSql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws SQLException {
+            String name = method.getName();
+            if (name.startsWith("set") && args != null && args.length == 2 && args[0] instanceof Integer index) {
+                parameters.put(index, args[1]);
+                return null;
+            }
+            switch (name) {
+                case "executeQuery":
+                    return query(args == null ? preparedSql : (String) args[0], parameters);
+                case "executeUpdate":
+                    generatedKeys.clear();
+                    return update(args == null ? preparedSql : (String) args[0], parameters, generatedKeys);
+                case "execute":
+                    generatedKeys.clear();
+                    update(args == null ? preparedSql : (String) args[0], parameters, generatedKeys);
+                    return false;
+                case "addBatch":
+                    batch.add(new HashMap<>(parameters));
+                    return null;
+                case "clearBatch":
+                    batch.clear();
+                    return null;
+                case "executeBatch": {
+                    generatedKeys.clear();
+                    int[] counts = new int[batch.size()];
+                    for (int i = 0; i < counts.length; i++) {
+                        counts[i] = update(preparedSql, batch.get(i), generatedKeys);
+                    }
+                    batch.clear();
+                    return counts;
+                }
+                case "getGeneratedKeys":
+                    return proxy(ResultSet.class, new StubResultSet(new ArrayList<>(generatedKeys)));
+                case "clearParameters":
+                    parameters.clear();
+                    return null;
+                case "close":
+                    closed = true;
+                    return null;
+                case "isClosed":
+                    return closed;
+                case "getUpdateCount":
+                    return -1;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return "StubStatement[" + preparedSql + "]";
+                default:
+                    return ignoredCall(method);
+            }
+        }
+    }
+
+    private static int update(String sql, Map<Integer, Object> parameters, List<Object[]> generatedKeys)
+            throws SQLException {
+        simulateLatency();
+        Matcher insert = INSERT.matcher(sql);
+        if (!insert.matches()) {
+            if (SCHEMA.matcher(sql).matches()) {
+                return 0;
+            }
+            throw new SQLFeatureNotSupportedException("Stub driver does not run: " + sql);
+        }
+        synchronized (TABLES) {
+            Table table = tableNamed(insert.group(1));
+            String[] columns = insert.group(2).split(",");
+            Object[] values = new Object[table.columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                values[table.column(columns[i])] = parameters.get(i + 1);
+            }
+
+            if (insert.group(3) != null) {
+                // Upsert keyed on the first column
+                for (Object[] row : table.rows) {
+                    if (row[0].equals(values[0])) {
+                        for (String assignment : insert.group(4).split(",")) {
+                            int column = table.column(assignment.substring(0, assignment.indexOf('=')));
+                            boolean adds = assignment.contains("+");
+                            row[column] = adds ? ((Number) row[column]).longValue() + ((Number) values[column]).longValue()
+                                    : values[column];
+                        }
+                        return 2;
+                    }
+                }
+            }
+
+            if (table.generatedIds) {
+                values[0] = ++table.lastId;
+                generatedKeys.add(new Object[] {values[0]});
+            }
+            table.rows.add(values);
+            return 1;
+        }
+    }
+
+    private static ResultSet query(String sql, Map<Integer, Object> parameters) throws SQLException {
+        simulateLatency();
+        if (INDEX_CHECK.matcher(sql).matches()) {
+            // Report every index as present, the stub has no use for them
+            return proxy(ResultSet.class, new StubResultSet(List.of(new Object[][] {{1L}})));
+        }
+        Matcher select = SELECT.matcher(sql);
+        if (!select.matches()) {
+            throw new SQLFeatureNotSupportedException("Stub driver does not run: " + sql);
+        }
+        synchronized (TABLES) {
+            Table table = tableNamed(select.group(2));
+            if (select.group(1).trim().equalsIgnoreCase("COUNT(*)")) {
+                return proxy(ResultSet.class, new StubResultSet(List.of(new Object[][] {{(long) table.rows.size()}})));
+            }
+
+            String[] selected = select.group(1).split(",");
+            int[] columns = new int[selected.length];
+            for (int i = 0; i < selected.length; i++) {
+                columns[i] = table.column(selected[i]);
+            }
+
+            int parameter = 1;
+            String comparison = select.group(3);
+            int id = comparison == null ? 0 : ((Number) parameters.get(parameter++)).intValue();
+            long limit = select.group(4) == null ? Long.MAX_VALUE : ((Number) parameters.get(parameter++)).longValue();
+            long offset = select.group(5) == null ? 0 : ((Number) parameters.get(parameter)).longValue();
+
+            List<Object[]> rows = new ArrayList<>();
+            for (Object[] row : table.rows) {
+                int rowId = ((Number) row[0]).intValue();
+                if (comparison != null && (comparison.equals("=") ? rowId != id : rowId <= id)) {
+                    continue;
+                }
+                if (offset > 0) {
+                    offset--;
+                    continue;
+                }
+                if (rows.size() >= limit) {
+                    break;
+                }
+                Object[] values = new Object[columns.length];
+                for (int i = 0; i < columns.length; i++) {
+                    values[i] = row[columns[i]];
+                }
+                rows.add(values);
+            }
+            return proxy(ResultSet.class, new StubResultSet(rows, selected));
+        }
+    }
+
+    private static Table tableNamed(String name) throws SQLException {
+        Table table = TABLES.get(name.toLowerCase());
+        if (table == null) {
+            throw new SQLException("Table " + name + " doesn't exist.");
+        }
+        return table;
+    }
+
+    private static void simulateLatency() {
+        if (LATENCY_NANOS > 0) {
+            LockSupport.parkNanos(LATENCY_NANOS);
+        }
+    }
+
+    private static final class StubResultSet implements InvocationHandler {
+        private final List<Object[]> rows;
+        private final String[] labels;
+        private int position = -1;
+        private boolean lastWasNull;
+
+        StubResultSet(List<Object[]> rows, String... labels) {
+            this.rows = rows;
+            this.labels = labels;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws SQLException {
+            switch (method.getName()) {
+                case "next":
+                    return ++position < rows.size();
+                case "getInt": {
+                    Object value = value(args[0]);
+                    return value == null ? 0 : ((Number) value).intValue();
+                }
+                case "getLong": {
+                    Object value = value(args[0]);
+                    return value == null ? 0L : ((Number) value).longValue();
+                }
+                case "getString": {
+                    Object value = value(args[0]);
+                    return value == null ? null : value.toString();
+                }
+                case "getBigDecimal": {
+                    Object value = value(args[0]);
+                    return value == null || value instanceof BigDecimal ? value : new BigDecimal(value.toString());
+                }
+                case "getObject":
+                    return value(args[0]);
+                case "wasNull":
+                    return lastWasNull;
+                case "close":
+                case "setFetchSize":
+                    return null;
+                case "isClosed":
+                    return false;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return "StubResultSet";
+                default:
+                    return ignoredCall(method);
+            }
+        }
+
+        private Object value(Object column) throws SQLException {
+            if (position < 0 || position >= rows.size()) {
+                throw new SQLException("No current row.");
+            }
+            int index = column instanceof Integer number ? number - 1 : labelIndex((String) column);
+            Object value = rows.get(position)[index];
+            lastWasNull = value == null;
+            return value;
+        }
+
+        private int labelIndex(String label) throws SQLException {
+            for (int i = 0; i < labels.length; i++) {
+                if (labels[i].trim().equalsIgnoreCase(label)) {
+                    return i;
+                }
+            }
+            throw new SQLException("Unknown column " + label + ".");
+        }
+    }
+}
@@ -0,0 +1,53 @@
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * VIEW_PRODUCTS round trips through the real server, per request format and catalog size. Each
+ * trial runs in a JVM of its own and seeds the catalog up to its size before measuring, so on the
+ * stub database the reply carries exactly {@code catalogSize} rows.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ViewProductsBenchmark {
+    @Param({"LEGACY", "BINARY_V1", "BINARY_V2"})
+    public BenchClient.Format format;
+
+    @Param({"100", "10000"})
+    public int catalogSize;
+
+    private BenchClient client;
+
+    @Setup(Level.Trial)
+    public void connect() throws IOException {
+        EmbeddedServer.seed(catalogSize);
+        client = BenchClient.open(format, EmbeddedServer.HOST, EmbeddedServer.start());
+    }
+
+    @TearDown(Level.Trial)
+    public void disconnect() throws IOException {
+        client.close();
+    }
+
+    @Benchmark
+    public int viewProducts() throws IOException {
+        return client.viewProducts();
+    }
+}
@@ -163,6 +163,10 @@ public class PropertyDefinitions {
         CATALOG, SCHEMA;
     }
 
+    public enum PacketBufferPoolScope {
+        NONE, CONNECTION, DRIVER;
+    }
+
     private static String STANDARD_LOGGER_NAME = StandardLogger.class.getName();
 
     /**
@@ -294,6 +298,13 @@ public class PropertyDefinitions {
                 new StringPropertyDefinition(PropertyKey.socketFactory, "com.mysql.cj.protocol.StandardSocketFactory", RUNTIME_MODIFIABLE,
                         Messages.getString("ConnectionProperties.socketFactory"), "3.0.3", CATEGORY_NETWORK, 4),
 
+                new BooleanPropertyDefinition(PropertyKey.useSocketChannel, DEFAULT_VALUE_FALSE, RUNTIME_NOT_MODIFIABLE,
+                        Messages.getString("ConnectionProperties.useSocketChannel"), "9.2.0", CATEGORY_NETWORK, Integer.MIN_VALUE),
+
+                new MemorySizePropertyDefinition(PropertyKey.socketChannelBufferSize, 64 * 1024, RUNTIME_NOT_MODIFIABLE,
+                        Messages.getString("ConnectionProperties.socketChannelBufferSize"), "9.2.0", CATEGORY_NETWORK, Integer.MIN_VALUE, 1024,
+                        16 * 1024 * 1024),
+
                 new StringPropertyDefinition(PropertyKey.socksProxyHost, DEFAULT_VALUE_NULL_STRING, RUNTIME_MODIFIABLE,
                         Messages.getString("ConnectionProperties.socksProxyHost"), "5.1.34", CATEGORY_NETWORK, 1),
 
@@ -324,6 +335,15 @@ public class PropertyDefinitions {
                 new BooleanPropertyDefinition(PropertyKey.useCompression, DEFAULT_VALUE_FALSE, RUNTIME_MODIFIABLE,
                         Messages.getString("ConnectionProperties.useCompression"), "3.0.17", CATEGORY_NETWORK, Integer.MIN_VALUE),
 
+                new StringPropertyDefinition(PropertyKey.compressionAlgorithms, "zlib", RUNTIME_NOT_MODIFIABLE,
+                        Messages.getString("ConnectionProperties.compressionAlgorithms"), "9.2.0", CATEGORY_NETWORK, Integer.MIN_VALUE),
+
+                new IntegerPropertyDefinition(PropertyKey.zstdCompressionLevel, 3, RUNTIME_NOT_MODIFIABLE,
+                        Messages.getString("ConnectionProperties.zstdCompressionLevel"), "9.2.0", CATEGORY_NETWORK, Integer.MIN_VALUE, 1, 22),
+
+                new IntegerPropertyDefinition(PropertyKey.compressionThreshold, 50, RUNTIME_NOT_MODIFIABLE,
+                        Messages.getString("ConnectionProperties.compressionThreshold"), "9.2.0", CATEGORY_NETWORK, Integer.MIN_VALUE, 0, Integer.MAX_VALUE),
+
                 new IntegerPropertyDefinition(PropertyKey.maxAllowedPacket, 65535, RUNTIME_MODIFIABLE,
                         Messages.getString("ConnectionProperties.maxAllowedPacket"), "5.1.8", CATEGORY_NETWORK, Integer.MIN_VALUE),
 
@@ -708,6 +728,16 @@ public class PropertyDefinitions {
                 new BooleanPropertyDefinition(PropertyKey.maintainTimeStats, DEFAULT_VALUE_TRUE, RUNTIME_MODIFIABLE,
                         Messages.getString("ConnectionProperties.maintainTimeStats"), "3.1.9", CATEGORY_PERFORMANCE, Integer.MAX_VALUE),
 
+                new EnumPropertyDefinition<>(PropertyKey.packetBufferPool, PacketBufferPoolScope.NONE, RUNTIME_NOT_MODIFIABLE,
+                        Messages.getString("ConnectionProperties.packetBufferPool"), "9.2.0", CATEGORY_PERFORMANCE, Integer.MIN_VALUE),
+
+                new MemorySizePropertyDefinition(PropertyKey.packetBufferPoolMaxRetained, 16 * 1024 * 1024, RUNTIME_NOT_MODIFIABLE,
+                        Messages.getString("ConnectionProperties.packetBufferPoolMaxRetained"), "9.2.0", CATEGORY_PERFORMANCE, Integer.MIN_VALUE, 0,
+                        Integer.MAX_VALUE),
+
+                new BooleanPropertyDefinition(PropertyKey.useChunkedRowStorage, DEFAULT_VALUE_FALSE, RUNTIME_MODIFIABLE,
+                        Messages.getString("ConnectionProperties.useChunkedRowStorage"), "9.2.0", CATEGORY_PERFORMANCE, Integer.MIN_VALUE),
+
                 new IntegerPropertyDefinition(PropertyKey.metadataCacheSize, 50, RUNTIME_MODIFIABLE,
                         Messages.getString("ConnectionProperties.metadataCacheSize"), "3.1.1", CATEGORY_PERFORMANCE, 5, 1, Integer.MAX_VALUE),
 
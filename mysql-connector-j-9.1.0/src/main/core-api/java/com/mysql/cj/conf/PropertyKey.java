@@ -86,6 +86,8 @@ public enum PropertyKey {
     clobberStreamingResults("clobberStreamingResults", true), //
     clobCharacterEncoding("clobCharacterEncoding", true), //
     compensateOnDuplicateKeyUpdateCounts("compensateOnDuplicateKeyUpdateCounts", true), //
+    compressionAlgorithms("compressionAlgorithms", true), //
+    compressionThreshold("compressionThreshold", true), //
     connectionAttributes("connectionAttributes", true), //
     connectionCollation("connectionCollation", true), //
     connectionLifecycleInterceptors("connectionLifecycleInterceptors", true), //
@@ -167,6 +169,8 @@ public enum PropertyKey {
     ociConfigProfile("ociConfigProfile", true), //
     openTelemetry("openTelemetry", true), //
     overrideSupportsIntegrityEnhancementFacility("overrideSupportsIntegrityEnhancementFacility", true), //
+    packetBufferPool("packetBufferPool", true), //
+    packetBufferPoolMaxRetained("packetBufferPoolMaxRetained", true), //
     packetDebugBufferSize("packetDebugBufferSize", true), //
     padCharsWithSpace("padCharsWithSpace", true), //
     paranoid("paranoid", false), //
@@ -211,6 +215,7 @@ public enum PropertyKey {
     sessionVariables("sessionVariables", true), //
     slowQueryThresholdMillis("slowQueryThresholdMillis", true), //
     slowQueryThresholdNanos("slowQueryThresholdNanos", true), //
+    socketChannelBufferSize("socketChannelBufferSize", true), //
     socketFactory("socketFactory", true), //
     socketTimeout("socketTimeout", true), //
     socksProxyHost("socksProxyHost", true), //
@@ -238,6 +243,7 @@ public enum PropertyKey {
     trustManagerFactoryProvider("trustManagerFactoryProvider", true), //
     ultraDevHack("ultraDevHack", true), //
     useAffectedRows("useAffectedRows", true), //
+    useChunkedRowStorage("useChunkedRowStorage", true), //
     useColumnNamesInFindColumn("useColumnNamesInFindColumn", true), //
     useCompression("useCompression", true), //
     useConfigs("useConfigs", true), //
@@ -251,6 +257,7 @@ public enum PropertyKey {
     useOnlyServerErrorMessages("useOnlyServerErrorMessages", true), //
     useReadAheadInput("useReadAheadInput", true), //
     useServerPrepStmts("useServerPrepStmts", true), //
+    useSocketChannel("useSocketChannel", true), //
     useSSL("useSSL", true), //
     useStreamLengthsInPrepStmts("useStreamLengthsInPrepStmts", true), //
     useUnbufferedInput("useUnbufferedInput", true), //
@@ -278,7 +285,8 @@ public enum PropertyKey {
     xdevapiTlsVersions("xdevapi.tls-versions", "xdevapiTlsVersions", true), //
 
     yearIsDateType("yearIsDateType", true), //
-    zeroDateTimeBehavior("zeroDateTimeBehavior", true) //
+    zeroDateTimeBehavior("zeroDateTimeBehavior", true), //
+    zstdCompressionLevel("zstdCompressionLevel", true) //
     ;
 
     private String keyName;
@@ -219,7 +219,7 @@ public abstract class AbstractQuery implements Query {
     public CancelQueryTask startQueryTimer(Query stmtToCancel, long timeout) {
         if (this.session.getPropertySet().getBooleanProperty(PropertyKey.enableQueryTimeouts).getValue() && timeout != 0) {
             CancelQueryTaskImpl timeoutTask = new CancelQueryTaskImpl(stmtToCancel);
-            this.session.getCancelTimer().schedule(timeoutTask, timeout);
+            QueryTimeoutTimer.getInstance().schedule(timeoutTask, timeout);
             return timeoutTask;
         }
         return null;
@@ -235,10 +235,6 @@ public abstract class AbstractQuery implements Query {
                 throw ExceptionFactory.createException(t.getMessage(), t);
             }
 
-            if (this.session != null) {
-                this.session.getCancelTimer().purge();
-            }
-
             if (checkCancelTimeout) {
                 checkCancelTimeout();
             }
@@ -20,13 +20,17 @@
 
 package com.mysql.cj;
 
-import java.util.TimerTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.mysql.cj.Query.CancelStatus;
 import com.mysql.cj.conf.HostInfo;
 import com.mysql.cj.conf.PropertyKey;
+import com.mysql.cj.exceptions.ExceptionFactory;
 import com.mysql.cj.exceptions.OperationCancelledException;
-import com.mysql.cj.protocol.a.NativeMessageBuilder;
 import com.mysql.cj.telemetry.TelemetryAttribute;
 import com.mysql.cj.telemetry.TelemetryScope;
 import com.mysql.cj.telemetry.TelemetrySpan;
@@ -35,11 +39,26 @@ import com.mysql.cj.telemetry.TelemetrySpanName;
 //TODO should not be protocol-specific
 
 /**
- * Thread used to implement query timeouts...Eventually we could be more
- * efficient and have one thread with timers, but this is a straightforward
- * and simple way to implement a feature that isn't used all that often.
+ * Query timeout task, scheduled on the driver-wide {@link QueryTimeoutTimer}. When it expires, the cancellation itself, which may have to connect to the
+ * server, runs on a small driver-wide thread pool and sends the KILL command through a pooled session (see {@link CancelSessionPool}).
+ *
+ * At most {@value #MAX_QUEUED_CANCELS} cancellations wait for a thread. Beyond that, for example while the server doesn't answer, a timeout that expires
+ * isn't enforced, and the reason is reported as if cancelling it had failed.
  */
-public class CancelQueryTaskImpl extends TimerTask implements CancelQueryTask {
+public class CancelQueryTaskImpl extends QueryTimeoutTimer.TimeoutTask implements CancelQueryTask {
+
+    static final int MAX_CANCEL_THREADS = 8;
+    static final int MAX_QUEUED_CANCELS = 1024;
+
+    private static final AtomicInteger cancelThreadCount = new AtomicInteger();
+    private static final ThreadPoolExecutor cancelExecutor;
+
+    static {
+        cancelExecutor = new ThreadPoolExecutor(MAX_CANCEL_THREADS, MAX_CANCEL_THREADS, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(MAX_QUEUED_CANCELS),
+                r -> QueryTimeoutTimer.newDaemonThread(r, "mysql-cj-query-cancellation-" + cancelThreadCount.incrementAndGet()));
+        cancelExecutor.allowCoreThreadTimeOut(true);
+    }
 
     Query queryToCancel;
     Throwable caughtWhileCancelling = null;
@@ -60,91 +79,71 @@ public class CancelQueryTaskImpl extends TimerTask implements CancelQueryTask {
 
     @Override
     public void run() {
-        Thread cancelThread = new Thread() {
-
-            @Override
-            public void run() {
-                Query localQueryToCancel = CancelQueryTaskImpl.this.queryToCancel;
-                if (localQueryToCancel == null) {
-                    return;
-                }
-                NativeSession session = (NativeSession) localQueryToCancel.getSession();
-                if (session == null) {
-                    return;
-                }
+        if (this.queryToCancel == null) {
+            // the query completed while the timer was getting to this task
+            return;
+        }
+        // runs on the timer thread, which must not wait for the server
+        try {
+            cancelExecutor.execute(this::cancelQuery);
+        } catch (RejectedExecutionException e) {
+            this.caughtWhileCancelling = ExceptionFactory
+                    .createException(Messages.getString("Statement.QueryTimeoutNotEnforced", new Object[] { MAX_QUEUED_CANCELS }), e);
+            setQueryToCancel(null);
+        }
+    }
 
+    private void cancelQuery() {
+        Query localQueryToCancel = this.queryToCancel;
+        if (localQueryToCancel == null) {
+            return;
+        }
+        NativeSession session = (NativeSession) localQueryToCancel.getSession();
+        if (session == null || session.isClosed()) {
+            return;
+        }
+
+        try {
+            if (this.queryTimeoutKillsConnection) {
+                localQueryToCancel.setCancelStatus(CancelStatus.CANCELED_BY_TIMEOUT);
+                session.invokeCleanupListeners(new OperationCancelledException(Messages.getString("Statement.ConnectionKilledDueToTimeout")));
+            } else {
+                localQueryToCancel.getCancelTimeoutLock().lock();
                 try {
-                    if (CancelQueryTaskImpl.this.queryTimeoutKillsConnection) {
-                        localQueryToCancel.setCancelStatus(CancelStatus.CANCELED_BY_TIMEOUT);
-                        session.invokeCleanupListeners(new OperationCancelledException(Messages.getString("Statement.ConnectionKilledDueToTimeout")));
-                    } else {
-                        localQueryToCancel.getCancelTimeoutLock().lock();
-                        try {
-                            long origConnId = session.getThreadId();
-                            HostInfo hostInfo = session.getHostInfo();
-                            String database = hostInfo.getDatabase();
-                            String user = hostInfo.getUser();
-                            String password = hostInfo.getPassword();
-
-                            NativeSession newSession = null;
-                            try {
-                                newSession = new NativeSession(hostInfo, session.getPropertySet());
-
-                                TelemetrySpan span = newSession.getTelemetryHandler().startSpan(TelemetrySpanName.CANCEL_QUERY);
-                                try (TelemetryScope scope = span.makeCurrent()) {
-                                    span.setAttribute(TelemetryAttribute.DB_NAME, database);
-                                    span.setAttribute(TelemetryAttribute.DB_OPERATION, TelemetryAttribute.OPERATION_KILL);
-                                    span.setAttribute(TelemetryAttribute.DB_STATEMENT, TelemetryAttribute.OPERATION_KILL + TelemetryAttribute.STATEMENT_SUFFIX);
-                                    span.setAttribute(TelemetryAttribute.DB_SYSTEM, TelemetryAttribute.DB_SYSTEM_DEFAULT);
-                                    span.setAttribute(TelemetryAttribute.DB_USER, user);
-                                    span.setAttribute(TelemetryAttribute.THREAD_ID, Thread.currentThread().getId());
-                                    span.setAttribute(TelemetryAttribute.THREAD_NAME, Thread.currentThread().getName());
-
-                                    newSession.connect(hostInfo, user, password, database, 30000, new TransactionEventHandler() {
-
-                                        @Override
-                                        public void transactionCompleted() {
-                                        }
-
-                                        @Override
-                                        public void transactionBegun() {
-                                        }
-
-                                    });
-                                    newSession.getProtocol().sendCommand(new NativeMessageBuilder(newSession.getServerSession().supportsQueryAttributes())
-                                            .buildComQuery(newSession.getSharedSendPacket(), newSession, "KILL QUERY " + origConnId), false, 0);
-                                } catch (Throwable t) {
-                                    span.setError(t);
-                                    throw t;
-                                } finally {
-                                    span.end();
-                                }
-                            } finally {
-                                try {
-                                    newSession.forceClose();
-                                } catch (Throwable t) {
-                                    // no-op.
-                                }
-                            }
-                            localQueryToCancel.setCancelStatus(CancelStatus.CANCELED_BY_TIMEOUT);
-                        } finally {
-                            localQueryToCancel.getCancelTimeoutLock().unlock();
-                        }
+                    long origConnId = session.getThreadId();
+                    HostInfo hostInfo = session.getHostInfo();
+
+                    TelemetrySpan span = session.getTelemetryHandler().startSpan(TelemetrySpanName.CANCEL_QUERY);
+                    try (TelemetryScope scope = span.makeCurrent()) {
+                        span.setAttribute(TelemetryAttribute.DB_NAME, hostInfo.getDatabase());
+                        span.setAttribute(TelemetryAttribute.DB_OPERATION, TelemetryAttribute.OPERATION_KILL);
+                        span.setAttribute(TelemetryAttribute.DB_STATEMENT, TelemetryAttribute.OPERATION_KILL + TelemetryAttribute.STATEMENT_SUFFIX);
+                        span.setAttribute(TelemetryAttribute.DB_SYSTEM, TelemetryAttribute.DB_SYSTEM_DEFAULT);
+                        span.setAttribute(TelemetryAttribute.DB_USER, hostInfo.getUser());
+                        span.setAttribute(TelemetryAttribute.THREAD_ID, Thread.currentThread().getId());
+                        span.setAttribute(TelemetryAttribute.THREAD_NAME, Thread.currentThread().getName());
+
+                        CancelSessionPool.execute(session, "KILL QUERY " + origConnId);
+                    } catch (Throwable t) {
+                        span.setError(t);
+                        throw t;
+                    } finally {
+                        span.end();
                     }
-                    // } catch (NullPointerException npe) {
-                    // Case when connection closed while starting to cancel.
-                    // We can't easily synchronize this, because then one thread can't cancel() a running query.
-                    // Ignore, we shouldn't re-throw this, because the connection's already closed, so the statement has been timed out.
-                } catch (Throwable t) {
-                    CancelQueryTaskImpl.this.caughtWhileCancelling = t;
+                    localQueryToCancel.setCancelStatus(CancelStatus.CANCELED_BY_TIMEOUT);
                 } finally {
-                    setQueryToCancel(null);
+                    localQueryToCancel.getCancelTimeoutLock().unlock();
                 }
             }
-
-        };
-
-        cancelThread.start();
+            // } catch (NullPointerException npe) {
+            // Case when connection closed while starting to cancel.
+            // We can't easily synchronize this, because then one thread can't cancel() a running query.
+            // Ignore, we shouldn't re-throw this, because the connection's already closed, so the statement has been timed out.
+        } catch (Throwable t) {
+            this.caughtWhileCancelling = t;
+        } finally {
+            setQueryToCancel(null);
+        }
     }
 
     @Override
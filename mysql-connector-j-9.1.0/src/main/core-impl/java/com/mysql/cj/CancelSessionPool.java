@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License, version 2.0, as published by
+ * the Free Software Foundation.
+ *
+ * This program is designed to work with certain software that is licensed under separate terms, as designated in a particular file or component or in
+ * included license documentation. The authors of MySQL hereby grant you an additional permission to link the program and your derivative works with the
+ * separately licensed software that they have either included with the program or referenced in the documentation.
+ *
+ * Without limiting anything contained in the foregoing, this file, which is part of MySQL Connector/J, is also subject to the Universal FOSS Exception,
+ * version 1.0, a copy of which can be found at http://oss.oracle.com/licenses/universal-foss-exception.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License, version 2.0, for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package com.mysql.cj;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.mysql.cj.conf.HostInfo;
+import com.mysql.cj.protocol.a.NativeMessageBuilder;
+
+/**
+ * Small pools of idle sessions, one pool per server, user and password, used to send KILL commands on behalf of other sessions so that cancelling a query
+ * doesn't have to open and authenticate a new connection every time.
+ *
+ * At most {@value #MAX_IDLE_SESSIONS} sessions are kept per pool, and they are closed after {@value #IDLE_TIMEOUT_MILLIS} ms without use.
+ */
+final class CancelSessionPool {
+
+    static final int MAX_IDLE_SESSIONS = 2;
+    static final long IDLE_TIMEOUT_MILLIS = 60000;
+
+    /** Keyed by server, user and password, so a session is only reused for the credentials it was opened with. */
+    private static final Map<List<String>, CancelSessionPool> POOLS = new ConcurrentHashMap<>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    /** Most recently used first. */
+    private final ArrayDeque<IdleSession> idleSessions = new ArrayDeque<>();
+    private boolean evictionScheduled = false;
+
+    private CancelSessionPool() {
+    }
+
+    /**
+     * Runs a statement on a session connected to the same server, with the same user, as the given one.
+     *
+     * @param session
+     *            the session the statement is about
+     * @param sql
+     *            the statement to run
+     * @throws IOException
+     *             if connecting a new session fails
+     */
+    static void execute(NativeSession session, String sql) throws IOException {
+        HostInfo hostInfo = session.getHostInfo();
+        CancelSessionPool pool = POOLS.computeIfAbsent(Arrays.asList(hostInfo.getHostPortPair(), hostInfo.getUser(), hostInfo.getPassword()),
+                k -> new CancelSessionPool());
+
+        NativeSession adminSession = pool.poll();
+        if (adminSession != null) {
+            try {
+                send(adminSession, sql);
+                pool.offer(adminSession);
+                return;
+            } catch (Throwable t) {
+                // Most likely closed by the server while idle, try again on a new session.
+                close(adminSession);
+            }
+        }
+
+        adminSession = open(session);
+        try {
+            send(adminSession, sql);
+        } catch (Throwable t) {
+            close(adminSession);
+            throw t;
+        }
+        pool.offer(adminSession);
+    }
+
+    private static NativeSession open(NativeSession session) throws IOException {
+        HostInfo hostInfo = session.getHostInfo();
+        NativeSession newSession = new NativeSession(hostInfo, session.getPropertySet());
+        try {
+            newSession.connect(hostInfo, hostInfo.getUser(), hostInfo.getPassword(), hostInfo.getDatabase(), 30000, new TransactionEventHandler() {
+
+                @Override
+                public void transactionCompleted() {
+                }
+
+                @Override
+                public void transactionBegun() {
+                }
+
+            });
+        } catch (Throwable t) {
+            close(newSession);
+            throw t;
+        }
+        return newSession;
+    }
+
+    private static void send(NativeSession adminSession, String sql) {
+        adminSession.getProtocol().sendCommand(
+                new NativeMessageBuilder(adminSession.getServerSession().supportsQueryAttributes()).buildComQuery(adminSession.getSharedSendPacket(),
+                        adminSession, sql),
+                false, 0);
+    }
+
+    private static void close(NativeSession adminSession) {
+        try {
+            adminSession.forceClose();
+        } catch (Throwable t) {
+            // no-op.
+        }
+    }
+
+    private NativeSession poll() {
+        this.lock.lock();
+        try {
+            IdleSession idle = this.idleSessions.pollFirst();
+            return idle == null ? null : idle.session;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private void offer(NativeSession adminSession) {
+        this.lock.lock();
+        try {
+            if (this.idleSessions.size() < MAX_IDLE_SESSIONS) {
+                this.idleSessions.addFirst(new IdleSession(adminSession));
+                if (!this.evictionScheduled) {
+                    this.evictionScheduled = true;
+                    QueryTimeoutTimer.getInstance().schedule(new EvictionTask(), IDLE_TIMEOUT_MILLIS);
+                }
+                return;
+            }
+        } finally {
+            this.lock.unlock();
+        }
+        close(adminSession);
+    }
+
+    /**
+     * Closes the sessions idle for too long and, while any are left, schedules itself again for when the oldest one expires. Runs on the timer thread,
+     * which closing sockets doesn't hold up for long.
+     */
+    private class EvictionTask extends QueryTimeoutTimer.TimeoutTask {
+
+        @Override
+        public void run() {
+            long now = System.nanoTime();
+            long idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(IDLE_TIMEOUT_MILLIS);
+            CancelSessionPool.this.lock.lock();
+            try {
+                for (Iterator<IdleSession> it = CancelSessionPool.this.idleSessions.descendingIterator(); it.hasNext();) {
+                    IdleSession idle = it.next();
+                    if (now - idle.sinceNanos < idleTimeoutNanos) {
+                        break;
+                    }
+                    it.remove();
+                    close(idle.session);
+                }
+                IdleSession oldest = CancelSessionPool.this.idleSessions.peekLast();
+                if (oldest == null) {
+                    CancelSessionPool.this.evictionScheduled = false;
+                } else {
+                    QueryTimeoutTimer.getInstance().schedule(new EvictionTask(),
+                            TimeUnit.NANOSECONDS.toMillis(oldest.sinceNanos + idleTimeoutNanos - now) + 1);
+                }
+            } finally {
+                CancelSessionPool.this.lock.unlock();
+            }
+        }
+
+    }
+
+    private static class IdleSession {
+
+        final NativeSession session;
+        final long sinceNanos = System.nanoTime();
+
+        IdleSession(NativeSession session) {
+            this.session = session;
+        }
+
+    }
+
+}
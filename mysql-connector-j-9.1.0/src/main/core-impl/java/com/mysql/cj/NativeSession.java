@@ -32,7 +32,6 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
-import java.util.Timer;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.locks.Lock;
 import java.util.function.Supplier;
@@ -66,6 +65,7 @@ import com.mysql.cj.protocol.a.NativeMessageBuilder;
 import com.mysql.cj.protocol.a.NativePacketPayload;
 import com.mysql.cj.protocol.a.NativeProtocol;
 import com.mysql.cj.protocol.a.NativeServerSession;
+import com.mysql.cj.protocol.a.NativeSocketChannelConnection;
 import com.mysql.cj.protocol.a.NativeSocketConnection;
 import com.mysql.cj.protocol.a.ResultsetFactory;
 import com.mysql.cj.result.Field;
@@ -106,8 +106,6 @@ public class NativeSession extends CoreSession implements Serializable {
 
     private CopyOnWriteArrayList<WeakReference<SessionEventListener>> listeners = new CopyOnWriteArrayList<>();
 
-    private transient Timer cancelTimer;
-
     public NativeSession(HostInfo hostInfo, PropertySet propSet) {
         super(hostInfo, propSet);
 
@@ -138,7 +136,9 @@ public class NativeSession extends CoreSession implements Serializable {
         setSessionMaxRows(-1);
 
         // TODO do we need different types of physical connections?
-        SocketConnection socketConnection = new NativeSocketConnection();
+        SocketConnection socketConnection = this.propertySet.getBooleanProperty(PropertyKey.useSocketChannel).getValue()
+                ? new NativeSocketChannelConnection()
+                : new NativeSocketConnection();
         socketConnection.connect(this.hostInfo.getHost(), this.hostInfo.getPort(), this.propertySet, getExceptionInterceptor(), this.log, loginTimeout);
 
         // we use physical connection to create a -> protocol
@@ -173,15 +173,6 @@ public class NativeSession extends CoreSession implements Serializable {
             }
 
         }
-        getSessionLock().lock();
-        try {
-            if (this.cancelTimer != null) {
-                this.cancelTimer.cancel();
-                this.cancelTimer = null;
-            }
-        } finally {
-            getSessionLock().unlock();
-        }
         this.isClosed = true;
         super.quit();
     }
@@ -202,15 +193,6 @@ public class NativeSession extends CoreSession implements Serializable {
             }
             //this.protocol = null; // TODO actually we shouldn't remove protocol instance because some of its methods can be called after closing the socket
         }
-        getSessionLock().lock();
-        try {
-            if (this.cancelTimer != null) {
-                this.cancelTimer.cancel();
-                this.cancelTimer = null;
-            }
-        } finally {
-            getSessionLock().unlock();
-        }
         this.isClosed = true;
         super.forceClose();
     }
@@ -993,18 +975,6 @@ public class NativeSession extends CoreSession implements Serializable {
         return this.protocol != null && this.protocol.getServerSession().useAnsiQuotedIdentifiers() ? "\"" : "`";
     }
 
-    public Timer getCancelTimer() {
-        getSessionLock().lock();
-        try {
-            if (this.cancelTimer == null) {
-                this.cancelTimer = new Timer("MySQL Statement Cancellation Timer", Boolean.TRUE);
-            }
-            return this.cancelTimer;
-        } finally {
-            getSessionLock().unlock();
-        }
-    }
-
     public void resetSessionState() {
         checkClosed();
         NativePacketPayload message = this.commandBuilder.buildComResetConnection(((NativeProtocol) this.protocol).getSharedSendPacket());
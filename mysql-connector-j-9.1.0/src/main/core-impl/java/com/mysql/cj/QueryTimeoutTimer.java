@@ -0,0 +1,315 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License, version 2.0, as published by
+ * the Free Software Foundation.
+ *
+ * This program is designed to work with certain software that is licensed under separate terms, as designated in a particular file or component or in
+ * included license documentation. The authors of MySQL hereby grant you an additional permission to link the program and your derivative works with the
+ * separately licensed software that they have either included with the program or referenced in the documentation.
+ *
+ * Without limiting anything contained in the foregoing, this file, which is part of MySQL Connector/J, is also subject to the Universal FOSS Exception,
+ * version 1.0, a copy of which can be found at http://oss.oracle.com/licenses/universal-foss-exception.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License, version 2.0, for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package com.mysql.cj;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Driver-wide hashed wheel timer used to enforce query timeouts.
+ *
+ * A single thread advances a wheel of {@value #WHEEL_SIZE} buckets every {@value #TICK_MILLIS} ms and runs the tasks whose deadline falls in the current
+ * bucket. Scheduling and cancelling are constant time operations that only queue the task for the timer thread, which unlinks cancelled tasks from the
+ * wheel on its next tick. So many short statements with a timeout cost almost nothing, unlike one {@link java.util.Timer} per connection that had to be
+ * purged after every statement. Tasks run on the timer thread and must be short;
+ * anything that may block has to be handed over to another thread.
+ *
+ * The timer thread is started on demand and stops once no tasks have been pending for a full turn of the wheel.
+ */
+public class QueryTimeoutTimer {
+
+    static final long TICK_MILLIS = 10;
+    static final int WHEEL_SIZE = 512;
+
+    private static final QueryTimeoutTimer INSTANCE = new QueryTimeoutTimer("MySQL Statement Cancellation Timer", TICK_MILLIS, WHEEL_SIZE);
+
+    private final String threadName;
+    private final long tickNanos;
+    private final TimeoutTask[] wheel;
+    private final int mask;
+
+    /** Tasks scheduled since the timer thread last looked, not yet placed in the wheel. */
+    private final ConcurrentLinkedQueue<TimeoutTask> newTasks = new ConcurrentLinkedQueue<>();
+    /** Tasks cancelled since the timer thread last looked, to unlink from the wheel. */
+    private final ConcurrentLinkedQueue<TimeoutTask> cancelledTasks = new ConcurrentLinkedQueue<>();
+    /** Tasks scheduled and neither run nor cancelled yet. */
+    private final AtomicInteger pendingTasks = new AtomicInteger();
+
+    private final Lock workerLock = new ReentrantLock();
+    private Thread worker = null;
+
+    /**
+     * Returns the timer shared by all connections of this driver.
+     *
+     * @return the shared timer
+     */
+    public static QueryTimeoutTimer getInstance() {
+        return INSTANCE;
+    }
+
+    QueryTimeoutTimer(String threadName, long tickMillis, int wheelSize) {
+        if (Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException("wheelSize");
+        }
+        this.threadName = threadName;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.wheel = new TimeoutTask[wheelSize];
+        this.mask = wheelSize - 1;
+    }
+
+    /**
+     * Schedules a task to run once after the given delay. The task runs no earlier than requested and, timer thread load permitting, at most one tick
+     * later.
+     *
+     * @param task
+     *            the task to run
+     * @param delayMillis
+     *            delay in milliseconds
+     */
+    public void schedule(TimeoutTask task, long delayMillis) {
+        if (delayMillis < 0) {
+            throw new IllegalArgumentException("Negative delay.");
+        }
+        if (!task.state.compareAndSet(TimeoutTask.VIRGIN, TimeoutTask.SCHEDULED)) {
+            throw new IllegalStateException("Task already scheduled or cancelled.");
+        }
+        task.timer = this;
+        task.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+        this.pendingTasks.incrementAndGet();
+        this.newTasks.add(task);
+
+        this.workerLock.lock();
+        try {
+            if (this.worker == null) {
+                this.worker = newDaemonThread(new Worker(), this.threadName);
+                this.worker.start();
+            }
+        } finally {
+            this.workerLock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of tasks scheduled and neither run nor cancelled yet
+     */
+    public int getPendingTasks() {
+        return this.pendingTasks.get();
+    }
+
+    /**
+     * Creates a daemon thread whose context ClassLoader is the one that loaded the driver, rather than the one of the thread that happens to need it, so
+     * that application servers don't tie a thread shared by all connections to a single application.
+     *
+     * @param target
+     *            what the thread runs
+     * @param name
+     *            thread name
+     * @return an unstarted thread
+     */
+    static Thread newDaemonThread(Runnable target, String name) {
+        Thread t = new Thread(target, name);
+        t.setDaemon(true);
+        ClassLoader classLoader = QueryTimeoutTimer.class.getClassLoader();
+        if (classLoader == null) {
+            classLoader = ClassLoader.getSystemClassLoader();
+        }
+        t.setContextClassLoader(classLoader);
+        return t;
+    }
+
+    /**
+     * The wheel is only ever touched by the timer thread. The tasks of a bucket are doubly linked through {@link TimeoutTask#previous} and
+     * {@link TimeoutTask#next}, so that a cancelled one can be unlinked without going through its bucket.
+     */
+    private class Worker implements Runnable {
+
+        private long startNanos;
+        private long tick = 0;
+        private long idleTicks = 0;
+
+        @Override
+        public void run() {
+            this.startNanos = System.nanoTime();
+            for (;;) {
+                waitForNextTick();
+                removeCancelledTasks();
+                transferNewTasks();
+                expireBucket();
+                this.tick++;
+
+                if (QueryTimeoutTimer.this.pendingTasks.get() != 0) {
+                    this.idleTicks = 0;
+                } else if (++this.idleTicks >= QueryTimeoutTimer.this.wheel.length && stop()) {
+                    return;
+                }
+            }
+        }
+
+        private void waitForNextTick() {
+            long deadline = this.startNanos + (this.tick + 1) * QueryTimeoutTimer.this.tickNanos;
+            long sleepNanos;
+            while ((sleepNanos = deadline - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(this, sleepNanos);
+            }
+        }
+
+        private void transferNewTasks() {
+            TimeoutTask task;
+            while ((task = QueryTimeoutTimer.this.newTasks.poll()) != null) {
+                if (task.state.get() != TimeoutTask.SCHEDULED) {
+                    continue;
+                }
+                // ticks since start, rounded up so that tasks never run early, and never behind the bucket about to be processed
+                long taskTick = Math.max(this.tick,
+                        (task.deadline - this.startNanos + QueryTimeoutTimer.this.tickNanos - 1) / QueryTimeoutTimer.this.tickNanos - 1);
+                task.remainingRounds = (taskTick - this.tick) / QueryTimeoutTimer.this.wheel.length;
+                link(task, (int) (taskTick & QueryTimeoutTimer.this.mask));
+            }
+        }
+
+        private void removeCancelledTasks() {
+            TimeoutTask task;
+            while ((task = QueryTimeoutTimer.this.cancelledTasks.poll()) != null) {
+                // tasks cancelled before being placed in the wheel, or already unlinked, have no bucket
+                if (task.bucket >= 0) {
+                    unlink(task);
+                }
+            }
+        }
+
+        private void link(TimeoutTask task, int index) {
+            TimeoutTask head = QueryTimeoutTimer.this.wheel[index];
+            task.bucket = index;
+            task.previous = null;
+            task.next = head;
+            if (head != null) {
+                head.previous = task;
+            }
+            QueryTimeoutTimer.this.wheel[index] = task;
+        }
+
+        private void unlink(TimeoutTask task) {
+            if (task.previous == null) {
+                QueryTimeoutTimer.this.wheel[task.bucket] = task.next;
+            } else {
+                task.previous.next = task.next;
+            }
+            if (task.next != null) {
+                task.next.previous = task.previous;
+            }
+            task.bucket = -1;
+            task.previous = null;
+            task.next = null;
+        }
+
+        private void expireBucket() {
+            TimeoutTask task = QueryTimeoutTimer.this.wheel[(int) (this.tick & QueryTimeoutTimer.this.mask)];
+            while (task != null) {
+                TimeoutTask next = task.next;
+                if (task.state.get() != TimeoutTask.SCHEDULED) {
+                    // cancelled after the cancelled tasks were removed, it's already queued for removal
+                    unlink(task);
+                } else if (task.remainingRounds > 0) {
+                    task.remainingRounds--;
+                } else {
+                    unlink(task);
+                    if (task.state.compareAndSet(TimeoutTask.SCHEDULED, TimeoutTask.EXPIRED)) {
+                        QueryTimeoutTimer.this.pendingTasks.decrementAndGet();
+                        try {
+                            task.run();
+                        } catch (Throwable t) {
+                            // nothing to report this to, and the timer must go on
+                        }
+                    }
+                }
+                task = next;
+            }
+        }
+
+        /**
+         * Stops this worker unless a task was scheduled meanwhile. Checked under the same lock {@link QueryTimeoutTimer#schedule(TimeoutTask, long)} uses
+         * to start a worker, so a new task always finds a running worker.
+         *
+         * @return true if the worker must stop
+         */
+        private boolean stop() {
+            QueryTimeoutTimer.this.workerLock.lock();
+            try {
+                if (!QueryTimeoutTimer.this.newTasks.isEmpty()) {
+                    return false;
+                }
+                // Tasks left in the wheel have all been cancelled. Unlinking them makes any of them still to be queued for removal, by a cancel()
+                // racing with this, harmless to a later worker.
+                for (int i = 0; i < QueryTimeoutTimer.this.wheel.length; i++) {
+                    while (QueryTimeoutTimer.this.wheel[i] != null) {
+                        unlink(QueryTimeoutTimer.this.wheel[i]);
+                    }
+                }
+                QueryTimeoutTimer.this.cancelledTasks.clear();
+                QueryTimeoutTimer.this.worker = null;
+                return true;
+            } finally {
+                QueryTimeoutTimer.this.workerLock.unlock();
+            }
+        }
+
+    }
+
+    /**
+     * A task run once by a {@link QueryTimeoutTimer}, the counterpart of {@link java.util.TimerTask}.
+     */
+    public abstract static class TimeoutTask implements Runnable {
+
+        static final int VIRGIN = 0;
+        static final int SCHEDULED = 1;
+        static final int EXPIRED = 2;
+        static final int CANCELLED = 3;
+
+        final AtomicInteger state = new AtomicInteger(VIRGIN);
+        QueryTimeoutTimer timer;
+        long deadline;
+        long remainingRounds;
+        int bucket = -1;
+        TimeoutTask previous;
+        TimeoutTask next;
+
+        /**
+         * Cancels this task. A task still waiting won't run; a task already running goes on.
+         *
+         * @return true if this prevented the task from running
+         */
+        public boolean cancel() {
+            if (this.state.compareAndSet(SCHEDULED, CANCELLED)) {
+                this.timer.pendingTasks.decrementAndGet();
+                this.timer.cancelledTasks.add(this);
+                return true;
+            }
+            this.state.compareAndSet(VIRGIN, CANCELLED);
+            return false;
+        }
+
+    }
+
+}
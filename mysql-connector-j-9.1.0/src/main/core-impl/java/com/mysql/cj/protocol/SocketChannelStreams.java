@@ -0,0 +1,299 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License, version 2.0, as published by
+ * the Free Software Foundation.
+ *
+ * This program is designed to work with certain software that is licensed under separate terms, as designated in a particular file or component or in
+ * included license documentation. The authors of MySQL hereby grant you an additional permission to link the program and your derivative works with the
+ * separately licensed software that they have either included with the program or referenced in the documentation.
+ *
+ * Without limiting anything contained in the foregoing, this file, which is part of MySQL Connector/J, is also subject to the Universal FOSS Exception,
+ * version 1.0, a copy of which can be found at http://oss.oracle.com/licenses/universal-foss-exception.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License, version 2.0, for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package com.mysql.cj.protocol;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+import com.mysql.cj.Messages;
+
+/**
+ * Input and output streams doing their I/O through a non-blocking {@link SocketChannel} and a pair of direct buffers.
+ *
+ * Bytes read from the channel land in the direct read buffer and are copied once, straight into the array the caller reads into; whatever else arrived with
+ * them stays buffered for the next read, like {@link ReadAheadInputStream} does but without its intermediate heap buffer and lock. Writes are gathered in the
+ * direct write buffer and written from there, so the JDK has no temporary direct buffers to allocate. When the channel is not ready a selector waits for it,
+ * honoring the socket's SO_TIMEOUT for reads.
+ *
+ * As with the socket streams, reads and writes may happen on different threads, but each direction must only be used by one thread at a time.
+ */
+public class SocketChannelStreams implements Closeable {
+
+    private final SocketChannel channel;
+    private final Socket socket;
+    private final ByteBuffer readBuffer;
+    private final ByteBuffer writeBuffer;
+    private final InputStream inputStream = new ChannelInputStream();
+    private final OutputStream outputStream = new ChannelOutputStream();
+
+    private Selector readSelector;
+    private Selector writeSelector;
+
+    /**
+     * Switches the given channel to non-blocking mode and creates streams over it.
+     *
+     * @param channel
+     *            a connected socket channel
+     * @param bufferSize
+     *            size of each of the direct read and write buffers
+     * @throws IOException
+     *             if the channel can't be switched to non-blocking mode
+     */
+    public SocketChannelStreams(SocketChannel channel, int bufferSize) throws IOException {
+        this.channel = channel;
+        this.socket = channel.socket();
+        this.readBuffer = ByteBuffer.allocateDirect(bufferSize);
+        this.readBuffer.flip();
+        this.writeBuffer = ByteBuffer.allocateDirect(bufferSize);
+        this.channel.configureBlocking(false);
+    }
+
+    public InputStream getInputStream() {
+        return this.inputStream;
+    }
+
+    public OutputStream getOutputStream() {
+        return this.outputStream;
+    }
+
+    /**
+     * Gives the channel back to blocking mode, e.g. for a TLS layer to be put over the socket streams. These streams must not be used afterwards.
+     *
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    public void configureBlocking() throws IOException {
+        closeSelectors();
+        this.channel.configureBlocking(true);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            closeSelectors();
+        } finally {
+            this.channel.close();
+        }
+    }
+
+    private void closeSelectors() throws IOException {
+        // closing a selector deregisters the channel and wakes up a thread waiting on it
+        if (this.readSelector != null) {
+            this.readSelector.close();
+        }
+        if (this.writeSelector != null) {
+            this.writeSelector.close();
+        }
+    }
+
+    /**
+     * Waits until the channel is ready for the given operation.
+     *
+     * @param selector
+     *            the selector the channel is registered with for this operation
+     * @param timeout
+     *            most milliseconds to wait, 0 to wait indefinitely
+     * @throws IOException
+     *             if the time ran out, the waiting thread was interrupted or the streams were closed meanwhile
+     */
+    private void await(Selector selector, int timeout) throws IOException {
+        long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : 0;
+        try {
+            while (selector.select(timeout) == 0) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException();
+                }
+                if (deadline != 0) {
+                    long left = deadline - System.currentTimeMillis();
+                    if (left <= 0) {
+                        throw new SocketTimeoutException(Messages.getString("SocketChannelStreams.0"));
+                    }
+                    timeout = (int) left;
+                }
+            }
+            selector.selectedKeys().clear();
+        } catch (ClosedSelectorException | CancelledKeyException e) {
+            throw new SocketException(Messages.getString("SocketConnection.1"));
+        }
+    }
+
+    private Selector selector(Selector selector, int operation) throws IOException {
+        if (selector == null) {
+            if (!this.channel.isOpen()) {
+                throw new SocketException(Messages.getString("SocketConnection.1"));
+            }
+            selector = Selector.open();
+            try {
+                this.channel.register(selector, operation);
+            } catch (IOException | RuntimeException e) {
+                selector.close();
+                throw e;
+            }
+        }
+        return selector;
+    }
+
+    /**
+     * Reads what the channel has without waiting.
+     *
+     * @return bytes read, or -1 at end of stream
+     */
+    private int readAvailable() throws IOException {
+        this.readBuffer.clear();
+        try {
+            return this.channel.read(this.readBuffer);
+        } finally {
+            this.readBuffer.flip();
+        }
+    }
+
+    /**
+     * Reads at least one byte into the empty read buffer, waiting for them if needed.
+     *
+     * @return bytes read, or -1 at end of stream
+     */
+    private int fill() throws IOException {
+        int n;
+        while ((n = readAvailable()) == 0) {
+            this.readSelector = selector(this.readSelector, SelectionKey.OP_READ);
+            await(this.readSelector, this.socket.getSoTimeout());
+        }
+        return n;
+    }
+
+    private void drain() throws IOException {
+        this.writeBuffer.flip();
+        try {
+            while (this.writeBuffer.hasRemaining()) {
+                if (this.channel.write(this.writeBuffer) == 0) {
+                    this.writeSelector = selector(this.writeSelector, SelectionKey.OP_WRITE);
+                    await(this.writeSelector, 0);
+                }
+            }
+        } finally {
+            this.writeBuffer.compact();
+        }
+    }
+
+    private class ChannelInputStream extends InputStream {
+
+        @Override
+        public int read() throws IOException {
+            if (!SocketChannelStreams.this.readBuffer.hasRemaining() && fill() < 0) {
+                return -1;
+            }
+            return SocketChannelStreams.this.readBuffer.get() & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            ByteBuffer buffer = SocketChannelStreams.this.readBuffer;
+            if (!buffer.hasRemaining() && fill() < 0) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            if (n <= 0) {
+                return 0;
+            }
+            ByteBuffer buffer = SocketChannelStreams.this.readBuffer;
+            if (!buffer.hasRemaining() && fill() < 0) {
+                return 0;
+            }
+            int skipped = (int) Math.min(n, buffer.remaining());
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            ByteBuffer buffer = SocketChannelStreams.this.readBuffer;
+            if (!buffer.hasRemaining() && SocketChannelStreams.this.channel.isOpen()) {
+                readAvailable();
+            }
+            return buffer.remaining();
+        }
+
+        @Override
+        public void close() throws IOException {
+            SocketChannelStreams.this.close();
+        }
+
+    }
+
+    private class ChannelOutputStream extends OutputStream {
+
+        @Override
+        public void write(int b) throws IOException {
+            ByteBuffer buffer = SocketChannelStreams.this.writeBuffer;
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+            buffer.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            ByteBuffer buffer = SocketChannelStreams.this.writeBuffer;
+            while (len > 0) {
+                if (!buffer.hasRemaining()) {
+                    drain();
+                }
+                int n = Math.min(len, buffer.remaining());
+                buffer.put(b, off, n);
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            drain();
+        }
+
+        @Override
+        public void close() throws IOException {
+            SocketChannelStreams.this.close();
+        }
+
+    }
+
+}
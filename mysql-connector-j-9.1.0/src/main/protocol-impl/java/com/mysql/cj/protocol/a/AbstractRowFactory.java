@@ -36,9 +36,20 @@ public abstract class AbstractRowFactory implements ProtocolEntityFactory<Result
     protected RuntimeProperty<Integer> useBufferRowSizeThreshold;
     protected ExceptionInterceptor exceptionInterceptor;
     protected ValueDecoder valueDecoder;
+    protected boolean bufferRowsOnly = false;
 
     public boolean canReuseRowPacketForBufferRow() {
         return this.canReuseRowPacketForBufferRow;
     }
 
+    /**
+     * Makes this factory build every row of a read-only result over its packet, as a {@link com.mysql.cj.protocol.a.result.ChunkedRowList} needs them.
+     *
+     * @param bufferRowsOnly
+     *            true to always build buffer rows
+     */
+    public void setBufferRowsOnly(boolean bufferRowsOnly) {
+        this.bufferRowsOnly = bufferRowsOnly;
+    }
+
 }
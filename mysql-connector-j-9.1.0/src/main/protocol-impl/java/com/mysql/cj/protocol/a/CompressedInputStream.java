@@ -23,8 +23,6 @@ package com.mysql.cj.protocol.a;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.zip.DataFormatException;
-import java.util.zip.Inflater;
 
 import com.mysql.cj.conf.RuntimeProperty;
 import com.mysql.cj.log.Log;
@@ -41,8 +39,8 @@ public class CompressedInputStream extends InputStream {
     /** The stream we are reading from the server */
     private InputStream in;
 
-    /** The ZIP inflater used to un-compress packets */
-    private Inflater inflater;
+    /** The algorithm used to un-compress packets */
+    private CompressionCodec codec;
 
     /** Connection property reference */
     private RuntimeProperty<Boolean> traceProtocol;
@@ -70,10 +68,27 @@ public class CompressedInputStream extends InputStream {
      *            logger
      */
     public CompressedInputStream(InputStream streamFromServer, RuntimeProperty<Boolean> traceProtocol, Log log) {
+        this(streamFromServer, new ZlibCompressionCodec(), traceProtocol, log);
+    }
+
+    /**
+     * Creates a new CompressedInputStream that reads the given stream from the
+     * server, compressed with the given algorithm.
+     *
+     * @param streamFromServer
+     *            original server InputStream
+     * @param codec
+     *            the negotiated compression algorithm
+     * @param traceProtocol
+     *            "traceProtocol" property
+     * @param log
+     *            logger
+     */
+    public CompressedInputStream(InputStream streamFromServer, CompressionCodec codec, RuntimeProperty<Boolean> traceProtocol, Log log) {
         this.traceProtocol = traceProtocol;
         this.log = log;
         this.in = streamFromServer;
-        this.inflater = new Inflater();
+        this.codec = codec;
     }
 
     @Override
@@ -89,8 +104,8 @@ public class CompressedInputStream extends InputStream {
     public void close() throws IOException {
         this.in.close();
         this.buffer = null;
-        this.inflater.end();
-        this.inflater = null;
+        this.codec.close();
+        this.codec = null;
         this.traceProtocol = null;
         this.log = null;
     }
@@ -129,15 +144,7 @@ public class CompressedInputStream extends InputStream {
 
             readFully(compressedBuffer, 0, compressedPacketLength);
 
-            this.inflater.reset();
-
-            this.inflater.setInput(compressedBuffer);
-
-            try {
-                this.inflater.inflate(uncompressedData);
-            } catch (DataFormatException dfe) {
-                throw new IOException("Error while uncompressing packet from server.");
-            }
+            this.codec.decompress(compressedBuffer, 0, compressedPacketLength, uncompressedData, 0, uncompressedLength);
 
         } else {
             if (doTrace) {
@@ -22,7 +22,6 @@ package com.mysql.cj.protocol.a;
 
 import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.util.zip.Deflater;
 
 import com.mysql.cj.protocol.MessageSender;
 
@@ -34,7 +33,13 @@ import com.mysql.cj.protocol.MessageSender;
 public class CompressedPacketSender implements MessageSender<NativePacketPayload> {
 
     private BufferedOutputStream outputStream;
-    private Deflater deflater = new Deflater();
+    private CompressionCodec codec;
+    /** Packets shorter than this are sent without trying to compress them. */
+    private int minCompressLength;
+    /** Header of the raw packet being compressed. */
+    private byte uncompressedHeader[] = new byte[NativeConstants.HEADER_LENGTH];
+    /** Length of the data being compressed in the current compressed packet. */
+    private int uncompressedPayloadLen = 0;
     /** Buffer to compress data to. Used only across one send() invocation. */
     private byte compressedPacket[];
     /** Sequence id of compressed packet. Used only across one send() invocation. */
@@ -46,20 +51,48 @@ public class CompressedPacketSender implements MessageSender<NativePacketPayload
     public static final int MIN_COMPRESS_LEN = 50;
 
     public CompressedPacketSender(BufferedOutputStream outputStream) {
+        this(outputStream, new ZlibCompressionCodec(), MIN_COMPRESS_LEN);
+    }
+
+    /**
+     * Creates a sender compressing with the given algorithm.
+     *
+     * @param outputStream
+     *            stream to the server
+     * @param codec
+     *            the negotiated compression algorithm
+     * @param minCompressLength
+     *            packets shorter than this are sent uncompressed
+     */
+    public CompressedPacketSender(BufferedOutputStream outputStream, CompressionCodec codec, int minCompressLength) {
         this.outputStream = outputStream;
+        this.codec = codec;
+        this.minCompressLength = minCompressLength;
     }
 
     /**
      * Shut down this packet sender and deallocate any resources.
      */
     public void stop() {
-        this.deflater.end();
-        this.deflater = null;
+        this.codec.close();
+        this.codec = null;
     }
 
     private void resetPacket() {
+        this.uncompressedPayloadLen = 0;
         this.compressedPayloadLen = 0;
-        this.deflater.reset();
+    }
+
+    /**
+     * Start compressing the data of a new compressed packet into the compressed packet buffer.
+     *
+     * @param uncompressedLen
+     *            length of the data that will be added
+     */
+    private void startCompression(int uncompressedLen) {
+        this.uncompressedPayloadLen = uncompressedLen;
+        // a compressed payload is only worth sending if it's shorter than the data
+        this.codec.startCompression(this.compressedPacket, 0, uncompressedLen - 1);
     }
 
     /**
@@ -69,14 +102,13 @@ public class CompressedPacketSender implements MessageSender<NativePacketPayload
      *            sequence id
      * @param uncompressedPacketLen
      *            uncompressed packet length
+     * @throws IOException
+     *             if compression fails
      */
-    private void addUncompressedHeader(byte packetSequence, int uncompressedPacketLen) {
-        byte uncompressedHeader[] = new byte[NativeConstants.HEADER_LENGTH];
-        NativeUtils.encodeMysqlThreeByteInteger(uncompressedPacketLen, uncompressedHeader, 0);
-        uncompressedHeader[3] = packetSequence;
-        this.deflater.setInput(uncompressedHeader);
-        this.compressedPayloadLen += this.deflater.deflate(this.compressedPacket, this.compressedPayloadLen,
-                this.compressedPacket.length - this.compressedPayloadLen);
+    private void addUncompressedHeader(byte packetSequence, int uncompressedPacketLen) throws IOException {
+        NativeUtils.encodeMysqlThreeByteInteger(uncompressedPacketLen, this.uncompressedHeader, 0);
+        this.uncompressedHeader[3] = packetSequence;
+        this.codec.addCompressionInput(this.uncompressedHeader, 0, NativeConstants.HEADER_LENGTH);
     }
 
     /**
@@ -88,20 +120,23 @@ public class CompressedPacketSender implements MessageSender<NativePacketPayload
      *            offset
      * @param payloadLen
      *            length
+     * @throws IOException
+     *             if compression fails
      */
-    private void addPayload(byte[] payload, int payloadOffset, int payloadLen) {
-        this.deflater.setInput(payload, payloadOffset, payloadLen);
-        this.compressedPayloadLen += this.deflater.deflate(this.compressedPacket, this.compressedPayloadLen,
-                this.compressedPacket.length - this.compressedPayloadLen);
+    private void addPayload(byte[] payload, int payloadOffset, int payloadLen) throws IOException {
+        this.codec.addCompressionInput(payload, payloadOffset, payloadLen);
     }
 
     /**
-     * Complete compression of the current payload contents to the compressed packet.
+     * Complete compression of the current payload contents to the compressed packet. Data that wouldn't get any shorter is left uncompressed.
+     *
+     * @throws IOException
+     *             if compression fails
      */
-    private void completeCompression() {
-        this.deflater.finish();
-        this.compressedPayloadLen += this.deflater.deflate(this.compressedPacket, this.compressedPayloadLen,
-                this.compressedPacket.length - this.compressedPayloadLen);
+    private void completeCompression() throws IOException {
+        int compressedLen = this.codec.finishCompression();
+        // incompressible data is flagged by a compressed length as large as the data itself
+        this.compressedPayloadLen = compressedLen < 0 ? this.uncompressedPayloadLen : compressedLen;
     }
 
     /**
@@ -174,7 +209,7 @@ public class CompressedPacketSender implements MessageSender<NativePacketPayload
         this.compressedSequenceId = packetSequence;
 
         // short-circuit send small packets without compression and return
-        if (packetLen < MIN_COMPRESS_LEN) {
+        if (packetLen < this.minCompressLength) {
             writeCompressedHeader(packetLen + NativeConstants.HEADER_LENGTH, this.compressedSequenceId, 0);
             writeUncompressedHeader(packetLen, packetSequence);
             this.outputStream.write(packet, 0, packetLen);
@@ -197,17 +232,19 @@ public class CompressedPacketSender implements MessageSender<NativePacketPayload
             this.compressedPayloadLen = 0;
 
             if (packetSplitter.nextPacket()) {
-                // rest of previous packet
-                if (unsentPayloadLen > 0) {
-                    addPayload(packet, unsentOffset, unsentPayloadLen);
-                }
-
                 // current packet
                 int remaining = NativeConstants.MAX_PACKET_SIZE - unsentPayloadLen;
                 // if remaining is 0 then we are sending a very huge packet such that are 4-byte header-size carryover from last packet accumulated to the size
                 // of a whole packet itself. We don't handle this. Would require 4 million packet segments (64 gigs in one logical packet)
                 int len = Math.min(remaining, NativeConstants.HEADER_LENGTH + packetSplitter.getPacketLen());
                 int lenNoHdr = len - NativeConstants.HEADER_LENGTH;
+                startCompression(unsentPayloadLen + len);
+
+                // rest of previous packet
+                if (unsentPayloadLen > 0) {
+                    addPayload(packet, unsentOffset, unsentPayloadLen);
+                }
+
                 addUncompressedHeader(packetSequence, packetSplitter.getPacketLen());
                 addPayload(packet, packetSplitter.getOffset(), lenNoHdr);
 
@@ -229,6 +266,7 @@ public class CompressedPacketSender implements MessageSender<NativePacketPayload
                 resetPacket();
             } else if (unsentPayloadLen > 0) {
                 // no more packets, send remaining unsent data
+                startCompression(unsentPayloadLen);
                 addPayload(packet, unsentOffset, unsentPayloadLen);
                 completeCompression();
                 if (this.compressedPayloadLen >= unsentPayloadLen) {
@@ -247,7 +285,7 @@ public class CompressedPacketSender implements MessageSender<NativePacketPayload
 
         this.outputStream.flush();
 
-        // release reference to (possibly large) compressed packet buffer
+        // release reference to (possibly large) packet buffer
         this.compressedPacket = null;
     }
 
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License, version 2.0, as published by
+ * the Free Software Foundation.
+ *
+ * This program is designed to work with certain software that is licensed under separate terms, as designated in a particular file or component or in
+ * included license documentation. The authors of MySQL hereby grant you an additional permission to link the program and your derivative works with the
+ * separately licensed software that they have either included with the program or referenced in the documentation.
+ *
+ * Without limiting anything contained in the foregoing, this file, which is part of MySQL Connector/J, is also subject to the Universal FOSS Exception,
+ * version 1.0, a copy of which can be found at http://oss.oracle.com/licenses/universal-foss-exception.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License, version 2.0, for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package com.mysql.cj.protocol.a;
+
+import java.io.IOException;
+
+/**
+ * Compression algorithm of the payloads of compressed protocol packets. Each payload is compressed and decompressed independently of any other.
+ *
+ * Instances are not thread-safe.
+ */
+public interface CompressionCodec {
+
+    /**
+     * Gets the name of the algorithm, as in the 'compressionAlgorithms' connection property.
+     *
+     * @return algorithm name
+     */
+    String getAlgorithmName();
+
+    /**
+     * Starts compressing a new payload, discarding anything left from the previous one. The data to compress is then given with
+     * {@link #addCompressionInput(byte[], int, int)}, in as many pieces as convenient, and the compression is completed by {@link #finishCompression()}.
+     *
+     * @param dst
+     *            array to compress into
+     * @param dstOffset
+     *            offset to compress to
+     * @param dstLength
+     *            most bytes the compressed data may take
+     */
+    void startCompression(byte[] dst, int dstOffset, int dstLength);
+
+    /**
+     * Adds data to the payload being compressed. The data is read in place, so the caller mustn't change it before {@link #finishCompression()} returns.
+     *
+     * @param src
+     *            array holding the data to compress
+     * @param srcOffset
+     *            offset of the data
+     * @param srcLength
+     *            length of the data
+     * @throws IOException
+     *             if compression fails
+     */
+    void addCompressionInput(byte[] src, int srcOffset, int srcLength) throws IOException;
+
+    /**
+     * Completes the compression of the data added since {@link #startCompression(byte[], int, int)}.
+     *
+     * @return length of the compressed data, or -1 if it doesn't fit in the space given to {@link #startCompression(byte[], int, int)}
+     * @throws IOException
+     *             if compression fails
+     */
+    int finishCompression() throws IOException;
+
+    /**
+     * Decompresses data compressed by this algorithm.
+     *
+     * @param src
+     *            array holding the compressed data
+     * @param srcOffset
+     *            offset of the compressed data
+     * @param srcLength
+     *            length of the compressed data
+     * @param dst
+     *            array to decompress into
+     * @param dstOffset
+     *            offset to decompress to
+     * @param dstLength
+     *            length of the data once decompressed
+     * @throws IOException
+     *             if the compressed data is corrupt or doesn't decompress to exactly <code>dstLength</code> bytes
+     */
+    void decompress(byte[] src, int srcOffset, int srcLength, byte[] dst, int dstOffset, int dstLength) throws IOException;
+
+    /**
+     * Releases the resources held by this codec. It can't be used any more afterwards.
+     */
+    void close();
+
+}
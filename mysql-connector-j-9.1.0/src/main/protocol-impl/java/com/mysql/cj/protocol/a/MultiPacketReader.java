@@ -35,9 +35,23 @@ import com.mysql.cj.protocol.a.NativeConstants.StringLengthDataType;
 public class MultiPacketReader implements MessageReader<NativePacketHeader, NativePacketPayload> {
 
     private MessageReader<NativePacketHeader, NativePacketPayload> packetReader;
+    private PacketBufferPool bufferPool;
 
     public MultiPacketReader(MessageReader<NativePacketHeader, NativePacketPayload> packetReader) {
+        this(packetReader, null);
+    }
+
+    /**
+     * Creates a reader which takes the buffer for the parts of a multi-packet from the given pool and gives buffers outgrown while joining them back.
+     *
+     * @param packetReader
+     *            underlying {@link MessageReader}
+     * @param bufferPool
+     *            {@link PacketBufferPool}, or null to allocate new arrays
+     */
+    public MultiPacketReader(MessageReader<NativePacketHeader, NativePacketPayload> packetReader, PacketBufferPool bufferPool) {
         this.packetReader = packetReader;
+        this.bufferPool = bufferPool;
     }
 
     @Override
@@ -59,6 +73,7 @@ public class MultiPacketReader implements MessageReader<NativePacketHeader, Nati
 
             buf.setPosition(NativeConstants.MAX_PACKET_SIZE);
 
+            byte[] firstPartBuffer = buf.getByteBuffer();
             NativePacketPayload multiPacket = null;
             int multiPacketLength = -1;
             byte multiPacketSeq = getMessageSequence();
@@ -68,7 +83,9 @@ public class MultiPacketReader implements MessageReader<NativePacketHeader, Nati
                 multiPacketLength = hdr.getMessageSize();
 
                 if (multiPacket == null) {
-                    multiPacket = new NativePacketPayload(multiPacketLength);
+                    // sized for the first of the following parts, the underlying reader swaps in a larger pooled buffer if a later part needs one
+                    multiPacket = this.bufferPool == null ? new NativePacketPayload(multiPacketLength)
+                            : new NativePacketPayload(this.bufferPool.acquire(multiPacketLength));
                 }
 
                 multiPacketSeq++;
@@ -83,6 +100,15 @@ public class MultiPacketReader implements MessageReader<NativePacketHeader, Nati
             } while (multiPacketLength == NativeConstants.MAX_PACKET_SIZE);
 
             buf.setPosition(0);
+
+            if (this.bufferPool != null) {
+                // The parts were copied out and the first part's buffer was replaced by a larger one. Probed packets are left alone, as the underlying
+                // reader holds on to them.
+                this.bufferPool.release(multiPacket.getByteBuffer());
+                if (buf.getByteBuffer() != firstPartBuffer) {
+                    this.bufferPool.release(firstPartBuffer);
+                }
+            }
         }
 
         return buf;
@@ -25,6 +25,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 import com.mysql.cj.Constants;
@@ -164,8 +165,7 @@ public class NativeAuthenticationProvider implements AuthenticationProvider<Nati
                         0 : capabilityFlags & NativeServerSession.CLIENT_FOUND_ROWS) //
                 | capabilityFlags & NativeServerSession.CLIENT_LONG_FLAG //
                 | (this.useConnectWithDb ? capabilityFlags & NativeServerSession.CLIENT_CONNECT_WITH_DB : 0) //
-                | (this.propertySet.getBooleanProperty(PropertyKey.useCompression).getValue() ? //
-                        capabilityFlags & NativeServerSession.CLIENT_COMPRESS : 0) //
+                | negotiateCompression(capabilityFlags) //
                 | (this.propertySet.getBooleanProperty(PropertyKey.allowLoadLocalInfile).getValue()
                         || this.propertySet.getStringProperty(PropertyKey.allowLoadLocalInfileInPath).isExplicitlySet() ? //
                                 capabilityFlags & NativeServerSession.CLIENT_LOCAL_FILES : 0) //
@@ -606,6 +606,41 @@ public class NativeAuthenticationProvider implements AuthenticationProvider<Nati
         this.password = null;
     }
 
+    /**
+     * Picks the compression algorithm for the session: the first one listed in 'compressionAlgorithms' that both the server and the driver support.
+     *
+     * @param capabilityFlags
+     *            server capabilities
+     * @return the client capability flag of the algorithm picked, or 0 for no compression
+     */
+    private long negotiateCompression(int capabilityFlags) {
+        if (!this.propertySet.getBooleanProperty(PropertyKey.useCompression).getValue()) {
+            return 0;
+        }
+        for (String algorithm : StringUtils.split(this.propertySet.getStringProperty(PropertyKey.compressionAlgorithms).getValue(), ",", true)) {
+            switch (algorithm.toLowerCase(Locale.ENGLISH)) {
+                case ZstdCompressionCodec.ALGORITHM_NAME:
+                    if ((capabilityFlags & NativeServerSession.CLIENT_ZSTD_COMPRESSION_ALGORITHM) != 0 && ZstdCompressionCodec.isAvailable()) {
+                        return NativeServerSession.CLIENT_ZSTD_COMPRESSION_ALGORITHM;
+                    }
+                    break;
+                case ZlibCompressionCodec.ALGORITHM_NAME:
+                    if ((capabilityFlags & NativeServerSession.CLIENT_COMPRESS) != 0) {
+                        return NativeServerSession.CLIENT_COMPRESS;
+                    }
+                    break;
+                case "uncompressed":
+                    return 0;
+                case "":
+                    break;
+                default:
+                    throw ExceptionFactory.createException(WrongArgumentException.class, Messages.getString("CompressionCodec.3", new Object[] { algorithm }),
+                            getExceptionInterceptor());
+            }
+        }
+        return 0;
+    }
+
     private NativePacketPayload createHandshakeResponsePacket(ServerSession serverSession, String pluginName, NativePacketPayload authData) {
         long clientParam = serverSession.getClientParam();
         int collationIndex = serverSession.getCharsetSettings().configurePreHandshake(false);
@@ -643,6 +678,10 @@ public class NativeAuthenticationProvider implements AuthenticationProvider<Nati
         if ((clientParam & NativeServerSession.CLIENT_CONNECT_ATTRS) != 0) {
             appendConnectionAttributes(last_sent, this.propertySet.getStringProperty(PropertyKey.connectionAttributes).getValue(), enc);
         }
+
+        if ((clientParam & NativeServerSession.CLIENT_ZSTD_COMPRESSION_ALGORITHM) != 0) {
+            last_sent.writeInteger(IntegerDataType.INT1, this.propertySet.getIntegerProperty(PropertyKey.zstdCompressionLevel).getValue());
+        }
         return last_sent;
     }
 
@@ -83,6 +83,7 @@ import com.mysql.cj.ServerPreparedQuery;
 import com.mysql.cj.ServerVersion;
 import com.mysql.cj.Session;
 import com.mysql.cj.TransactionEventHandler;
+import com.mysql.cj.conf.PropertyDefinitions.PacketBufferPoolScope;
 import com.mysql.cj.conf.PropertyKey;
 import com.mysql.cj.conf.PropertySet;
 import com.mysql.cj.conf.RuntimeProperty;
@@ -167,6 +168,9 @@ public class NativeProtocol extends AbstractProtocol<NativePacketPayload> implem
     /** Use this when reading in rows to avoid thousands of new() calls, because the byte arrays just get copied out of the packet anyway */
     protected NativePacketPayload reusablePacket = null;
 
+    /** Source of buffers for packets read from the server, if pooling is enabled */
+    protected PacketBufferPool packetBufferPool = null;
+
     /**
      * Packet used for 'LOAD DATA LOCAL INFILE'
      * We use a SoftReference, so that we don't penalize intermittent use of this feature
@@ -267,9 +271,20 @@ public class NativeProtocol extends AbstractProtocol<NativePacketPayload> implem
 
         this.reusablePacket = new NativePacketPayload(INITIAL_PACKET_SIZE);
 
+        switch (this.propertySet.<PacketBufferPoolScope>getEnumProperty(PropertyKey.packetBufferPool).getValue()) {
+            case CONNECTION:
+                this.packetBufferPool = new PacketBufferPool(this.propertySet.getMemorySizeProperty(PropertyKey.packetBufferPoolMaxRetained).getValue());
+                break;
+            case DRIVER:
+                this.packetBufferPool = PacketBufferPool.getSharedInstance(this.propertySet.getMemorySizeProperty(PropertyKey.packetBufferPoolMaxRetained).getValue());
+                break;
+            default:
+                break;
+        }
+
         try {
             this.packetSender = new SimplePacketSender(this.socketConnection.getMysqlOutput());
-            this.packetReader = new SimplePacketReader(this.socketConnection, this.maxAllowedPacket);
+            this.packetReader = new SimplePacketReader(this.socketConnection, this.maxAllowedPacket, this.packetBufferPool);
         } catch (IOException ioEx) {
             throw ExceptionFactory.createCommunicationsException(this.propertySet, this.serverSession, getPacketSentTimeHolder(), getPacketReceivedTimeHolder(),
                     ioEx, getExceptionInterceptor());
@@ -358,7 +373,7 @@ public class NativeProtocol extends AbstractProtocol<NativePacketPayload> implem
 
             // i/o streams were replaced, build new packet sender/reader
             this.packetSender = new SimplePacketSender(this.socketConnection.getMysqlOutput());
-            this.packetReader = new SimplePacketReader(this.socketConnection, this.maxAllowedPacket);
+            this.packetReader = new SimplePacketReader(this.socketConnection, this.maxAllowedPacket, this.packetBufferPool);
 
         } catch (FeatureNotAvailableException e) {
             throw new CJConnectionFeatureNotAvailableException(getPropertySet(), this.serverSession, getPacketSentTimeHolder(), e);
@@ -411,6 +426,12 @@ public class NativeProtocol extends AbstractProtocol<NativePacketPayload> implem
         this.serverSession.setCapabilities(readServerCapabilities());
     }
 
+    private CompressionCodec createCompressionCodec(long clientParam) {
+        return (clientParam & NativeServerSession.CLIENT_ZSTD_COMPRESSION_ALGORITHM) != 0
+                ? new ZstdCompressionCodec(this.propertySet.getIntegerProperty(PropertyKey.zstdCompressionLevel).getValue())
+                : new ZlibCompressionCodec();
+    }
+
     @Override
     public void afterHandshake() {
         checkTransactionState();
@@ -419,13 +440,14 @@ public class NativeProtocol extends AbstractProtocol<NativePacketPayload> implem
             //
             // Can't enable compression until after handshake
             //
-            if ((this.serverSession.getCapabilities().getCapabilityFlags() & NativeServerSession.CLIENT_COMPRESS) != 0
-                    && this.propertySet.getBooleanProperty(PropertyKey.useCompression).getValue()
+            long clientParam = this.serverSession.getClientParam();
+            if ((clientParam & (NativeServerSession.CLIENT_COMPRESS | NativeServerSession.CLIENT_ZSTD_COMPRESSION_ALGORITHM)) != 0
                     && !(this.socketConnection.getMysqlInput().getUnderlyingStream() instanceof CompressedInputStream)) {
                 this.useCompression = true;
                 this.socketConnection.setMysqlInput(new FullReadInputStream(new CompressedInputStream(this.socketConnection.getMysqlInput(),
-                        this.propertySet.getBooleanProperty(PropertyKey.traceProtocol), this.log)));
-                this.compressedPacketSender = new CompressedPacketSender(this.socketConnection.getMysqlOutput());
+                        createCompressionCodec(clientParam), this.propertySet.getBooleanProperty(PropertyKey.traceProtocol), this.log)));
+                this.compressedPacketSender = new CompressedPacketSender(this.socketConnection.getMysqlOutput(), createCompressionCodec(clientParam),
+                        this.propertySet.getIntegerProperty(PropertyKey.compressionThreshold).getValue());
                 this.packetSender = this.compressedPacketSender;
             }
 
@@ -498,7 +520,7 @@ public class NativeProtocol extends AbstractProtocol<NativePacketPayload> implem
         }
 
         // do it after other decorators to have trace and debug applied to individual packets
-        messageReader = new MultiPacketReader(messageReader);
+        messageReader = new MultiPacketReader(messageReader, this.packetBufferPool);
 
         this.packetReader = messageReader;
         this.packetDebugRingBuffer = debugRingBuffer;
@@ -879,10 +901,13 @@ public class NativeProtocol extends AbstractProtocol<NativePacketPayload> implem
     }
 
     /**
-     * Don't hold on to overly-large packets
+     * Don't hold on to overly-large packets. With buffer pooling the large buffer goes back to the pool, which keeps it if it has room.
      */
     public void reclaimLargeReusablePacket() {
         if (this.reusablePacket != null && this.reusablePacket.getCapacity() > 1048576) {
+            if (this.packetBufferPool != null) {
+                this.packetBufferPool.release(this.reusablePacket.getByteBuffer());
+            }
             this.reusablePacket = new NativePacketPayload(INITIAL_PACKET_SIZE);
         }
     }
@@ -1346,6 +1371,15 @@ public class NativeProtocol extends AbstractProtocol<NativePacketPayload> implem
         return this.reusablePacket;
     }
 
+    /**
+     * Returns the pool packet buffers are read into, as configured by the 'packetBufferPool' connection property.
+     *
+     * @return {@link PacketBufferPool}, or null if packet buffers are not pooled
+     */
+    public PacketBufferPool getPacketBufferPool() {
+        return this.packetBufferPool;
+    }
+
     public int getWarningCount() {
         return this.warningCount;
     }
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License, version 2.0, as published by
+ * the Free Software Foundation.
+ *
+ * This program is designed to work with certain software that is licensed under separate terms, as designated in a particular file or component or in
+ * included license documentation. The authors of MySQL hereby grant you an additional permission to link the program and your derivative works with the
+ * separately licensed software that they have either included with the program or referenced in the documentation.
+ *
+ * Without limiting anything contained in the foregoing, this file, which is part of MySQL Connector/J, is also subject to the Universal FOSS Exception,
+ * version 1.0, a copy of which can be found at http://oss.oracle.com/licenses/universal-foss-exception.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License, version 2.0, for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package com.mysql.cj.protocol.a;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+
+import com.mysql.cj.conf.PropertyKey;
+import com.mysql.cj.conf.PropertySet;
+import com.mysql.cj.exceptions.ExceptionFactory;
+import com.mysql.cj.exceptions.ExceptionInterceptor;
+import com.mysql.cj.exceptions.FeatureNotAvailableException;
+import com.mysql.cj.exceptions.SSLParamsException;
+import com.mysql.cj.log.Log;
+import com.mysql.cj.protocol.FullReadInputStream;
+import com.mysql.cj.protocol.PacketSentTimeHolder;
+import com.mysql.cj.protocol.ServerSession;
+import com.mysql.cj.protocol.SocketChannelSocketFactory;
+import com.mysql.cj.protocol.SocketChannelStreams;
+import com.mysql.cj.protocol.StandardSocketFactory;
+
+/**
+ * Classic protocol connection doing its network I/O through {@link SocketChannelStreams}, see the 'useSocketChannel' connection property.
+ *
+ * Custom socket factories create their own sockets, so with any other factory than {@link StandardSocketFactory} this behaves as a plain
+ * {@link NativeSocketConnection}. The TLS layer needs the blocking socket streams, so a connection switching to TLS goes back to them for good.
+ */
+public class NativeSocketChannelConnection extends NativeSocketConnection {
+
+    private SocketChannelStreams channelStreams;
+
+    @Override
+    public void connect(String hostName, int portNumber, PropertySet propSet, ExceptionInterceptor excInterceptor, Log log, int loginTimeout) {
+        if (!StandardSocketFactory.class.getName().equals(propSet.getStringProperty(PropertyKey.socketFactory).getStringValue())) {
+            super.connect(hostName, portNumber, propSet, excInterceptor, log, loginTimeout);
+            return;
+        }
+
+        try {
+            this.port = portNumber;
+            this.host = hostName;
+            this.propertySet = propSet;
+            this.exceptionInterceptor = excInterceptor;
+
+            this.socketFactory = new SocketChannelSocketFactory();
+            this.mysqlSocket = this.socketFactory.connect(this.host, this.port, propSet, loginTimeout);
+
+            int socketTimeout = propSet.getIntegerProperty(PropertyKey.socketTimeout).getValue();
+            if (socketTimeout != 0) {
+                try {
+                    this.mysqlSocket.setSoTimeout(socketTimeout);
+                } catch (Exception ex) {
+                    /* Ignore if the platform does not support it */
+                }
+            }
+
+            this.socketFactory.beforeHandshake();
+
+            this.channelStreams = new SocketChannelStreams(this.mysqlSocket.getChannel(),
+                    propSet.getMemorySizeProperty(PropertyKey.socketChannelBufferSize).getValue());
+            this.mysqlInput = new FullReadInputStream(this.channelStreams.getInputStream());
+            this.mysqlOutput = new BufferedOutputStream(this.channelStreams.getOutputStream(), 16384);
+        } catch (IOException ioEx) {
+            throw ExceptionFactory.createCommunicationsException(propSet, null, new PacketSentTimeHolder() {
+            }, null, ioEx, getExceptionInterceptor());
+        }
+    }
+
+    @Override
+    public void performTlsHandshake(ServerSession serverSession, Log log) throws SSLParamsException, FeatureNotAvailableException, IOException {
+        if (this.channelStreams != null) {
+            this.channelStreams.configureBlocking();
+            this.channelStreams = null;
+        }
+        super.performTlsHandshake(serverSession, log);
+    }
+
+}
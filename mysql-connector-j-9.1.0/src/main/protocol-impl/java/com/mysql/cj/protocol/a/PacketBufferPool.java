@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License, version 2.0, as published by
+ * the Free Software Foundation.
+ *
+ * This program is designed to work with certain software that is licensed under separate terms, as designated in a particular file or component or in
+ * included license documentation. The authors of MySQL hereby grant you an additional permission to link the program and your derivative works with the
+ * separately licensed software that they have either included with the program or referenced in the documentation.
+ *
+ * Without limiting anything contained in the foregoing, this file, which is part of MySQL Connector/J, is also subject to the Universal FOSS Exception,
+ * version 1.0, a copy of which can be found at http://oss.oracle.com/licenses/universal-foss-exception.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License, version 2.0, for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package com.mysql.cj.protocol.a;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Thread-safe pool of byte arrays backing {@link NativePacketPayload}s read from the server.
+ *
+ * Arrays are handed out in power-of-two size classes from {@value #MIN_POOLED_SIZE} bytes up to {@value #MAX_POOLED_SIZE} bytes, i.e. up to the largest
+ * single packet the protocol allows. Smaller requests are not worth pooling and larger ones (only possible for multi-packets) are allocated and dropped as
+ * before. An array given back is kept for reuse only while the total size of kept arrays stays within the configured limit, so the pool never holds more
+ * than that amount of heap.
+ *
+ * Arrays taken from the pool are not cleared and may be longer than requested, so callers must rely on the payload length rather than on the array length.
+ * An array must not be given back while anything still refers to it.
+ */
+public class PacketBufferPool {
+
+    static final int MIN_POOLED_SIZE = 4 * 1024;
+    static final int MAX_POOLED_SIZE = NativeConstants.MAX_PACKET_SIZE + 1;
+
+    private static final int MIN_SIZE_SHIFT = Integer.numberOfTrailingZeros(MIN_POOLED_SIZE);
+    private static final int SIZE_CLASSES = Integer.numberOfTrailingZeros(MAX_POOLED_SIZE) - MIN_SIZE_SHIFT + 1;
+
+    /** Pools shared by all connections using driver-wide pooling, by retained-bytes limit. */
+    private static final Map<Integer, PacketBufferPool> SHARED_POOLS = new ConcurrentHashMap<>();
+
+    private final long maxRetainedBytes;
+    private final SizeClass[] sizeClasses = new SizeClass[SIZE_CLASSES];
+    private final AtomicLong retainedBytes = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder returns = new LongAdder();
+    private final LongAdder discards = new LongAdder();
+
+    /**
+     * Returns the pool shared by every connection of this driver that uses the same retained-bytes limit.
+     *
+     * @param maxRetainedBytes
+     *            most bytes the pool keeps in arrays waiting for reuse
+     * @return the shared pool
+     */
+    public static PacketBufferPool getSharedInstance(int maxRetainedBytes) {
+        return SHARED_POOLS.computeIfAbsent(maxRetainedBytes, PacketBufferPool::new);
+    }
+
+    /**
+     * Creates a pool.
+     *
+     * @param maxRetainedBytes
+     *            most bytes the pool keeps in arrays waiting for reuse
+     */
+    public PacketBufferPool(long maxRetainedBytes) {
+        this.maxRetainedBytes = maxRetainedBytes;
+        for (int i = 0; i < SIZE_CLASSES; i++) {
+            this.sizeClasses[i] = new SizeClass();
+        }
+    }
+
+    /**
+     * Returns an array of at least the given length, reusing a pooled one when possible.
+     *
+     * @param minLength
+     *            the length needed
+     * @return a pooled or new array, of exactly <code>minLength</code> bytes if it is outside the pooled size range
+     */
+    public byte[] acquire(int minLength) {
+        if (minLength < MIN_POOLED_SIZE || minLength > MAX_POOLED_SIZE) {
+            return new byte[minLength];
+        }
+        int index = sizeClassIndex(minLength);
+        byte[] buffer = this.sizeClasses[index].poll();
+        if (buffer != null) {
+            this.retainedBytes.addAndGet(-buffer.length);
+            this.hits.increment();
+            return buffer;
+        }
+        this.misses.increment();
+        return new byte[MIN_POOLED_SIZE << index];
+    }
+
+    /**
+     * Gives an array back for reuse. Arrays not obtained from {@link #acquire(int)}, or that would take the pool over its retained-bytes limit, are left
+     * for the garbage collector.
+     *
+     * @param buffer
+     *            array nothing refers to any more; may be null
+     */
+    public void release(byte[] buffer) {
+        if (buffer == null) {
+            return;
+        }
+        int length = buffer.length;
+        if (length < MIN_POOLED_SIZE || length > MAX_POOLED_SIZE || Integer.bitCount(length) != 1) {
+            return;
+        }
+        long retained;
+        do {
+            retained = this.retainedBytes.get();
+            if (retained + length > this.maxRetainedBytes) {
+                this.discards.increment();
+                return;
+            }
+        } while (!this.retainedBytes.compareAndSet(retained, retained + length));
+        this.sizeClasses[sizeClassIndex(length)].push(buffer);
+        this.returns.increment();
+    }
+
+    private static int sizeClassIndex(int length) {
+        // smallest power of two not below length, relative to the smallest class
+        return 32 - Integer.numberOfLeadingZeros(length - 1) - MIN_SIZE_SHIFT;
+    }
+
+    /**
+     * @return how many {@link #acquire(int)} calls in the pooled size range were served with a pooled array
+     */
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    /**
+     * @return how many {@link #acquire(int)} calls in the pooled size range had to allocate a new array
+     */
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    /**
+     * @return how many arrays were kept for reuse by {@link #release(byte[])}
+     */
+    public long getReturns() {
+        return this.returns.sum();
+    }
+
+    /**
+     * @return how many arrays {@link #release(byte[])} dropped because the pool was full
+     */
+    public long getDiscards() {
+        return this.discards.sum();
+    }
+
+    /**
+     * @return total size of the arrays waiting for reuse
+     */
+    public long getRetainedBytes() {
+        return this.retainedBytes.get();
+    }
+
+    public long getMaxRetainedBytes() {
+        return this.maxRetainedBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "PacketBufferPool[hits=" + getHits() + ", misses=" + getMisses() + ", returns=" + getReturns() + ", discards=" + getDiscards()
+                + ", retainedBytes=" + getRetainedBytes() + "/" + this.maxRetainedBytes + "]";
+    }
+
+    /**
+     * Arrays of one size, most recently returned first so that the ones handed out are likely still in cache.
+     */
+    private static class SizeClass {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final ArrayDeque<byte[]> buffers = new ArrayDeque<>();
+
+        byte[] poll() {
+            this.lock.lock();
+            try {
+                return this.buffers.pollFirst();
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        void push(byte[] buffer) {
+            this.lock.lock();
+            try {
+                this.buffers.addFirst(buffer);
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+    }
+
+}
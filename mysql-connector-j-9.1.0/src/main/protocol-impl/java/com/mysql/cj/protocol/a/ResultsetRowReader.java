@@ -29,6 +29,7 @@ import com.mysql.cj.conf.RuntimeProperty;
 import com.mysql.cj.protocol.ProtocolEntityFactory;
 import com.mysql.cj.protocol.ProtocolEntityReader;
 import com.mysql.cj.protocol.ResultsetRow;
+import com.mysql.cj.protocol.a.result.ByteArrayRow;
 
 public class ResultsetRowReader implements ProtocolEntityReader<ResultsetRow, NativePacketPayload> {
 
@@ -75,7 +76,15 @@ public class ResultsetRowReader implements ProtocolEntityReader<ResultsetRow, Na
             return null;
         }
 
-        return sf.createFromMessage(rowPacket);
+        ResultsetRow row = sf.createFromMessage(rowPacket);
+
+        // Column values of a byte array row are copies, so nothing refers to the packet any more. Buffer rows keep it, and the reusable packet is
+        // read into again.
+        PacketBufferPool bufferPool = this.protocol.getPacketBufferPool();
+        if (bufferPool != null && row instanceof ByteArrayRow && rowPacket != this.protocol.getReusablePacket()) {
+            bufferPool.release(rowPacket.getByteBuffer());
+        }
+        return row;
     }
 
 }
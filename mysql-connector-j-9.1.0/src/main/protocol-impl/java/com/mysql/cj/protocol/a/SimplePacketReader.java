@@ -37,6 +37,7 @@ public class SimplePacketReader implements MessageReader<NativePacketHeader, Nat
 
     protected SocketConnection socketConnection;
     protected RuntimeProperty<Integer> maxAllowedPacket;
+    protected PacketBufferPool bufferPool;
 
     private byte readPacketSequence = -1;
 
@@ -44,8 +45,23 @@ public class SimplePacketReader implements MessageReader<NativePacketHeader, Nat
     NativePacketPayload lastMessage = null;
 
     public SimplePacketReader(SocketConnection socketConnection, RuntimeProperty<Integer> maxAllowedPacket) {
+        this(socketConnection, maxAllowedPacket, null);
+    }
+
+    /**
+     * Creates a reader taking payload buffers from the given pool.
+     *
+     * @param socketConnection
+     *            {@link SocketConnection}
+     * @param maxAllowedPacket
+     *            the maxAllowedPacket property
+     * @param bufferPool
+     *            {@link PacketBufferPool} to allocate payload buffers from, or null to allocate new arrays
+     */
+    public SimplePacketReader(SocketConnection socketConnection, RuntimeProperty<Integer> maxAllowedPacket, PacketBufferPool bufferPool) {
         this.socketConnection = socketConnection;
         this.maxAllowedPacket = maxAllowedPacket;
+        this.bufferPool = bufferPool;
     }
 
     @Override
@@ -115,13 +131,22 @@ public class SimplePacketReader implements MessageReader<NativePacketHeader, Nat
                 if (message.getByteBuffer().length < packetLength) {
                     // Note: We actually check the length of the buffer, rather than getBufLength(), because getBufLength()
                     // is not necessarily the actual length of the byte array used as the buffer
-                    message.setByteBuffer(new byte[packetLength]);
+                    if (this.bufferPool == null) {
+                        message.setByteBuffer(new byte[packetLength]);
+                    } else {
+                        this.bufferPool.release(message.getByteBuffer());
+                        message.setByteBuffer(this.bufferPool.acquire(packetLength));
+                    }
                 }
 
                 // Set the new length
                 message.setPayloadLength(packetLength);
-            } else {
+            } else if (this.bufferPool == null) {
                 message = new NativePacketPayload(new byte[packetLength]);
+            } else {
+                // pooled buffers may be longer than the packet
+                message = new NativePacketPayload(this.bufferPool.acquire(packetLength));
+                message.setPayloadLength(packetLength);
             }
 
             // Read the data from the server
@@ -22,19 +22,23 @@ package com.mysql.cj.protocol.a;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
 
 import com.mysql.cj.conf.PropertyKey;
 import com.mysql.cj.protocol.ColumnDefinition;
 import com.mysql.cj.protocol.ProtocolEntityFactory;
 import com.mysql.cj.protocol.ProtocolEntityReader;
 import com.mysql.cj.protocol.Resultset;
+import com.mysql.cj.protocol.Resultset.Concurrency;
 import com.mysql.cj.protocol.ResultsetRow;
 import com.mysql.cj.protocol.ResultsetRows;
 import com.mysql.cj.protocol.a.NativeConstants.IntegerDataType;
 import com.mysql.cj.protocol.a.NativeConstants.StringSelfDataType;
+import com.mysql.cj.protocol.a.result.ChunkedRowList;
 import com.mysql.cj.protocol.a.result.OkPacket;
 import com.mysql.cj.protocol.a.result.ResultsetRowsStatic;
 import com.mysql.cj.protocol.a.result.ResultsetRowsStreaming;
+import com.mysql.cj.result.Row;
 
 public class TextResultsetReader implements ProtocolEntityReader<Resultset, NativePacketPayload> {
 
@@ -67,7 +71,14 @@ public class TextResultsetReader implements ProtocolEntityReader<Resultset, Nati
 
             if (!streamResults) {
                 TextRowFactory trf = new TextRowFactory(this.protocol, cdef, resultSetFactory.getResultSetConcurrency(), false);
-                ArrayList<ResultsetRow> rowList = new ArrayList<>();
+                List<Row> rowList;
+                if (this.protocol.getPropertySet().getBooleanProperty(PropertyKey.useChunkedRowStorage).getValue()
+                        && resultSetFactory.getResultSetConcurrency() != Concurrency.UPDATABLE) {
+                    trf.setBufferRowsOnly(true);
+                    rowList = new ChunkedRowList(cdef, false, this.protocol.getExceptionInterceptor(), this.protocol.getPacketBufferPool());
+                } else {
+                    rowList = new ArrayList<>();
+                }
 
                 ResultsetRow row = this.protocol.read(ResultsetRow.class, trf);
                 while (row != null) {
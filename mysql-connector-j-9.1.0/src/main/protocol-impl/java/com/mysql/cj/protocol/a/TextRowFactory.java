@@ -44,9 +44,9 @@ public class TextRowFactory extends AbstractRowFactory implements ProtocolEntity
 
     @Override
     public ResultsetRow createFromMessage(NativePacketPayload rowPacket) {
-        // use a buffer row for reusable packets (streaming results), blobs and long strings
+        // use a buffer row for chunked row storage, reusable packets (streaming results), blobs and long strings
         // or if we're over the threshold
-        boolean useBufferRow = this.canReuseRowPacketForBufferRow || this.columnDefinition.hasLargeFields()
+        boolean useBufferRow = this.bufferRowsOnly || this.canReuseRowPacketForBufferRow || this.columnDefinition.hasLargeFields()
                 || rowPacket.getPayloadLength() >= this.useBufferRowSizeThreshold.getValue();
 
         if (this.resultSetConcurrency == Concurrency.UPDATABLE || !useBufferRow) {
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License, version 2.0, as published by
+ * the Free Software Foundation.
+ *
+ * This program is designed to work with certain software that is licensed under separate terms, as designated in a particular file or component or in
+ * included license documentation. The authors of MySQL hereby grant you an additional permission to link the program and your derivative works with the
+ * separately licensed software that they have either included with the program or referenced in the documentation.
+ *
+ * Without limiting anything contained in the foregoing, this file, which is part of MySQL Connector/J, is also subject to the Universal FOSS Exception,
+ * version 1.0, a copy of which can be found at http://oss.oracle.com/licenses/universal-foss-exception.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License, version 2.0, for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package com.mysql.cj.protocol.a;
+
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import com.mysql.cj.Messages;
+
+/**
+ * The zlib algorithm, supported by every MySQL server that supports the compressed protocol.
+ */
+public class ZlibCompressionCodec implements CompressionCodec {
+
+    public static final String ALGORITHM_NAME = "zlib";
+
+    private Deflater deflater;
+    private Inflater inflater;
+
+    /** Where the payload being compressed goes, between startCompression() and finishCompression(). */
+    private byte[] compressedBuffer;
+    private int compressedStart;
+    private int compressedPosition;
+    private int compressedLimit;
+    /** Whether the compressed payload turned out longer than allowed. */
+    private boolean overflow;
+
+    @Override
+    public String getAlgorithmName() {
+        return ALGORITHM_NAME;
+    }
+
+    @Override
+    public void startCompression(byte[] dst, int dstOffset, int dstLength) {
+        if (this.deflater == null) {
+            this.deflater = new Deflater();
+        }
+        this.deflater.reset();
+        this.compressedBuffer = dst;
+        this.compressedPosition = dstOffset;
+        this.compressedStart = dstOffset;
+        this.compressedLimit = dstOffset + dstLength;
+        this.overflow = false;
+    }
+
+    @Override
+    public void addCompressionInput(byte[] src, int srcOffset, int srcLength) throws IOException {
+        this.deflater.setInput(src, srcOffset, srcLength);
+        deflate(false);
+    }
+
+    @Override
+    public int finishCompression() throws IOException {
+        this.deflater.finish();
+        deflate(true);
+        this.compressedBuffer = null;
+        return this.overflow ? -1 : this.compressedPosition - this.compressedStart;
+    }
+
+    /**
+     * Deflates until the input given so far is consumed or, when finishing, until all the compressed data is out.
+     *
+     * @param finishing
+     *            true once all input was given
+     */
+    private void deflate(boolean finishing) {
+        while (!this.overflow && !this.deflater.finished() && (finishing || !this.deflater.needsInput())) {
+            if (this.compressedPosition == this.compressedLimit) {
+                this.overflow = true;
+                return;
+            }
+            this.compressedPosition += this.deflater.deflate(this.compressedBuffer, this.compressedPosition, this.compressedLimit - this.compressedPosition);
+        }
+    }
+
+    @Override
+    public void decompress(byte[] src, int srcOffset, int srcLength, byte[] dst, int dstOffset, int dstLength) throws IOException {
+        if (this.inflater == null) {
+            this.inflater = new Inflater();
+        }
+        this.inflater.reset();
+        this.inflater.setInput(src, srcOffset, srcLength);
+        try {
+            int n = 0;
+            while (n < dstLength) {
+                int inflated = this.inflater.inflate(dst, dstOffset + n, dstLength - n);
+                if (inflated == 0 && (this.inflater.finished() || this.inflater.needsInput() || this.inflater.needsDictionary())) {
+                    break;
+                }
+                n += inflated;
+            }
+            if (n != dstLength) {
+                throw new IOException(Messages.getString("CompressionCodec.0", new Object[] { ALGORITHM_NAME, n, dstLength }));
+            }
+        } catch (DataFormatException dfe) {
+            throw new IOException("Error while uncompressing packet from server.", dfe);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (this.deflater != null) {
+            this.deflater.end();
+            this.deflater = null;
+        }
+        if (this.inflater != null) {
+            this.inflater.end();
+            this.inflater = null;
+        }
+    }
+
+}
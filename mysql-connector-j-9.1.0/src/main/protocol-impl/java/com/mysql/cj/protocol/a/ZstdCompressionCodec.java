@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License, version 2.0, as published by
+ * the Free Software Foundation.
+ *
+ * This program is designed to work with certain software that is licensed under separate terms, as designated in a particular file or component or in
+ * included license documentation. The authors of MySQL hereby grant you an additional permission to link the program and your derivative works with the
+ * separately licensed software that they have either included with the program or referenced in the documentation.
+ *
+ * Without limiting anything contained in the foregoing, this file, which is part of MySQL Connector/J, is also subject to the Universal FOSS Exception,
+ * version 1.0, a copy of which can be found at http://oss.oracle.com/licenses/universal-foss-exception.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License, version 2.0, for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package com.mysql.cj.protocol.a;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+
+import com.mysql.cj.Messages;
+import com.mysql.cj.exceptions.ExceptionFactory;
+
+/**
+ * The zstd algorithm, supported by MySQL 8.0.18 and later. The driver doesn't implement zstd itself but calls the zstd-jni library
+ * (<code>com.github.luben:zstd-jni</code>), which must be on the class path for the algorithm to be negotiated.
+ */
+public class ZstdCompressionCodec implements CompressionCodec {
+
+    public static final String ALGORITHM_NAME = "zstd";
+
+    private static final String ZSTD_CLASS_NAME = "com.github.luben.zstd.Zstd";
+
+    private static final MethodHandle COMPRESS;
+    private static final MethodHandle DECOMPRESS;
+    private static final MethodHandle IS_ERROR;
+    private static final MethodHandle GET_ERROR_NAME;
+    static {
+        MethodHandle compress = null;
+        MethodHandle decompress = null;
+        MethodHandle isError = null;
+        MethodHandle getErrorName = null;
+        try {
+            Class<?> zstd = Class.forName(ZSTD_CLASS_NAME, true, ZstdCompressionCodec.class.getClassLoader());
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            compress = lookup.findStatic(zstd, "compressByteArray",
+                    MethodType.methodType(long.class, byte[].class, int.class, int.class, byte[].class, int.class, int.class, int.class));
+            decompress = lookup.findStatic(zstd, "decompressByteArray",
+                    MethodType.methodType(long.class, byte[].class, int.class, int.class, byte[].class, int.class, int.class));
+            isError = lookup.findStatic(zstd, "isError", MethodType.methodType(boolean.class, long.class));
+            getErrorName = lookup.findStatic(zstd, "getErrorName", MethodType.methodType(String.class, long.class));
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // not on the class path, or no native library for this platform
+            compress = null;
+        }
+        COMPRESS = compress;
+        DECOMPRESS = decompress;
+        IS_ERROR = isError;
+        GET_ERROR_NAME = getErrorName;
+    }
+
+    private static final int INITIAL_INPUT_SIZE = 16 * 1024;
+    private static final int MAX_RETAINED_INPUT_SIZE = 1024 * 1024;
+
+    private final int level;
+
+    /** Where the payload being compressed goes, between startCompression() and finishCompression(). */
+    private byte[] compressedBuffer;
+    private int compressedOffset;
+    private int compressedLength;
+    /**
+     * The data to compress, gathered in one array as zstd-jni only compresses contiguous data in one go. Kept for the next payload unless a large one made
+     * it grow.
+     */
+    private byte[] input = new byte[0];
+    private int inputLength;
+
+    /**
+     * Tells whether zstd-jni is available.
+     *
+     * @return true if instances of this codec can be created
+     */
+    public static boolean isAvailable() {
+        return COMPRESS != null;
+    }
+
+    /**
+     * Creates a codec.
+     *
+     * @param level
+     *            compression level, from 1 (fastest) to 22 (smallest)
+     */
+    public ZstdCompressionCodec(int level) {
+        if (!isAvailable()) {
+            throw ExceptionFactory.createException(Messages.getString("CompressionCodec.1", new Object[] { ALGORITHM_NAME, ZSTD_CLASS_NAME }));
+        }
+        this.level = level;
+    }
+
+    @Override
+    public String getAlgorithmName() {
+        return ALGORITHM_NAME;
+    }
+
+    @Override
+    public void startCompression(byte[] dst, int dstOffset, int dstLength) {
+        this.compressedBuffer = dst;
+        this.compressedOffset = dstOffset;
+        this.compressedLength = dstLength;
+        this.inputLength = 0;
+    }
+
+    @Override
+    public void addCompressionInput(byte[] src, int srcOffset, int srcLength) throws IOException {
+        if (this.inputLength + srcLength > this.input.length) {
+            this.input = Arrays.copyOf(this.input, Math.max(this.inputLength + srcLength, Math.max(2 * this.input.length, INITIAL_INPUT_SIZE)));
+        }
+        System.arraycopy(src, srcOffset, this.input, this.inputLength, srcLength);
+        this.inputLength += srcLength;
+    }
+
+    @Override
+    public int finishCompression() throws IOException {
+        long result;
+        try {
+            result = (long) COMPRESS.invokeExact(this.compressedBuffer, this.compressedOffset, this.compressedLength, this.input, 0, this.inputLength,
+                    this.level);
+        } catch (Throwable t) {
+            throw new IOException(t);
+        } finally {
+            this.compressedBuffer = null;
+            if (this.input.length > MAX_RETAINED_INPUT_SIZE) {
+                this.input = new byte[0];
+            }
+        }
+        // most likely the destination being too small, i.e. the data is incompressible
+        return isError(result) ? -1 : (int) result;
+    }
+
+    @Override
+    public void decompress(byte[] src, int srcOffset, int srcLength, byte[] dst, int dstOffset, int dstLength) throws IOException {
+        long result;
+        try {
+            result = (long) DECOMPRESS.invokeExact(dst, dstOffset, dstLength, src, srcOffset, srcLength);
+        } catch (Throwable t) {
+            throw new IOException(t);
+        }
+        if (isError(result)) {
+            throw new IOException(Messages.getString("CompressionCodec.2", new Object[] { ALGORITHM_NAME, errorName(result) }));
+        }
+        if (result != dstLength) {
+            throw new IOException(Messages.getString("CompressionCodec.0", new Object[] { ALGORITHM_NAME, result, dstLength }));
+        }
+    }
+
+    private static boolean isError(long result) throws IOException {
+        try {
+            return (boolean) IS_ERROR.invokeExact(result);
+        } catch (Throwable t) {
+            throw new IOException(t);
+        }
+    }
+
+    private static String errorName(long result) throws IOException {
+        try {
+            return (String) GET_ERROR_NAME.invokeExact(result);
+        } catch (Throwable t) {
+            throw new IOException(t);
+        }
+    }
+
+    @Override
+    public void close() {
+        // zstd-jni allocates and frees its contexts per call
+    }
+
+}
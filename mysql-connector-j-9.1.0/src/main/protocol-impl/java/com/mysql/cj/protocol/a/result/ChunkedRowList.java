@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License, version 2.0, as published by
+ * the Free Software Foundation.
+ *
+ * This program is designed to work with certain software that is licensed under separate terms, as designated in a particular file or component or in
+ * included license documentation. The authors of MySQL hereby grant you an additional permission to link the program and your derivative works with the
+ * separately licensed software that they have either included with the program or referenced in the documentation.
+ *
+ * Without limiting anything contained in the foregoing, this file, which is part of MySQL Connector/J, is also subject to the Universal FOSS Exception,
+ * version 1.0, a copy of which can be found at http://oss.oracle.com/licenses/universal-foss-exception.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License, version 2.0, for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package com.mysql.cj.protocol.a.result;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+import com.mysql.cj.exceptions.ExceptionInterceptor;
+import com.mysql.cj.protocol.ColumnDefinition;
+import com.mysql.cj.protocol.ValueDecoder;
+import com.mysql.cj.protocol.a.MysqlBinaryValueDecoder;
+import com.mysql.cj.protocol.a.MysqlTextValueDecoder;
+import com.mysql.cj.protocol.a.NativePacketPayload;
+import com.mysql.cj.protocol.a.PacketBufferPool;
+import com.mysql.cj.result.Row;
+
+/**
+ * Read-only list of the rows of a static result set, kept as their raw row packets in a few large arrays instead of one object graph per row.
+ *
+ * Each row added must be a buffer row; its packet is copied to the end of the current chunk and only the offset of the row within its chunk is recorded.
+ * Chunks start small and double in size up to {@value #MAX_CHUNK_SIZE} bytes, so that small results don't pay for a large chunk. A row packet of that size
+ * or more is kept as a chunk of its own rather than copied. {@link #get(int)} hands out a new {@link TextBufferRow} or {@link BinaryBufferRow} over the
+ * row's bytes, which the caller may use for as long as it likes, since nothing is ever written to the chunks again.
+ *
+ * Compared to a list of {@link ByteArrayRow}s this keeps a couple of objects per chunk plus four bytes per row, rather than a row object, an array of columns
+ * and an array per column value.
+ */
+public class ChunkedRowList extends AbstractList<Row> implements RandomAccess {
+
+    static final int MIN_CHUNK_SIZE = 8 * 1024;
+    static final int MAX_CHUNK_SIZE = 1024 * 1024;
+
+    private final ColumnDefinition columnDefinition;
+    private final boolean binaryEncoded;
+    private final ExceptionInterceptor exceptionInterceptor;
+    private final ValueDecoder valueDecoder;
+    private final PacketBufferPool bufferPool;
+
+    private byte[][] chunks = new byte[4][];
+    /** Index of the first row of each chunk. */
+    private int[] chunkFirstRows = new int[4];
+    /** Bytes used in each chunk. */
+    private int[] chunkLimits = new int[4];
+    private int chunkCount = 0;
+
+    /** Offset of each row within its chunk. */
+    private int[] rowOffsets = new int[16];
+    private int size = 0;
+
+    /**
+     * Creates an empty list.
+     *
+     * @param columnDefinition
+     *            {@link ColumnDefinition} of the result set
+     * @param binaryEncoded
+     *            true for rows of a server-side prepared statement, false for text protocol rows
+     * @param exceptionInterceptor
+     *            {@link ExceptionInterceptor} for the rows handed out
+     * @param bufferPool
+     *            pool to give row packets back to once copied, may be null
+     */
+    public ChunkedRowList(ColumnDefinition columnDefinition, boolean binaryEncoded, ExceptionInterceptor exceptionInterceptor, PacketBufferPool bufferPool) {
+        this.columnDefinition = columnDefinition;
+        this.binaryEncoded = binaryEncoded;
+        this.exceptionInterceptor = exceptionInterceptor;
+        this.valueDecoder = binaryEncoded ? new MysqlBinaryValueDecoder() : new MysqlTextValueDecoder();
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * Copies the packet of the given row to the list. The row and its packet are not referred to afterwards.
+     *
+     * @param row
+     *            a {@link TextBufferRow} or a {@link BinaryBufferRow}, whichever matches this list, over a packet of its own
+     * @return true
+     */
+    @Override
+    public boolean add(Row row) {
+        NativePacketPayload rowPacket = ((AbstractBufferRow) row).rowFromServer;
+        byte[] packetBytes = rowPacket.getByteBuffer();
+        int length = rowPacket.getPayloadLength();
+
+        if (this.size == this.rowOffsets.length) {
+            this.rowOffsets = Arrays.copyOf(this.rowOffsets, this.size + (this.size >> 1));
+        }
+
+        if (length >= MAX_CHUNK_SIZE) {
+            // as large as a chunk anyway, so the packet becomes one instead of being copied
+            addChunk(packetBytes);
+            this.chunkLimits[this.chunkCount - 1] = length;
+            this.rowOffsets[this.size++] = 0;
+            return true;
+        }
+
+        byte[] chunk = this.chunkCount == 0 ? null : this.chunks[this.chunkCount - 1];
+        if (chunk == null || chunk.length - this.chunkLimits[this.chunkCount - 1] < length) {
+            int chunkSize = this.chunkCount == 0 ? MIN_CHUNK_SIZE : Math.min(chunk.length * 2, MAX_CHUNK_SIZE);
+            chunk = addChunk(new byte[Math.max(length, chunkSize)]);
+        }
+        int offset = this.chunkLimits[this.chunkCount - 1];
+        System.arraycopy(packetBytes, 0, chunk, offset, length);
+        this.chunkLimits[this.chunkCount - 1] = offset + length;
+        this.rowOffsets[this.size++] = offset;
+
+        if (this.bufferPool != null) {
+            this.bufferPool.release(packetBytes);
+        }
+        return true;
+    }
+
+    private byte[] addChunk(byte[] chunk) {
+        if (this.chunkCount == this.chunks.length) {
+            this.chunks = Arrays.copyOf(this.chunks, this.chunkCount * 2);
+            this.chunkFirstRows = Arrays.copyOf(this.chunkFirstRows, this.chunkCount * 2);
+            this.chunkLimits = Arrays.copyOf(this.chunkLimits, this.chunkCount * 2);
+        }
+        this.chunks[this.chunkCount] = chunk;
+        this.chunkFirstRows[this.chunkCount] = this.size;
+        this.chunkLimits[this.chunkCount] = 0;
+        this.chunkCount++;
+        return chunk;
+    }
+
+    @Override
+    public Row get(int index) {
+        if (index < 0 || index >= this.size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+        }
+
+        int chunkIndex = Arrays.binarySearch(this.chunkFirstRows, 0, this.chunkCount, index);
+        if (chunkIndex < 0) {
+            chunkIndex = -chunkIndex - 2;
+        }
+        int start = this.rowOffsets[index];
+        int end = index + 1 < this.size && (chunkIndex + 1 == this.chunkCount || this.chunkFirstRows[chunkIndex + 1] > index + 1) ? this.rowOffsets[index + 1]
+                : this.chunkLimits[chunkIndex];
+
+        NativePacketPayload rowPacket = new NativePacketPayload(this.chunks[chunkIndex]);
+        rowPacket.setPayloadLength(end);
+        if (this.binaryEncoded) {
+            // bump past ProtocolBinary::ResultsetRow packet header
+            rowPacket.setPosition(start + 1);
+            return new BinaryBufferRow(rowPacket, this.columnDefinition, this.exceptionInterceptor, this.valueDecoder);
+        }
+        rowPacket.setPosition(start);
+        return new TextBufferRow(rowPacket, this.columnDefinition, this.exceptionInterceptor, this.valueDecoder);
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+}
@@ -71,7 +71,9 @@ public class TextBufferRow extends AbstractBufferRow {
             if (this.lastRequestedIndex >= 0) {
                 startingIndex = this.lastRequestedIndex;
             } else {
+                // First-time "scan"
                 startingIndex = 0;
+                this.lastRequestedPos = this.homePosition;
             }
 
             this.rowFromServer.setPosition(this.lastRequestedPos);
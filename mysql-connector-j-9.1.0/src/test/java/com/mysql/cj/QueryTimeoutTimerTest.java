@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License, version 2.0, as published by
+ * the Free Software Foundation.
+ *
+ * This program is designed to work with certain software that is licensed under separate terms, as designated in a particular file or component or in
+ * included license documentation. The authors of MySQL hereby grant you an additional permission to link the program and your derivative works with the
+ * separately licensed software that they have either included with the program or referenced in the documentation.
+ *
+ * Without limiting anything contained in the foregoing, this file, which is part of MySQL Connector/J, is also subject to the Universal FOSS Exception,
+ * version 1.0, a copy of which can be found at http://oss.oracle.com/licenses/universal-foss-exception.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License, version 2.0, for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package com.mysql.cj;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@link QueryTimeoutTimer}.
+ */
+public class QueryTimeoutTimerTest {
+
+    private static class LatchTask extends QueryTimeoutTimer.TimeoutTask {
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        volatile long ranAtNanos;
+
+        @Override
+        public void run() {
+            this.ranAtNanos = System.nanoTime();
+            this.latch.countDown();
+        }
+
+    }
+
+    // tasks never run before their delay, including delays longer than a turn of the wheel
+    @Test
+    public void runsAfterDelay() throws Exception {
+        QueryTimeoutTimer timer = new QueryTimeoutTimer("test-timer-delay", 5, 8);
+        long[] delays = { 0, 3, 20, 55, 120 };
+        LatchTask[] tasks = new LatchTask[delays.length];
+        long start = System.nanoTime();
+        for (int i = 0; i < delays.length; i++) {
+            tasks[i] = new LatchTask();
+            timer.schedule(tasks[i], delays[i]);
+        }
+        for (int i = 0; i < delays.length; i++) {
+            assertTrue(tasks[i].latch.await(5, TimeUnit.SECONDS));
+            assertTrue(tasks[i].ranAtNanos - start >= TimeUnit.MILLISECONDS.toNanos(delays[i]));
+        }
+        assertEquals(0, timer.getPendingTasks());
+    }
+
+    // a cancelled task doesn't run, and can't be scheduled again
+    @Test
+    public void cancel() throws Exception {
+        QueryTimeoutTimer timer = new QueryTimeoutTimer("test-timer-cancel", 5, 8);
+        LatchTask cancelled = new LatchTask();
+        LatchTask kept = new LatchTask();
+        timer.schedule(cancelled, 30);
+        timer.schedule(kept, 60);
+        assertEquals(2, timer.getPendingTasks());
+        assertTrue(cancelled.cancel());
+        assertFalse(cancelled.cancel());
+        assertEquals(1, timer.getPendingTasks());
+
+        assertTrue(kept.latch.await(5, TimeUnit.SECONDS));
+        assertEquals(1, cancelled.latch.getCount());
+        assertFalse(kept.cancel());
+        assertThrows(IllegalStateException.class, () -> timer.schedule(cancelled, 10));
+    }
+
+    // a cancelled task is unlinked from the wheel on the next tick, not when its bucket comes round
+    @Test
+    public void cancelledTasksUnlinked() throws Exception {
+        // long ticks, so that the three deadlines, taken microseconds apart, round to the same bucket
+        QueryTimeoutTimer timer = new QueryTimeoutTimer("test-timer-unlink", 500, 8);
+        LatchTask[] tasks = new LatchTask[3];
+        for (int i = 0; i < tasks.length; i++) {
+            tasks[i] = new LatchTask();
+            timer.schedule(tasks[i], 60000);
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (tasks[2].bucket < 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(tasks[0].bucket, tasks[2].bucket);
+
+        assertTrue(tasks[1].cancel());
+        deadline = System.currentTimeMillis() + 5000;
+        while (tasks[1].bucket >= 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(-1, tasks[1].bucket);
+        assertTrue(tasks[0].bucket >= 0);
+        assertTrue(tasks[2].bucket >= 0);
+        assertTrue(tasks[0].cancel());
+        assertTrue(tasks[2].cancel());
+    }
+
+    // the timer thread goes away when idle and comes back for new tasks
+    @Test
+    public void workerStopsWhenIdle() throws Exception {
+        QueryTimeoutTimer timer = new QueryTimeoutTimer("test-timer-idle", 1, 8);
+        LatchTask first = new LatchTask();
+        timer.schedule(first, 1);
+        assertTrue(first.latch.await(5, TimeUnit.SECONDS));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (countThreads("test-timer-idle") > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, countThreads("test-timer-idle"));
+
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(100);
+        for (int i = 0; i < 100; i++) {
+            timer.schedule(new QueryTimeoutTimer.TimeoutTask() {
+
+                @Override
+                public void run() {
+                    runs.incrementAndGet();
+                    done.countDown();
+                }
+
+            }, i % 20);
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(100, runs.get());
+    }
+
+    private static int countThreads(String name) {
+        int count = 0;
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            if (t.getName().equals(name) && t.isAlive()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+}
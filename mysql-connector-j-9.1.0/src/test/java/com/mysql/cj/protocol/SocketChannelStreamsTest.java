@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License, version 2.0, as published by
+ * the Free Software Foundation.
+ *
+ * This program is designed to work with certain software that is licensed under separate terms, as designated in a particular file or component or in
+ * included license documentation. The authors of MySQL hereby grant you an additional permission to link the program and your derivative works with the
+ * separately licensed software that they have either included with the program or referenced in the documentation.
+ *
+ * Without limiting anything contained in the foregoing, this file, which is part of MySQL Connector/J, is also subject to the Universal FOSS Exception,
+ * version 1.0, a copy of which can be found at http://oss.oracle.com/licenses/universal-foss-exception.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License, version 2.0, for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package com.mysql.cj.protocol;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.channels.SocketChannel;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@link SocketChannelStreams}.
+ */
+public class SocketChannelStreamsTest {
+
+    // data larger than both buffers and the socket buffers goes through intact in both directions
+    @Test
+    public void roundTrip() throws Exception {
+        byte[] data = new byte[1024 * 1024 + 17];
+        new Random(1).nextBytes(data);
+
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+                SocketChannel channel = SocketChannel.open(server.getLocalSocketAddress())) {
+            Thread echo = new Thread(() -> {
+                try (Socket peer = server.accept()) {
+                    InputStream in = peer.getInputStream();
+                    OutputStream out = peer.getOutputStream();
+                    byte[] chunk = new byte[5000];
+                    for (int n; (n = in.read(chunk)) > 0;) {
+                        out.write(chunk, 0, n);
+                    }
+                } catch (IOException e) {
+                    // the test fails on the missing data
+                }
+            });
+            echo.start();
+
+            SocketChannelStreams streams = new SocketChannelStreams(channel, 4096);
+            Thread writer = new Thread(() -> {
+                try {
+                    OutputStream out = streams.getOutputStream();
+                    out.write(data[0]);
+                    out.write(data, 1, data.length - 1);
+                    out.flush();
+                    channel.shutdownOutput();
+                } catch (IOException e) {
+                    // the test fails on the missing data
+                }
+            });
+            writer.start();
+
+            channel.socket().setSoTimeout(10000);
+            FullReadInputStream in = new FullReadInputStream(streams.getInputStream());
+            byte[] received = new byte[data.length];
+            received[0] = (byte) in.read();
+            in.readFully(received, 1, received.length - 1);
+            assertArrayEquals(data, received);
+            assertEquals(-1, in.read());
+
+            writer.join();
+            echo.join();
+            streams.close();
+        }
+    }
+
+    // a read waits no longer than the socket's SO_TIMEOUT, and buffered bytes are reported as available
+    @Test
+    public void readTimeout() throws Exception {
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+                SocketChannel channel = SocketChannel.open(new InetSocketAddress(server.getInetAddress(), server.getLocalPort()));
+                Socket peer = server.accept()) {
+            SocketChannelStreams streams = new SocketChannelStreams(channel, 4096);
+            InputStream in = streams.getInputStream();
+            assertEquals(0, in.available());
+
+            channel.socket().setSoTimeout(100);
+            long start = System.currentTimeMillis();
+            assertThrows(SocketTimeoutException.class, () -> in.read());
+            assertTrue(System.currentTimeMillis() - start >= 100);
+
+            peer.getOutputStream().write(new byte[] { 1, 2, 3 });
+            assertEquals(1, in.read());
+            assertEquals(2, in.available());
+            assertEquals(1, in.skip(1));
+            assertEquals(3, in.read());
+
+            streams.configureBlocking();
+            peer.getOutputStream().write(4);
+            assertEquals(4, channel.socket().getInputStream().read());
+        }
+    }
+
+}
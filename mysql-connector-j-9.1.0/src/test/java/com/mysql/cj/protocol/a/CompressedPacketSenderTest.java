@@ -25,6 +25,7 @@ import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.zip.InflaterOutputStream;
@@ -32,6 +33,9 @@ import java.util.zip.InflaterOutputStream;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 
+import com.mysql.cj.conf.PropertyKey;
+import com.mysql.cj.jdbc.JdbcPropertySetImpl;
+import com.mysql.cj.log.NullLogger;
 import com.mysql.cj.protocol.MessageSender;
 
 public class CompressedPacketSenderTest extends PacketSenderTestBase {
@@ -288,4 +292,49 @@ public class CompressedPacketSenderTest extends PacketSenderTestBase {
         checkSequentiallyFilledPacket(sentPacket, CompressedPacketSender.COMP_HEADER_LENGTH + NativeConstants.HEADER_LENGTH, packetLen);
     }
 
+    @Test
+    public void compressionThresholdIsConfigurable() throws IOException {
+        MessageSender<NativePacketPayload> thresholdSender = new CompressedPacketSender(new BufferedOutputStream(this.outputStream),
+                new ZlibCompressionCodec(), 2000);
+
+        byte[] packet = new byte[1000];
+        thresholdSender.send(packet, packet.length, (byte) 0);
+        byte[] sentPacket = this.outputStream.toByteArray();
+        // below the threshold, even a packet of zeros goes out uncompressed
+        assertEquals(packet.length + NativeConstants.HEADER_LENGTH + CompressedPacketSender.COMP_HEADER_LENGTH, sentPacket.length);
+        assertEquals(0, NativeUtils.decodeMysqlThreeByteInteger(sentPacket, 4));
+
+        this.outputStream.reset();
+        packet = new byte[3000];
+        thresholdSender.send(packet, packet.length, (byte) 0);
+        sentPacket = this.outputStream.toByteArray();
+        assertTrue(sentPacket.length < packet.length);
+        assertEquals(packet.length + NativeConstants.HEADER_LENGTH, NativeUtils.decodeMysqlThreeByteInteger(sentPacket, 4));
+    }
+
+    @Test
+    public void compressedPacketsReadBack() throws IOException {
+        final int packetLen = 3000;
+        byte[] packet = new byte[packetLen];
+        fillPacketSequentially(packet);
+        this.sender.send(packet, packetLen, (byte) 5);
+        byte[] small = new byte[10];
+        fillPacketSequentially(small);
+        this.sender.send(small, small.length, (byte) 6);
+
+        CompressedInputStream in = new CompressedInputStream(new ByteArrayInputStream(this.outputStream.toByteArray()), new ZlibCompressionCodec(),
+                new JdbcPropertySetImpl().getBooleanProperty(PropertyKey.traceProtocol), new NullLogger(null));
+        byte[] read = new byte[packetLen + NativeConstants.HEADER_LENGTH];
+        assertEquals(read.length, in.read(read, 0, read.length));
+        assertEquals(packetLen, NativeUtils.decodeMysqlThreeByteInteger(read));
+        assertEquals(5, read[3]);
+        checkSequentiallyFilledPacket(read, NativeConstants.HEADER_LENGTH, packetLen);
+
+        read = new byte[small.length + NativeConstants.HEADER_LENGTH];
+        assertEquals(read.length, in.read(read, 0, read.length));
+        assertEquals(6, read[3]);
+        checkSequentiallyFilledPacket(read, NativeConstants.HEADER_LENGTH, small.length);
+        in.close();
+    }
+
 }
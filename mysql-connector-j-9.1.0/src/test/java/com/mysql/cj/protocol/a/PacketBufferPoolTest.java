@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License, version 2.0, as published by
+ * the Free Software Foundation.
+ *
+ * This program is designed to work with certain software that is licensed under separate terms, as designated in a particular file or component or in
+ * included license documentation. The authors of MySQL hereby grant you an additional permission to link the program and your derivative works with the
+ * separately licensed software that they have either included with the program or referenced in the documentation.
+ *
+ * Without limiting anything contained in the foregoing, this file, which is part of MySQL Connector/J, is also subject to the Universal FOSS Exception,
+ * version 1.0, a copy of which can be found at http://oss.oracle.com/licenses/universal-foss-exception.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License, version 2.0, for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package com.mysql.cj.protocol.a;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.IOException;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+
+import com.mysql.cj.conf.PropertyKey;
+import com.mysql.cj.conf.RuntimeProperty;
+import com.mysql.cj.jdbc.JdbcPropertySetImpl;
+import com.mysql.cj.protocol.MessageReader;
+import com.mysql.cj.protocol.a.SimplePacketReaderTest.FixedBufferSocketConnection;
+
+/**
+ * Tests for {@link PacketBufferPool}.
+ */
+public class PacketBufferPoolTest {
+
+    // sizes in the pooled range are rounded up to the next power of two, others are allocated exactly
+    @Test
+    public void sizeClasses() {
+        PacketBufferPool pool = new PacketBufferPool(1024 * 1024);
+        assertEquals(100, pool.acquire(100).length);
+        assertEquals(4096, pool.acquire(4096).length);
+        assertEquals(8192, pool.acquire(4097).length);
+        assertEquals(16 * 1024 * 1024, pool.acquire(NativeConstants.MAX_PACKET_SIZE).length);
+        assertEquals(20 * 1024 * 1024, pool.acquire(20 * 1024 * 1024).length);
+        assertEquals(3, pool.getMisses());
+        assertEquals(0, pool.getHits());
+    }
+
+    // a released buffer is handed out again for any size in its class
+    @Test
+    public void reuse() {
+        PacketBufferPool pool = new PacketBufferPool(1024 * 1024);
+        byte[] buffer = pool.acquire(5000);
+        pool.release(buffer);
+        assertEquals(8192, pool.getRetainedBytes());
+        assertEquals(1, pool.getReturns());
+
+        assertSame(buffer, pool.acquire(7000));
+        assertEquals(1, pool.getHits());
+        assertEquals(0, pool.getRetainedBytes());
+        assertNotSame(buffer, pool.acquire(7000));
+        assertEquals(2, pool.getMisses());
+    }
+
+    // buffers beyond the retained bytes limit, and arrays that are not pool sized, are dropped
+    @Test
+    public void retainedBytesLimit() {
+        PacketBufferPool pool = new PacketBufferPool(12 * 1024);
+        byte[] large = pool.acquire(8192);
+        byte[] small1 = pool.acquire(4096);
+        byte[] small2 = pool.acquire(4096);
+        pool.release(large);
+        pool.release(small1);
+        pool.release(small2);
+        assertEquals(12 * 1024, pool.getRetainedBytes());
+        assertEquals(2, pool.getReturns());
+        assertEquals(1, pool.getDiscards());
+
+        pool.release(new byte[5000]);
+        pool.release(new byte[100]);
+        pool.release(null);
+        assertEquals(2, pool.getReturns());
+        assertEquals(12 * 1024, pool.getRetainedBytes());
+    }
+
+    // the reader takes payload buffers from the pool and gives back the ones a reusable payload outgrows
+    @Test
+    public void pooledPacketReader() throws IOException {
+        RuntimeProperty<Integer> maxAllowedPacket = new JdbcPropertySetImpl().getProperty(PropertyKey.maxAllowedPacket);
+        byte[] packets = new byte[5000 + 9000];
+        packets[0] = 1;
+        packets[4999] = 2;
+        packets[5000] = 3;
+        PacketBufferPool pool = new PacketBufferPool(1024 * 1024);
+        MessageReader<NativePacketHeader, NativePacketPayload> reader = new SimplePacketReader(new FixedBufferSocketConnection(packets), maxAllowedPacket,
+                pool);
+
+        NativePacketPayload payload = reader.readMessage(Optional.empty(), new NativePacketHeader(new byte[] { (byte) 0x88, 0x13, 0, 0 }));
+        assertEquals(5000, payload.getPayloadLength());
+        assertEquals(8192, payload.getByteBuffer().length);
+        assertEquals(1, payload.getByteBuffer()[0]);
+        assertEquals(2, payload.getByteBuffer()[4999]);
+
+        byte[] first = payload.getByteBuffer();
+        reader.readMessage(Optional.of(payload), new NativePacketHeader(new byte[] { 0x28, 0x23, 0, 0 }));
+        assertEquals(9000, payload.getPayloadLength());
+        assertEquals(16384, payload.getByteBuffer().length);
+        assertEquals(3, payload.getByteBuffer()[0]);
+        assertEquals(8192, pool.getRetainedBytes());
+        assertSame(first, pool.acquire(8192));
+    }
+
+    // the buffer for the parts after the first of a multi-packet is taken for their actual size, not for a full packet
+    @Test
+    public void pooledMultiPacketReader() throws IOException {
+        RuntimeProperty<Integer> maxAllowedPacket = new JdbcPropertySetImpl().getProperty(PropertyKey.maxAllowedPacket);
+        maxAllowedPacket.setValue(32 * 1024 * 1024);
+        int lastPartLength = 5000;
+        byte[] packets = new byte[NativeConstants.HEADER_LENGTH + NativeConstants.MAX_PACKET_SIZE + NativeConstants.HEADER_LENGTH + lastPartLength];
+        int offset = 0;
+        packets[offset++] = (byte) 0xff;
+        packets[offset++] = (byte) 0xff;
+        packets[offset++] = (byte) 0xff;
+        packets[offset++] = 0;
+        packets[offset] = 1;
+        offset += NativeConstants.MAX_PACKET_SIZE;
+        packets[offset++] = (byte) 0x88;
+        packets[offset++] = 0x13;
+        packets[offset++] = 0;
+        packets[offset++] = 1;
+        packets[offset + lastPartLength - 1] = 2;
+
+        PacketBufferPool pool = new PacketBufferPool(64 * 1024 * 1024);
+        MessageReader<NativePacketHeader, NativePacketPayload> reader = new MultiPacketReader(
+                new SimplePacketReader(new FixedBufferSocketConnection(packets), maxAllowedPacket, pool), pool);
+
+        NativePacketPayload payload = reader.readMessage(Optional.empty(), reader.readHeader());
+        assertEquals(NativeConstants.MAX_PACKET_SIZE + lastPartLength, payload.getPayloadLength());
+        assertEquals(1, payload.getByteBuffer()[0]);
+        assertEquals(2, payload.getByteBuffer()[NativeConstants.MAX_PACKET_SIZE + lastPartLength - 1]);
+        // the outgrown first part buffer and an 8K buffer for the last part, no 16M buffer for the last part
+        assertEquals(16 * 1024 * 1024 + 8192, pool.getRetainedBytes());
+    }
+
+}
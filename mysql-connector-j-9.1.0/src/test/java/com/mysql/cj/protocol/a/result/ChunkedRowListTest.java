@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License, version 2.0, as published by
+ * the Free Software Foundation.
+ *
+ * This program is designed to work with certain software that is licensed under separate terms, as designated in a particular file or component or in
+ * included license documentation. The authors of MySQL hereby grant you an additional permission to link the program and your derivative works with the
+ * separately licensed software that they have either included with the program or referenced in the documentation.
+ *
+ * Without limiting anything contained in the foregoing, this file, which is part of MySQL Connector/J, is also subject to the Universal FOSS Exception,
+ * version 1.0, a copy of which can be found at http://oss.oracle.com/licenses/universal-foss-exception.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License, version 2.0, for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package com.mysql.cj.protocol.a.result;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import com.mysql.cj.MysqlType;
+import com.mysql.cj.protocol.ColumnDefinition;
+import com.mysql.cj.protocol.a.MysqlBinaryValueDecoder;
+import com.mysql.cj.protocol.a.MysqlTextValueDecoder;
+import com.mysql.cj.protocol.a.NativeConstants.IntegerDataType;
+import com.mysql.cj.protocol.a.NativeConstants.StringSelfDataType;
+import com.mysql.cj.protocol.a.NativePacketPayload;
+import com.mysql.cj.protocol.a.PacketBufferPool;
+import com.mysql.cj.result.DefaultColumnDefinition;
+import com.mysql.cj.result.Field;
+import com.mysql.cj.result.Row;
+
+/**
+ * Tests for {@link ChunkedRowList}.
+ */
+public class ChunkedRowListTest {
+
+    private static final ColumnDefinition COLUMNS = new DefaultColumnDefinition(new Field[] { varcharField("a"), varcharField("b") });
+
+    private static Field varcharField(String name) {
+        Field field = new Field("t", name, 33, "UTF-8", MysqlType.VARCHAR, 10);
+        field.setMysqlTypeId(MysqlType.FIELD_TYPE_VAR_STRING);
+        return field;
+    }
+
+    private static byte[] value(int row, int column) {
+        return row % 7 == column ? null : ("value " + row + "/" + column).getBytes();
+    }
+
+    private static NativePacketPayload textRowPacket(byte[]... values) {
+        NativePacketPayload packet = new NativePacketPayload(16);
+        for (byte[] value : values) {
+            if (value == null) {
+                packet.writeInteger(IntegerDataType.INT1, 0xfb);
+            } else {
+                packet.writeBytes(StringSelfDataType.STRING_LENENC, value);
+            }
+        }
+        packet = new NativePacketPayload(Arrays.copyOf(packet.getByteBuffer(), packet.getPosition()));
+        packet.setPosition(0);
+        return packet;
+    }
+
+    private static NativePacketPayload binaryRowPacket(byte[]... values) {
+        NativePacketPayload packet = new NativePacketPayload(16);
+        packet.writeInteger(IntegerDataType.INT1, 0);
+        byte[] nullBitmap = new byte[(values.length + 9) / 8];
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == null) {
+                nullBitmap[(i + 2) / 8] |= 1 << (i + 2) % 8;
+            }
+        }
+        packet.writeBytes(StringSelfDataType.STRING_EOF, nullBitmap);
+        for (byte[] value : values) {
+            if (value != null) {
+                packet.writeBytes(StringSelfDataType.STRING_LENENC, value);
+            }
+        }
+        packet = new NativePacketPayload(Arrays.copyOf(packet.getByteBuffer(), packet.getPosition()));
+        packet.setPosition(1);
+        return packet;
+    }
+
+    private static void assertColumn(Row row, int column, byte[] value) {
+        if (value == null) {
+            assertTrue(row.getNull(column));
+            assertNull(row.getBytes(column));
+        } else {
+            assertArrayEquals(value, row.getBytes(column));
+        }
+    }
+
+    private static void assertRow(Row row, byte[]... values) {
+        for (int i = 0; i < values.length; i++) {
+            assertColumn(row, i, values[i]);
+        }
+    }
+
+    // rows spread over growing chunks, with a large one in between, read back in any order
+    @Test
+    public void textRows() {
+        ChunkedRowList rows = new ChunkedRowList(COLUMNS, false, null, null);
+        byte[] large = new byte[ChunkedRowList.MAX_CHUNK_SIZE + 10];
+        Arrays.fill(large, (byte) 'x');
+        for (int i = 0; i < 20000; i++) {
+            byte[][] values = i == 12345 ? new byte[][] { large, null } : new byte[][] { value(i, 0), value(i, 1) };
+            rows.add(new TextBufferRow(textRowPacket(values), COLUMNS, null, new MysqlTextValueDecoder()));
+        }
+        assertEquals(20000, rows.size());
+
+        for (int i = rows.size() - 1; i >= 0; i--) {
+            Row row = rows.get(i);
+            assertTrue(row instanceof TextBufferRow);
+            if (i == 12345) {
+                assertRow(row, large, null);
+            } else {
+                assertColumn(row, 1, value(i, 1));
+                assertRow(row, value(i, 0), value(i, 1));
+            }
+        }
+    }
+
+    // rows larger than the next chunk but too small for a chunk of their own, first and after small ones
+    @Test
+    public void midSizeRows() {
+        ChunkedRowList rows = new ChunkedRowList(COLUMNS, false, null, null);
+        byte[] first = new byte[20000];
+        Arrays.fill(first, (byte) 'f');
+        byte[] later = new byte[100000];
+        Arrays.fill(later, (byte) 'l');
+        rows.add(new TextBufferRow(textRowPacket(first, null), COLUMNS, null, new MysqlTextValueDecoder()));
+        for (int i = 1; i < 1000; i++) {
+            byte[][] values = i == 500 ? new byte[][] { later, value(i, 1) } : new byte[][] { value(i, 0), value(i, 1) };
+            rows.add(new TextBufferRow(textRowPacket(values), COLUMNS, null, new MysqlTextValueDecoder()));
+        }
+        assertEquals(1000, rows.size());
+
+        assertRow(rows.get(0), first, null);
+        assertRow(rows.get(500), later, value(500, 1));
+        for (int i = 1; i < rows.size(); i++) {
+            if (i != 500) {
+                assertRow(rows.get(i), value(i, 0), value(i, 1));
+            }
+        }
+    }
+
+    @Test
+    public void binaryRows() {
+        ChunkedRowList rows = new ChunkedRowList(COLUMNS, true, null, null);
+        for (int i = 0; i < 5000; i++) {
+            rows.add(new BinaryBufferRow(binaryRowPacket(value(i, 0), value(i, 1)), COLUMNS, null, new MysqlBinaryValueDecoder()));
+        }
+        for (int i = 0; i < rows.size(); i++) {
+            Row row = rows.get(i).setMetadata(COLUMNS);
+            assertTrue(row instanceof BinaryBufferRow);
+            assertRow(row, value(i, 0), value(i, 1));
+        }
+    }
+
+    // copied packets go back to the pool, a packet kept as a chunk of its own doesn't
+    @Test
+    public void packetsReleased() {
+        PacketBufferPool pool = new PacketBufferPool(64 * 1024 * 1024);
+        ChunkedRowList rows = new ChunkedRowList(COLUMNS, false, null, pool);
+
+        byte[] pooled = pool.acquire(5000);
+        NativePacketPayload packet = new NativePacketPayload(pooled);
+        packet.setPayloadLength(0);
+        packet.writeBytes(StringSelfDataType.STRING_LENENC, new byte[4000]);
+        packet.writeBytes(StringSelfDataType.STRING_LENENC, new byte[0]);
+        packet.setPosition(0);
+        rows.add(new TextBufferRow(packet, COLUMNS, null, new MysqlTextValueDecoder()));
+        assertEquals(1, pool.getReturns());
+        assertSame(pooled, pool.acquire(5000));
+
+        NativePacketPayload largePacket = textRowPacket(new byte[ChunkedRowList.MAX_CHUNK_SIZE], new byte[0]);
+        rows.add(new TextBufferRow(largePacket, COLUMNS, null, new MysqlTextValueDecoder()));
+        assertEquals(1, pool.getReturns());
+        assertEquals(ChunkedRowList.MAX_CHUNK_SIZE, rows.get(1).getBytes(0).length);
+        assertEquals(4000, rows.get(0).getBytes(0).length);
+    }
+
+}
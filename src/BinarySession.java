@@ -0,0 +1,388 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Serves one client speaking the binary {@link WireProtocol}: performs the version handshake,
+ * then reads request frames and answers each one in turn. Version 2 clients are handed to a
+ * {@link PipelinedSession}, which answers their requests concurrently, each through its own
+ * {@code BinarySession} tagged with the request's id.
+ *
+ * <p>The blocking server drives a session with {@link #run()}. The NIO front end does the
+ * handshake and framing itself and hands complete requests to {@link #handle}.
+ */
+class BinarySession implements ResponseWriter {
+    private final DataInputStream in;
+    private final FrameSource frames;
+    private final DataOutputStream out;
+    private final Executor requestWorkers;
+    private final int requestId;
+    // Keeps frames of concurrent requests from interleaving on a shared connection
+    private final ReentrantLock writeLock;
+    // The request being answered, charged with the time spent encoding and writing its replies
+    private ServerMetrics.RequestTimer timer;
+
+    BinarySession(InputStream in, OutputStream out, Executor requestWorkers) {
+        this.in = new DataInputStream(in);
+        this.frames = counted(() -> WireProtocol.readFrame(this.in));
+        this.out = new DataOutputStream(out);
+        this.requestWorkers = requestWorkers;
+        this.requestId = WireProtocol.UNTAGGED;
+        this.writeLock = new ReentrantLock();
+    }
+
+    /** A version 1 session whose frames are already split out by the transport; {@link #run()} is not available. */
+    BinarySession(FrameSource frames, OutputStream out) {
+        this(frames, new DataOutputStream(out), WireProtocol.UNTAGGED, new ReentrantLock());
+    }
+
+    private static FrameSource counted(FrameSource frames) {
+        return () -> {
+            WireProtocol.Frame frame = frames.next();
+            Server.metrics.bytesIn(WireProtocol.frameLength(frame.payload.length, frame.requestId));
+            return frame;
+        };
+    }
+
+    /** Answers a single request of a pipelined connection, tagging every reply with {@code requestId}. */
+    BinarySession(FrameSource followUps, DataOutputStream out, int requestId, ReentrantLock writeLock) {
+        this.in = null;
+        this.frames = counted(followUps);
+        this.out = out;
+        this.requestWorkers = null;
+        this.requestId = requestId;
+        this.writeLock = writeLock;
+    }
+
+    void run() throws IOException {
+        int version = handshake();
+        if (version == 0) {
+            return;
+        }
+        if (version >= WireProtocol.VERSION_2) {
+            runPipelined();
+            return;
+        }
+
+        while (true) {
+            WireProtocol.Frame request;
+            try {
+                // Read past the counting frame source, handle() counts the request itself
+                request = WireProtocol.readFrame(in);
+            } catch (EOFException e) {
+                return;
+            }
+            handle(request);
+        }
+    }
+
+    private void runPipelined() throws IOException {
+        PipelinedSession pipeline = new PipelinedSession(out, requestWorkers, ServerConfig.MAX_IN_FLIGHT_PER_CONNECTION);
+        try {
+            while (true) {
+                pipeline.onFrame(WireProtocol.readFrame(in, true));
+            }
+        } catch (EOFException e) {
+            // Client is done sending
+        } finally {
+            pipeline.closeInput();
+        }
+        // The socket is closed once we return, let requests still running finish their replies
+        pipeline.awaitIdle();
+    }
+
+    /** Answers one request. Follow-up frames of multi-frame requests are read from the session's frame source. */
+    void handle(WireProtocol.Frame request) throws IOException {
+        Server.metrics.bytesIn(WireProtocol.frameLength(request.payload.length, request.requestId));
+        timer = Server.metrics.start(request.type);
+        try {
+            dispatch(request);
+            long flushStarted = System.nanoTime();
+            writeLock.lock();
+            try {
+                out.flush();
+            } finally {
+                writeLock.unlock();
+            }
+            timer.addSerializationTime(System.nanoTime() - flushStarted);
+        } catch (IOException | RuntimeException e) {
+            timer.failed();
+            throw e;
+        } finally {
+            Server.metrics.finish(timer);
+            timer = null;
+        }
+    }
+
+    /** The version to speak with a client offering {@code clientVersion}, or 0 if there is none. */
+    static int negotiateVersion(int clientVersion) {
+        int version = Math.min(clientVersion, WireProtocol.CURRENT_VERSION);
+        return version < WireProtocol.VERSION_1 ? 0 : version;
+    }
+
+    /** Completes the handshake only to tell a binary client why it is being turned away. */
+    static void reject(InputStream in, OutputStream out, String message) throws IOException {
+        DataInputStream dataIn = new DataInputStream(in);
+        DataOutputStream dataOut = new DataOutputStream(out);
+        int version = negotiateVersion(WireProtocol.readHello(dataIn));
+        WireProtocol.writeServerHello(dataOut, version, ServerConfig.MAX_IN_FLIGHT_PER_CONNECTION);
+        new WireProtocol.PayloadBuilder().string(message).writeAsFrame(dataOut, WireProtocol.ERROR,
+                version >= WireProtocol.VERSION_2 ? WireProtocol.CONNECTION_REQUEST_ID : WireProtocol.UNTAGGED);
+        dataOut.flush();
+    }
+
+    private int handshake() throws IOException {
+        int version = negotiateVersion(WireProtocol.readHello(in));
+        WireProtocol.writeServerHello(out, version, ServerConfig.MAX_IN_FLIGHT_PER_CONNECTION);
+        return version;
+    }
+
+    private void dispatch(WireProtocol.Frame request) throws IOException {
+        DataInputStream payload = request.reader();
+        switch (request.type) {
+            case WireProtocol.ADD_CATEGORY:
+                Server.addCategory(WireProtocol.readString(payload), this);
+                break;
+
+            case WireProtocol.ADD_SUPPLIER:
+                Server.addSupplier(WireProtocol.readString(payload), WireProtocol.readString(payload), this);
+                break;
+
+            case WireProtocol.ADD_PRODUCT:
+                Server.addProduct(WireProtocol.readString(payload), WireProtocol.readVarInt(payload),
+                        WireProtocol.readVarInt(payload), WireProtocol.readDecimal(payload, WireProtocol.PRICE_SCALE),
+                        this);
+                break;
+
+            case WireProtocol.ADD_PRODUCTS_BULK:
+                Server.addProductsBulk(WireProtocol.readVarInt(payload), frames, this);
+                break;
+
+            case WireProtocol.IMPORT_PRODUCTS:
+                ProductImport.Format format = payload.readByte() == 0 ? ProductImport.Format.CSV : ProductImport.Format.TSV;
+                Server.importProducts(format, payload.readBoolean(), frames, this);
+                break;
+
+            case WireProtocol.ADJUST_STOCK:
+                Server.adjustStock(WireProtocol.readVarInt(payload), WireProtocol.readSignedVarLong(payload), this);
+                break;
+
+            case WireProtocol.RESERVE_STOCK:
+                Server.reserveStock(WireProtocol.readVarInt(payload), WireProtocol.readVarLong(payload), this);
+                break;
+
+            case WireProtocol.RELEASE_STOCK:
+                Server.releaseStock(WireProtocol.readVarInt(payload), WireProtocol.readVarLong(payload), this);
+                break;
+
+            case WireProtocol.VIEW_PRODUCTS:
+                Server.viewProducts(this);
+                break;
+
+            case WireProtocol.VIEW_PRODUCTS_PAGE:
+                Server.viewProductsPage(WireProtocol.readVarInt(payload), WireProtocol.readVarInt(payload), this);
+                break;
+
+            case WireProtocol.VIEW_PRODUCTS_STREAM:
+                Server.streamProducts(WireProtocol.readVarInt(payload), this);
+                break;
+
+            case WireProtocol.COUNT_PRODUCTS:
+                Server.countProducts(this);
+                break;
+
+            case WireProtocol.VIEW_PRODUCTS_WINDOW:
+                Server.viewProductsWindow(WireProtocol.readVarInt(payload), WireProtocol.readVarInt(payload), this);
+                break;
+
+            case WireProtocol.QUERY_PRODUCTS:
+                ProductQuery query;
+                try {
+                    query = ProductQuery.readFrom(payload);
+                } catch (IOException e) {
+                    // The payload is already in memory, so this is a malformed query, not a broken connection
+                    error(e.getMessage() != null ? e.getMessage() : "Incomplete query.");
+                    break;
+                }
+                Server.queryProducts(query, this);
+                break;
+
+            case WireProtocol.SEARCH_PRODUCT_NAMES:
+                Server.searchProductNames(payload.readBoolean(), WireProtocol.readString(payload),
+                        WireProtocol.readVarInt(payload), this);
+                break;
+
+            case WireProtocol.REBUILD_NAME_INDEX:
+                Server.rebuildNameIndex(this);
+                break;
+
+            case WireProtocol.SUBSCRIBE:
+                if (requestId == WireProtocol.UNTAGGED) {
+                    // Would tie up the whole connection, version 2 keeps the other requests going
+                    error("Subscriptions need protocol version 2.");
+                    break;
+                }
+                Server.subscribe(WireProtocol.readVarLong(payload), frames, this);
+                break;
+
+            case WireProtocol.VIEW_CATEGORIES:
+                Server.viewCategories(this);
+                break;
+
+            case WireProtocol.VIEW_SUPPLIERS:
+                Server.viewSuppliers(this);
+                break;
+
+            case WireProtocol.PING:
+                send(WireProtocol.PONG, new WireProtocol.PayloadBuilder(), false, System.nanoTime());
+                break;
+
+            default:
+                error("Unknown request.");
+        }
+    }
+
+    @Override
+    public void message(String text) throws IOException {
+        long started = System.nanoTime();
+        send(WireProtocol.MESSAGE, new WireProtocol.PayloadBuilder().string(text), false, started);
+    }
+
+    @Override
+    public void error(String text) throws IOException {
+        long started = System.nanoTime();
+        if (timer != null) {
+            timer.failed();
+        }
+        send(WireProtocol.ERROR, new WireProtocol.PayloadBuilder().string(text), false, started);
+    }
+
+    @Override
+    public void table(ResultTable table) throws IOException {
+        long started = System.nanoTime();
+        WireProtocol.PayloadBuilder payload = new WireProtocol.PayloadBuilder();
+        table.writeTo(payload);
+        send(WireProtocol.TABLE, payload, false, started);
+    }
+
+    @Override
+    public void page(ResultTable rows, boolean hasMore, int nextAfterId) throws IOException {
+        long started = System.nanoTime();
+        WireProtocol.PayloadBuilder payload = new WireProtocol.PayloadBuilder();
+        payload.write(hasMore ? 1 : 0);
+        payload.varInt(nextAfterId);
+        rows.writeTo(payload);
+        send(WireProtocol.PAGE, payload, false, started);
+    }
+
+    @Override
+    public void count(long rows) throws IOException {
+        long started = System.nanoTime();
+        WireProtocol.PayloadBuilder payload = new WireProtocol.PayloadBuilder();
+        WireProtocol.writeVarLong(payload, rows);
+        send(WireProtocol.COUNT, payload, false, started);
+    }
+
+    @Override
+    public void window(int totalRows, ResultTable rows) throws IOException {
+        long started = System.nanoTime();
+        WireProtocol.PayloadBuilder payload = new WireProtocol.PayloadBuilder();
+        payload.varInt(totalRows);
+        rows.writeTo(payload);
+        send(WireProtocol.WINDOW, payload, false, started);
+    }
+
+    @Override
+    public void stockLevel(int productId, long onHand, long reserved) throws IOException {
+        long started = System.nanoTime();
+        WireProtocol.PayloadBuilder payload = new WireProtocol.PayloadBuilder().varInt(productId);
+        WireProtocol.writeSignedVarLong(payload, onHand);
+        WireProtocol.writeVarLong(payload, reserved);
+        send(WireProtocol.STOCK_LEVEL, payload, false, started);
+    }
+
+    @Override
+    public void feedChanges(long firstVersion, byte[][] changes) throws IOException {
+        long started = System.nanoTime();
+        WireProtocol.PayloadBuilder payload = new WireProtocol.PayloadBuilder();
+        WireProtocol.writeVarLong(payload, firstVersion);
+        payload.varInt(changes.length);
+        for (byte[] change : changes) {
+            payload.write(change);
+        }
+        send(WireProtocol.FEED_CHANGES, payload, true, started);
+    }
+
+    @Override
+    public void feedResync(long version) throws IOException {
+        long started = System.nanoTime();
+        WireProtocol.PayloadBuilder payload = new WireProtocol.PayloadBuilder();
+        WireProtocol.writeVarLong(payload, version);
+        send(WireProtocol.FEED_RESYNC, payload, true, started);
+    }
+
+    @Override
+    public void chunk(ResultTable rows) throws IOException {
+        long started = System.nanoTime();
+        WireProtocol.PayloadBuilder payload = new WireProtocol.PayloadBuilder();
+        rows.writeTo(payload);
+        send(WireProtocol.CHUNK, payload, true, started);
+    }
+
+    @Override
+    public void endOfStream(long rowCount) throws IOException {
+        long started = System.nanoTime();
+        WireProtocol.PayloadBuilder payload = new WireProtocol.PayloadBuilder();
+        WireProtocol.writeVarLong(payload, rowCount);
+        send(WireProtocol.END_OF_STREAM, payload, false, started);
+    }
+
+    @Override
+    public void chunkResult(int firstRow, int[] insertedIds, int[] errorRows, String[] errorReasons)
+            throws IOException {
+        long started = System.nanoTime();
+        WireProtocol.PayloadBuilder payload = new WireProtocol.PayloadBuilder();
+        payload.varInt(firstRow);
+        payload.varInt(insertedIds.length);
+        for (int id : insertedIds) {
+            payload.varInt(id);
+        }
+        payload.varInt(errorRows.length);
+        for (int i = 0; i < errorRows.length; i++) {
+            payload.varInt(errorRows[i]).string(errorReasons[i]);
+        }
+        send(WireProtocol.CHUNK_RESULT, payload, true, started);
+    }
+
+    @Override
+    public void progress(long bytesRead, long rowsAccepted, long rowsRejected) throws IOException {
+        long started = System.nanoTime();
+        WireProtocol.PayloadBuilder payload = new WireProtocol.PayloadBuilder();
+        WireProtocol.writeVarLong(payload, bytesRead);
+        WireProtocol.writeVarLong(payload, rowsAccepted);
+        WireProtocol.writeVarLong(payload, rowsRejected);
+        send(WireProtocol.PROGRESS, payload, true, started);
+    }
+
+    /** Writes a reply frame whose encoding began at {@code started}, charging the time to the request. */
+    private void send(byte type, WireProtocol.PayloadBuilder payload, boolean flush, long started) throws IOException {
+        writeLock.lock();
+        try {
+            payload.writeAsFrame(out, type, requestId);
+            if (flush) {
+                out.flush();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        Server.metrics.bytesOut(WireProtocol.frameLength(payload.size(), requestId));
+        if (timer != null) {
+            timer.addSerializationTime(System.nanoTime() - started);
+        }
+    }
+}
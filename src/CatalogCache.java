@@ -0,0 +1,437 @@
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Read-through, in-memory copy of the catalog tables.
+ *
+ * <p>The whole catalog is loaded on startup and again whenever it is older than the TTL. Inserts
+ * made through the server are applied to the cache as soon as they commit, so the server's own
+ * writes are visible immediately; the TTL only bounds how long changes made by other writers can
+ * go unseen. Products are cached only while the table stays under the configured size bound,
+ * above that product reads go straight to the database.
+ */
+class CatalogCache {
+    private final DataSource dataSource;
+    private final long ttlMillis;
+    private final int maxProducts;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ReentrantLock reloadLock = new ReentrantLock();
+    private IdTable<Category> categories = new IdTable<>();
+    private IdTable<Supplier> suppliers = new IdTable<>();
+    private IdTable<Product> products = new IdTable<>();
+    private boolean productsCached;
+    private volatile long loadedAt;
+
+    // Inserts that land while a reload is reading the database, replayed once it swaps in
+    private List<Object> insertsDuringReload;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder reloads = new LongAdder();
+
+    CatalogCache(DataSource dataSource, long ttlMillis, int maxProducts) {
+        this.dataSource = dataSource;
+        this.ttlMillis = ttlMillis;
+        this.maxProducts = maxProducts;
+    }
+
+    /** Returns all categories in id order, loading the catalog first if it is missing or expired. */
+    List<Category> categories() throws SQLException {
+        ensureFresh();
+        lock.readLock().lock();
+        try {
+            return categories.snapshot();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    List<Supplier> suppliers() throws SQLException {
+        ensureFresh();
+        lock.readLock().lock();
+        try {
+            return suppliers.snapshot();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Returns all products in id order, or null when the product table is too large to cache. */
+    List<Product> products() throws SQLException {
+        ensureFresh();
+        lock.readLock().lock();
+        try {
+            return productsCached ? products.snapshot() : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns up to {@code limit} products with an id greater than {@code afterId}, or null when
+     * products are not cached.
+     */
+    List<Product> productsAfter(int afterId, int limit) throws SQLException {
+        ensureFresh();
+        lock.readLock().lock();
+        try {
+            return productsCached ? products.after(afterId, limit) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Returns the number of products, or -1 when products are not cached. */
+    int productCount() throws SQLException {
+        ensureFresh();
+        lock.readLock().lock();
+        try {
+            return productsCached ? products.size() : -1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns up to {@code limit} products starting at position {@code offset} in id order,
+     * together with the product count at the time, or null when products are not cached.
+     */
+    ProductWindow productWindow(int offset, int limit) throws SQLException {
+        ensureFresh();
+        lock.readLock().lock();
+        try {
+            if (!productsCached) {
+                return null;
+            }
+            int total = products.size();
+            int from = Math.min(offset, total);
+            return new ProductWindow(total, products.range(from, Math.min(total, from + limit)));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    boolean isValidCategory(int categoryId) throws SQLException {
+        lock.readLock().lock();
+        try {
+            if (categories.byId.containsKey(categoryId)) {
+                hits.increment();
+                return true;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        // Might have been added by another writer since the last load
+        misses.increment();
+        Category category = queryById("SELECT id, name FROM categories WHERE id = ?", categoryId,
+                rs -> new Category(rs.getInt("id"), rs.getString("name")));
+        if (category != null) {
+            addCategory(category);
+        }
+        return category != null;
+    }
+
+    boolean isValidSupplier(int supplierId) throws SQLException {
+        lock.readLock().lock();
+        try {
+            if (suppliers.byId.containsKey(supplierId)) {
+                hits.increment();
+                return true;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        misses.increment();
+        Supplier supplier = queryById("SELECT id, name, contact FROM suppliers WHERE id = ?", supplierId,
+                rs -> new Supplier(rs.getInt("id"), rs.getString("name"), rs.getString("contact")));
+        if (supplier != null) {
+            addSupplier(supplier);
+        }
+        return supplier != null;
+    }
+
+    boolean isValidProduct(int productId) throws SQLException {
+        lock.readLock().lock();
+        try {
+            if (products.byId.containsKey(productId)) {
+                hits.increment();
+                return true;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        misses.increment();
+        Product product = queryById("SELECT id, name, category_id, supplier_id, price FROM products WHERE id = ?",
+                productId, rs -> new Product(rs.getInt("id"), rs.getString("name"), rs.getInt("category_id"),
+                        rs.getInt("supplier_id"), rs.getBigDecimal("price")));
+        if (product != null) {
+            addProduct(product);
+        }
+        return product != null;
+    }
+
+    /** Cache-only check with no database fallback, for validating many rows at a time. */
+    boolean hasCategory(int categoryId) {
+        lock.readLock().lock();
+        try {
+            return categories.byId.containsKey(categoryId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    boolean hasSupplier(int supplierId) {
+        lock.readLock().lock();
+        try {
+            return suppliers.byId.containsKey(supplierId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Marks the cache stale so the next read reloads it, for writes whose rows are not known here. */
+    void invalidate() {
+        loadedAt = 0;
+    }
+
+    void addCategory(Category category) {
+        applyInsert(category);
+    }
+
+    void addSupplier(Supplier supplier) {
+        applyInsert(supplier);
+    }
+
+    void addProduct(Product product) {
+        applyInsert(product);
+    }
+
+    private void applyInsert(Object row) {
+        lock.writeLock().lock();
+        try {
+            if (insertsDuringReload != null) {
+                insertsDuringReload.add(row);
+            }
+            put(row);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Caller holds the write lock
+    private void put(Object row) {
+        if (row instanceof Category category) {
+            categories.put(category.getId(), category);
+        } else if (row instanceof Supplier supplier) {
+            suppliers.put(supplier.getId(), supplier);
+        } else if (row instanceof Product product && productsCached) {
+            if (products.size() < maxProducts) {
+                products.put(product.getId(), product);
+            } else {
+                // Grew past the bound, stop caching products until the table shrinks
+                productsCached = false;
+                products = new IdTable<>();
+            }
+        }
+    }
+
+    private void ensureFresh() throws SQLException {
+        if (isFresh()) {
+            hits.increment();
+            return;
+        }
+        misses.increment();
+        reloadLock.lock();
+        try {
+            // Another thread may have reloaded while we waited
+            if (!isFresh()) {
+                reload();
+            }
+        } finally {
+            reloadLock.unlock();
+        }
+    }
+
+    // A TTL of zero or less means the cache never expires on its own
+    private boolean isFresh() {
+        long loaded = loadedAt;
+        return loaded != 0 && (ttlMillis <= 0 || System.currentTimeMillis() - loaded < ttlMillis);
+    }
+
+    /** Loads the whole catalog from the database and swaps it in. */
+    void reload() throws SQLException {
+        reloadLock.lock();
+        try {
+            lock.writeLock().lock();
+            try {
+                insertsDuringReload = new ArrayList<>();
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            IdTable<Category> loadedCategories = new IdTable<>();
+            IdTable<Supplier> loadedSuppliers = new IdTable<>();
+            IdTable<Product> loadedProducts = new IdTable<>();
+            boolean loadedAllProducts;
+            long startedAt = System.currentTimeMillis();
+            try (Connection connection = dataSource.getConnection();
+                 Statement stmt = connection.createStatement()) {
+                try (ResultSet rs = stmt.executeQuery("SELECT id, name FROM categories ORDER BY id")) {
+                    while (rs.next()) {
+                        loadedCategories.put(rs.getInt("id"), new Category(rs.getInt("id"), rs.getString("name")));
+                    }
+                }
+                try (ResultSet rs = stmt.executeQuery("SELECT id, name, contact FROM suppliers ORDER BY id")) {
+                    while (rs.next()) {
+                        loadedSuppliers.put(rs.getInt("id"),
+                                new Supplier(rs.getInt("id"), rs.getString("name"), rs.getString("contact")));
+                    }
+                }
+
+                // Read one row past the bound so we know whether the table fits
+                stmt.setMaxRows(maxProducts + 1);
+                try (ResultSet rs = stmt.executeQuery(
+                        "SELECT id, name, category_id, supplier_id, price FROM products ORDER BY id")) {
+                    while (rs.next()) {
+                        loadedProducts.put(rs.getInt("id"), new Product(rs.getInt("id"), rs.getString("name"),
+                                rs.getInt("category_id"), rs.getInt("supplier_id"), rs.getBigDecimal("price")));
+                    }
+                }
+                loadedAllProducts = loadedProducts.size() <= maxProducts;
+            } catch (SQLException e) {
+                lock.writeLock().lock();
+                try {
+                    insertsDuringReload = null;
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                throw e;
+            }
+
+            lock.writeLock().lock();
+            try {
+                categories = loadedCategories;
+                suppliers = loadedSuppliers;
+                productsCached = loadedAllProducts;
+                products = loadedAllProducts ? loadedProducts : new IdTable<>();
+                for (Object row : insertsDuringReload) {
+                    put(row);
+                }
+                insertsDuringReload = null;
+                loadedAt = startedAt;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            reloads.increment();
+        } finally {
+            reloadLock.unlock();
+        }
+    }
+
+    private <T> T queryById(String sql, int id, RowMapper<T> mapper) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setInt(1, id);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? mapper.map(rs) : null;
+            }
+        }
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+
+    long getReloads() {
+        return reloads.sum();
+    }
+
+    String describe() {
+        lock.readLock().lock();
+        try {
+            return String.format("cache categories=%d suppliers=%d products=%s hits=%d misses=%d reloads=%d",
+                    categories.size(), suppliers.size(), productsCached ? String.valueOf(products.size()) : "uncached",
+                    getHits(), getMisses(), getReloads());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Products read by position, and how many products there were when they were read. */
+    static final class ProductWindow {
+        final int totalRows;
+        final List<Product> rows;
+
+        ProductWindow(int totalRows, List<Product> rows) {
+            this.totalRows = totalRows;
+            this.rows = rows;
+        }
+    }
+
+    @FunctionalInterface
+    private interface RowMapper<T> {
+        T map(ResultSet rs) throws SQLException;
+    }
+
+    /** Rows of one table, indexed by id and also kept in id order for listings. */
+    private static class IdTable<T> {
+        final IntObjectHashMap<T> byId = new IntObjectHashMap<>();
+        private int[] orderedIds = new int[16];
+        private int count;
+
+        void put(int id, T row) {
+            if (byId.put(id, row) != null) {
+                return;
+            }
+            if (count == orderedIds.length) {
+                orderedIds = Arrays.copyOf(orderedIds, count * 2);
+            }
+            // Ids are auto-increment, so this is almost always an append
+            if (count == 0 || orderedIds[count - 1] < id) {
+                orderedIds[count++] = id;
+            } else {
+                int position = -Arrays.binarySearch(orderedIds, 0, count, id) - 1;
+                System.arraycopy(orderedIds, position, orderedIds, position + 1, count - position);
+                orderedIds[position] = id;
+                count++;
+            }
+        }
+
+        int size() {
+            return count;
+        }
+
+        List<T> snapshot() {
+            return range(0, count);
+        }
+
+        List<T> after(int afterId, int limit) {
+            int position = Arrays.binarySearch(orderedIds, 0, count, afterId);
+            position = position >= 0 ? position + 1 : -position - 1;
+            return range(position, Math.min(count, position + limit));
+        }
+
+        List<T> range(int from, int to) {
+            List<T> rows = new ArrayList<>(Math.max(0, to - from));
+            for (int i = from; i < to; i++) {
+                rows.add(byId.get(orderedIds[i]));
+            }
+            return rows;
+        }
+    }
+}
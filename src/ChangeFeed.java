@@ -0,0 +1,194 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Changes made through this server, numbered with increasing versions, for clients that keep
+ * their copy of the catalog current instead of reloading it. Each change is encoded once when it
+ * is published (see {@link WireProtocol} for the layout) and kept in a ring of the most recent
+ * {@code capacity} changes.
+ *
+ * <p>A subscriber reads on from the version it last saw. If that version has already left the
+ * ring, or the change is one whose rows are not known here (a file import), the subscriber is
+ * told to resync: reload everything, then carry on with the changes after the version it is given.
+ *
+ * <p>Versions start at the server's start time shifted left, so a client that saw versions from
+ * an earlier run resyncs instead of mistaking new changes for ones it already has.
+ */
+class ChangeFeed {
+    private final byte[][] ring;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition published = lock.newCondition();
+    private final long firstVersion;
+    // Version of the latest change
+    private long version;
+    private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+
+    ChangeFeed(int capacity) {
+        this.ring = new byte[Math.max(1, capacity)][];
+        this.firstVersion = System.currentTimeMillis() << 16;
+        this.version = firstVersion;
+    }
+
+    void categoryAdded(Category category) {
+        publish(encode(WireProtocol.CATEGORY_ADDED, payload -> payload.varInt(category.getId()).string(category.getName())));
+    }
+
+    void supplierAdded(Supplier supplier) {
+        publish(encode(WireProtocol.SUPPLIER_ADDED, payload -> payload.varInt(supplier.getId())
+                .string(supplier.getName()).string(supplier.getContact())));
+    }
+
+    void productAdded(Product product) {
+        publish(encode(WireProtocol.PRODUCT_ADDED, payload -> payload.varInt(product.getId()).string(product.getName())
+                .varInt(product.getCategoryId()).varInt(product.getSupplierId())
+                .decimal(product.getPrice(), WireProtocol.PRICE_SCALE)));
+    }
+
+    /** A change in a product's stock, as deltas so that changes commute however they are ordered. */
+    void stockChanged(int productId, long onHandDelta, long reservedDelta) {
+        publish(encode(WireProtocol.STOCK_CHANGED, payload -> {
+            payload.varInt(productId);
+            WireProtocol.writeSignedVarLong(payload, onHandDelta);
+            WireProtocol.writeSignedVarLong(payload, reservedDelta);
+        }));
+    }
+
+    /** Rows changed that are not known individually; every subscriber resyncs. */
+    void resync() {
+        publish(new byte[] {WireProtocol.RESYNC_MARKER});
+    }
+
+    /**
+     * Starts reading the changes after {@code afterVersion}. A subscriber with nothing yet
+     * passes 0 and is told to resync first.
+     */
+    Subscription subscribe(long afterVersion) {
+        Subscription subscription = new Subscription(afterVersion);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    /** Ends every subscription, for shutdown. */
+    void close() {
+        for (Subscription subscription : subscriptions) {
+            subscription.cancel();
+        }
+    }
+
+    String describe() {
+        lock.lock();
+        try {
+            return String.format("feed version=%d changes=%d subscribers=%d", version, version - firstVersion,
+                    subscriptions.size());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void publish(byte[] change) {
+        lock.lock();
+        try {
+            version++;
+            ring[(int) (version % ring.length)] = change;
+            published.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static byte[] encode(byte kind, Encoder encoder) {
+        WireProtocol.PayloadBuilder payload = new WireProtocol.PayloadBuilder();
+        payload.write(kind);
+        try {
+            encoder.encode(payload);
+        } catch (IOException e) {
+            // Writes to memory only
+            throw new IllegalStateException(e);
+        }
+        return payload.toByteArray();
+    }
+
+    @FunctionalInterface
+    private interface Encoder {
+        void encode(WireProtocol.PayloadBuilder payload) throws IOException;
+    }
+
+    /** What a subscriber is sent next: a run of changes, or an instruction to resync. */
+    static final class Batch {
+        final boolean resync;
+        // For a resync, the version to carry on from; otherwise that of the first change
+        final long version;
+        final byte[][] changes;
+
+        Batch(boolean resync, long version, byte[][] changes) {
+            this.resync = resync;
+            this.version = version;
+            this.changes = changes;
+        }
+    }
+
+    /** One subscriber's place in the feed. */
+    final class Subscription {
+        private long position;
+        private boolean cancelled;
+
+        Subscription(long afterVersion) {
+            this.position = afterVersion;
+        }
+
+        /**
+         * Waits for the changes after the subscriber's position and returns at most
+         * {@code maxChanges} of them, or null once the subscription is cancelled.
+         */
+        Batch next(int maxChanges) throws InterruptedException {
+            lock.lock();
+            try {
+                while (!cancelled && position == version) {
+                    published.await();
+                }
+                if (cancelled) {
+                    return null;
+                }
+                long oldest = Math.max(firstVersion + 1, version - ring.length + 1);
+                if (position < oldest - 1 || position > version) {
+                    // Missed changes the ring no longer holds, or versions from another run
+                    position = version;
+                    return new Batch(true, version, null);
+                }
+                if (ring[(int) ((position + 1) % ring.length)][0] == WireProtocol.RESYNC_MARKER) {
+                    position++;
+                    return new Batch(true, position, null);
+                }
+                int count = 0;
+                byte[][] changes = new byte[(int) Math.min(maxChanges, version - position)][];
+                while (count < changes.length) {
+                    byte[] change = ring[(int) ((position + 1 + count) % ring.length)];
+                    if (change[0] == WireProtocol.RESYNC_MARKER) {
+                        break;
+                    }
+                    changes[count++] = change;
+                }
+                long first = position + 1;
+                position += count;
+                return new Batch(false, first, count == changes.length ? changes : Arrays.copyOf(changes, count));
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void cancel() {
+            lock.lock();
+            try {
+                cancelled = true;
+                published.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            subscriptions.remove(this);
+        }
+    }
+}
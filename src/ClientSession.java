@@ -0,0 +1,357 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A long-lived, pipelined (protocol version 2) connection to the server shared by every call of
+ * an {@link InventoryClient}. Calls from any thread go out over the one socket and a reader
+ * thread hands each reply frame to the call with the matching request id.
+ *
+ * <p>The connection is opened on the first call and opened again on the next call after it
+ * drops. While connected, the session pings the server whenever it has heard nothing for a
+ * heartbeat interval, and drops the connection if the server stays silent for another one, so
+ * a dead server fails the calls waiting on it instead of leaving them hanging.
+ */
+class ClientSession implements AutoCloseable {
+    // Stands in for the reply frames of a call whose connection failed
+    private static final WireProtocol.Frame CONNECTION_LOST = new WireProtocol.Frame((byte) 0, new byte[0]);
+
+    private final String host;
+    private final int port;
+    private final int connectTimeoutMillis;
+    private final long heartbeatMillis;
+
+    private final ReentrantLock connectLock = new ReentrantLock();
+    private volatile Connection connection;
+    private volatile boolean closed;
+    private final ScheduledExecutorService heartbeatTimer;
+
+    ClientSession(String host, int port, int connectTimeoutMillis, long heartbeatMillis) {
+        this.host = host;
+        this.port = port;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.heartbeatMillis = heartbeatMillis;
+        this.heartbeatTimer = Executors.newSingleThreadScheduledExecutor(runnable ->
+                Thread.ofPlatform().name("inventory-client-heartbeat").daemon().unstarted(runnable));
+        heartbeatTimer.scheduleWithFixedDelay(this::heartbeat, heartbeatMillis, heartbeatMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sends a request and returns the call its replies arrive on. The caller must close the call
+     * once it has read what it needs; replies that arrive after that are dropped. Waits while the
+     * server's in-flight limit is reached.
+     */
+    Call start(byte opcode, WireProtocol.PayloadBuilder payload) throws IOException {
+        return connect().start(opcode, payload);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        heartbeatTimer.shutdownNow();
+        Connection current = connection;
+        if (current != null) {
+            current.fail(new IOException("Client session closed."));
+        }
+    }
+
+    private Connection connect() throws IOException {
+        Connection current = connection;
+        if (current != null && current.isOpen()) {
+            return current;
+        }
+        connectLock.lock();
+        try {
+            if (closed) {
+                throw new IOException("Client session closed.");
+            }
+            current = connection;
+            if (current == null || !current.isOpen()) {
+                current = new Connection();
+                connection = current;
+            }
+            return current;
+        } finally {
+            connectLock.unlock();
+        }
+    }
+
+    private void heartbeat() {
+        Connection current = connection;
+        if (current != null && current.isOpen()) {
+            current.heartbeat();
+        }
+    }
+
+    /** One socket's worth of the session; replaced by a new one after it fails. */
+    private final class Connection {
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+        private final ReentrantLock writeLock = new ReentrantLock();
+        private final Semaphore callPermits;
+        private final boolean heartbeatSlot;
+        private final ConcurrentHashMap<Integer, Call> calls = new ConcurrentHashMap<>();
+        private int nextRequestId = WireProtocol.CONNECTION_REQUEST_ID;
+        private volatile IOException failure;
+        private volatile long lastReceived = System.nanoTime();
+        private volatile long pingSentAt;
+
+        Connection() throws IOException {
+            socket = new Socket();
+            try {
+                socket.connect(new InetSocketAddress(host, port), connectTimeoutMillis);
+                socket.setTcpNoDelay(true);
+                // Callers wait on connectLock behind the handshake, so a silent server must not hold it
+                socket.setSoTimeout(connectTimeoutMillis);
+                in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+                WireProtocol.writeHello(out, WireProtocol.VERSION_2);
+                int version = WireProtocol.readHello(in);
+                if (version < WireProtocol.VERSION_2) {
+                    throw new IOException("Server does not support pipelined connections.");
+                }
+                int maxInFlight = in.readUnsignedShort();
+                // Keep a slot free for heartbeats so a connection full of slow calls is still checked
+                heartbeatSlot = maxInFlight > 1;
+                callPermits = new Semaphore(heartbeatSlot ? maxInFlight - 1 : maxInFlight);
+                // From here on heartbeats notice a server that stops answering
+                socket.setSoTimeout(0);
+            } catch (IOException e) {
+                socket.close();
+                throw e;
+            }
+            Thread.ofPlatform().name("inventory-client-reader").daemon().start(this::readReplies);
+        }
+
+        boolean isOpen() {
+            return failure == null;
+        }
+
+        Call start(byte opcode, WireProtocol.PayloadBuilder payload) throws IOException {
+            try {
+                callPermits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting to send a request.");
+            }
+            Call call = new Call(this, newRequestId(), callPermits);
+            calls.put(call.requestId, call);
+            try {
+                send(opcode, call.requestId, payload, true);
+            } catch (IOException e) {
+                call.close();
+                throw e;
+            }
+            return call;
+        }
+
+        void send(byte type, int requestId, WireProtocol.PayloadBuilder payload, boolean flush) throws IOException {
+            send(type, requestId, payload.toByteArray(), payload.size(), flush);
+        }
+
+        void send(byte type, int requestId, byte[] payload, int length, boolean flush) throws IOException {
+            writeLock.lock();
+            try {
+                IOException failed = failure;
+                if (failed != null) {
+                    throw failed;
+                }
+                WireProtocol.writeFrame(out, type, requestId, payload, length);
+                if (flush) {
+                    out.flush();
+                }
+            } catch (IOException e) {
+                fail(e);
+                throw e;
+            } finally {
+                writeLock.unlock();
+            }
+        }
+
+        void finished(Call call) {
+            calls.remove(call.requestId, call);
+        }
+
+        /** Closes the socket and fails every call still waiting on it. */
+        void fail(IOException e) {
+            if (failure == null) {
+                failure = e;
+            }
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // Already closed
+            }
+            for (Call call : calls.values()) {
+                call.fail(failure);
+            }
+        }
+
+        void heartbeat() {
+            long now = System.nanoTime();
+            if (now - lastReceived < TimeUnit.MILLISECONDS.toNanos(heartbeatMillis)) {
+                return;
+            }
+            if (pingSentAt != 0) {
+                if (now - pingSentAt >= TimeUnit.MILLISECONDS.toNanos(heartbeatMillis)) {
+                    fail(new IOException("Server stopped responding."));
+                }
+                return;
+            }
+            if (!heartbeatSlot && !callPermits.tryAcquire()) {
+                // Every slot is taken by calls; their replies will show whether the server is alive
+                return;
+            }
+            Call ping = new Call(this, newRequestId(), heartbeatSlot ? null : callPermits);
+            ping.discardReplies = true;
+            calls.put(ping.requestId, ping);
+            pingSentAt = now;
+            try {
+                send(WireProtocol.PING, ping.requestId, new byte[0], 0, true);
+            } catch (IOException e) {
+                ping.close();
+            }
+        }
+
+        private int newRequestId() {
+            writeLock.lock();
+            try {
+                do {
+                    nextRequestId++;
+                } while (nextRequestId == WireProtocol.CONNECTION_REQUEST_ID || nextRequestId == WireProtocol.UNTAGGED
+                        || calls.containsKey(nextRequestId));
+                return nextRequestId;
+            } finally {
+                writeLock.unlock();
+            }
+        }
+
+        private void readReplies() {
+            try {
+                while (true) {
+                    WireProtocol.Frame frame = WireProtocol.readFrame(in, true);
+                    lastReceived = System.nanoTime();
+                    pingSentAt = 0;
+                    if (frame.requestId == WireProtocol.CONNECTION_REQUEST_ID && frame.type == WireProtocol.ERROR) {
+                        fail(new InventoryClient.ServerException(WireProtocol.readString(frame.reader())));
+                        return;
+                    }
+                    Call call = calls.get(frame.requestId);
+                    if (call != null) {
+                        call.deliver(frame);
+                    }
+                }
+            } catch (EOFException e) {
+                fail(new IOException("Server closed the connection."));
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+    }
+
+    /**
+     * One request and its replies. Replies queue up without bound so a slow caller never holds
+     * up the reader, and with it every other call on the connection.
+     */
+    static final class Call implements AutoCloseable {
+        final int requestId;
+        private final Connection connection;
+        private final Semaphore permits;
+        private final BlockingQueue<WireProtocol.Frame> replies = new LinkedBlockingQueue<>();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private volatile IOException failure;
+        private volatile boolean replied;
+        // Heartbeats finish as soon as their reply arrives, nobody reads it
+        private boolean discardReplies;
+
+        private Call(Connection connection, int requestId, Semaphore permits) {
+            this.connection = connection;
+            this.requestId = requestId;
+            this.permits = permits;
+        }
+
+        /** Waits for the next reply frame of this call. */
+        WireProtocol.Frame next() throws IOException {
+            WireProtocol.Frame frame;
+            try {
+                frame = replies.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the server.");
+            }
+            if (frame == CONNECTION_LOST) {
+                replies.offer(CONNECTION_LOST);
+                throw failure;
+            }
+            return frame;
+        }
+
+        /** Sends a follow-up frame of this call, such as upload data. */
+        void send(byte type, byte[] payload, int length, boolean flush) throws IOException {
+            connection.send(type, requestId, payload, length, flush);
+        }
+
+        void send(byte type, WireProtocol.PayloadBuilder payload, boolean flush) throws IOException {
+            connection.send(type, requestId, payload, flush);
+        }
+
+        /** Whether any reply arrived; a call that got none is safe to repeat if it only reads. */
+        boolean hasReplies() {
+            return replied;
+        }
+
+        /**
+         * Gives up on the connection this call runs on, failing its other calls as well. Used when
+         * the call cannot finish sending a multi-frame request, which would otherwise leave the
+         * server waiting for the rest of it.
+         */
+        void abort(IOException e) {
+            connection.fail(e);
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                connection.finished(this);
+                if (permits != null) {
+                    permits.release();
+                }
+            }
+        }
+
+        private void deliver(WireProtocol.Frame frame) {
+            replied = true;
+            if (discardReplies) {
+                close();
+                return;
+            }
+            replies.offer(frame);
+        }
+
+        private void fail(IOException e) {
+            failure = e;
+            if (discardReplies) {
+                close();
+                return;
+            }
+            replies.offer(CONNECTION_LOST);
+        }
+    }
+}
@@ -0,0 +1,556 @@
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+import java.util.logging.Logger;
+
+/**
+ * A small pooled {@link DataSource}. Handlers borrow a connection with {@link #getConnection()}
+ * and give it back by closing it, which returns the physical connection to the pool instead of
+ * closing it.
+ *
+ * <p>Each physical connection also keeps the statements prepared on it, up to
+ * {@code statementCacheSize} of them, least recently used going first. Preparing the same SQL
+ * again on that connection hands back the statement already prepared, and closing it only clears
+ * its parameters, so a handler running fixed SQL just binds and executes.
+ */
+class ConnectionPool implements DataSource, AutoCloseable {
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int minSize;
+    private final int maxSize;
+    private final long acquireTimeoutMillis;
+    private final long idleTimeoutMillis;
+    private final long leakThresholdMillis;
+    private final int validationTimeoutSeconds;
+    private final int statementCacheSize;
+    // Told how long each borrow took, waiting included, on the thread that gave the connection back
+    private final LongConsumer holdTimeListener;
+
+    // Idle connections, most recently used first so the warm ones are reused
+    private final BlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Set<PooledConnection> borrowed = ConcurrentHashMap.newKeySet();
+    private final Semaphore borrowPermits;
+    private final AtomicInteger totalConnections = new AtomicInteger();
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final LongAdder acquireTimeouts = new LongAdder();
+    private final LongAdder connectionsCreated = new LongAdder();
+    private final LongAdder connectionsDiscarded = new LongAdder();
+    private final LongAdder leaksDetected = new LongAdder();
+    private final LongAdder statementHits = new LongAdder();
+    private final LongAdder statementMisses = new LongAdder();
+
+    ConnectionPool(String url, String user, String password, int minSize, int maxSize, long acquireTimeoutMillis,
+                   long idleTimeoutMillis, long leakThresholdMillis, int validationTimeoutSeconds,
+                   int statementCacheSize, LongConsumer holdTimeListener) throws SQLException {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.minSize = Math.max(0, Math.min(minSize, maxSize));
+        this.maxSize = maxSize;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.leakThresholdMillis = leakThresholdMillis;
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+        this.statementCacheSize = statementCacheSize;
+        this.holdTimeListener = holdTimeListener;
+        this.borrowPermits = new Semaphore(maxSize, true);
+
+        for (int i = 0; i < this.minSize; i++) {
+            idle.offerLast(openConnection());
+        }
+
+        housekeeper = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform()
+                .name("connection-pool-housekeeper").daemon().factory());
+        housekeeper.scheduleWithFixedDelay(this::housekeep, 10, 10, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed.");
+        }
+
+        long start = System.nanoTime();
+        try {
+            if (!borrowPermits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                acquireTimeouts.increment();
+                throw new SQLTransientConnectionException("Timed out after " + acquireTimeoutMillis
+                        + " ms waiting for a database connection (" + maxSize + " in use).");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Interrupted while waiting for a database connection.", e);
+        }
+
+        try {
+            PooledConnection pooled = takeValidIdleConnection();
+            if (pooled == null) {
+                pooled = openConnection();
+            }
+            recordWait(System.nanoTime() - start);
+
+            pooled.borrowedAt = System.currentTimeMillis();
+            pooled.borrowStartedNanos = start;
+            pooled.borrowSite = leakThresholdMillis > 0 ? new Exception("Connection borrowed here") : null;
+            pooled.returned = false;
+            borrowed.add(pooled);
+            return pooled.proxy;
+        } catch (SQLException | RuntimeException e) {
+            borrowPermits.release();
+            throw e;
+        }
+    }
+
+    private PooledConnection takeValidIdleConnection() {
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            try {
+                if (pooled.physical.isValid(validationTimeoutSeconds)) {
+                    return pooled;
+                }
+            } catch (SQLException e) {
+                // Treat as invalid
+            }
+            discard(pooled);
+        }
+        return null;
+    }
+
+    private PooledConnection openConnection() throws SQLException {
+        Connection physical = DriverManager.getConnection(url, user, password);
+        totalConnections.incrementAndGet();
+        connectionsCreated.increment();
+        return new PooledConnection(physical);
+    }
+
+    private void giveBack(PooledConnection pooled) {
+        if (!borrowed.remove(pooled)) {
+            return;
+        }
+        pooled.borrowSite = null;
+        pooled.lastReturnedAt = System.currentTimeMillis();
+        holdTimeListener.accept(System.nanoTime() - pooled.borrowStartedNanos);
+        pooled.releaseStatements();
+
+        boolean reusable = !closed;
+        if (reusable) {
+            try {
+                // Never hand out a connection with someone else's open transaction
+                if (!pooled.physical.getAutoCommit()) {
+                    pooled.physical.rollback();
+                    pooled.physical.setAutoCommit(true);
+                }
+                pooled.physical.clearWarnings();
+            } catch (SQLException e) {
+                reusable = false;
+            }
+        }
+
+        if (reusable) {
+            idle.offerFirst(pooled);
+        } else {
+            discard(pooled);
+        }
+        borrowPermits.release();
+    }
+
+    private void discard(PooledConnection pooled) {
+        totalConnections.decrementAndGet();
+        connectionsDiscarded.increment();
+        try {
+            pooled.physical.close();
+        } catch (SQLException e) {
+            // Already broken, nothing to clean up
+        }
+    }
+
+    private void recordWait(long waitNanos) {
+        acquisitions.increment();
+        totalWaitNanos.add(waitNanos);
+        maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+    }
+
+    private void housekeep() {
+        try {
+            evictIdleConnections();
+            fillToMinimum();
+            detectLeaks();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void evictIdleConnections() {
+        if (idleTimeoutMillis <= 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (PooledConnection pooled : idle) {
+            if (totalConnections.get() <= minSize) {
+                return;
+            }
+            if (now - pooled.lastReturnedAt > idleTimeoutMillis && idle.remove(pooled)) {
+                discard(pooled);
+            }
+        }
+    }
+
+    private void fillToMinimum() {
+        while (!closed && totalConnections.get() < minSize) {
+            try {
+                idle.offerLast(openConnection());
+            } catch (SQLException e) {
+                System.out.println("Connection pool could not open a connection: " + e.getMessage());
+                return;
+            }
+        }
+    }
+
+    private void detectLeaks() {
+        if (leakThresholdMillis <= 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (PooledConnection pooled : borrowed) {
+            Exception borrowSite = pooled.borrowSite;
+            if (borrowSite != null && now - pooled.borrowedAt > leakThresholdMillis) {
+                leaksDetected.increment();
+                pooled.borrowSite = null;
+                System.out.println("Possible connection leak: connection held for " + (now - pooled.borrowedAt) + " ms.");
+                borrowSite.printStackTrace(System.out);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            discard(pooled);
+        }
+    }
+
+    int getMaxSize() {
+        return maxSize;
+    }
+
+    int getActiveConnections() {
+        return borrowed.size();
+    }
+
+    int getIdleConnections() {
+        return idle.size();
+    }
+
+    int getTotalConnections() {
+        return totalConnections.get();
+    }
+
+    double getUtilization() {
+        return (double) borrowed.size() / maxSize;
+    }
+
+    long getAcquisitions() {
+        return acquisitions.sum();
+    }
+
+    double getAverageWaitMillis() {
+        long count = acquisitions.sum();
+        return count == 0 ? 0 : totalWaitNanos.sum() / 1_000_000.0 / count;
+    }
+
+    double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1_000_000.0;
+    }
+
+    long getAcquireTimeouts() {
+        return acquireTimeouts.sum();
+    }
+
+    long getConnectionsCreated() {
+        return connectionsCreated.sum();
+    }
+
+    long getConnectionsDiscarded() {
+        return connectionsDiscarded.sum();
+    }
+
+    long getLeaksDetected() {
+        return leaksDetected.sum();
+    }
+
+    long getStatementHits() {
+        return statementHits.sum();
+    }
+
+    long getStatementMisses() {
+        return statementMisses.sum();
+    }
+
+    String describe() {
+        return String.format("pool active=%d idle=%d total=%d/%d utilization=%.0f%% acquisitions=%d"
+                        + " avgWait=%.2fms maxWait=%.2fms timeouts=%d leaks=%d stmtHits=%d stmtMisses=%d",
+                getActiveConnections(), getIdleConnections(), getTotalConnections(), maxSize, getUtilization() * 100,
+                getAcquisitions(), getAverageWaitMillis(), getMaxWaitMillis(), getAcquireTimeouts(), getLeaksDetected(),
+                getStatementHits(), getStatementMisses());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("The pool only hands out connections for its configured user.");
+    }
+
+    @Override
+    public PrintWriter getLogWriter() {
+        return null;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) {
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) {
+    }
+
+    @Override
+    public int getLoginTimeout() {
+        return 0;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("Not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+
+    /**
+     * One physical connection plus the proxy handed to borrowers. Closing the proxy returns the
+     * physical connection to the pool; any other call after that fails as on a closed connection.
+     */
+    private class PooledConnection implements InvocationHandler {
+        final Connection physical;
+        final Connection proxy;
+        volatile long borrowedAt;
+        long borrowStartedNanos;
+        volatile long lastReturnedAt = System.currentTimeMillis();
+        volatile Exception borrowSite;
+        volatile boolean returned = true;
+
+        // Only touched by the borrower; handing the connection over through the pool orders the accesses
+        private final LinkedHashMap<String, CachedStatement> statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                if (size() <= statementCacheSize) {
+                    return false;
+                }
+                eldest.getValue().evict();
+                return true;
+            }
+        };
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+            this.proxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[] {Connection.class}, this);
+        }
+
+        /**
+         * The cached statement for {@code sql}, preparing it on first use. A statement the
+         * borrower still has open is not handed out twice; the second caller gets its own.
+         */
+        private PreparedStatement prepareCached(String sql, int autoGeneratedKeys) throws SQLException {
+            String key = autoGeneratedKeys + ":" + sql;
+            CachedStatement cached = statements.get(key);
+            if (cached != null && !cached.inUse) {
+                statementHits.increment();
+                cached.inUse = true;
+                return cached.proxy;
+            }
+            statementMisses.increment();
+            PreparedStatement stmt = physical.prepareStatement(sql, autoGeneratedKeys);
+            if (cached != null) {
+                return stmt;
+            }
+            cached = new CachedStatement(stmt);
+            cached.inUse = true;
+            statements.put(key, cached);
+            return cached.proxy;
+        }
+
+        /** Makes statements a careless borrower left open available to the next one. */
+        void releaseStatements() {
+            // A copy: releasing a broken statement removes it from the cache
+            for (CachedStatement cached : new ArrayList<>(statements.values())) {
+                if (cached.inUse) {
+                    cached.release();
+                }
+            }
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!returned) {
+                        returned = true;
+                        giveBack(this);
+                    }
+                    return null;
+                case "isClosed":
+                    return returned || physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled[" + physical + "]";
+                default:
+                    break;
+            }
+
+            if (returned) {
+                throw new SQLException("Connection has already been returned to the pool.");
+            }
+            if (statementCacheSize > 0 && method.getName().equals("prepareStatement")
+                    && (args.length == 1 || args.length == 2 && args[1] instanceof Integer)) {
+                return prepareCached((String) args[0], args.length == 2 ? (Integer) args[1] : Statement.NO_GENERATED_KEYS);
+            }
+            try {
+                return method.invoke(physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        /**
+         * A statement kept prepared on this connection. Closing the proxy the borrower holds
+         * resets the statement for the next use instead of closing it.
+         */
+        private class CachedStatement implements InvocationHandler {
+            final PreparedStatement physicalStatement;
+            final PreparedStatement proxy;
+            boolean inUse;
+            boolean evicted;
+
+            CachedStatement(PreparedStatement physicalStatement) {
+                this.physicalStatement = physicalStatement;
+                this.proxy = (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                        new Class<?>[] {PreparedStatement.class}, this);
+            }
+
+            void evict() {
+                evicted = true;
+                if (!inUse) {
+                    closeQuietly();
+                }
+            }
+
+            void release() {
+                inUse = false;
+                if (evicted) {
+                    closeQuietly();
+                    return;
+                }
+                try {
+                    // Settings a borrower changed must not carry over to the next one
+                    physicalStatement.clearParameters();
+                    physicalStatement.clearBatch();
+                    physicalStatement.clearWarnings();
+                    physicalStatement.setMaxRows(0);
+                    physicalStatement.setFetchSize(0);
+                    physicalStatement.setQueryTimeout(0);
+                } catch (SQLException e) {
+                    // The statement is broken; drop it so the SQL is prepared afresh next time
+                    statements.values().remove(this);
+                    closeQuietly();
+                }
+            }
+
+            private void closeQuietly() {
+                try {
+                    physicalStatement.close();
+                } catch (SQLException e) {
+                    // Nothing left to clean up
+                }
+            }
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "close":
+                        if (inUse) {
+                            release();
+                        }
+                        return null;
+                    case "isClosed":
+                        return !inUse || physicalStatement.isClosed();
+                    case "getConnection":
+                        return PooledConnection.this.proxy;
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "toString":
+                        return "Cached[" + physicalStatement + "]";
+                    default:
+                        break;
+                }
+
+                if (!inUse) {
+                    throw new SQLException("Statement has already been closed.");
+                }
+                try {
+                    return method.invoke(physicalStatement, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-size direct buffers for socket I/O. Direct buffers are expensive to allocate and are
+ * only freed by the garbage collector, so they are recycled here instead. At most
+ * {@code maxPooled} buffers are kept; extra buffers handed back are left to the collector.
+ */
+class DirectBufferPool {
+    private final int bufferSize;
+    private final int maxPooled;
+    // LIFO so the most recently used, likely still cached, buffer is handed out first
+    private final ConcurrentLinkedDeque<ByteBuffer> free = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger freeCount = new AtomicInteger();
+
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder allocations = new LongAdder();
+
+    DirectBufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+    }
+
+    /** Returns a cleared buffer of {@link #getBufferSize()} bytes. */
+    ByteBuffer acquire() {
+        acquisitions.increment();
+        ByteBuffer buffer = free.pollFirst();
+        if (buffer == null) {
+            allocations.increment();
+            return ByteBuffer.allocateDirect(bufferSize);
+        }
+        freeCount.decrementAndGet();
+        return buffer.clear();
+    }
+
+    void release(ByteBuffer buffer) {
+        if (freeCount.incrementAndGet() <= maxPooled) {
+            free.offerFirst(buffer);
+        } else {
+            freeCount.decrementAndGet();
+        }
+    }
+
+    int getBufferSize() {
+        return bufferSize;
+    }
+
+    String describe() {
+        return String.format("buffers size=%d free=%d acquisitions=%d allocations=%d",
+                bufferSize, freeCount.get(), acquisitions.sum(), allocations.sum());
+    }
+}
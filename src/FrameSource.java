@@ -0,0 +1,10 @@
+import java.io.IOException;
+
+/**
+ * The follow-up frames of a request that spans several frames, such as a bulk insert whose
+ * rows arrive after the opening request.
+ */
+@FunctionalInterface
+interface FrameSource {
+    WireProtocol.Frame next() throws IOException;
+}
@@ -0,0 +1,224 @@
+import javax.sql.DataSource;
+import java.io.InterruptedIOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+
+/**
+ * Group commit for single-row inserts. Callers hand in their row and wait; a writer thread
+ * gathers the rows that arrive within {@code maxDelayMillis} of the first one (or until
+ * {@code maxRows} are waiting), inserts them as one JDBC batch per statement, which the driver
+ * rewrites into multi-row INSERTs, and commits them in a single transaction. Each caller gets its
+ * generated id only after that commit, so an acknowledged row is durable; the database syncs its
+ * log once per group instead of once per row.
+ *
+ * <p>If the batch fails, the group is rolled back and its rows are inserted one at a time in a
+ * new attempt, so one bad row fails only its own caller.
+ */
+class GroupCommitWriter {
+    private final DataSource dataSource;
+    private final long maxDelayNanos;
+    private final int maxRows;
+    private final LinkedBlockingQueue<PendingInsert> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private volatile boolean stopping;
+
+    private final LongAdder groups = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder failedRows = new LongAdder();
+
+    GroupCommitWriter(DataSource dataSource, long maxDelayMillis, int maxRows) {
+        this.dataSource = dataSource;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.maxRows = maxRows;
+        // A platform thread: the driver blocks inside synchronized code, which would pin a virtual one
+        this.writer = Thread.ofPlatform().name("group-commit").daemon(true).unstarted(this::run);
+        writer.start();
+    }
+
+    /**
+     * Queues a row for {@code sql}, an INSERT with one placeholder per value, and waits for its
+     * group to commit. {@code onCommitted} runs on the writer thread with the generated id after
+     * the commit and before this returns the id.
+     */
+    int insert(String sql, Object[] values, IntConsumer onCommitted) throws SQLException, InterruptedIOException {
+        PendingInsert pending = new PendingInsert(sql, values, onCommitted);
+        queue.add(pending);
+        if (stopping && queue.remove(pending)) {
+            throw new SQLException("Server is shutting down.");
+        }
+        try {
+            return pending.result.get();
+        } catch (InterruptedException e) {
+            // The row may still be committed; the caller just will not hear about it
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the insert to commit.");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof SQLException sqlError ? sqlError : new SQLException(e.getCause());
+        }
+    }
+
+    /** Commits what is already queued, then stops the writer. */
+    void shutdown() {
+        stopping = true;
+        writer.interrupt();
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    String describe() {
+        long groupCount = groups.sum();
+        long rowCount = rows.sum();
+        return String.format("group commit groups=%d rows=%d failed=%d avgRowsPerGroup=%.1f",
+                groupCount, rowCount, failedRows.sum(), groupCount == 0 ? 0.0 : (double) rowCount / groupCount);
+    }
+
+    private void run() {
+        List<PendingInsert> group = new ArrayList<>();
+        while (true) {
+            try {
+                group.add(queue.take());
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (group.size() < maxRows) {
+                    PendingInsert next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    group.add(next);
+                }
+            } catch (InterruptedException e) {
+                // Shutting down: whatever made it into the queue still gets committed
+                queue.drainTo(group);
+                if (!group.isEmpty()) {
+                    commit(group);
+                }
+                return;
+            }
+            commit(group);
+            group.clear();
+        }
+    }
+
+    private void commit(List<PendingInsert> group) {
+        // Keep each statement's rows together so they batch, in arrival order otherwise
+        Map<String, List<PendingInsert>> byStatement = new LinkedHashMap<>();
+        for (PendingInsert pending : group) {
+            byStatement.computeIfAbsent(pending.sql, sql -> new ArrayList<>()).add(pending);
+        }
+
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                for (Map.Entry<String, List<PendingInsert>> statement : byStatement.entrySet()) {
+                    insertBatch(connection, statement.getKey(), statement.getValue());
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                for (Map.Entry<String, List<PendingInsert>> statement : byStatement.entrySet()) {
+                    insertIndividually(connection, statement.getKey(), statement.getValue());
+                }
+                connection.commit();
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            for (PendingInsert pending : group) {
+                pending.id = 0;
+                pending.error = e;
+            }
+        }
+
+        groups.increment();
+        for (PendingInsert pending : group) {
+            if (pending.error != null) {
+                failedRows.increment();
+                pending.result.completeExceptionally(pending.error);
+                continue;
+            }
+            rows.increment();
+            try {
+                pending.onCommitted.accept(pending.id);
+            } catch (RuntimeException e) {
+                // Already committed, the caller still gets its id
+                e.printStackTrace();
+            }
+            pending.result.complete(pending.id);
+        }
+    }
+
+    private static void insertBatch(Connection connection, String sql, List<PendingInsert> batch) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            for (PendingInsert pending : batch) {
+                pending.bind(stmt);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+            try (ResultSet keys = stmt.getGeneratedKeys()) {
+                for (PendingInsert pending : batch) {
+                    if (!keys.next()) {
+                        throw new SQLException("Fewer generated keys than inserted rows.");
+                    }
+                    pending.id = keys.getInt(1);
+                }
+            }
+        }
+    }
+
+    private static void insertIndividually(Connection connection, String sql, List<PendingInsert> batch)
+            throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            for (PendingInsert pending : batch) {
+                pending.id = 0;
+                try {
+                    pending.bind(stmt);
+                    stmt.executeUpdate();
+                    try (ResultSet keys = stmt.getGeneratedKeys()) {
+                        if (keys.next()) {
+                            pending.id = keys.getInt(1);
+                        } else {
+                            pending.error = new SQLException("No generated key returned.");
+                        }
+                    }
+                } catch (SQLException e) {
+                    pending.error = e;
+                }
+            }
+        }
+    }
+
+    private static final class PendingInsert {
+        final String sql;
+        final Object[] values;
+        final IntConsumer onCommitted;
+        final CompletableFuture<Integer> result = new CompletableFuture<>();
+        int id;
+        SQLException error;
+
+        PendingInsert(String sql, Object[] values, IntConsumer onCommitted) {
+            this.sql = sql;
+            this.values = values;
+            this.onCommitted = onCommitted;
+        }
+
+        void bind(PreparedStatement stmt) throws SQLException {
+            for (int i = 0; i < values.length; i++) {
+                stmt.setObject(i + 1, values[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,556 @@
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.math.BigDecimal;
+import java.util.Iterator;
+
+/**
+ * Client side of the binary {@link WireProtocol}. Calls share one long-lived, pipelined
+ * {@link ClientSession}, so they can be made from several threads at once and do not pay for a
+ * new connection and handshake each time. Calls block until their reply (or, for streams, every
+ * chunk) has been read, so keep them off the Swing event thread.
+ */
+class InventoryClient implements AutoCloseable {
+    // Rows per BULK_ROWS frame; independent of the server's commit chunk size
+    private static final int BULK_FRAME_ROWS = 1000;
+    private static final int IMPORT_FRAME_BYTES = 64 * 1024;
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+    private static final long HEARTBEAT_MILLIS = 15000;
+
+    private final ClientSession session;
+
+    InventoryClient(String serverAddress, int serverPort) {
+        this.session = new ClientSession(serverAddress, serverPort, CONNECT_TIMEOUT_MILLIS, HEARTBEAT_MILLIS);
+    }
+
+    /** Closes the connection to the server; calls still running fail. */
+    @Override
+    public void close() {
+        session.close();
+    }
+
+    String addCategory(String name) throws IOException {
+        return message(call(WireProtocol.ADD_CATEGORY, new WireProtocol.PayloadBuilder().string(name)));
+    }
+
+    String addSupplier(String name, String contact) throws IOException {
+        return message(call(WireProtocol.ADD_SUPPLIER, new WireProtocol.PayloadBuilder().string(name).string(contact)));
+    }
+
+    String addProduct(String name, int categoryId, int supplierId, BigDecimal price) throws IOException {
+        return message(call(WireProtocol.ADD_PRODUCT, new WireProtocol.PayloadBuilder()
+                .string(name)
+                .varInt(categoryId)
+                .varInt(supplierId)
+                .decimal(price, WireProtocol.PRICE_SCALE)));
+    }
+
+    /** Adds {@code delta} (negative to take stock away) to a product's quantity on hand. */
+    StockLevel adjustStock(int productId, long delta) throws IOException {
+        WireProtocol.PayloadBuilder payload = new WireProtocol.PayloadBuilder().varInt(productId);
+        WireProtocol.writeSignedVarLong(payload, delta);
+        return stockLevel(call(WireProtocol.ADJUST_STOCK, payload));
+    }
+
+    /** Sets {@code quantity} of a product aside; fails if that much is not available. */
+    StockLevel reserveStock(int productId, long quantity) throws IOException {
+        WireProtocol.PayloadBuilder payload = new WireProtocol.PayloadBuilder().varInt(productId);
+        WireProtocol.writeVarLong(payload, quantity);
+        return stockLevel(call(WireProtocol.RESERVE_STOCK, payload));
+    }
+
+    /** Gives back {@code quantity} of an earlier reservation. */
+    StockLevel releaseStock(int productId, long quantity) throws IOException {
+        WireProtocol.PayloadBuilder payload = new WireProtocol.PayloadBuilder().varInt(productId);
+        WireProtocol.writeVarLong(payload, quantity);
+        return stockLevel(call(WireProtocol.RELEASE_STOCK, payload));
+    }
+
+    ResultTable viewProducts() throws IOException {
+        return table(call(WireProtocol.VIEW_PRODUCTS, new WireProtocol.PayloadBuilder()));
+    }
+
+    ResultTable viewCategories() throws IOException {
+        return table(call(WireProtocol.VIEW_CATEGORIES, new WireProtocol.PayloadBuilder()));
+    }
+
+    ResultTable viewSuppliers() throws IOException {
+        return table(call(WireProtocol.VIEW_SUPPLIERS, new WireProtocol.PayloadBuilder()));
+    }
+
+    /** Fetches the products with an id greater than {@code afterId}, at most {@code pageSize} of them. */
+    Page viewProductsPage(int pageSize, int afterId) throws IOException {
+        WireProtocol.Frame reply = call(WireProtocol.VIEW_PRODUCTS_PAGE,
+                new WireProtocol.PayloadBuilder().varInt(pageSize).varInt(afterId));
+        if (reply.type != WireProtocol.PAGE) {
+            throw new IOException("Unexpected response format from server.");
+        }
+        DataInputStream payload = reply.reader();
+        boolean hasMore = payload.read() == 1;
+        int nextAfterId = WireProtocol.readVarInt(payload);
+        return new Page(ResultTable.readFrom(payload), hasMore, nextAfterId);
+    }
+
+    long countProducts() throws IOException {
+        WireProtocol.Frame reply = call(WireProtocol.COUNT_PRODUCTS, new WireProtocol.PayloadBuilder());
+        if (reply.type != WireProtocol.COUNT) {
+            throw new IOException("Unexpected response format from server.");
+        }
+        return WireProtocol.readVarLong(reply.reader());
+    }
+
+    /** Fetches at most {@code limit} products starting at position {@code offset} in id order. */
+    Window viewProductsWindow(int offset, int limit) throws IOException {
+        WireProtocol.Frame reply = call(WireProtocol.VIEW_PRODUCTS_WINDOW,
+                new WireProtocol.PayloadBuilder().varInt(offset).varInt(limit));
+        if (reply.type != WireProtocol.WINDOW) {
+            throw new IOException("Unexpected response format from server.");
+        }
+        DataInputStream payload = reply.reader();
+        int totalRows = WireProtocol.readVarInt(payload);
+        return new Window(ResultTable.readFrom(payload), totalRows);
+    }
+
+    /** Runs a product search on the server; only matching rows, at most the query's limit, come back. */
+    ResultTable queryProducts(ProductQuery query) throws IOException {
+        WireProtocol.PayloadBuilder payload = new WireProtocol.PayloadBuilder();
+        query.writeTo(payload);
+        return table(call(WireProtocol.QUERY_PRODUCTS, payload));
+    }
+
+    /**
+     * Looks products up by name, ignoring case: names starting with {@code text}, in name order,
+     * or with {@code substring} names containing it. The table holds ids and names only.
+     */
+    ResultTable searchProductNames(String text, boolean substring, int limit) throws IOException {
+        WireProtocol.PayloadBuilder payload = new WireProtocol.PayloadBuilder();
+        payload.write(substring ? 1 : 0);
+        payload.string(text).varInt(limit);
+        return table(call(WireProtocol.SEARCH_PRODUCT_NAMES, payload));
+    }
+
+    /** Has the server rebuild its product name index from the database; returns its summary. */
+    String rebuildNameIndex() throws IOException {
+        return message(call(WireProtocol.REBUILD_NAME_INDEX, new WireProtocol.PayloadBuilder()));
+    }
+
+    /**
+     * Streams every product, handing each chunk to {@code onChunk} as soon as it arrives.
+     * Returns the total number of rows received.
+     */
+    long streamProducts(int chunkSize, ChunkListener onChunk) throws IOException {
+        return exchange(WireProtocol.VIEW_PRODUCTS_STREAM, new WireProtocol.PayloadBuilder().varInt(chunkSize), call -> {
+            while (true) {
+                WireProtocol.Frame frame = checked(call.next());
+                if (frame.type == WireProtocol.END_OF_STREAM) {
+                    return WireProtocol.readVarLong(frame.reader());
+                }
+                if (frame.type != WireProtocol.CHUNK) {
+                    throw new IOException("Unexpected response format from server.");
+                }
+                onChunk.onChunk(ResultTable.readFrom(frame.reader()));
+            }
+        });
+    }
+
+    /**
+     * Uploads products (their ids are ignored) for a bulk insert committed every {@code chunkSize}
+     * rows. Each chunk's outcome goes to {@code listener} while the upload is still running.
+     * Returns the server's summary message.
+     */
+    String addProductsBulk(Iterator<Product> products, int chunkSize, ChunkResultListener listener)
+            throws IOException {
+        return exchange(WireProtocol.ADD_PRODUCTS_BULK, new WireProtocol.PayloadBuilder().varInt(chunkSize), call -> {
+            // Upload on another thread so chunk results are read as they come instead of piling up
+            IOException[] uploadError = new IOException[1];
+            Thread upload = startUpload(() -> sendBulkRows(products, call), call, uploadError);
+
+            try {
+                while (true) {
+                    WireProtocol.Frame frame = checked(call.next());
+                    if (frame.type == WireProtocol.MESSAGE) {
+                        return WireProtocol.readString(frame.reader());
+                    }
+                    if (frame.type != WireProtocol.CHUNK_RESULT) {
+                        throw new IOException("Unexpected response from server.");
+                    }
+                    listener.onChunkResult(readChunkResult(frame.reader()));
+                }
+            } catch (IOException e) {
+                joinQuietly(upload);
+                throw uploadError[0] != null ? uploadError[0] : e;
+            }
+        });
+    }
+
+    /**
+     * Uploads a CSV (or, with {@code tsv}, tab-separated) product file for the server to load with
+     * LOAD DATA. Records are name, category id, supplier id and price; rejected records are
+     * skipped and listed in the returned summary. {@code listener} sees the server's progress.
+     */
+    String importProducts(InputStream file, boolean tsv, boolean hasHeader, ProgressListener listener)
+            throws IOException {
+        WireProtocol.PayloadBuilder request = new WireProtocol.PayloadBuilder();
+        request.write(tsv ? 1 : 0);
+        request.write(hasHeader ? 1 : 0);
+        return exchange(WireProtocol.IMPORT_PRODUCTS, request, call -> {
+            IOException[] uploadError = new IOException[1];
+            Thread upload = startUpload(() -> sendImportData(file, call), call, uploadError);
+
+            try {
+                while (true) {
+                    WireProtocol.Frame frame = checked(call.next());
+                    if (frame.type == WireProtocol.MESSAGE) {
+                        return WireProtocol.readString(frame.reader());
+                    }
+                    if (frame.type != WireProtocol.PROGRESS) {
+                        throw new IOException("Unexpected response from server.");
+                    }
+                    DataInputStream payload = frame.reader();
+                    listener.onProgress(WireProtocol.readVarLong(payload), WireProtocol.readVarLong(payload),
+                            WireProtocol.readVarLong(payload));
+                }
+            } catch (IOException e) {
+                joinQuietly(upload);
+                throw uploadError[0] != null ? uploadError[0] : e;
+            }
+        });
+    }
+
+    /**
+     * Follows the server's changes after {@code afterVersion}, as seen by {@code listener}, until
+     * the returned subscription is closed. Pass 0, or a version from an earlier subscription, to be
+     * told to resync first. The listener is called on a thread of its own, one change at a time
+     * in version order; a resync means changes were missed and everything should be reloaded.
+     */
+    Subscription subscribe(long afterVersion, ChangeListener listener) throws IOException {
+        WireProtocol.PayloadBuilder payload = new WireProtocol.PayloadBuilder();
+        WireProtocol.writeVarLong(payload, afterVersion);
+        ClientSession.Call call = session.start(WireProtocol.SUBSCRIBE, payload);
+        Thread reader = Thread.ofVirtual().name("feed-reader").start(() -> {
+            IOException error = null;
+            try (call) {
+                while (true) {
+                    WireProtocol.Frame frame = checked(call.next());
+                    if (frame.type == WireProtocol.MESSAGE) {
+                        break;
+                    }
+                    readFeedFrame(frame, listener);
+                }
+            } catch (IOException e) {
+                error = e;
+            } catch (RuntimeException e) {
+                error = new IOException(e);
+            }
+            listener.onClosed(error);
+        });
+        return new Subscription(call, reader);
+    }
+
+    private static void readFeedFrame(WireProtocol.Frame frame, ChangeListener listener) throws IOException {
+        DataInputStream payload = frame.reader();
+        if (frame.type == WireProtocol.FEED_RESYNC) {
+            listener.onResync(WireProtocol.readVarLong(payload));
+            return;
+        }
+        if (frame.type != WireProtocol.FEED_CHANGES) {
+            throw new IOException("Unexpected response from server.");
+        }
+        long version = WireProtocol.readVarLong(payload);
+        int count = WireProtocol.readVarInt(payload);
+        for (int i = 0; i < count; i++, version++) {
+            int kind = payload.read();
+            switch (kind) {
+                case WireProtocol.CATEGORY_ADDED:
+                    listener.onCategoryAdded(version,
+                            new Category(WireProtocol.readVarInt(payload), WireProtocol.readString(payload)));
+                    break;
+                case WireProtocol.SUPPLIER_ADDED:
+                    listener.onSupplierAdded(version, new Supplier(WireProtocol.readVarInt(payload),
+                            WireProtocol.readString(payload), WireProtocol.readString(payload)));
+                    break;
+                case WireProtocol.PRODUCT_ADDED:
+                    listener.onProductAdded(version, new Product(WireProtocol.readVarInt(payload),
+                            WireProtocol.readString(payload), WireProtocol.readVarInt(payload),
+                            WireProtocol.readVarInt(payload),
+                            WireProtocol.readDecimal(payload, WireProtocol.PRICE_SCALE)));
+                    break;
+                case WireProtocol.STOCK_CHANGED:
+                    listener.onStockChanged(version, WireProtocol.readVarInt(payload),
+                            WireProtocol.readSignedVarLong(payload), WireProtocol.readSignedVarLong(payload));
+                    break;
+                default:
+                    throw new IOException("Unknown change kind " + kind + " from server.");
+            }
+        }
+    }
+
+    private static void sendImportData(InputStream file, ClientSession.Call call) throws IOException {
+        byte[] buffer = new byte[IMPORT_FRAME_BYTES];
+        int read;
+        while ((read = file.readNBytes(buffer, 0, buffer.length)) > 0) {
+            call.send(WireProtocol.IMPORT_DATA, buffer, read, false);
+        }
+        call.send(WireProtocol.IMPORT_END, new byte[0], 0, true);
+    }
+
+    /**
+     * Runs {@code upload} on a virtual thread. If it fails, the error is left in
+     * {@code uploadError} and the connection is aborted: the server would otherwise wait for the
+     * rest of the upload, and the reader waiting on the reply gives up.
+     */
+    private static Thread startUpload(Upload upload, ClientSession.Call call, IOException[] uploadError) {
+        return Thread.ofVirtual().start(() -> {
+            try {
+                upload.run();
+            } catch (IOException | RuntimeException e) {
+                uploadError[0] = e instanceof IOException io ? io : new IOException(e);
+                call.abort(uploadError[0]);
+            }
+        });
+    }
+
+    private static void sendBulkRows(Iterator<Product> products, ClientSession.Call call) throws IOException {
+        ResultTable batch = new ResultTable(
+                new String[] {"name", "category_id", "supplier_id", "price"},
+                new byte[] {ResultTable.STRING, ResultTable.INT, ResultTable.INT, ResultTable.DECIMAL});
+        while (products.hasNext()) {
+            Product product = products.next();
+            batch.addRow(product.getName(), product.getCategoryId(), product.getSupplierId(), product.getPrice());
+            if (batch.getRowCount() == BULK_FRAME_ROWS || !products.hasNext()) {
+                WireProtocol.PayloadBuilder payload = new WireProtocol.PayloadBuilder();
+                batch.writeTo(payload);
+                call.send(WireProtocol.BULK_ROWS, payload, false);
+                batch.clear();
+            }
+        }
+        call.send(WireProtocol.BULK_END, new byte[0], 0, true);
+    }
+
+    private static ChunkResult readChunkResult(DataInputStream payload) throws IOException {
+        int firstRow = WireProtocol.readVarInt(payload);
+        int[] insertedIds = new int[WireProtocol.readVarInt(payload)];
+        for (int i = 0; i < insertedIds.length; i++) {
+            insertedIds[i] = WireProtocol.readVarInt(payload);
+        }
+        int errorCount = WireProtocol.readVarInt(payload);
+        int[] errorRows = new int[errorCount];
+        String[] errorReasons = new String[errorCount];
+        for (int i = 0; i < errorCount; i++) {
+            errorRows[i] = WireProtocol.readVarInt(payload);
+            errorReasons[i] = WireProtocol.readString(payload);
+        }
+        return new ChunkResult(firstRow, insertedIds, errorRows, errorReasons);
+    }
+
+    private static void joinQuietly(Thread thread) {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private WireProtocol.Frame call(byte opcode, WireProtocol.PayloadBuilder payload) throws IOException {
+        return exchange(opcode, payload, call -> checked(call.next()));
+    }
+
+    /**
+     * Sends a request and reads its replies. A read-only request whose connection dropped before
+     * any reply came is sent once more on a fresh connection; anything else is reported, since
+     * the server may already have acted on it.
+     */
+    private <T> T exchange(byte opcode, WireProtocol.PayloadBuilder payload, ReplyReader<T> replyReader)
+            throws IOException {
+        boolean retried = false;
+        while (true) {
+            ClientSession.Call call = session.start(opcode, payload);
+            try (call) {
+                return replyReader.read(call);
+            } catch (ServerException | InterruptedIOException e) {
+                throw e;
+            } catch (IOException e) {
+                if (retried || !isReadOnly(opcode) || call.hasReplies()) {
+                    throw e;
+                }
+                retried = true;
+            }
+        }
+    }
+
+    private static boolean isReadOnly(byte opcode) {
+        return opcode == WireProtocol.VIEW_PRODUCTS || opcode == WireProtocol.VIEW_CATEGORIES
+                || opcode == WireProtocol.VIEW_SUPPLIERS || opcode == WireProtocol.VIEW_PRODUCTS_PAGE
+                || opcode == WireProtocol.VIEW_PRODUCTS_STREAM || opcode == WireProtocol.COUNT_PRODUCTS
+                || opcode == WireProtocol.VIEW_PRODUCTS_WINDOW || opcode == WireProtocol.QUERY_PRODUCTS
+                || opcode == WireProtocol.SEARCH_PRODUCT_NAMES;
+    }
+
+    private static WireProtocol.Frame checked(WireProtocol.Frame reply) throws IOException {
+        if (reply.type == WireProtocol.ERROR) {
+            throw new ServerException(WireProtocol.readString(reply.reader()));
+        }
+        return reply;
+    }
+
+    private static String message(WireProtocol.Frame reply) throws IOException {
+        if (reply.type != WireProtocol.MESSAGE) {
+            throw new IOException("Unexpected response from server.");
+        }
+        return WireProtocol.readString(reply.reader());
+    }
+
+    private static ResultTable table(WireProtocol.Frame reply) throws IOException {
+        if (reply.type != WireProtocol.TABLE) {
+            throw new IOException("Unexpected response format from server.");
+        }
+        return ResultTable.readFrom(reply.reader());
+    }
+
+    private static StockLevel stockLevel(WireProtocol.Frame reply) throws IOException {
+        if (reply.type != WireProtocol.STOCK_LEVEL) {
+            throw new IOException("Unexpected response format from server.");
+        }
+        DataInputStream payload = reply.reader();
+        return new StockLevel(WireProtocol.readVarInt(payload), WireProtocol.readSignedVarLong(payload),
+                WireProtocol.readVarLong(payload));
+    }
+
+    /** An error message sent back by the server, as opposed to a communication failure. */
+    static class ServerException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        ServerException(String message) {
+            super(message);
+        }
+    }
+
+    /** One page of products and the cursor to pass back for the next one. */
+    static class Page {
+        final ResultTable rows;
+        final boolean hasMore;
+        final int nextAfterId;
+
+        Page(ResultTable rows, boolean hasMore, int nextAfterId) {
+            this.rows = rows;
+            this.hasMore = hasMore;
+            this.nextAfterId = nextAfterId;
+        }
+    }
+
+    /** Products read by position, and how many products the server had at the time. */
+    static class Window {
+        final ResultTable rows;
+        final int totalRows;
+
+        Window(ResultTable rows, int totalRows) {
+            this.rows = rows;
+            this.totalRows = totalRows;
+        }
+    }
+
+    /** A product's stock after a change. */
+    static class StockLevel {
+        final int productId;
+        final long onHand;
+        final long reserved;
+
+        StockLevel(int productId, long onHand, long reserved) {
+            this.productId = productId;
+            this.onHand = onHand;
+            this.reserved = reserved;
+        }
+
+        long available() {
+            return onHand - reserved;
+        }
+    }
+
+    /** Outcome of one committed chunk of a bulk insert, see {@link ResponseWriter#chunkResult}. */
+    static class ChunkResult {
+        final int firstRow;
+        final int[] insertedIds;
+        final int[] errorRows;
+        final String[] errorReasons;
+
+        ChunkResult(int firstRow, int[] insertedIds, int[] errorRows, String[] errorReasons) {
+            this.firstRow = firstRow;
+            this.insertedIds = insertedIds;
+            this.errorRows = errorRows;
+            this.errorReasons = errorReasons;
+        }
+    }
+
+    /** A running {@link #subscribe} call. */
+    static class Subscription implements AutoCloseable {
+        private final ClientSession.Call call;
+        private final Thread reader;
+
+        Subscription(ClientSession.Call call, Thread reader) {
+            this.call = call;
+            this.reader = reader;
+        }
+
+        /** Asks the server to stop sending changes and waits for the last of them to be handled. */
+        @Override
+        public void close() {
+            try {
+                call.send(WireProtocol.UNSUBSCRIBE, new WireProtocol.PayloadBuilder(), true);
+            } catch (IOException e) {
+                // Connection already gone, the reader has finished or will on its own
+            }
+            if (Thread.currentThread() != reader) {
+                joinQuietly(reader);
+            }
+        }
+    }
+
+    /** Receives a subscription's changes; each change comes with its version. */
+    interface ChangeListener {
+        /** Changes were missed: reload everything, the changes after {@code version} follow. */
+        default void onResync(long version) {
+        }
+
+        default void onCategoryAdded(long version, Category category) {
+        }
+
+        default void onSupplierAdded(long version, Supplier supplier) {
+        }
+
+        default void onProductAdded(long version, Product product) {
+        }
+
+        default void onStockChanged(long version, int productId, long onHandDelta, long reservedDelta) {
+        }
+
+        /** The subscription ended, with {@code error} null if it was closed. */
+        default void onClosed(IOException error) {
+        }
+    }
+
+    @FunctionalInterface
+    interface ChunkResultListener {
+        void onChunkResult(ChunkResult result) throws IOException;
+    }
+
+    @FunctionalInterface
+    interface ProgressListener {
+        void onProgress(long bytesRead, long rowsAccepted, long rowsRejected);
+    }
+
+    @FunctionalInterface
+    interface ChunkListener {
+        void onChunk(ResultTable rows) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface Upload {
+        void run() throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface ReplyReader<T> {
+        T read(ClientSession.Call call) throws IOException;
+    }
+}
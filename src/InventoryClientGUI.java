@@ -2,8 +2,13 @@ import javax.swing.*;
 import javax.swing.table.DefaultTableModel;
 import javax.swing.table.JTableHeader;
 import java.awt.*;
-import java.io.*;
-import java.net.Socket;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 public class InventoryClientGUI {
     private JFrame frame;
@@ -11,10 +16,42 @@ public class InventoryClientGUI {
     private DefaultTableModel tableModel;
     private String serverAddress = "localhost";
     private int serverPort = 6090;
+    private final InventoryClient client = new InventoryClient(serverAddress, serverPort);
+    // The worker filling the table, cancelled when another view replaces it
+    private SwingWorker<?, ?> tableLoad;
+    private final ProductTableModel productModel;
+    // Columns of the view in tableModel, to tell which one the feed's changes belong in
+    private String[] shownColumns;
+    // Last change applied from the feed, to carry on from after resubscribing
+    private long feedVersion;
+    private boolean closing;
+
+    private static final int PRODUCT_PAGE_SIZE = 500;
+    private static final int MAX_CACHED_PRODUCT_PAGES = 40;
+    private static final int SEARCH_LIMIT = 1000;
+    private static final int LOOKUP_LIMIT = 200;
+    // Typing pause before the lookup box asks the server
+    private static final int LOOKUP_DELAY_MS = 150;
+    // Wait before following the server's changes again after losing them
+    private static final int RESUBSCRIBE_DELAY_MS = 5000;
+
+    private static final String[] PRODUCT_COLUMNS = {"Product ID", "Product Name", "Category ID", "Supplier ID", "Price"};
+    private static final String[] LOOKUP_COLUMNS = {"Product ID", "Product Name"};
+    private static final String[] CATEGORY_COLUMNS = {"Category ID", "Category Name"};
+    private static final String[] SUPPLIER_COLUMNS = {"Supplier ID", "Supplier Name", "Contact"};
 
     public InventoryClientGUI() {
         frame = new JFrame("Inventory Management System - Client");
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        frame.addWindowListener(new java.awt.event.WindowAdapter() {
+            @Override
+            public void windowClosing(java.awt.event.WindowEvent e) {
+                // Closing the client ends the subscription too, without waiting on the server
+                closing = true;
+                productModel.close();
+                client.close();
+            }
+        });
         frame.setSize(900, 700);
 
 
@@ -37,7 +74,9 @@ public class InventoryClientGUI {
         JButton addCategoryButton = createStyledButton("Add Category");
         JButton addSupplierButton = createStyledButton("Add Supplier");
         JButton addProductButton = createStyledButton("Add Product");
+        JButton importProductsButton = createStyledButton("Import Products");
         JButton viewProductsButton = createStyledButton("View Products");
+        JButton searchProductsButton = createStyledButton("Search Products");
         JButton viewCategoriesButton = createStyledButton("View Categories");
         JButton viewSuppliersButton = createStyledButton("View Suppliers");
 
@@ -47,8 +86,12 @@ public class InventoryClientGUI {
         buttonPanel.add(Box.createRigidArea(new Dimension(0, 10)));
         buttonPanel.add(addProductButton);
         buttonPanel.add(Box.createRigidArea(new Dimension(0, 10)));
+        buttonPanel.add(importProductsButton);
+        buttonPanel.add(Box.createRigidArea(new Dimension(0, 10)));
         buttonPanel.add(viewProductsButton);
         buttonPanel.add(Box.createRigidArea(new Dimension(0, 10)));
+        buttonPanel.add(searchProductsButton);
+        buttonPanel.add(Box.createRigidArea(new Dimension(0, 10)));
         buttonPanel.add(viewCategoriesButton);
         buttonPanel.add(Box.createRigidArea(new Dimension(0, 10)));
         buttonPanel.add(viewSuppliersButton);
@@ -57,6 +100,7 @@ public class InventoryClientGUI {
 
         // Table setup with modern styling
         tableModel = new DefaultTableModel(new String[]{}, 0);
+        productModel = new ProductTableModel(client, PRODUCT_PAGE_SIZE, MAX_CACHED_PRODUCT_PAGES, this::showError);
         table = new JTable(tableModel);
         table.setRowHeight(35);
         table.setIntercellSpacing(new Dimension(5, 5));
@@ -73,13 +117,47 @@ public class InventoryClientGUI {
         JScrollPane tableScrollPane = new JScrollPane(table);
         panel.add(tableScrollPane, BorderLayout.CENTER);
 
+        // Lookup box: shows products whose name contains what has been typed so far
+        JPanel lookupPanel = new JPanel(new BorderLayout(10, 0));
+        lookupPanel.setBackground(new Color(93, 46, 72));
+        JLabel lookupLabel = new JLabel("Lookup product name:");
+        lookupLabel.setForeground(Color.WHITE);
+        JTextField lookupField = new JTextField();
+        lookupPanel.add(lookupLabel, BorderLayout.WEST);
+        lookupPanel.add(lookupField, BorderLayout.CENTER);
+        panel.add(lookupPanel, BorderLayout.SOUTH);
+
+        Timer lookupTimer = new Timer(LOOKUP_DELAY_MS, e -> {
+            String text = lookupField.getText().trim();
+            if (!text.isEmpty()) {
+                loadTable(() -> client.searchProductNames(text, true, LOOKUP_LIMIT), LOOKUP_COLUMNS);
+            }
+        });
+        lookupTimer.setRepeats(false);
+        lookupField.getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
+            @Override
+            public void insertUpdate(javax.swing.event.DocumentEvent e) {
+                lookupTimer.restart();
+            }
+
+            @Override
+            public void removeUpdate(javax.swing.event.DocumentEvent e) {
+                lookupTimer.restart();
+            }
+
+            @Override
+            public void changedUpdate(javax.swing.event.DocumentEvent e) {
+                lookupTimer.restart();
+            }
+        });
+
         frame.add(panel);
 
         // Add action listeners for buttons
         addCategoryButton.addActionListener(e -> {
             String name = JOptionPane.showInputDialog(frame, "Enter category name:");
             if (name != null && !name.trim().isEmpty()) {
-                sendRequest("ADD_CATEGORY", name.trim());
+                sendRequest(() -> client.addCategory(name.trim()));
             } else {
                 JOptionPane.showMessageDialog(frame, "Category name cannot be empty.");
             }
@@ -94,7 +172,7 @@ public class InventoryClientGUI {
 
             String contact = JOptionPane.showInputDialog(frame, "Enter supplier contact:");
             if (contact != null && !contact.trim().isEmpty()) {
-                sendRequest("ADD_SUPPLIER", name.trim(), contact.trim());
+                sendRequest(() -> client.addSupplier(name.trim(), contact.trim()));
             } else {
                 JOptionPane.showMessageDialog(frame, "Supplier contact cannot be empty.");
             }
@@ -114,19 +192,22 @@ public class InventoryClientGUI {
             try {
                 int categoryId = Integer.parseInt(categoryIdStr.trim());
                 int supplierId = Integer.parseInt(supplierIdStr.trim());
-                double price = Double.parseDouble(priceStr.trim());
-                sendRequest("ADD_PRODUCT", name.trim(), categoryId, supplierId, price);
+                BigDecimal price = new BigDecimal(priceStr.trim());
+                sendRequest(() -> client.addProduct(name.trim(), categoryId, supplierId, price));
             } catch (NumberFormatException ex) {
                 JOptionPane.showMessageDialog(frame, "Invalid numeric input for category, supplier, or price.");
             }
         });
 
-        viewProductsButton.addActionListener(e -> sendRequest("VIEW_PRODUCTS"));
-        viewCategoriesButton.addActionListener(e -> sendRequest("VIEW_CATEGORIES"));
-        viewSuppliersButton.addActionListener(e -> sendRequest("VIEW_SUPPLIERS"));
+        importProductsButton.addActionListener(e -> importProducts());
+        viewProductsButton.addActionListener(e -> showProducts());
+        searchProductsButton.addActionListener(e -> searchProducts());
+        viewCategoriesButton.addActionListener(e -> loadTable(client::viewCategories, CATEGORY_COLUMNS));
+        viewSuppliersButton.addActionListener(e -> loadTable(client::viewSuppliers, SUPPLIER_COLUMNS));
 
         frame.setVisible(true);
-        sendRequest("VIEW_PRODUCTS");
+        subscribe();
+        showProducts();
     }
 
     private JButton createStyledButton(String text) {
@@ -166,52 +247,292 @@ public class InventoryClientGUI {
         return button;
     }
 
-    private void sendRequest(String command, Object... args) {
-        try (Socket socket = new Socket(serverAddress, serverPort);
-             ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream());
-             ObjectInputStream in = new ObjectInputStream(socket.getInputStream())) {
+    /**
+     * Follows the server's changes so the table shows rows added by anyone without reloading it.
+     * Called on the event thread; the connection is made in the background.
+     */
+    private void subscribe() {
+        long afterVersion = feedVersion;
+        new SwingWorker<InventoryClient.Subscription, Void>() {
+            @Override
+            protected InventoryClient.Subscription doInBackground() throws IOException {
+                return client.subscribe(afterVersion, new FeedListener());
+            }
 
-            out.writeObject(command);
+            @Override
+            protected void done() {
+                try {
+                    get();
+                } catch (ExecutionException e) {
+                    resubscribeLater();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }.execute();
+    }
+
+    private void resubscribeLater() {
+        if (closing) {
+            return;
+        }
+        Timer retry = new Timer(RESUBSCRIBE_DELAY_MS, e -> subscribe());
+        retry.setRepeats(false);
+        retry.start();
+    }
+
+    /** Applies the feed's changes to the view being shown, on the event thread. */
+    private class FeedListener implements InventoryClient.ChangeListener {
+        @Override
+        public void onResync(long version) {
+            SwingUtilities.invokeLater(() -> {
+                feedVersion = version;
+                if (table.getModel() == productModel) {
+                    productModel.refresh();
+                } else if (shownColumns == CATEGORY_COLUMNS) {
+                    loadTable(client::viewCategories, CATEGORY_COLUMNS);
+                } else if (shownColumns == SUPPLIER_COLUMNS) {
+                    loadTable(client::viewSuppliers, SUPPLIER_COLUMNS);
+                }
+            });
+        }
+
+        @Override
+        public void onCategoryAdded(long version, Category category) {
+            SwingUtilities.invokeLater(() -> {
+                feedVersion = version;
+                addShownRow(CATEGORY_COLUMNS, category.getId(), category.getName());
+            });
+        }
+
+        @Override
+        public void onSupplierAdded(long version, Supplier supplier) {
+            SwingUtilities.invokeLater(() -> {
+                feedVersion = version;
+                addShownRow(SUPPLIER_COLUMNS, supplier.getId(), supplier.getName(), supplier.getContact());
+            });
+        }
 
-            for (Object arg : args) {
-                out.writeObject(arg);
+        @Override
+        public void onProductAdded(long version, Product product) {
+            SwingUtilities.invokeLater(() -> {
+                feedVersion = version;
+                if (table.getModel() == productModel) {
+                    productModel.productAdded();
+                }
+            });
+        }
+
+        @Override
+        public void onStockChanged(long version, int productId, long onHandDelta, long reservedDelta) {
+            SwingUtilities.invokeLater(() -> feedVersion = version);
+        }
+
+        @Override
+        public void onClosed(IOException error) {
+            if (error != null) {
+                SwingUtilities.invokeLater(InventoryClientGUI.this::resubscribeLater);
             }
-            out.flush();
+        }
+    }
 
-            if ("VIEW_PRODUCTS".equals(command)) {
-                updateTable(in, new String[]{"Product ID", "Product Name", "Category ID", "Supplier ID", "Price"});
-            } else if ("VIEW_CATEGORIES".equals(command)) {
-                updateTable(in, new String[]{"Category ID", "Category Name"});
-            } else if ("VIEW_SUPPLIERS".equals(command)) {
-                updateTable(in, new String[]{"Supplier ID", "Supplier Name", "Contact"});
-            } else {
-                Object response = in.readObject();
-                if (response instanceof String) {
-                    JOptionPane.showMessageDialog(frame, (String) response);
-                } else {
-                    JOptionPane.showMessageDialog(frame, "Unexpected response from server.");
+    /** Appends a row to the category or supplier view if it is shown and the row is not already there. */
+    private void addShownRow(String[] columns, Object... row) {
+        if (table.getModel() != tableModel || shownColumns != columns) {
+            return;
+        }
+        for (int i = 0; i < tableModel.getRowCount(); i++) {
+            if (row[0].equals(tableModel.getValueAt(i, 0))) {
+                // Loaded after the change was made
+                return;
+            }
+        }
+        tableModel.addRow(row);
+    }
+
+    /** Runs {@code call} on a background thread and shows the server's answer when it comes. */
+    private void sendRequest(ServerCall<String> call) {
+        new SwingWorker<String, Void>() {
+            @Override
+            protected String doInBackground() throws IOException {
+                return call.call();
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    JOptionPane.showMessageDialog(frame, get());
+                } catch (ExecutionException e) {
+                    showError(e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
                 }
             }
-        } catch (IOException | ClassNotFoundException e) {
-            JOptionPane.showMessageDialog(frame, "Error communicating with server: " + e.getMessage());
+        }.execute();
+    }
+
+    private void loadTable(ServerCall<ResultTable> call, String[] columnNames) {
+        cancelTableLoad();
+        tableLoad = new SwingWorker<ResultTable, Void>() {
+            @Override
+            protected ResultTable doInBackground() throws IOException {
+                return call.call();
+            }
+
+            @Override
+            protected void done() {
+                if (isCancelled()) {
+                    return;
+                }
+                try {
+                    updateTable(get(), columnNames);
+                } catch (ExecutionException e) {
+                    showError(e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        tableLoad.execute();
+    }
+
+    /**
+     * Shows the products through {@link ProductTableModel}, which fetches only the rows being
+     * looked at, so the catalog's size does not matter.
+     */
+    private void showProducts() {
+        cancelTableLoad();
+        table.setModel(productModel);
+        productModel.refresh();
+    }
+
+    /** Asks for search criteria and shows the matching products; empty fields are not filtered on. */
+    private void searchProducts() {
+        JTextField nameField = new JTextField();
+        JTextField categoryField = new JTextField();
+        JTextField supplierField = new JTextField();
+        JTextField minPriceField = new JTextField();
+        JTextField maxPriceField = new JTextField();
+        JComboBox<ProductQuery.SortOrder> sortBox = new JComboBox<>(ProductQuery.SortOrder.values());
+        JCheckBox descendingBox = new JCheckBox("Descending");
+
+        JPanel form = new JPanel(new GridLayout(0, 2, 5, 5));
+        form.add(new JLabel("Name starts with:"));
+        form.add(nameField);
+        form.add(new JLabel("Category ID:"));
+        form.add(categoryField);
+        form.add(new JLabel("Supplier ID:"));
+        form.add(supplierField);
+        form.add(new JLabel("Minimum price:"));
+        form.add(minPriceField);
+        form.add(new JLabel("Maximum price:"));
+        form.add(maxPriceField);
+        form.add(new JLabel("Sort by:"));
+        form.add(sortBox);
+        form.add(new JLabel());
+        form.add(descendingBox);
+
+        if (JOptionPane.showConfirmDialog(frame, form, "Search Products", JOptionPane.OK_CANCEL_OPTION)
+                != JOptionPane.OK_OPTION) {
+            return;
         }
+
+        ProductQuery query = new ProductQuery();
+        try {
+            query.namePrefix = nameField.getText().trim().isEmpty() ? null : nameField.getText().trim();
+            query.categoryId = categoryField.getText().trim().isEmpty() ? null : Integer.valueOf(categoryField.getText().trim());
+            query.supplierId = supplierField.getText().trim().isEmpty() ? null : Integer.valueOf(supplierField.getText().trim());
+            query.minPrice = minPriceField.getText().trim().isEmpty() ? null : new BigDecimal(minPriceField.getText().trim());
+            query.maxPrice = maxPriceField.getText().trim().isEmpty() ? null : new BigDecimal(maxPriceField.getText().trim());
+        } catch (NumberFormatException ex) {
+            JOptionPane.showMessageDialog(frame, "Invalid numeric input for category, supplier, or price.");
+            return;
+        }
+        query.sortOrder = (ProductQuery.SortOrder) sortBox.getSelectedItem();
+        query.descending = descendingBox.isSelected();
+        query.limit = SEARCH_LIMIT;
+        loadTable(() -> client.queryProducts(query), PRODUCT_COLUMNS);
     }
 
-    private void updateTable(ObjectInputStream in, String[] columnNames) throws IOException, ClassNotFoundException {
-        Object response = in.readObject();
-        if (response instanceof Object[][]) {
-            Object[][] data = (Object[][]) response;
-            tableModel.setColumnIdentifiers(columnNames);
-            tableModel.setRowCount(0);
+    /**
+     * Uploads a CSV or TSV file of products (name, category id, supplier id, price) for the
+     * server to bulk load, showing how much of the file has been processed.
+     */
+    private void importProducts() {
+        JFileChooser chooser = new JFileChooser();
+        if (chooser.showOpenDialog(frame) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File file = chooser.getSelectedFile();
+        String fileName = file.getName().toLowerCase();
+        boolean tsv = fileName.endsWith(".tsv") || fileName.endsWith(".tab");
+        boolean hasHeader = JOptionPane.showConfirmDialog(frame, "Does the first line hold column names?",
+                "Import Products", JOptionPane.YES_NO_OPTION) == JOptionPane.YES_OPTION;
+
+        ProgressMonitor monitor = new ProgressMonitor(frame, "Importing " + file.getName(), null, 0,
+                (int) Math.min(Integer.MAX_VALUE, file.length()));
+        new SwingWorker<String, long[]>() {
+            @Override
+            protected String doInBackground() throws IOException {
+                try (InputStream in = new FileInputStream(file)) {
+                    return client.importProducts(in, tsv, hasHeader,
+                            (bytesRead, accepted, rejected) -> publish(new long[] {bytesRead, accepted, rejected}));
+                }
+            }
 
-            for (Object[] row : data) {
-                tableModel.addRow(row);
+            @Override
+            protected void process(List<long[]> updates) {
+                long[] latest = updates.get(updates.size() - 1);
+                monitor.setProgress((int) Math.min(Integer.MAX_VALUE, latest[0]));
+                monitor.setNote(latest[1] + " rows accepted, " + latest[2] + " rejected");
+            }
+
+            @Override
+            protected void done() {
+                monitor.close();
+                try {
+                    JOptionPane.showMessageDialog(frame, get());
+                    showProducts();
+                } catch (ExecutionException e) {
+                    showError(e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
             }
+        }.execute();
+    }
+
+    private void cancelTableLoad() {
+        if (tableLoad != null) {
+            tableLoad.cancel(true);
+            tableLoad = null;
+        }
+    }
+
+    private void showError(Throwable cause) {
+        if (cause instanceof InventoryClient.ServerException) {
+            JOptionPane.showMessageDialog(frame, cause.getMessage());
         } else {
-            JOptionPane.showMessageDialog(frame, "Unexpected response format from server.");
+            JOptionPane.showMessageDialog(frame, "Error communicating with server: " + cause.getMessage());
         }
     }
 
+    private void updateTable(ResultTable data, String[] columnNames) {
+        // Replace all rows at once, adding them one by one fires an event per row
+        Object[][] rows = new Object[data.getRowCount()][];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = data.getRow(i);
+        }
+        tableModel.setDataVector(rows, columnNames);
+        shownColumns = columnNames;
+        table.setModel(tableModel);
+    }
+
+    @FunctionalInterface
+    private interface ServerCall<T> {
+        T call() throws IOException;
+    }
+
     public static void main(String[] args) {
         SwingUtilities.invokeLater(InventoryClientGUI::new);
     }
@@ -0,0 +1,303 @@
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Headless load generator for capacity planning. It sends a weighted mix of requests at a fixed
+ * target rate, whatever the server's response times, and reports throughput and latency
+ * percentiles per request.
+ *
+ * <p>Requests follow a schedule set in advance (an open model), so a slow server does not slow
+ * the load down. Response times are measured from when a request was due, not from when it was
+ * sent. Time spent queued behind earlier requests counts, and a stall shows up in the
+ * percentiles of every request it held back rather than in a single sample. That queueing is
+ * "coordinated omission". The time from sending to the reply ("service time") is reported too.
+ *
+ * <p>Settings are {@code -D} system properties, e.g.
+ * {@code java -Dinventory.load.rate=2000 -Dinventory.load.mix=VIEW_PRODUCTS:1,ADD_PRODUCT:4 LoadGenerator}.
+ */
+public class LoadGenerator {
+    enum Arrivals {
+        /** Requests are evenly spaced. */
+        UNIFORM,
+        /** Gaps between requests are random with the target mean, as when many independent users are active. */
+        POISSON
+    }
+
+    enum Operation {
+        ADD_CATEGORY,
+        ADD_SUPPLIER,
+        ADD_PRODUCT,
+        VIEW_PRODUCTS,
+        VIEW_CATEGORIES,
+        VIEW_SUPPLIERS
+    }
+
+    static final String HOST = ServerConfig.stringProperty("inventory.load.host", "localhost");
+    static final int PORT = ServerConfig.intProperty("inventory.load.port", 6090);
+
+    // Requests per second, over all connections
+    static final int RATE = ServerConfig.intProperty("inventory.load.rate", 500);
+    static final int DURATION_SECONDS = ServerConfig.intProperty("inventory.load.durationSeconds", 60);
+    // Load sent before measuring starts, so connections, caches and JIT settle
+    static final int WARMUP_SECONDS = ServerConfig.intProperty("inventory.load.warmupSeconds", 10);
+    static final int CONNECTIONS = ServerConfig.intProperty("inventory.load.connections", 8);
+    // Requests waiting for a reply at once; when reached, later requests wait and their wait counts
+    static final int MAX_OUTSTANDING = ServerConfig.intProperty("inventory.load.maxOutstanding", 10_000);
+    static final String MIX = ServerConfig.stringProperty("inventory.load.mix",
+            "VIEW_PRODUCTS:5,VIEW_CATEGORIES:10,VIEW_SUPPLIERS:10,ADD_PRODUCT:70,ADD_CATEGORY:3,ADD_SUPPLIER:2");
+    static final Arrivals ARRIVALS = ServerConfig.enumProperty("inventory.load.arrivals", Arrivals.class, Arrivals.POISSON);
+    static final int REPORT_SECONDS = ServerConfig.intProperty("inventory.load.reportSeconds", 5);
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private final Operation[] operations;
+    private final int[] cumulativeWeights;
+    private final InventoryClient[] clients;
+    private final Map<Operation, OperationStats> stats = new EnumMap<>(Operation.class);
+    private final Semaphore outstanding = new Semaphore(MAX_OUTSTANDING);
+    private final AtomicLong nextName = new AtomicLong(System.currentTimeMillis());
+    private final LongAdder intervalCompleted = new LongAdder();
+    private final LongAdder intervalErrors = new LongAdder();
+    // Ids new products are given, from what the server had when the run started
+    private int[] categoryIds;
+    private int[] supplierIds;
+    // Requests due before this are warmup and are not recorded
+    private volatile long measureFrom;
+
+    LoadGenerator(Map<Operation, Integer> mix) {
+        operations = new Operation[mix.size()];
+        cumulativeWeights = new int[mix.size()];
+        int total = 0;
+        int i = 0;
+        for (Map.Entry<Operation, Integer> entry : mix.entrySet()) {
+            total += entry.getValue();
+            operations[i] = entry.getKey();
+            cumulativeWeights[i++] = total;
+            stats.put(entry.getKey(), new OperationStats());
+        }
+        clients = new InventoryClient[CONNECTIONS];
+        for (int c = 0; c < clients.length; c++) {
+            clients[c] = new InventoryClient(HOST, PORT);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<Operation, Integer> mix = parseMix(MIX);
+        System.out.printf("Load: %d requests/s (%s arrivals) for %ds after %ds warmup, %d connections to %s:%d%n",
+                RATE, ARRIVALS, DURATION_SECONDS, WARMUP_SECONDS, CONNECTIONS, HOST, PORT);
+        System.out.println("Mix: " + mix);
+
+        LoadGenerator generator = new LoadGenerator(mix);
+        try {
+            generator.prepare();
+            generator.run();
+            generator.printSummary();
+        } finally {
+            generator.close();
+        }
+    }
+
+    /**
+     * Parses {@code OPERATION:weight} pairs separated by commas. A request of each operation is
+     * sent with probability weight / total weight.
+     */
+    static Map<Operation, Integer> parseMix(String text) {
+        Map<Operation, Integer> mix = new EnumMap<>(Operation.class);
+        for (String part : text.split(",")) {
+            String[] pair = part.trim().split(":");
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Mix entries look like ADD_PRODUCT:10, not " + part.trim());
+            }
+            int weight = Integer.parseInt(pair[1].trim());
+            if (weight < 0) {
+                throw new IllegalArgumentException("Mix weights cannot be negative: " + part.trim());
+            }
+            if (weight > 0) {
+                mix.merge(Operation.valueOf(pair[0].trim().toUpperCase()), weight, Integer::sum);
+            }
+        }
+        if (mix.isEmpty()) {
+            throw new IllegalArgumentException("The mix has no operation with a positive weight.");
+        }
+        return mix;
+    }
+
+    /** Connects every client and makes sure there is a category and a supplier for new products. */
+    void prepare() throws IOException {
+        for (InventoryClient client : clients) {
+            client.countProducts();
+        }
+        InventoryClient client = clients[0];
+        if (client.viewCategories().getRowCount() == 0) {
+            client.addCategory("Load category");
+        }
+        if (client.viewSuppliers().getRowCount() == 0) {
+            client.addSupplier("Load supplier", "load@example.com");
+        }
+        categoryIds = ids(client.viewCategories());
+        supplierIds = ids(client.viewSuppliers());
+    }
+
+    private static int[] ids(ResultTable table) {
+        int[] ids = new int[table.getRowCount()];
+        for (int row = 0; row < ids.length; row++) {
+            ids[row] = ((Number) table.getRow(row)[0]).intValue();
+        }
+        return ids;
+    }
+
+    /**
+     * Sends requests on schedule until the run is over, then waits for the last replies. Each
+     * request runs on a virtual thread of its own, so a slow reply holds up nothing but itself.
+     */
+    void run() throws InterruptedException {
+        long start = System.nanoTime();
+        measureFrom = start + WARMUP_SECONDS * 1_000_000_000L;
+        long end = measureFrom + DURATION_SECONDS * 1_000_000_000L;
+        double meanGapNanos = 1e9 / RATE;
+        long nextReport = start + REPORT_SECONDS * 1_000_000_000L;
+        long intervalStart = start;
+        long sent = 0;
+        int nextClient = 0;
+
+        double due = start;
+        while (due < end) {
+            long dueNanos = (long) due;
+            long now;
+            while ((now = System.nanoTime()) < dueNanos) {
+                LockSupport.parkNanos(dueNanos - now);
+            }
+            if (now >= nextReport) {
+                printInterval(now - intervalStart, now < measureFrom);
+                intervalStart = now;
+                nextReport += REPORT_SECONDS * 1_000_000_000L;
+            }
+
+            // Blocking here delays sending, not the schedule: later requests still count from when they were due
+            outstanding.acquire();
+            Operation operation = pickOperation();
+            InventoryClient client = clients[nextClient];
+            nextClient = (nextClient + 1) % clients.length;
+            Thread.ofVirtual().start(() -> {
+                try {
+                    send(operation, client, dueNanos);
+                } finally {
+                    outstanding.release();
+                }
+            });
+            sent++;
+            due += ARRIVALS == Arrivals.POISSON
+                    ? -Math.log(1 - ThreadLocalRandom.current().nextDouble()) * meanGapNanos
+                    : meanGapNanos;
+        }
+
+        outstanding.acquire(MAX_OUTSTANDING);
+        outstanding.release(MAX_OUTSTANDING);
+        long now = System.nanoTime();
+        printInterval(now - intervalStart, false);
+        System.out.printf("Sent %d requests, %.1f/s over the whole run.%n", sent, sent * 1e9 / (now - start));
+    }
+
+    private Operation pickOperation() {
+        int ticket = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (ticket < cumulativeWeights[i]) {
+                return operations[i];
+            }
+        }
+        return operations[operations.length - 1];
+    }
+
+    private void send(Operation operation, InventoryClient client, long dueNanos) {
+        long sentAt = System.nanoTime();
+        boolean failed = false;
+        try {
+            call(operation, client);
+        } catch (IOException e) {
+            failed = true;
+        }
+        long done = System.nanoTime();
+        intervalCompleted.increment();
+        if (failed) {
+            intervalErrors.increment();
+        }
+        if (dueNanos >= measureFrom) {
+            stats.get(operation).record(done - dueNanos, done - sentAt, failed);
+        }
+    }
+
+    private void call(Operation operation, InventoryClient client) throws IOException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        switch (operation) {
+            case ADD_CATEGORY -> client.addCategory("Load category " + nextName.getAndIncrement());
+            case ADD_SUPPLIER -> client.addSupplier("Load supplier " + nextName.getAndIncrement(), "load@example.com");
+            case ADD_PRODUCT -> client.addProduct("Load product " + nextName.getAndIncrement(),
+                    categoryIds[random.nextInt(categoryIds.length)], supplierIds[random.nextInt(supplierIds.length)],
+                    BigDecimal.valueOf(random.nextInt(100, 100_000), 2));
+            case VIEW_PRODUCTS -> client.viewProducts();
+            case VIEW_CATEGORIES -> client.viewCategories();
+            case VIEW_SUPPLIERS -> client.viewSuppliers();
+        }
+    }
+
+    private void printInterval(long elapsedNanos, boolean warmup) {
+        long completed = intervalCompleted.sumThenReset();
+        long errors = intervalErrors.sumThenReset();
+        System.out.printf("%s%.1f replies/s, %d errors, %d outstanding%n", warmup ? "[warmup] " : "",
+                completed * 1e9 / elapsedNanos, errors, MAX_OUTSTANDING - outstanding.availablePermits());
+    }
+
+    void printSummary() {
+        System.out.println();
+        System.out.printf("%-16s %9s %7s %9s  %-44s  %-44s%n", "Request", "Count", "Errors", "Per sec",
+                "Response time ms (from due) p50/p90/p99/p99.9/max", "Service time ms (from sent) p50/p90/p99/p99.9/max");
+        for (Map.Entry<Operation, OperationStats> entry : stats.entrySet()) {
+            OperationStats stat = entry.getValue();
+            System.out.printf("%-16s %9d %7d %9.1f  %-44s  %-44s%n", entry.getKey(), stat.responseTime.count(),
+                    stat.errors.sum(), stat.responseTime.count() / (double) DURATION_SECONDS,
+                    percentiles(stat.responseTime), percentiles(stat.serviceTime));
+        }
+    }
+
+    private static String percentiles(LatencyHistogram histogram) {
+        List<String> values = new ArrayList<>();
+        for (double percentile : PERCENTILES) {
+            values.add(millis(histogram.percentileNanos(percentile)));
+        }
+        values.add(millis(histogram.maxNanos()));
+        return String.join("/", values);
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.2f", nanos / 1e6);
+    }
+
+    void close() {
+        for (InventoryClient client : clients) {
+            client.close();
+        }
+    }
+
+    private static final class OperationStats {
+        final LatencyHistogram responseTime = new LatencyHistogram();
+        final LatencyHistogram serviceTime = new LatencyHistogram();
+        final LongAdder errors = new LongAdder();
+
+        void record(long responseNanos, long serviceNanos, boolean failed) {
+            responseTime.record(responseNanos);
+            serviceTime.record(serviceNanos);
+            if (failed) {
+                errors.increment();
+            }
+        }
+    }
+}
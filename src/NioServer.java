@@ -0,0 +1,547 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Non-blocking front end for the binary protocol. One selector thread accepts clients, does the
+ * handshake, splits incoming bytes into frames and writes queued replies; complete requests are
+ * handed to a worker which runs them through a {@link BinarySession}. A connection only occupies
+ * a worker while it has requests to answer, and only holds a read buffer while a frame is partly
+ * received, so idle clients cost a socket and a few small objects. Version 2 connections are
+ * handed to a {@link PipelinedSession}, so their requests run concurrently.
+ *
+ * <p>Legacy Java-serialization clients are told to use the blocking transport and disconnected.
+ */
+class NioServer {
+    // Queued to wake a worker waiting for the next frame of a client that has gone away
+    private static final WireProtocol.Frame END_OF_INPUT = new WireProtocol.Frame((byte) 0, new byte[0]);
+    private static final int HELLO_LENGTH = 6;
+
+    // Requests a client may have waiting for its worker before we stop reading from it
+    private static final int MAX_QUEUED_FRAMES = 64;
+
+    private final int maxConnections;
+    private final int maxInFlight;
+    private final long maxPendingWriteBytes;
+    private final DirectBufferPool buffers;
+    private final ExecutorService workers;
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final Queue<Runnable> selectorTasks = new ConcurrentLinkedQueue<>();
+    private volatile boolean running = true;
+
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final LongAdder acceptedConnections = new LongAdder();
+    private final LongAdder refusedConnections = new LongAdder();
+
+    NioServer(int port, int backlog, int maxConnections, int maxInFlight, long maxPendingWriteBytes,
+              DirectBufferPool buffers, ExecutorService workers) throws IOException {
+        this.maxConnections = maxConnections;
+        this.maxInFlight = maxInFlight;
+        this.maxPendingWriteBytes = maxPendingWriteBytes;
+        this.buffers = buffers;
+        this.workers = workers;
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port), backlog);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /** Runs the event loop on the calling thread until {@link #shutdown()}. */
+    void run() throws IOException {
+        try {
+            while (running) {
+                selector.select();
+                Runnable task;
+                while ((task = selectorTasks.poll()) != null) {
+                    task.run();
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        acceptAll();
+                        continue;
+                    }
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if (key.isReadable()) {
+                            connection.onReadable();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.onWritable();
+                        }
+                    } catch (IOException e) {
+                        connection.closeNow();
+                    }
+                }
+            }
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection connection) {
+                    connection.closeNow();
+                }
+            }
+            serverChannel.close();
+            selector.close();
+        }
+    }
+
+    void shutdown() {
+        running = false;
+        selector.wakeup();
+        workers.shutdownNow();
+    }
+
+    int getOpenConnections() {
+        return openConnections.get();
+    }
+
+    String describe() {
+        return String.format("connections open=%d accepted=%d refused=%d, %s", openConnections.get(),
+                acceptedConnections.sum(), refusedConnections.sum(), buffers.describe());
+    }
+
+    private void acceptAll() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            if (openConnections.get() >= maxConnections) {
+                refusedConnections.increment();
+                channel.close();
+                continue;
+            }
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            Connection connection = new Connection(channel);
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            openConnections.incrementAndGet();
+            acceptedConnections.increment();
+        }
+    }
+
+    private void runOnSelector(Runnable task) {
+        selectorTasks.add(task);
+        selector.wakeup();
+    }
+
+    /**
+     * One client. Fields without a note belong to the selector thread; the worker only touches
+     * the inbound queue, the outbound queue and the write accounting.
+     */
+    private class Connection {
+        private final SocketChannel channel;
+        private SelectionKey key;
+        // One of the two is set by the handshake, before any request is queued
+        private BinarySession session;
+        private PipelinedSession pipeline;
+
+        // Held only while a frame is partly received
+        private ByteBuffer readBuffer;
+        private boolean helloDone;
+        private boolean tagged;
+        // A frame too large for the read buffer is collected here instead
+        private byte partialType;
+        private int partialRequestId;
+        private byte[] partialPayload;
+        private int partialFilled;
+        private boolean closeWhenWritten;
+        private boolean released;
+
+        private final LinkedBlockingQueue<WireProtocol.Frame> inbound = new LinkedBlockingQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final AtomicBoolean readPaused = new AtomicBoolean();
+
+        private final Queue<ByteBuffer> outbound = new ConcurrentLinkedQueue<>();
+        private final AtomicLong pendingWriteBytes = new AtomicLong();
+        private final AtomicBoolean writeRequested = new AtomicBoolean();
+        private final ReentrantLock writeLock = new ReentrantLock();
+        private final Condition writesDrained = writeLock.newCondition();
+        private volatile boolean closed;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void onReadable() throws IOException {
+            if (readBuffer == null) {
+                readBuffer = buffers.acquire();
+            }
+            if (channel.read(readBuffer) == -1) {
+                closeNow();
+                return;
+            }
+            readBuffer.flip();
+            parseFrames();
+            if (released) {
+                return;
+            }
+            readBuffer.compact();
+            if (readBuffer.position() == 0) {
+                buffers.release(readBuffer);
+                readBuffer = null;
+            }
+            if (inbound.size() >= MAX_QUEUED_FRAMES && readPaused.compareAndSet(false, true)) {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            }
+        }
+
+        private void parseFrames() throws IOException {
+            while (!released) {
+                if (partialPayload != null) {
+                    int count = Math.min(readBuffer.remaining(), partialPayload.length - partialFilled);
+                    readBuffer.get(partialPayload, partialFilled, count);
+                    partialFilled += count;
+                    if (partialFilled < partialPayload.length) {
+                        return;
+                    }
+                    enqueue(new WireProtocol.Frame(partialType, partialRequestId, partialPayload));
+                    partialPayload = null;
+                    continue;
+                }
+
+                if (!helloDone) {
+                    if (readBuffer.remaining() < 2) {
+                        return;
+                    }
+                    if (WireProtocol.isLegacyHeader(readBuffer.getShort(readBuffer.position()))) {
+                        refuseLegacyClient();
+                        return;
+                    }
+                    if (readBuffer.remaining() < HELLO_LENGTH) {
+                        return;
+                    }
+                    if (readBuffer.getInt() != WireProtocol.MAGIC) {
+                        closeNow();
+                        return;
+                    }
+                    int version = BinarySession.negotiateVersion(readBuffer.getShort() & 0xFFFF);
+                    ByteBuffer hello = buffers.acquire();
+                    hello.putInt(WireProtocol.MAGIC).putShort((short) version);
+                    tagged = version >= WireProtocol.VERSION_2;
+                    if (tagged) {
+                        hello.putShort((short) maxInFlight);
+                        pipeline = new PipelinedSession(new DataOutputStream(new ConnectionOutput()), workers, maxInFlight);
+                    } else {
+                        session = new BinarySession(this::nextFrame, new ConnectionOutput());
+                    }
+                    queueWrite(hello.flip());
+                    closeWhenWritten = version == 0;
+                    helloDone = true;
+                    onWritable();
+                    continue;
+                }
+
+                int headerLength = WireProtocol.frameHeaderLength(tagged);
+                if (readBuffer.remaining() < 4 + headerLength) {
+                    return;
+                }
+                int length = readBuffer.getInt(readBuffer.position());
+                if (length < headerLength || length > WireProtocol.MAX_FRAME_LENGTH) {
+                    closeNow();
+                    return;
+                }
+                if (readBuffer.remaining() >= 4 + length) {
+                    readBuffer.getInt();
+                    byte type = readBuffer.get();
+                    int requestId = tagged ? readBuffer.getInt() : WireProtocol.UNTAGGED;
+                    byte[] payload = new byte[length - headerLength];
+                    readBuffer.get(payload);
+                    enqueue(new WireProtocol.Frame(type, requestId, payload));
+                } else if (4 + length > readBuffer.capacity()) {
+                    readBuffer.getInt();
+                    partialType = readBuffer.get();
+                    partialRequestId = tagged ? readBuffer.getInt() : WireProtocol.UNTAGGED;
+                    partialPayload = new byte[length - headerLength];
+                    partialFilled = 0;
+                } else {
+                    return;
+                }
+            }
+        }
+
+        private void refuseLegacyClient() throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject("This server port only accepts the binary protocol, please update the client.");
+            }
+            ByteBuffer reply = buffers.acquire();
+            reply.put(bytes.toByteArray(), 0, Math.min(bytes.size(), reply.capacity())).flip();
+            queueWrite(reply);
+            closeWhenWritten = true;
+            onWritable();
+        }
+
+        private void enqueue(WireProtocol.Frame frame) {
+            inbound.add(frame);
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    workers.execute(this::serveRequests);
+                } catch (RejectedExecutionException e) {
+                    // Shutting down
+                    closeNow();
+                }
+            }
+        }
+
+        // Worker thread: answers queued requests until there are none left
+        private void serveRequests() {
+            try {
+                while (true) {
+                    WireProtocol.Frame request = inbound.poll();
+                    if (request == null) {
+                        scheduled.set(false);
+                        // A request may have been queued after the poll but before the flag was cleared
+                        if (inbound.isEmpty() || !scheduled.compareAndSet(false, true)) {
+                            return;
+                        }
+                        continue;
+                    }
+                    if (request == END_OF_INPUT) {
+                        if (pipeline != null) {
+                            pipeline.closeInput();
+                        }
+                        return;
+                    }
+                    resumeReadingIfDrained();
+                    if (pipeline != null) {
+                        pipeline.onFrame(request);
+                    } else {
+                        session.handle(request);
+                    }
+                }
+            } catch (IOException e) {
+                close();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                close();
+            }
+        }
+
+        // Worker thread: the follow-up frames of a multi-frame request
+        private WireProtocol.Frame nextFrame() throws IOException {
+            WireProtocol.Frame frame;
+            try {
+                frame = inbound.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the client.");
+            }
+            if (frame == END_OF_INPUT) {
+                throw new EOFException("Client disconnected.");
+            }
+            resumeReadingIfDrained();
+            return frame;
+        }
+
+        private void resumeReadingIfDrained() {
+            if (readPaused.get() && inbound.size() < MAX_QUEUED_FRAMES / 2 && readPaused.compareAndSet(true, false)) {
+                runOnSelector(() -> {
+                    if (key.isValid()) {
+                        key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+                    }
+                });
+            }
+        }
+
+        // Any thread
+        private void queueWrite(ByteBuffer buffer) {
+            pendingWriteBytes.addAndGet(buffer.remaining());
+            outbound.add(buffer);
+        }
+
+        // Worker thread: has the selector thread write out what was queued
+        private void requestWrite() {
+            if (writeRequested.compareAndSet(false, true)) {
+                runOnSelector(() -> {
+                    writeRequested.set(false);
+                    if (!released) {
+                        try {
+                            onWritable();
+                        } catch (IOException e) {
+                            closeNow();
+                        }
+                    }
+                });
+            }
+        }
+
+        void onWritable() throws IOException {
+            ByteBuffer buffer;
+            while ((buffer = outbound.peek()) != null) {
+                pendingWriteBytes.addAndGet(-channel.write(buffer));
+                if (buffer.hasRemaining()) {
+                    // Socket send buffer is full, carry on when it drains
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                    signalWritesDrained();
+                    return;
+                }
+                outbound.poll();
+                buffers.release(buffer);
+            }
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            signalWritesDrained();
+            if (closeWhenWritten) {
+                closeNow();
+            }
+        }
+
+        private void signalWritesDrained() {
+            if (pendingWriteBytes.get() <= maxPendingWriteBytes) {
+                writeLock.lock();
+                try {
+                    writesDrained.signalAll();
+                } finally {
+                    writeLock.unlock();
+                }
+            }
+        }
+
+        // Worker thread: keeps a slow reader from making us buffer a whole result set
+        private void awaitWritesDrained() throws IOException {
+            writeLock.lock();
+            try {
+                while (pendingWriteBytes.get() > maxPendingWriteBytes && !closed) {
+                    writesDrained.await();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the client.");
+            } finally {
+                writeLock.unlock();
+            }
+            if (closed) {
+                throw new IOException("Client disconnected.");
+            }
+        }
+
+        // Worker thread: stop serving and have the selector thread clean up
+        private void close() {
+            markClosed();
+            runOnSelector(this::closeNow);
+        }
+
+        private void markClosed() {
+            closed = true;
+            inbound.add(END_OF_INPUT);
+            writeLock.lock();
+            try {
+                writesDrained.signalAll();
+            } finally {
+                writeLock.unlock();
+            }
+        }
+
+        // Selector thread
+        void closeNow() {
+            if (released) {
+                return;
+            }
+            released = true;
+            markClosed();
+            if (pipeline != null) {
+                // Uploads wait on their own queues, and no worker may be left to take the marker to them
+                pipeline.closeInput();
+            }
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Nothing left to do with it
+            }
+            if (readBuffer != null) {
+                buffers.release(readBuffer);
+                readBuffer = null;
+            }
+            ByteBuffer buffer;
+            while ((buffer = outbound.poll()) != null) {
+                buffers.release(buffer);
+            }
+            openConnections.decrementAndGet();
+        }
+
+        /**
+         * Reply bytes from the session, written straight into pooled direct buffers. Only the
+         * worker currently serving the connection writes to it.
+         */
+        private class ConnectionOutput extends OutputStream {
+            private ByteBuffer current;
+
+            @Override
+            public void write(int b) throws IOException {
+                ensureSpace();
+                current.put((byte) b);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                while (length > 0) {
+                    ensureSpace();
+                    int count = Math.min(length, current.remaining());
+                    current.put(bytes, offset, count);
+                    offset += count;
+                    length -= count;
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                if (current != null && current.position() > 0) {
+                    queueCurrent();
+                }
+                requestWrite();
+                awaitWritesDrained();
+            }
+
+            private void ensureSpace() throws IOException {
+                if (closed) {
+                    throw new IOException("Client disconnected.");
+                }
+                if (current == null) {
+                    current = buffers.acquire();
+                } else if (!current.hasRemaining()) {
+                    queueCurrent();
+                    if (pendingWriteBytes.get() > maxPendingWriteBytes) {
+                        requestWrite();
+                        awaitWritesDrained();
+                    }
+                    current = buffers.acquire();
+                }
+            }
+
+            private void queueCurrent() {
+                current.flip();
+                queueWrite(current);
+                current = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,179 @@
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Answers the requests of one version 2 connection concurrently. The transport feeds frames in
+ * arrival order; each new request runs on a worker with its own {@link BinarySession}, and the
+ * follow-up frames of bulk inserts and imports are routed to the request they belong to by id.
+ * A client with more than {@code maxInFlight} requests outstanding gets an error for the extra ones.
+ */
+class PipelinedSession {
+    // Handed to an upload whose client has stopped sending
+    private static final WireProtocol.Frame END_OF_INPUT = new WireProtocol.Frame((byte) 0, new byte[0]);
+
+    // Follow-up frames buffered for an upload before the reader waits for its handler
+    private static final int MAX_QUEUED_UPLOAD_FRAMES = 16;
+
+    private final DataOutputStream out;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final Executor workers;
+    private final int maxInFlight;
+
+    private final Set<Integer> inFlight = ConcurrentHashMap.newKeySet();
+    private final ConcurrentHashMap<Integer, BlockingQueue<WireProtocol.Frame>> uploads = new ConcurrentHashMap<>();
+    private final ReentrantLock idleLock = new ReentrantLock();
+    private final Condition idle = idleLock.newCondition();
+
+    PipelinedSession(DataOutputStream out, Executor workers, int maxInFlight) {
+        this.out = out;
+        this.workers = workers;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Takes the connection's next frame. Called by one reader thread at a time; may wait while
+     * an upload's handler catches up with its data.
+     */
+    void onFrame(WireProtocol.Frame frame) throws IOException {
+        int requestId = frame.requestId;
+        BlockingQueue<WireProtocol.Frame> upload = uploads.get(requestId);
+        if (upload != null) {
+            deliver(requestId, upload, frame);
+            return;
+        }
+        if (WireProtocol.isUploadFrame(frame.type)) {
+            // Rest of an upload whose handler already gave up, e.g. on a database error
+            return;
+        }
+
+        if (requestId == WireProtocol.CONNECTION_REQUEST_ID || !inFlight.add(requestId)) {
+            replyError(requestId, "Request id " + requestId + " is already in use.");
+            return;
+        }
+        if (inFlight.size() > maxInFlight) {
+            finished(requestId);
+            replyError(requestId, "Too many requests in flight, at most " + maxInFlight + " are allowed.");
+            return;
+        }
+
+        FrameSource followUps = () -> {
+            throw new IOException("Request " + requestId + " takes no further frames.");
+        };
+        if (WireProtocol.startsUpload(frame.type)) {
+            BlockingQueue<WireProtocol.Frame> queue = new ArrayBlockingQueue<>(MAX_QUEUED_UPLOAD_FRAMES);
+            uploads.put(requestId, queue);
+            followUps = () -> nextUploadFrame(queue);
+        }
+
+        FrameSource requestFrames = followUps;
+        try {
+            workers.execute(() -> serve(frame, requestFrames));
+        } catch (RejectedExecutionException e) {
+            finished(requestId);
+            throw new IOException("Server is shutting down.");
+        }
+    }
+
+    /** Tells running uploads that no more data is coming. */
+    void closeInput() {
+        for (BlockingQueue<WireProtocol.Frame> upload : uploads.values()) {
+            upload.clear();
+            upload.offer(END_OF_INPUT);
+        }
+    }
+
+    /** Waits for every running request to finish. */
+    void awaitIdle() throws InterruptedIOException {
+        idleLock.lock();
+        try {
+            while (!inFlight.isEmpty()) {
+                idle.await();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for requests to finish.");
+        } finally {
+            idleLock.unlock();
+        }
+    }
+
+    private void serve(WireProtocol.Frame request, FrameSource followUps) {
+        try {
+            new BinarySession(followUps, out, request.requestId, writeLock).handle(request);
+        } catch (IOException e) {
+            // Client went away mid-reply, the reader sees the same when it next reads
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            try {
+                replyError(request.requestId, "Internal server error.");
+            } catch (IOException ignored) {
+                // Client went away
+            }
+        } finally {
+            finished(request.requestId);
+        }
+    }
+
+    private void deliver(int requestId, BlockingQueue<WireProtocol.Frame> upload, WireProtocol.Frame frame)
+            throws IOException {
+        try {
+            while (!upload.offer(frame, 100, TimeUnit.MILLISECONDS)) {
+                if (uploads.get(requestId) != upload) {
+                    // Handler finished without reading the rest
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while passing on request data.");
+        }
+    }
+
+    private static WireProtocol.Frame nextUploadFrame(BlockingQueue<WireProtocol.Frame> upload) throws IOException {
+        WireProtocol.Frame frame;
+        try {
+            frame = upload.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for request data.");
+        }
+        if (frame == END_OF_INPUT) {
+            throw new EOFException("Client disconnected.");
+        }
+        return frame;
+    }
+
+    private void finished(int requestId) {
+        uploads.remove(requestId);
+        inFlight.remove(requestId);
+        if (inFlight.isEmpty()) {
+            idleLock.lock();
+            try {
+                idle.signalAll();
+            } finally {
+                idleLock.unlock();
+            }
+        }
+    }
+
+    private void replyError(int requestId, String message) throws IOException {
+        writeLock.lock();
+        try {
+            new WireProtocol.PayloadBuilder().string(message).writeAsFrame(out, WireProtocol.ERROR, requestId);
+            out.flush();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+}
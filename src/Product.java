@@ -0,0 +1,37 @@
+import java.math.BigDecimal;
+
+class Product {
+    private int id;
+    private String name;
+    private int categoryId;
+    private int supplierId;
+    private BigDecimal price;
+
+    public Product(int id, String name, int categoryId, int supplierId, BigDecimal price) {
+        this.id = id;
+        this.name = name;
+        this.categoryId = categoryId;
+        this.supplierId = supplierId;
+        this.price = price;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getCategoryId() {
+        return categoryId;
+    }
+
+    public int getSupplierId() {
+        return supplierId;
+    }
+
+    public BigDecimal getPrice() {
+        return price;
+    }
+}
@@ -0,0 +1,181 @@
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Inserts a stream of products sent with ADD_PRODUCTS_BULK. Valid rows are sent to MySQL with
+ * JDBC batching (rewritten into multi-row INSERTs by the driver) and committed one chunk at a
+ * time; after each commit the client gets the chunk's generated ids and rejected rows.
+ */
+class ProductBulkInsert {
+    private static final String INSERT_PRODUCT =
+            "INSERT INTO products (name, category_id, supplier_id, price) VALUES (?, ?, ?, ?)";
+
+    private final Connection connection;
+    private final CatalogCache catalogCache;
+    private final ProductNameIndex nameIndex;
+    private final ChangeFeed changeFeed;
+    private final int chunkSize;
+    private final ResponseWriter reply;
+
+    private final List<PendingRow> chunkRows = new ArrayList<>();
+    private final List<Integer> errorRows = new ArrayList<>();
+    private final List<String> errorReasons = new ArrayList<>();
+    private int chunkFirstRow;
+    private int rowNumber;
+    private int inserted;
+    private int rejected;
+    private boolean allRowsRead;
+
+    ProductBulkInsert(Connection connection, CatalogCache catalogCache, ProductNameIndex nameIndex,
+            ChangeFeed changeFeed, int chunkSize, ResponseWriter reply) {
+        this.connection = connection;
+        this.catalogCache = catalogCache;
+        this.nameIndex = nameIndex;
+        this.changeFeed = changeFeed;
+        this.chunkSize = chunkSize;
+        this.reply = reply;
+    }
+
+    /** Reads row frames until BULK_END, inserting as it goes. Returns the number of rows inserted. */
+    int run(FrameSource rows) throws IOException, SQLException {
+        connection.setAutoCommit(false);
+        try (PreparedStatement stmt = connection.prepareStatement(INSERT_PRODUCT, Statement.RETURN_GENERATED_KEYS)) {
+            WireProtocol.Frame frame;
+            while ((frame = rows.next()).type != WireProtocol.BULK_END) {
+                if (frame.type != WireProtocol.BULK_ROWS) {
+                    throw new IOException("Unexpected frame in bulk insert: " + frame.type);
+                }
+                ResultTable batch = ResultTable.readFrom(frame.reader());
+                for (int i = 0; i < batch.getRowCount(); i++) {
+                    addRow(stmt, batch.getRow(i));
+                }
+            }
+            allRowsRead = true;
+            flushChunk(stmt);
+        }
+        return inserted;
+    }
+
+    int getRejected() {
+        return rejected;
+    }
+
+    /** False if the insert failed before reading BULK_END, leaving row frames unread. */
+    boolean hasReadAllRows() {
+        return allRowsRead;
+    }
+
+    private void addRow(PreparedStatement stmt, Object[] row) throws IOException, SQLException {
+        String name = (String) row[0];
+        int categoryId = row[1] == null ? 0 : (Integer) row[1];
+        int supplierId = row[2] == null ? 0 : (Integer) row[2];
+        BigDecimal price = (BigDecimal) row[3];
+
+        String problem = Server.checkProduct(name, categoryId, supplierId, price);
+        if (problem != null) {
+            errorRows.add(rowNumber);
+            errorReasons.add(problem);
+        } else {
+            chunkRows.add(new PendingRow(rowNumber, new Product(0, name, categoryId, supplierId, price)));
+        }
+        rowNumber++;
+
+        if (rowNumber - chunkFirstRow == chunkSize) {
+            flushChunk(stmt);
+        }
+    }
+
+    private void flushChunk(PreparedStatement stmt) throws IOException, SQLException {
+        if (rowNumber == chunkFirstRow) {
+            return;
+        }
+
+        if (!chunkRows.isEmpty()) {
+            try {
+                for (PendingRow row : chunkRows) {
+                    bind(stmt, row.product);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+                try (ResultSet keys = stmt.getGeneratedKeys()) {
+                    for (PendingRow row : chunkRows) {
+                        keys.next();
+                        row.id = keys.getInt(1);
+                    }
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                // Something in the chunk was refused; insert row by row to find out which
+                connection.rollback();
+                stmt.clearBatch();
+                insertIndividually(stmt);
+                connection.commit();
+            }
+        }
+
+        int[] insertedIds = chunkRows.stream().filter(row -> row.id != 0).mapToInt(row -> row.id).toArray();
+        for (PendingRow row : chunkRows) {
+            if (row.id != 0) {
+                Product product = new Product(row.id, row.product.getName(), row.product.getCategoryId(),
+                        row.product.getSupplierId(), row.product.getPrice());
+                catalogCache.addProduct(product);
+                nameIndex.add(row.id, product.getName());
+                changeFeed.productAdded(product);
+            }
+        }
+        inserted += insertedIds.length;
+        rejected += errorRows.size();
+
+        reply.chunkResult(chunkFirstRow, insertedIds,
+                errorRows.stream().mapToInt(Integer::intValue).toArray(), errorReasons.toArray(new String[0]));
+
+        chunkRows.clear();
+        errorRows.clear();
+        errorReasons.clear();
+        chunkFirstRow = rowNumber;
+    }
+
+    private void insertIndividually(PreparedStatement stmt) throws SQLException {
+        for (PendingRow row : chunkRows) {
+            row.id = 0;
+            try {
+                bind(stmt, row.product);
+                stmt.executeUpdate();
+                try (ResultSet keys = stmt.getGeneratedKeys()) {
+                    if (keys.next()) {
+                        row.id = keys.getInt(1);
+                    }
+                }
+            } catch (SQLException e) {
+                errorRows.add(row.rowNumber);
+                errorReasons.add("Rejected by the database: " + e.getMessage());
+            }
+        }
+    }
+
+    private static void bind(PreparedStatement stmt, Product product) throws SQLException {
+        stmt.setString(1, product.getName());
+        stmt.setInt(2, product.getCategoryId());
+        stmt.setInt(3, product.getSupplierId());
+        stmt.setBigDecimal(4, product.getPrice());
+    }
+
+    /** A validated row waiting for its chunk to be written; {@code id} is set once it is inserted. */
+    private static class PendingRow {
+        final int rowNumber;
+        final Product product;
+        int id;
+
+        PendingRow(int rowNumber, Product product) {
+            this.rowNumber = rowNumber;
+            this.product = product;
+        }
+    }
+}
@@ -0,0 +1,420 @@
+import com.mysql.cj.jdbc.JdbcStatement;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Loads a CSV or TSV product file uploaded with IMPORT_PRODUCTS into the products table through
+ * {@code LOAD DATA LOCAL INFILE}.
+ *
+ * <p>The upload is never stored: the driver pulls the file through
+ * {@link JdbcStatement#setLocalInfileInputStream}, and that stream decodes the client's
+ * IMPORT_DATA frames one record at a time, drops records that fail validation (category and
+ * supplier ids are checked against the in-memory catalog) and hands MySQL a clean
+ * tab-separated rendering of the rest. Memory use is therefore bounded by one frame and one
+ * record whatever the file size. The load is split into several LOAD DATA statements of
+ * {@code rowsPerLoad} rows each so no single transaction grows with the file.
+ */
+class ProductImport {
+    enum Format {
+        CSV,
+        TSV
+    }
+
+    private static final String LOAD_PRODUCTS = "LOAD DATA LOCAL INFILE 'products-upload.tsv' INTO TABLE products"
+            + " CHARACTER SET utf8mb4 (name, category_id, supplier_id, price)";
+
+    // Longest record we are willing to buffer; anything longer is rejected
+    private static final int MAX_RECORD_CHARS = 64 * 1024;
+    private static final int MAX_REPORTED_ERRORS = 20;
+    private static final long PROGRESS_INTERVAL_NANOS = 1_000_000_000L;
+
+    private final CatalogCache catalogCache;
+    private final Format format;
+    private final boolean hasHeader;
+    private final int rowsPerLoad;
+    private final ResponseWriter reply;
+
+    private final List<String> errorSamples = new ArrayList<>();
+    private long accepted;
+    private long rejected;
+    private long inserted;
+    private long lastProgressAt = System.nanoTime();
+
+    ProductImport(CatalogCache catalogCache, Format format, boolean hasHeader, int rowsPerLoad, ResponseWriter reply) {
+        this.catalogCache = catalogCache;
+        this.format = format;
+        this.hasHeader = hasHeader;
+        this.rowsPerLoad = rowsPerLoad;
+        this.reply = reply;
+    }
+
+    /**
+     * Runs the import over the frames that follow the request. On return every frame up to
+     * IMPORT_END has been consumed, even if the load failed.
+     */
+    String run(Connection connection, FrameSource frames) throws IOException, SQLException {
+        UploadStream upload = new UploadStream(frames);
+        try {
+            // Refresh the catalog if it is stale so the id checks below see recent additions
+            catalogCache.categories();
+
+            RecordReader records = new RecordReader(upload, format == Format.CSV ? ',' : '\t', format == Format.CSV);
+            if (hasHeader) {
+                records.next();
+            }
+
+            CleanRows rows = new CleanRows(records, upload);
+            try (Statement stmt = connection.createStatement()) {
+                JdbcStatement mysqlStatement = stmt.unwrap(JdbcStatement.class);
+                try {
+                    while (!rows.isExhausted()) {
+                        rows.startSegment();
+                        mysqlStatement.setLocalInfileInputStream(rows);
+                        inserted += stmt.executeUpdate(LOAD_PRODUCTS);
+                    }
+                } finally {
+                    // The stream is remembered by the session, do not leave it behind
+                    mysqlStatement.setLocalInfileInputStream(null);
+                }
+            }
+        } finally {
+            upload.skipRemaining();
+            // Ids of loaded rows are not known here; let the cache pick them up on its next load
+            catalogCache.invalidate();
+        }
+
+        reply.progress(upload.bytesRead, accepted, rejected);
+        StringBuilder summary = new StringBuilder()
+                .append("Imported ").append(inserted).append(" products, rejected ").append(rejected).append(" rows.");
+        for (String error : errorSamples) {
+            summary.append('\n').append(error);
+        }
+        if (rejected > errorSamples.size()) {
+            summary.append("\n...");
+        }
+        return summary.toString();
+    }
+
+    /** Returns the cleaned TSV line for a record, or null after recording why it was rejected. */
+    private String clean(List<String> fields, long recordNumber) {
+        String problem;
+        if (fields.size() != 4) {
+            problem = "expected 4 fields, found " + fields.size();
+        } else {
+            try {
+                String name = fields.get(0).trim();
+                int categoryId = Integer.parseInt(fields.get(1).trim());
+                int supplierId = Integer.parseInt(fields.get(2).trim());
+                BigDecimal price = new BigDecimal(fields.get(3).trim());
+
+                problem = Server.checkProductFields(name, price);
+                if (problem == null && !catalogCache.hasCategory(categoryId)) {
+                    problem = "Invalid category ID: " + categoryId;
+                }
+                if (problem == null && !catalogCache.hasSupplier(supplierId)) {
+                    problem = "Invalid supplier ID: " + supplierId;
+                }
+                if (problem == null) {
+                    accepted++;
+                    return escape(name) + '\t' + categoryId + '\t' + supplierId + '\t' + price.toPlainString() + '\n';
+                }
+            } catch (NumberFormatException e) {
+                problem = "not a number: " + e.getMessage();
+            }
+        }
+
+        rejected++;
+        if (errorSamples.size() < MAX_REPORTED_ERRORS) {
+            errorSamples.add("Record " + recordNumber + ": " + problem);
+        }
+        return null;
+    }
+
+    // Escapes for LOAD DATA's default FIELDS ESCAPED BY '\\'
+    private static String escape(String value) {
+        StringBuilder escaped = new StringBuilder(value.length() + 8);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\' -> escaped.append("\\\\");
+                case '\t' -> escaped.append("\\t");
+                case '\n' -> escaped.append("\\n");
+                case '\r' -> escaped.append("\\r");
+                case '\0' -> escaped.append("\\0");
+                default -> escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    private void maybeReportProgress(long bytesRead) throws IOException {
+        long now = System.nanoTime();
+        if (now - lastProgressAt >= PROGRESS_INTERVAL_NANOS) {
+            lastProgressAt = now;
+            reply.progress(bytesRead, accepted, rejected);
+        }
+    }
+
+    /** The raw uploaded bytes, read from IMPORT_DATA frames until IMPORT_END. */
+    private static class UploadStream extends InputStream {
+        private final FrameSource frames;
+        private byte[] current = new byte[0];
+        private int position;
+        private boolean ended;
+        long bytesRead;
+
+        UploadStream(FrameSource frames) {
+            this.frames = frames;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) {
+                return -1;
+            }
+            bytesRead++;
+            return current[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int count = Math.min(length, current.length - position);
+            System.arraycopy(current, position, buffer, offset, count);
+            position += count;
+            bytesRead += count;
+            return count;
+        }
+
+        private boolean fill() throws IOException {
+            while (position == current.length) {
+                if (ended) {
+                    return false;
+                }
+                WireProtocol.Frame frame = frames.next();
+                if (frame.type == WireProtocol.IMPORT_END) {
+                    ended = true;
+                } else if (frame.type == WireProtocol.IMPORT_DATA) {
+                    current = frame.payload;
+                    position = 0;
+                } else {
+                    throw new IOException("Unexpected frame in import: " + frame.type);
+                }
+            }
+            return true;
+        }
+
+        void skipRemaining() throws IOException {
+            while (!ended) {
+                position = current.length;
+                fill();
+            }
+        }
+    }
+
+    /** Splits delimited text into records, honouring double-quoted fields when {@code quoting} is on. */
+    private static class RecordReader {
+        private final Reader reader;
+        // Buffered here rather than with a BufferedReader or PushbackReader: those lock a monitor
+        // while reading, which would pin the session's virtual thread as it waits for the next frame
+        private final char[] buffer = new char[8192];
+        private int position;
+        private int limit;
+        private int lookahead = -2;
+        private final char delimiter;
+        private final boolean quoting;
+        private final List<String> fields = new ArrayList<>();
+        private final StringBuilder field = new StringBuilder();
+        private boolean tooLong;
+
+        RecordReader(InputStream in, char delimiter, boolean quoting) {
+            this.reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+            this.delimiter = delimiter;
+            this.quoting = quoting;
+        }
+
+        /** Returns the next non-blank record, or null at end of input. */
+        List<String> next() throws IOException {
+            while (true) {
+                List<String> record = readRecord();
+                if (record == null || record.size() > 1 || !record.get(0).isBlank()) {
+                    return record;
+                }
+            }
+        }
+
+        boolean wasTooLong() {
+            return tooLong;
+        }
+
+        private List<String> readRecord() throws IOException {
+            fields.clear();
+            field.setLength(0);
+            tooLong = false;
+            int recordChars = 0;
+            boolean inQuotes = false;
+            boolean sawAnything = false;
+
+            while (true) {
+                int c = read();
+                if (c == -1) {
+                    if (!sawAnything) {
+                        return null;
+                    }
+                    fields.add(field.toString());
+                    return fields;
+                }
+                sawAnything = true;
+
+                if (inQuotes) {
+                    if (c == '"') {
+                        int next = read();
+                        if (next == '"') {
+                            append('"');
+                        } else {
+                            inQuotes = false;
+                            lookahead = next;
+                        }
+                    } else {
+                        append((char) c);
+                    }
+                } else if (quoting && c == '"' && field.length() == 0) {
+                    inQuotes = true;
+                } else if (c == delimiter) {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else if (c == '\n') {
+                    fields.add(field.toString());
+                    return fields;
+                } else if (c != '\r') {
+                    append((char) c);
+                }
+
+                if (++recordChars > MAX_RECORD_CHARS) {
+                    tooLong = true;
+                }
+            }
+        }
+
+        private int read() throws IOException {
+            if (lookahead != -2) {
+                int c = lookahead;
+                lookahead = -2;
+                return c;
+            }
+            if (position == limit) {
+                int count = reader.read(buffer, 0, buffer.length);
+                if (count == -1) {
+                    return -1;
+                }
+                position = 0;
+                limit = count;
+            }
+            return buffer[position++];
+        }
+
+        private void append(char c) {
+            // Keep consuming an oversized record but stop buffering it
+            if (!tooLong) {
+                field.append(c);
+            }
+        }
+    }
+
+    /**
+     * The cleaned rows as one LOAD DATA file per segment. Reports end of file after
+     * {@code rowsPerLoad} rows so the caller can commit and start the next statement.
+     */
+    private class CleanRows extends InputStream {
+        private final RecordReader records;
+        private final UploadStream upload;
+        private byte[] line = new byte[0];
+        private int position;
+        private long recordNumber;
+        private int rowsInSegment;
+        private boolean exhausted;
+
+        CleanRows(RecordReader records, UploadStream upload) {
+            this.records = records;
+            this.upload = upload;
+        }
+
+        void startSegment() {
+            rowsInSegment = 0;
+        }
+
+        boolean isExhausted() {
+            return exhausted && position == line.length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) {
+                return -1;
+            }
+            return line[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int total = 0;
+            while (total < length && fill()) {
+                int count = Math.min(length - total, line.length - position);
+                System.arraycopy(line, position, buffer, offset + total, count);
+                position += count;
+                total += count;
+            }
+            return total == 0 && length > 0 ? -1 : total;
+        }
+
+        // The driver closes the stream after each statement; the upload carries on into the next one
+        @Override
+        public void close() {
+        }
+
+        private boolean fill() throws IOException {
+            while (position == line.length) {
+                if (exhausted || rowsInSegment >= rowsPerLoad) {
+                    return false;
+                }
+                List<String> record = records.next();
+                if (record == null) {
+                    exhausted = true;
+                    return false;
+                }
+                recordNumber++;
+                String cleaned = records.wasTooLong() ? reject(recordNumber) : clean(record, recordNumber);
+                if (cleaned != null) {
+                    line = cleaned.getBytes(StandardCharsets.UTF_8);
+                    position = 0;
+                    rowsInSegment++;
+                }
+                maybeReportProgress(upload.bytesRead);
+            }
+            return true;
+        }
+
+        private String reject(long number) {
+            rejected++;
+            if (errorSamples.size() < MAX_REPORTED_ERRORS) {
+                errorSamples.add("Record " + number + ": longer than " + MAX_RECORD_CHARS + " characters");
+            }
+            return null;
+        }
+    }
+}
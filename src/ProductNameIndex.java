@@ -0,0 +1,304 @@
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory index of product names for lookup boxes, answering prefix (autocomplete) and
+ * substring searches without touching the database. Matching ignores case.
+ *
+ * <p>Prefix searches walk a sorted map of lower-cased names. Substring searches take the posting
+ * list of the query's rarest trigram (three consecutive characters) and check each candidate's
+ * name; queries shorter than a trigram scan the names instead.
+ *
+ * <p>The index is built from the products table by {@link #rebuild()} and kept current by
+ * {@link #add} for products this server inserts. Its size is estimated as it grows; once that
+ * passes the memory budget the index is dropped and reports itself unavailable until the next
+ * rebuild fits, so callers must be ready to search the database instead.
+ */
+class ProductNameIndex {
+    private static final int TRIGRAM = 3;
+
+    // Rough heap cost of the entries, for the memory budget
+    private static final int NAME_ENTRY_BYTES = 120;
+    private static final int POSTING_LIST_BYTES = 96;
+    private static final int POSTING_BYTES = 6;
+
+    private final DataSource dataSource;
+    private final long maxBytes;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ReentrantLock rebuildLock = new ReentrantLock();
+    private Entries entries = new Entries();
+    private boolean available;
+    private String unavailableReason = "not built yet";
+
+    // Adds that land while a rebuild is reading the database, replayed once it swaps in
+    private List<Match> addsDuringRebuild;
+
+    ProductNameIndex(DataSource dataSource, long maxBytes) {
+        this.dataSource = dataSource;
+        this.maxBytes = maxBytes;
+    }
+
+    /** A product found by a search. */
+    static final class Match {
+        final int id;
+        final String name;
+
+        Match(int id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+    }
+
+    /**
+     * Products whose name starts with {@code prefix}, in name order, or null when the index is
+     * not available.
+     */
+    List<Match> prefixSearch(String prefix, int limit) {
+        String key = normalize(prefix);
+        lock.readLock().lock();
+        try {
+            if (!available) {
+                return null;
+            }
+            List<Match> matches = new ArrayList<>();
+            for (Map.Entry<String, int[]> entry : entries.sortedNames.tailMap(key, true).entrySet()) {
+                if (!entry.getKey().startsWith(key) || !collect(entry.getValue(), matches, limit)) {
+                    break;
+                }
+            }
+            return matches;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Products whose name contains {@code text}, or null when the index is not available. */
+    List<Match> substringSearch(String text, int limit) {
+        String key = normalize(text);
+        lock.readLock().lock();
+        try {
+            if (!available) {
+                return null;
+            }
+            List<Match> matches = new ArrayList<>();
+            if (key.length() < TRIGRAM) {
+                for (Map.Entry<String, int[]> entry : entries.sortedNames.entrySet()) {
+                    if (entry.getKey().contains(key) && !collect(entry.getValue(), matches, limit)) {
+                        break;
+                    }
+                }
+                return matches;
+            }
+
+            Postings rarest = null;
+            for (int i = 0; i + TRIGRAM <= key.length(); i++) {
+                Postings postings = entries.trigrams.get(trigram(key, i));
+                if (postings == null) {
+                    // Some trigram of the query occurs in no name
+                    return matches;
+                }
+                if (rarest == null || postings.size < rarest.size) {
+                    rarest = postings;
+                }
+            }
+            for (int i = 0; i < rarest.size && matches.size() < limit; i++) {
+                String name = entries.names.get(rarest.ids[i]);
+                if (name != null && normalize(name).contains(key)) {
+                    matches.add(new Match(rarest.ids[i], name));
+                }
+            }
+            return matches;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Indexes a product this server has just inserted. */
+    void add(int id, String name) {
+        lock.writeLock().lock();
+        try {
+            if (addsDuringRebuild != null) {
+                addsDuringRebuild.add(new Match(id, name));
+            }
+            if (available) {
+                entries.add(id, name);
+                checkBudget();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Builds the index afresh from the products table and swaps it in. Searches keep using the
+     * old index meanwhile. Returns a summary for the caller to report.
+     */
+    String rebuild() throws SQLException {
+        rebuildLock.lock();
+        try {
+            lock.writeLock().lock();
+            try {
+                addsDuringRebuild = new ArrayList<>();
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            Entries fresh = new Entries();
+            boolean fits = true;
+            try (Connection connection = dataSource.getConnection();
+                 Statement stmt = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                // Stream the rows, only the index should have to fit in memory
+                stmt.setFetchSize(Integer.MIN_VALUE);
+                try (ResultSet rs = stmt.executeQuery("SELECT id, name FROM products")) {
+                    while (rs.next()) {
+                        fresh.add(rs.getInt("id"), rs.getString("name"));
+                        if (fresh.estimatedBytes > maxBytes) {
+                            fits = false;
+                            break;
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                lock.writeLock().lock();
+                try {
+                    addsDuringRebuild = null;
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                throw e;
+            }
+
+            lock.writeLock().lock();
+            try {
+                if (fits) {
+                    for (Match added : addsDuringRebuild) {
+                        fresh.add(added.id, added.name);
+                    }
+                    entries = fresh;
+                    available = true;
+                    checkBudget();
+                } else {
+                    drop("products exceed the memory budget of " + maxBytes + " bytes");
+                }
+                addsDuringRebuild = null;
+                return describe();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } finally {
+            rebuildLock.unlock();
+        }
+    }
+
+    String describe() {
+        lock.readLock().lock();
+        try {
+            if (!available) {
+                return "Name index unavailable: " + unavailableReason + ".";
+            }
+            return String.format("Name index: %d names, %d trigrams, about %d KB of %d KB.",
+                    entries.names.size(), entries.trigrams.size(), entries.estimatedBytes / 1024, maxBytes / 1024);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private boolean collect(int[] ids, List<Match> matches, int limit) {
+        for (int id : ids) {
+            if (matches.size() == limit) {
+                return false;
+            }
+            matches.add(new Match(id, entries.names.get(id)));
+        }
+        return matches.size() < limit;
+    }
+
+    private void checkBudget() {
+        if (entries.estimatedBytes > maxBytes) {
+            drop("products outgrew the memory budget of " + maxBytes + " bytes");
+        }
+    }
+
+    private void drop(String reason) {
+        entries = new Entries();
+        available = false;
+        unavailableReason = reason;
+        System.out.println("Name index dropped: " + reason + ".");
+    }
+
+    private static String normalize(String text) {
+        return text.toLowerCase(Locale.ROOT);
+    }
+
+    private static long trigram(String text, int start) {
+        return ((long) text.charAt(start) << 32) | ((long) text.charAt(start + 1) << 16) | text.charAt(start + 2);
+    }
+
+    /** The index proper, replaced as a whole by a rebuild. */
+    private static final class Entries {
+        final IntObjectHashMap<String> names = new IntObjectHashMap<>();
+        // Lower-cased name to the ids of the products with that name
+        final TreeMap<String, int[]> sortedNames = new TreeMap<>();
+        final HashMap<Long, Postings> trigrams = new HashMap<>();
+        long estimatedBytes;
+
+        void add(int id, String name) {
+            if (name == null || names.put(id, name) != null) {
+                return;
+            }
+            String key = normalize(name);
+            sortedNames.merge(key, new int[] {id}, (ids, added) -> {
+                int[] grown = Arrays.copyOf(ids, ids.length + 1);
+                grown[ids.length] = id;
+                return grown;
+            });
+            estimatedBytes += NAME_ENTRY_BYTES + 4L * name.length();
+
+            long previous = -1;
+            for (int i = 0; i + TRIGRAM <= key.length(); i++) {
+                long trigram = trigram(key, i);
+                if (trigram == previous) {
+                    // Runs like "aaaa" repeat a trigram; one posting per name is enough
+                    continue;
+                }
+                previous = trigram;
+                Postings postings = trigrams.get(trigram);
+                if (postings == null) {
+                    postings = new Postings();
+                    trigrams.put(trigram, postings);
+                    estimatedBytes += POSTING_LIST_BYTES;
+                }
+                if (postings.size == 0 || postings.ids[postings.size - 1] != id) {
+                    postings.add(id);
+                    estimatedBytes += POSTING_BYTES;
+                }
+            }
+        }
+    }
+
+    /** Ids of the names containing one trigram, in the order they were added. */
+    private static final class Postings {
+        int[] ids = new int[4];
+        int size;
+
+        void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+    }
+}
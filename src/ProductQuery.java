@@ -0,0 +1,83 @@
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+
+/**
+ * A product search: optional filters on category, supplier, price range and name prefix, a sort
+ * order and a row limit. Unset filters are null. On the wire a flags byte says which filters
+ * follow, then come the filters that are set, the sort order, the direction and the limit.
+ */
+class ProductQuery {
+    enum SortOrder {ID, NAME, PRICE}
+
+    private static final int HAS_CATEGORY = 1;
+    private static final int HAS_SUPPLIER = 1 << 1;
+    private static final int HAS_MIN_PRICE = 1 << 2;
+    private static final int HAS_MAX_PRICE = 1 << 3;
+    private static final int HAS_NAME_PREFIX = 1 << 4;
+
+    Integer categoryId;
+    Integer supplierId;
+    BigDecimal minPrice;
+    BigDecimal maxPrice;
+    String namePrefix;
+    SortOrder sortOrder = SortOrder.ID;
+    boolean descending;
+    // 0 asks for the server's default
+    int limit;
+
+    void writeTo(WireProtocol.PayloadBuilder out) throws IOException {
+        int flags = (categoryId != null ? HAS_CATEGORY : 0)
+                | (supplierId != null ? HAS_SUPPLIER : 0)
+                | (minPrice != null ? HAS_MIN_PRICE : 0)
+                | (maxPrice != null ? HAS_MAX_PRICE : 0)
+                | (namePrefix != null ? HAS_NAME_PREFIX : 0);
+        out.write(flags);
+        if (categoryId != null) {
+            out.varInt(categoryId);
+        }
+        if (supplierId != null) {
+            out.varInt(supplierId);
+        }
+        if (minPrice != null) {
+            out.decimal(minPrice, WireProtocol.PRICE_SCALE);
+        }
+        if (maxPrice != null) {
+            out.decimal(maxPrice, WireProtocol.PRICE_SCALE);
+        }
+        if (namePrefix != null) {
+            out.string(namePrefix);
+        }
+        out.write(sortOrder.ordinal());
+        out.write(descending ? 1 : 0);
+        out.varInt(limit);
+    }
+
+    static ProductQuery readFrom(DataInputStream in) throws IOException {
+        ProductQuery query = new ProductQuery();
+        int flags = in.readUnsignedByte();
+        if ((flags & HAS_CATEGORY) != 0) {
+            query.categoryId = WireProtocol.readVarInt(in);
+        }
+        if ((flags & HAS_SUPPLIER) != 0) {
+            query.supplierId = WireProtocol.readVarInt(in);
+        }
+        if ((flags & HAS_MIN_PRICE) != 0) {
+            query.minPrice = WireProtocol.readDecimal(in, WireProtocol.PRICE_SCALE);
+        }
+        if ((flags & HAS_MAX_PRICE) != 0) {
+            query.maxPrice = WireProtocol.readDecimal(in, WireProtocol.PRICE_SCALE);
+        }
+        if ((flags & HAS_NAME_PREFIX) != 0) {
+            query.namePrefix = WireProtocol.readString(in);
+        }
+        int sortOrder = in.readUnsignedByte();
+        if (sortOrder >= SortOrder.values().length) {
+            throw new IOException("Unknown sort order: " + sortOrder);
+        }
+        query.sortOrder = SortOrder.values()[sortOrder];
+        query.descending = in.readBoolean();
+        query.limit = WireProtocol.readVarInt(in);
+        return query;
+    }
+}
@@ -0,0 +1,185 @@
+import javax.swing.SwingUtilities;
+import javax.swing.table.AbstractTableModel;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * Products for a {@link javax.swing.JTable}, fetched from the server a page at a time as rows are
+ * displayed instead of all up front. At most {@code maxCachedPages} pages are kept, the least
+ * recently shown going first, and the page after each one shown is fetched ahead of time so
+ * scrolling down rarely lands on rows that are still loading; those show empty until they arrive.
+ *
+ * <p>Only touched on the Swing event thread, apart from the loads themselves.
+ */
+class ProductTableModel extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+    private static final String[] COLUMNS = {"Product ID", "Product Name", "Category ID", "Supplier ID", "Price"};
+    private static final int LOAD_THREADS = 2;
+
+    private final transient InventoryClient client;
+    private final int pageSize;
+    private final int maxCachedPages;
+    private final transient Consumer<IOException> onError;
+    private final transient ExecutorService loader = Executors.newFixedThreadPool(LOAD_THREADS, runnable ->
+            Thread.ofPlatform().name("product-page-loader").daemon().unstarted(runnable));
+
+    private final LinkedHashMap<Integer, ResultTable> pages;
+    private final transient Set<Integer> loading = new HashSet<>();
+    private int rowCount;
+    // Bumped on refresh so pages fetched before it are dropped
+    private int generation;
+    // Pages a scroll has since moved far away from are not worth fetching anymore
+    private volatile int lastShownPage;
+    // One error per refresh is enough, a dead server would otherwise fail every page shown
+    private boolean errorReported;
+
+    ProductTableModel(InventoryClient client, int pageSize, int maxCachedPages, Consumer<IOException> onError) {
+        this.client = client;
+        this.pageSize = pageSize;
+        this.maxCachedPages = maxCachedPages;
+        this.onError = onError;
+        this.pages = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, ResultTable> eldest) {
+                return size() > ProductTableModel.this.maxCachedPages;
+            }
+        };
+    }
+
+    /** Drops every cached page and asks the server for the current number of products. */
+    void refresh() {
+        int refreshGeneration = ++generation;
+        pages.clear();
+        loading.clear();
+        errorReported = false;
+        submit(() -> {
+            long count;
+            try {
+                count = client.countProducts();
+            } catch (IOException e) {
+                SwingUtilities.invokeLater(() -> failed(refreshGeneration, e));
+                return;
+            }
+            SwingUtilities.invokeLater(() -> {
+                if (refreshGeneration == generation) {
+                    rowCount = (int) Math.min(Integer.MAX_VALUE, count);
+                    fireTableDataChanged();
+                }
+            });
+        });
+    }
+
+    /**
+     * Adds a row for a product added since the count. New products have the highest ids, so the
+     * row goes last; the page it lands on is fetched again when shown.
+     */
+    void productAdded() {
+        pages.remove(rowCount / pageSize);
+        rowCount++;
+        fireTableRowsInserted(rowCount - 1, rowCount - 1);
+    }
+
+    /** Stops fetching pages; the model must not be used afterwards. */
+    void close() {
+        loader.shutdownNow();
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        int page = rowIndex / pageSize;
+        lastShownPage = page;
+        ResultTable rows = pages.get(page);
+        if (rows == null) {
+            load(page);
+            return null;
+        }
+        // Prefetch the next page while this one is being looked at
+        if (!pages.containsKey(page + 1)) {
+            load(page + 1);
+        }
+        int row = rowIndex - page * pageSize;
+        return row < rows.getRowCount() ? rows.getRow(row)[columnIndex] : null;
+    }
+
+    private void load(int page) {
+        if (page * (long) pageSize >= rowCount || !loading.add(page)) {
+            return;
+        }
+        int loadGeneration = generation;
+        submit(() -> {
+            if (Math.abs(page - lastShownPage) > maxCachedPages / 2) {
+                SwingUtilities.invokeLater(() -> loading.remove(page));
+                return;
+            }
+            InventoryClient.Window window;
+            try {
+                window = client.viewProductsWindow(page * pageSize, pageSize);
+            } catch (IOException e) {
+                SwingUtilities.invokeLater(() -> {
+                    loading.remove(page);
+                    failed(loadGeneration, e);
+                });
+                return;
+            }
+            SwingUtilities.invokeLater(() -> loaded(loadGeneration, page, window));
+        });
+    }
+
+    private void loaded(int loadGeneration, int page, InventoryClient.Window window) {
+        if (loadGeneration != generation) {
+            return;
+        }
+        loading.remove(page);
+        if (window.totalRows != rowCount) {
+            // Products were added or removed since the count; positions of cached pages may have shifted
+            pages.clear();
+            pages.put(page, window.rows);
+            rowCount = window.totalRows;
+            fireTableDataChanged();
+            return;
+        }
+        pages.put(page, window.rows);
+        int firstRow = page * pageSize;
+        int lastRow = Math.min(rowCount, firstRow + pageSize) - 1;
+        if (lastRow >= firstRow) {
+            fireTableRowsUpdated(firstRow, lastRow);
+        }
+    }
+
+    private void failed(int failedGeneration, IOException e) {
+        if (failedGeneration == generation && !errorReported) {
+            errorReported = true;
+            onError.accept(e);
+        }
+    }
+
+    private void submit(Runnable task) {
+        try {
+            loader.execute(task);
+        } catch (RejectedExecutionException e) {
+            // Closed
+        }
+    }
+}
@@ -0,0 +1,32 @@
+/**
+ * Counts and latency percentiles of one request opcode, as seen over JMX. Times are in
+ * microseconds since the server started; DB time is spent holding a database connection or
+ * waiting for a group commit, serialization time encoding and writing replies.
+ */
+public interface RequestMetricsMXBean {
+    String getRequest();
+
+    long getCount();
+
+    long getErrors();
+
+    long getLatencyMeanMicros();
+
+    long getLatencyP50Micros();
+
+    long getLatencyP90Micros();
+
+    long getLatencyP99Micros();
+
+    long getLatencyP999Micros();
+
+    long getLatencyMaxMicros();
+
+    long getDbTimeP50Micros();
+
+    long getDbTimeP99Micros();
+
+    long getSerializationP50Micros();
+
+    long getSerializationP99Micros();
+}
@@ -0,0 +1,71 @@
+import java.io.IOException;
+
+/**
+ * Where a request handler sends its reply. Each wire protocol supplies its own implementation
+ * so the handlers in {@link Server} are written once.
+ */
+interface ResponseWriter {
+    void message(String text) throws IOException;
+
+    void error(String text) throws IOException;
+
+    void table(ResultTable table) throws IOException;
+
+    /** One page of a keyset-paginated listing; {@code nextAfterId} is the cursor for the next page. */
+    default void page(ResultTable rows, boolean hasMore, int nextAfterId) throws IOException {
+        throw new UnsupportedOperationException("Paging is not supported by this protocol.");
+    }
+
+    default void count(long rows) throws IOException {
+        throw new UnsupportedOperationException("Counting is not supported by this protocol.");
+    }
+
+    /**
+     * Rows taken by position from a listing that held {@code totalRows} rows when they were read,
+     * so the client can tell that rows were added since it last counted.
+     */
+    default void window(int totalRows, ResultTable rows) throws IOException {
+        throw new UnsupportedOperationException("Windowed listings are not supported by this protocol.");
+    }
+
+    /** A product's stock after a change; what is available is {@code onHand - reserved}. */
+    default void stockLevel(int productId, long onHand, long reserved) throws IOException {
+        throw new UnsupportedOperationException("Stock is not supported by this protocol.");
+    }
+
+    /**
+     * Changes from a subscription's feed, already encoded, the first of them being version
+     * {@code firstVersion} and the rest following on. Must be written out before this returns.
+     */
+    default void feedChanges(long firstVersion, byte[][] changes) throws IOException {
+        throw new UnsupportedOperationException("Subscriptions are not supported by this protocol.");
+    }
+
+    /** Tells a subscriber to reload everything; changes after {@code version} follow. */
+    default void feedResync(long version) throws IOException {
+        throw new UnsupportedOperationException("Subscriptions are not supported by this protocol.");
+    }
+
+    /** One chunk of a streamed listing. The rows must be written out before this returns. */
+    default void chunk(ResultTable rows) throws IOException {
+        throw new UnsupportedOperationException("Streaming is not supported by this protocol.");
+    }
+
+    default void endOfStream(long rowCount) throws IOException {
+        throw new UnsupportedOperationException("Streaming is not supported by this protocol.");
+    }
+
+    /**
+     * Outcome of one committed chunk of a bulk insert. {@code insertedIds} follow the order of
+     * the chunk's accepted rows; rejected rows are identified by their position in the whole stream.
+     */
+    default void chunkResult(int firstRow, int[] insertedIds, int[] errorRows, String[] errorReasons)
+            throws IOException {
+        throw new UnsupportedOperationException("Bulk inserts are not supported by this protocol.");
+    }
+
+    /** How far a file import has got. The progress must be written out before this returns. */
+    default void progress(long bytesRead, long rowsAccepted, long rowsRejected) throws IOException {
+        throw new UnsupportedOperationException("Imports are not supported by this protocol.");
+    }
+}
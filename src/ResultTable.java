@@ -0,0 +1,150 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rows returned by a VIEW request. On the wire the table is columnar: a header with each
+ * column's type and name, the row count, then all values of the first column, all values of
+ * the second, and so on. Columns containing nulls carry a null bitmap ahead of their values.
+ */
+class ResultTable {
+    static final byte INT = 1;
+    static final byte STRING = 2;
+    static final byte DECIMAL = 3;
+
+    private final String[] columnNames;
+    private final byte[] columnTypes;
+    private final List<Object[]> rows;
+
+    ResultTable(String[] columnNames, byte[] columnTypes) {
+        this(columnNames, columnTypes, new ArrayList<>());
+    }
+
+    private ResultTable(String[] columnNames, byte[] columnTypes, List<Object[]> rows) {
+        this.columnNames = columnNames;
+        this.columnTypes = columnTypes;
+        this.rows = rows;
+    }
+
+    void addRow(Object... values) {
+        rows.add(values);
+    }
+
+    void clear() {
+        rows.clear();
+    }
+
+    String[] getColumnNames() {
+        return columnNames;
+    }
+
+    byte[] getColumnTypes() {
+        return columnTypes;
+    }
+
+    int getRowCount() {
+        return rows.size();
+    }
+
+    Object[] getRow(int index) {
+        return rows.get(index);
+    }
+
+    Object[][] toArray() {
+        return rows.toArray(new Object[0][]);
+    }
+
+    void writeTo(OutputStream out) throws IOException {
+        int columnCount = columnNames.length;
+        WireProtocol.writeVarInt(out, columnCount);
+        for (int c = 0; c < columnCount; c++) {
+            out.write(columnTypes[c]);
+            WireProtocol.writeString(out, columnNames[c]);
+        }
+
+        int rowCount = rows.size();
+        WireProtocol.writeVarInt(out, rowCount);
+        for (int c = 0; c < columnCount; c++) {
+            writeNullBitmap(out, c);
+            for (Object[] row : rows) {
+                Object value = row[c];
+                if (value == null) {
+                    continue;
+                }
+                switch (columnTypes[c]) {
+                    case INT -> WireProtocol.writeSignedVarInt(out, (Integer) value);
+                    case STRING -> WireProtocol.writeString(out, (String) value);
+                    case DECIMAL -> WireProtocol.writeDecimal(out, (BigDecimal) value, WireProtocol.PRICE_SCALE);
+                    default -> throw new IOException("Unknown column type " + columnTypes[c]);
+                }
+            }
+        }
+    }
+
+    private void writeNullBitmap(OutputStream out, int column) throws IOException {
+        int rowCount = rows.size();
+        byte[] bitmap = null;
+        for (int r = 0; r < rowCount; r++) {
+            if (rows.get(r)[column] == null) {
+                if (bitmap == null) {
+                    bitmap = new byte[(rowCount + 7) / 8];
+                }
+                bitmap[r >> 3] |= (byte) (1 << (r & 7));
+            }
+        }
+        if (bitmap == null) {
+            out.write(0);
+        } else {
+            out.write(1);
+            out.write(bitmap);
+        }
+    }
+
+    /**
+     * Decodes a table from a frame's payload. Counts are checked against the bytes left in
+     * {@code in} before anything is allocated for them, so {@code in} must hold the whole payload.
+     */
+    static ResultTable readFrom(InputStream in) throws IOException {
+        int columnCount = WireProtocol.readVarInt(in);
+        // A column takes at least its type and the length of its name
+        if (columnCount < 0 || columnCount > in.available() / 2) {
+            throw new IOException("Invalid column count " + columnCount + ".");
+        }
+        String[] names = new String[columnCount];
+        byte[] types = new byte[columnCount];
+        for (int c = 0; c < columnCount; c++) {
+            types[c] = (byte) in.read();
+            names[c] = WireProtocol.readString(in);
+        }
+
+        int rowCount = WireProtocol.readVarInt(in);
+        // Each column takes a byte per row, or at least a bit if the row is null there
+        if (rowCount < 0 || (columnCount == 0 && rowCount > 0)
+                || (long) columnCount * (1 + (rowCount + 7L) / 8) > in.available()) {
+            throw new IOException("Invalid row count " + rowCount + ".");
+        }
+        Object[][] values = new Object[rowCount][columnCount];
+        for (int c = 0; c < columnCount; c++) {
+            byte[] nulls = null;
+            if (in.read() == 1) {
+                nulls = in.readNBytes((rowCount + 7) / 8);
+            }
+            for (int r = 0; r < rowCount; r++) {
+                if (nulls != null && (nulls[r >> 3] & (1 << (r & 7))) != 0) {
+                    continue;
+                }
+                values[r][c] = switch (types[c]) {
+                    case INT -> WireProtocol.readSignedVarInt(in);
+                    case STRING -> WireProtocol.readString(in);
+                    case DECIMAL -> WireProtocol.readDecimal(in, WireProtocol.PRICE_SCALE);
+                    default -> throw new IOException("Unknown column type " + types[c]);
+                };
+            }
+        }
+
+        return new ResultTable(names, types, new ArrayList<>(List.of(values)));
+    }
+}
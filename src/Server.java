@@ -1,122 +1,98 @@
 import java.sql.*;
 import java.io.*;
+import java.math.BigDecimal;
 import java.net.*;
+import java.nio.file.Paths;
 import java.util.*;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.IntConsumer;
 
-class Category {
-    private int id;
-    private String name;
-
-    public Category(int id, String name) {
-        this.id = id;
-        this.name = name;
-    }
-
-    public int getId() {
-        return id;
-    }
-
-    public String getName() {
-        return name;
-    }
-}
-
-class Supplier {
-    private int id;
-    private String name;
-    private String contact;
-
-    public Supplier(int id, String name, String contact) {
-        this.id = id;
-        this.name = name;
-        this.contact = contact;
-    }
-
-    public int getId() {
-        return id;
-    }
-
-    public String getName() {
-        return name;
-    }
-
-    public String getContact() {
-        return contact;
-    }
-}
-
-class Product {
-    private int id;
-    private String name;
-    private int categoryId;
-    private int supplierId;
-    private double price;
-
-    public Product(int id, String name, int categoryId, int supplierId, double price) {
-        this.id = id;
-        this.name = name;
-        this.categoryId = categoryId;
-        this.supplierId = supplierId;
-        this.price = price;
-    }
-
-    public int getId() {
-        return id;
-    }
+public class Server {
+    // Shared with the sessions, which time each request they serve
+    static final ServerMetrics metrics = new ServerMetrics();
 
-    public String getName() {
-        return name;
-    }
+    private static ConnectionPool dataSource;
+    private static CatalogCache catalogCache;
+    private static ProductNameIndex nameIndex;
+    private static StockLedger stockLedger;
+    private static ChangeFeed changeFeed;
+    // Null unless group commit is enabled
+    private static GroupCommitWriter groupCommit;
+    // Runs the concurrent requests of pipelined (version 2) connections
+    private static ExecutorService requestWorkers;
 
-    public int getCategoryId() {
-        return categoryId;
-    }
+    private static final BigDecimal MAX_PRICE = new BigDecimal("99999999.99");
 
-    public int getSupplierId() {
-        return supplierId;
-    }
+    // Most changes sent to a subscriber in one frame
+    private static final int MAX_CHANGES_PER_FRAME = 256;
 
-    public double getPrice() {
-        return price;
-    }
-}
+    private static final String INSERT_CATEGORY = "INSERT INTO categories (name) VALUES (?)";
+    private static final String INSERT_SUPPLIER = "INSERT INTO suppliers (name, contact) VALUES (?, ?)";
+    private static final String INSERT_PRODUCT = "INSERT INTO products (name, category_id, supplier_id, price) VALUES (?, ?, ?, ?)";
 
-public class Server {
-    private static Connection connection;
-    private static final List<Category> categories = new CopyOnWriteArrayList<>();
-    private static final List<Supplier> suppliers = new CopyOnWriteArrayList<>();
-    private static final List<Product> products = new CopyOnWriteArrayList<>();
-    private static final AtomicInteger nextCategoryId = new AtomicInteger(1);
-    private static final AtomicInteger nextSupplierId = new AtomicInteger(1);
-    private static final AtomicInteger nextProductId = new AtomicInteger(1);
+    // Secondary indexes on products as {name, columns}. Each filter of QUERY_PRODUCTS has one whose
+    // leading column it can seek on, and the trailing price lets a category or supplier filter
+    // combined with a price range or price ordering stay within the index.
+    private static final String[][] PRODUCT_INDEXES = {
+            {"idx_products_category_price", "category_id, price"},
+            {"idx_products_supplier_price", "supplier_id, price"},
+            {"idx_products_price", "price"},
+            {"idx_products_name", "name"},
+    };
 
     static {
         try {
             // Load the MySQL driver
             Class.forName("com.mysql.cj.jdbc.Driver");
 
-            // Establish connection to MySQL server
-            connection = DriverManager.getConnection("jdbc:mysql://localhost:3306/", "root", "MySQL@1234");
-            System.out.println("Database connection established successfully.");
+            // Ensure database and tables exist, using a one-off connection to the server
+            try (Connection setupConnection = DriverManager.getConnection(ServerConfig.DB_SERVER_URL,
+                    ServerConfig.DB_USER, ServerConfig.DB_PASSWORD)) {
+                System.out.println("Database connection established successfully.");
+                setupDatabaseAndTables(setupConnection);
+            }
+
+            // Handlers borrow connections to inventory_db from the pool
+            dataSource = new ConnectionPool(ServerConfig.DB_SERVER_URL + ServerConfig.DB_NAME + "?" + ServerConfig.DB_URL_OPTIONS,
+                    ServerConfig.DB_USER, ServerConfig.DB_PASSWORD,
+                    ServerConfig.POOL_MIN_SIZE, ServerConfig.POOL_MAX_SIZE, ServerConfig.POOL_ACQUIRE_TIMEOUT_MS,
+                    ServerConfig.POOL_IDLE_TIMEOUT_MS, ServerConfig.POOL_LEAK_THRESHOLD_MS,
+                    ServerConfig.POOL_VALIDATION_TIMEOUT_S, ServerConfig.POOL_STATEMENT_CACHE_SIZE, metrics::addDbTime);
+            System.out.println("Connection pool started with " + dataSource.getTotalConnections() + " connections.");
+
+            changeFeed = new ChangeFeed(ServerConfig.FEED_CAPACITY);
+            catalogCache = new CatalogCache(dataSource, ServerConfig.CACHE_TTL_MS, ServerConfig.CACHE_MAX_PRODUCTS);
+            catalogCache.reload();
+            System.out.println("Catalog loaded: " + catalogCache.describe());
+
+            nameIndex = new ProductNameIndex(dataSource, ServerConfig.NAME_INDEX_MAX_MB * 1024L * 1024L);
+            System.out.println(nameIndex.rebuild());
+
+            stockLedger = new StockLedger(dataSource, catalogCache, Paths.get(ServerConfig.STOCK_JOURNAL_DIR),
+                    ServerConfig.STOCK_STRIPES, ServerConfig.STOCK_FLUSH_MS);
+            System.out.println("Stock loaded: " + stockLedger.describe());
 
-            // Ensure database and tables exist
-            setupDatabaseAndTables();
+            if (ServerConfig.GROUP_COMMIT_MS > 0) {
+                groupCommit = new GroupCommitWriter(dataSource, ServerConfig.GROUP_COMMIT_MS,
+                        ServerConfig.GROUP_COMMIT_MAX_ROWS);
+                System.out.println("Group commit every " + ServerConfig.GROUP_COMMIT_MS + " ms or "
+                        + ServerConfig.GROUP_COMMIT_MAX_ROWS + " rows.");
+            }
         } catch (Exception e) {
             e.printStackTrace();
             throw new RuntimeException("Failed to set up the database.");
         }
     }
 
-    private static void setupDatabaseAndTables() throws SQLException {
+    private static void setupDatabaseAndTables(Connection connection) throws SQLException {
         try (Statement stmt = connection.createStatement()) {
             // Create database if it doesn't exist
-            stmt.executeUpdate("CREATE DATABASE IF NOT EXISTS inventory_db");
-            System.out.println("Database 'inventory_db' checked/created.");
+            stmt.executeUpdate("CREATE DATABASE IF NOT EXISTS " + ServerConfig.DB_NAME);
+            System.out.println("Database '" + ServerConfig.DB_NAME + "' checked/created.");
 
             // Switch to the new database
-            stmt.executeUpdate("USE inventory_db");
+            stmt.executeUpdate("USE " + ServerConfig.DB_NAME);
 
             // Create categories table
             stmt.executeUpdate("""
@@ -153,205 +129,946 @@ public class Server {
             """
             );
             System.out.println("Table 'products' checked/created.");
+
+            // Create stock table; quantities are written in batches by the stock ledger
+            stmt.executeUpdate("""
+                CREATE TABLE IF NOT EXISTS stock (
+                    product_id INT PRIMARY KEY,
+                    quantity BIGINT NOT NULL DEFAULT 0,
+                    reserved BIGINT NOT NULL DEFAULT 0,
+                    FOREIGN KEY (product_id) REFERENCES products(id)
+                )
+            """
+            );
+            System.out.println("Table 'stock' checked/created.");
+
+            // Create stock_journal table: how far each journal stripe has been flushed into stock
+            stmt.executeUpdate("""
+                CREATE TABLE IF NOT EXISTS stock_journal (
+                    stripe INT PRIMARY KEY,
+                    flushed_sequence BIGINT NOT NULL
+                )
+            """
+            );
+            System.out.println("Table 'stock_journal' checked/created.");
+
+            // Added separately so that tables created before the indexes existed get them too
+            for (String[] index : PRODUCT_INDEXES) {
+                ensureIndex(connection, "products", index[0], index[1]);
+            }
         }
     }
 
+    /** Creates an index unless the table already has one by that name (MySQL has no CREATE INDEX IF NOT EXISTS). */
+    private static void ensureIndex(Connection connection, String table, String indexName, String columns)
+            throws SQLException {
+        try (PreparedStatement check = connection.prepareStatement(
+                "SELECT COUNT(*) FROM information_schema.statistics WHERE table_schema = ? AND table_name = ? AND index_name = ?")) {
+            check.setString(1, ServerConfig.DB_NAME);
+            check.setString(2, table);
+            check.setString(3, indexName);
+            try (ResultSet rs = check.executeQuery()) {
+                if (rs.next() && rs.getInt(1) > 0) {
+                    return;
+                }
+            }
+        }
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("CREATE INDEX " + indexName + " ON " + table + " (" + columns + ")");
+        }
+        System.out.println("Index '" + indexName + "' created on '" + table + "'.");
+    }
+
     public static void main(String[] args) {
-        try (ServerSocket serverSocket = new ServerSocket(6090)) {
-            System.out.println("Server is running on port 6090...");
+        metrics.registerMBeans();
+        if (ServerConfig.METRICS_PORT > 0) {
+            try {
+                metrics.startHttpEndpoint(ServerConfig.METRICS_PORT);
+            } catch (IOException e) {
+                System.out.println("Metrics endpoint not started: " + e.getMessage());
+            }
+        }
+        if (ServerConfig.TRANSPORT == ServerConfig.Transport.NIO) {
+            runNioServer();
+        } else {
+            runBlockingServer();
+        }
+    }
 
-            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-                try {
-                    if (connection != null && !connection.isClosed()) {
-                        connection.close();
-                        System.out.println("Database connection closed.");
-                    }
-                } catch (SQLException e) {
-                    e.printStackTrace();
-                }
-            }));
+    private static void runBlockingServer() {
+        requestWorkers = newWorkerPool("request-");
+        SessionExecutor sessions = new SessionExecutor(ServerConfig.EXECUTION_MODE, ServerConfig.PLATFORM_THREADS,
+                ServerConfig.MAX_SESSIONS, ServerConfig.OVERLOAD_POLICY, ServerConfig.MAX_QUEUED_SESSIONS,
+                Server::handleClient, Server::rejectClient);
+        metrics.setSessionGauge(sessions::getActiveSessions);
+
+        try (ServerSocket serverSocket = new ServerSocket(ServerConfig.PORT, ServerConfig.ACCEPT_BACKLOG)) {
+            System.out.println("Server is running on port " + ServerConfig.PORT + "...");
+            System.out.println("Sessions: " + ServerConfig.EXECUTION_MODE + " threads, max " + ServerConfig.MAX_SESSIONS
+                    + " active, overload policy " + ServerConfig.OVERLOAD_POLICY + ".");
+
+            addShutdownHook(() -> {
+                sessions.shutdown();
+                requestWorkers.shutdownNow();
+                System.out.println("Sessions: " + sessions.getAcceptedSessions() + " accepted, "
+                        + sessions.getRejectedSessions() + " rejected.");
+            });
 
             while (true) {
                 Socket clientSocket = serverSocket.accept();
                 System.out.println("Client connected!");
 
-                new Thread(() -> handleClient(clientSocket)).start();
+                sessions.submit(clientSocket);
             }
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Serves binary clients from a selector thread, borrowing a worker only while a client has a
+     * request in progress. Worker threads follow the configured execution mode.
+     */
+    private static void runNioServer() {
+        ExecutorService workers = newWorkerPool("nio-worker-");
+        requestWorkers = workers;
+        DirectBufferPool buffers = new DirectBufferPool(ServerConfig.NIO_BUFFER_SIZE, ServerConfig.NIO_MAX_POOLED_BUFFERS);
+
+        try {
+            NioServer server = new NioServer(ServerConfig.PORT, ServerConfig.ACCEPT_BACKLOG,
+                    ServerConfig.NIO_MAX_CONNECTIONS, ServerConfig.MAX_IN_FLIGHT_PER_CONNECTION,
+                    ServerConfig.NIO_MAX_PENDING_WRITE_BYTES, buffers, workers);
+            metrics.setSessionGauge(server::getOpenConnections);
+            System.out.println("Server is running on port " + ServerConfig.PORT + " (NIO)...");
+            System.out.println("Workers: " + ServerConfig.EXECUTION_MODE + " threads, max "
+                    + ServerConfig.NIO_MAX_CONNECTIONS + " connections.");
+
+            addShutdownHook(() -> {
+                server.shutdown();
+                System.out.println("NIO " + server.describe());
+            });
+
+            server.run();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static ExecutorService newWorkerPool(String namePrefix) {
+        return ServerConfig.EXECUTION_MODE == ServerConfig.ExecutionMode.VIRTUAL
+                ? Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(namePrefix, 0).factory())
+                : Executors.newFixedThreadPool(ServerConfig.PLATFORM_THREADS,
+                        Thread.ofPlatform().name(namePrefix, 0).factory());
+    }
+
+    private static void addShutdownHook(Runnable stopSessions) {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            stopSessions.run();
+            metrics.stopHttpEndpoint();
+            System.out.println("Requests " + metrics.describe());
+            if (groupCommit != null) {
+                groupCommit.shutdown();
+                System.out.println("Writes " + groupCommit.describe());
+            }
+            changeFeed.close();
+            System.out.println("Feed " + changeFeed.describe());
+            stockLedger.shutdown();
+            System.out.println("Stock " + stockLedger.describe());
+            System.out.println("Catalog " + catalogCache.describe());
+            System.out.println("Connection " + dataSource.describe());
+            dataSource.close();
+            System.out.println("Database connections closed.");
+        }));
+    }
+
+    private static void rejectClient(Socket clientSocket) {
+        System.out.println("Server busy, rejecting client.");
+        // Answer off the accept thread, the client has to be read from to learn its protocol
+        Thread.ofVirtual().start(() -> {
+            try (clientSocket) {
+                clientSocket.setSoTimeout(1000);
+                InputStream input = new BufferedInputStream(clientSocket.getInputStream());
+                String message = "Server is busy, please try again later.";
+                if (WireProtocol.isLegacyStream(input)) {
+                    ObjectOutputStream out = new ObjectOutputStream(clientSocket.getOutputStream());
+                    out.writeObject(message);
+                    out.flush();
+                } else {
+                    BinarySession.reject(input, clientSocket.getOutputStream(), message);
+                }
+            } catch (IOException e) {
+                // Client already gone
+            }
+        });
+    }
+
     private static void handleClient(Socket clientSocket) {
+        try (clientSocket) {
+            InputStream input = new BufferedInputStream(clientSocket.getInputStream());
+            OutputStream output = new BufferedOutputStream(clientSocket.getOutputStream());
+            if (WireProtocol.isLegacyStream(input)) {
+                handleLegacyClient(input, output);
+            } else {
+                new BinarySession(input, output, requestWorkers).run();
+            }
+        } catch (IOException e) {
+            System.out.println("Client disconnected or error occurred.");
+        }
+    }
+
+    /**
+     * Serves clients that still send Java-serialized commands. Kept so older GUI builds keep
+     * working while the binary protocol rolls out.
+     */
+    private static void handleLegacyClient(InputStream input, OutputStream output) throws IOException {
         try (
-                ObjectInputStream in = new ObjectInputStream(clientSocket.getInputStream());
-                ObjectOutputStream out = new ObjectOutputStream(clientSocket.getOutputStream())) {
+                ObjectInputStream in = new ObjectInputStream(input);
+                ObjectOutputStream out = new ObjectOutputStream(output)) {
+            // Push the stream header out of the buffer, the client blocks until it sees it
+            out.flush();
+            ResponseWriter reply = new LegacyResponseWriter(out);
             while (true) {
                 String request = (String) in.readObject();
+                ServerMetrics.RequestTimer timer = metrics.start(legacyOpcode(request));
+                try {
+                    serveLegacyRequest(request, in, out, reply);
+                } catch (IOException | RuntimeException e) {
+                    timer.failed();
+                    throw e;
+                } finally {
+                    metrics.finish(timer);
+                }
+                out.flush();
+            }
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
 
-                switch (request) {
-                    case "ADD_CATEGORY":
-                        addCategory(in, out);
-                        break;
+    private static byte legacyOpcode(String request) {
+        return switch (request) {
+            case "ADD_CATEGORY" -> WireProtocol.ADD_CATEGORY;
+            case "ADD_SUPPLIER" -> WireProtocol.ADD_SUPPLIER;
+            case "ADD_PRODUCT" -> WireProtocol.ADD_PRODUCT;
+            case "VIEW_PRODUCTS" -> WireProtocol.VIEW_PRODUCTS;
+            case "VIEW_CATEGORIES" -> WireProtocol.VIEW_CATEGORIES;
+            case "VIEW_SUPPLIERS" -> WireProtocol.VIEW_SUPPLIERS;
+            default -> -1;
+        };
+    }
 
-                    case "ADD_SUPPLIER":
-                        addSupplier(in, out);
-                        break;
+    private static void serveLegacyRequest(String request, ObjectInputStream in, ObjectOutputStream out,
+            ResponseWriter reply) throws IOException, ClassNotFoundException {
+        switch (request) {
+            case "ADD_CATEGORY":
+                addCategory((String) in.readObject(), reply);
+                break;
 
-                    case "ADD_PRODUCT":
-                        addProduct(in, out);
-                        break;
+            case "ADD_SUPPLIER":
+                addSupplier((String) in.readObject(), (String) in.readObject(), reply);
+                break;
 
-                    case "VIEW_PRODUCTS":
-                        viewProducts(out);
-                        break;
+            case "ADD_PRODUCT":
+                addProduct((String) in.readObject(), (Integer) in.readObject(), (Integer) in.readObject(),
+                        BigDecimal.valueOf((Double) in.readObject()), reply);
+                break;
 
-                    case "VIEW_CATEGORIES":
-                        viewCategories(out);
-                        break;
+            case "VIEW_PRODUCTS":
+                viewProducts(reply);
+                break;
 
-                    case "VIEW_SUPPLIERS":
-                        viewSuppliers(out);
-                        break;
+            case "VIEW_CATEGORIES":
+                viewCategories(reply);
+                break;
 
-                    default:
-                        out.writeObject("Unknown request.");
-                }
+            case "VIEW_SUPPLIERS":
+                viewSuppliers(reply);
+                break;
 
-                out.flush();
-            }
-        } catch (IOException | ClassNotFoundException e) {
-            System.out.println("Client disconnected or error occurred.");
+            default:
+                out.writeObject("Unknown request.");
         }
     }
 
-    private static void addCategory(ObjectInputStream in, ObjectOutputStream out)
-            throws IOException, ClassNotFoundException {
-        String categoryName = (String) in.readObject();
-        try (PreparedStatement stmt = connection.prepareStatement("INSERT INTO categories (name) VALUES (?)",
-                Statement.RETURN_GENERATED_KEYS)) {
-            stmt.setString(1, categoryName);
-            stmt.executeUpdate();
+    static void addCategory(String categoryName, ResponseWriter reply) throws IOException {
+        try {
+            int id = insertRow(INSERT_CATEGORY, new Object[] {categoryName},
+                    newId -> {
+                        Category category = new Category(newId, categoryName);
+                        catalogCache.addCategory(category);
+                        changeFeed.categoryAdded(category);
+                    });
+            reply.message("Category Added with ID: " + id);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            reply.error("Error adding category.");
+        }
+    }
 
-            ResultSet generatedKeys = stmt.getGeneratedKeys();
-            if (generatedKeys.next()) {
-                int id = generatedKeys.getInt(1);
-                out.writeObject("Category Added with ID: " + id);
+    static void addSupplier(String supplierName, String supplierContact, ResponseWriter reply) throws IOException {
+        try {
+            int id = insertRow(INSERT_SUPPLIER, new Object[] {supplierName, supplierContact},
+                    newId -> {
+                        Supplier supplier = new Supplier(newId, supplierName, supplierContact);
+                        catalogCache.addSupplier(supplier);
+                        changeFeed.supplierAdded(supplier);
+                    });
+            reply.message("Supplier Added with ID: " + id);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            reply.error("Error adding supplier.");
+        }
+    }
+
+    static void addProduct(String productName, int categoryId, int supplierId, BigDecimal price,
+                           ResponseWriter reply) throws IOException {
+        try {
+            String problem = checkProduct(productName, categoryId, supplierId, price);
+            if (problem != null) {
+                reply.error(problem);
+                return;
             }
         } catch (SQLException e) {
             e.printStackTrace();
-            out.writeObject("Error adding category.");
+            reply.error("Error adding product.");
+            return;
+        }
+
+        try {
+            insertRow(INSERT_PRODUCT, new Object[] {productName, categoryId, supplierId, price}, newId -> {
+                Product product = new Product(newId, productName, categoryId, supplierId, price);
+                catalogCache.addProduct(product);
+                nameIndex.add(newId, productName);
+                changeFeed.productAdded(product);
+            });
+            reply.message("Product added successfully!");
+        } catch (SQLException e) {
+            e.printStackTrace();
+            reply.error("Error adding product.");
         }
     }
 
-    private static void addSupplier(ObjectInputStream in, ObjectOutputStream out)
-            throws IOException, ClassNotFoundException {
-        String supplierName = (String) in.readObject();
-        String supplierContact = (String) in.readObject();
-        try (PreparedStatement stmt = connection.prepareStatement("INSERT INTO suppliers (name, contact) VALUES (?, ?)",
-                Statement.RETURN_GENERATED_KEYS)) {
-            stmt.setString(1, supplierName);
-            stmt.setString(2, supplierContact);
-            stmt.executeUpdate();
+    static void adjustStock(int productId, long delta, ResponseWriter reply) throws IOException {
+        changeStock(() -> stockLedger.adjust(productId, delta), delta, 0, reply);
+    }
 
-            ResultSet generatedKeys = stmt.getGeneratedKeys();
-            if (generatedKeys.next()) {
+    static void reserveStock(int productId, long quantity, ResponseWriter reply) throws IOException {
+        changeStock(() -> stockLedger.reserve(productId, quantity), 0, quantity, reply);
+    }
+
+    static void releaseStock(int productId, long quantity, ResponseWriter reply) throws IOException {
+        changeStock(() -> stockLedger.release(productId, quantity), 0, -quantity, reply);
+    }
+
+    private static void changeStock(StockChange change, long onHandDelta, long reservedDelta, ResponseWriter reply)
+            throws IOException {
+        StockLedger.Level level;
+        try {
+            level = change.apply();
+        } catch (StockLedger.RejectedException e) {
+            reply.error(e.getMessage());
+            return;
+        } catch (SQLException | IOException e) {
+            // Includes a journal that could not be written or forced to disk
+            e.printStackTrace();
+            reply.error("Error changing stock.");
+            return;
+        }
+        changeFeed.stockChanged(level.productId, onHandDelta, reservedDelta);
+        reply.stockLevel(level.productId, level.onHand, level.reserved);
+    }
+
+    /**
+     * Sends the changes after {@code afterVersion}, and those made from then on, until the client
+     * sends UNSUBSCRIBE or goes away. A client that is too far behind, or has nothing yet, is
+     * told to resync first.
+     */
+    static void subscribe(long afterVersion, FrameSource followUps, ResponseWriter reply) throws IOException {
+        ChangeFeed.Subscription subscription = changeFeed.subscribe(afterVersion);
+        // The changes are sent from this thread, so another one waits for the end of the subscription
+        Thread unsubscribe = Thread.ofVirtual().name("feed-unsubscribe").start(() -> {
+            try {
+                followUps.next();
+            } catch (IOException e) {
+                // Client gone
+            }
+            subscription.cancel();
+        });
+        try {
+            while (true) {
+                ChangeFeed.Batch batch = subscription.next(MAX_CHANGES_PER_FRAME);
+                if (batch == null) {
+                    break;
+                }
+                if (batch.resync) {
+                    reply.feedResync(batch.version);
+                } else {
+                    reply.feedChanges(batch.version, batch.changes);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for changes.");
+        } finally {
+            subscription.cancel();
+            unsubscribe.interrupt();
+        }
+        reply.message("Unsubscribed.");
+    }
+
+    @FunctionalInterface
+    private interface StockChange {
+        StockLedger.Level apply() throws IOException, SQLException, StockLedger.RejectedException;
+    }
+
+    /**
+     * Inserts one row with {@code sql} and returns its generated id. With group commit enabled the
+     * row waits to be committed together with others; either way {@code onCommitted} brings the
+     * in-memory copies up to date once the row is committed.
+     */
+    private static int insertRow(String sql, Object[] values, IntConsumer onCommitted) throws SQLException, IOException {
+        if (groupCommit != null) {
+            // The writer thread holds the connection, the wait for it is this request's database time
+            long started = System.nanoTime();
+            try {
+                return groupCommit.insert(sql, values, onCommitted);
+            } finally {
+                metrics.addDbTime(System.nanoTime() - started);
+            }
+        }
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            for (int i = 0; i < values.length; i++) {
+                stmt.setObject(i + 1, values[i]);
+            }
+            stmt.executeUpdate();
+            try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
+                if (!generatedKeys.next()) {
+                    throw new SQLException("No generated key returned.");
+                }
                 int id = generatedKeys.getInt(1);
-                out.writeObject("Supplier Added with ID: " + id);
+                onCommitted.accept(id);
+                return id;
             }
+        }
+    }
+
+    /**
+     * Inserts the products that follow in BULK_ROWS frames, committing every {@code chunkSize}
+     * rows and reporting each chunk's generated ids and rejected rows as it goes.
+     */
+    static void addProductsBulk(int chunkSize, FrameSource rows, ResponseWriter reply) throws IOException {
+        ProductBulkInsert bulkInsert = null;
+        try (Connection connection = dataSource.getConnection()) {
+            bulkInsert = new ProductBulkInsert(connection, catalogCache, nameIndex, changeFeed, clampBatchSize(chunkSize),
+                    reply);
+            int inserted = bulkInsert.run(rows);
+            reply.message("Added " + inserted + " products, rejected " + bulkInsert.getRejected() + ".");
         } catch (SQLException e) {
             e.printStackTrace();
-            out.writeObject("Error adding supplier.");
+            if (bulkInsert == null || !bulkInsert.hasReadAllRows()) {
+                // Keep the connection usable by consuming the rest of the request
+                skipBulkRows(rows);
+            }
+            reply.error("Error adding products.");
         }
     }
 
+    private static void skipBulkRows(FrameSource rows) throws IOException {
+        while (rows.next().type != WireProtocol.BULK_END) {
+            // Discard
+        }
+    }
 
-    private static void addProduct(ObjectInputStream in, ObjectOutputStream out)
-            throws IOException, ClassNotFoundException {
-        String productName = (String) in.readObject();
-        int categoryId = (Integer) in.readObject();
-        int supplierId = (Integer) in.readObject();
-        double price = (Double) in.readObject();
+    /**
+     * Streams a CSV or TSV file sent in IMPORT_DATA frames into the products table with LOAD DATA
+     * LOCAL INFILE, reporting progress as it goes.
+     */
+    static void importProducts(ProductImport.Format format, boolean hasHeader, FrameSource data, ResponseWriter reply)
+            throws IOException {
+        ProductImport productImport = null;
+        // Local infile stays off on the pooled connections; only this dedicated one may use it
+        try (Connection connection = DriverManager.getConnection(
+                ServerConfig.DB_SERVER_URL + ServerConfig.DB_NAME + "?" + ServerConfig.DB_URL_OPTIONS
+                        + "&allowLoadLocalInfile=true",
+                ServerConfig.DB_USER, ServerConfig.DB_PASSWORD)) {
+            productImport = new ProductImport(catalogCache, format, hasHeader, ServerConfig.IMPORT_ROWS_PER_LOAD, reply);
+            reply.message(productImport.run(connection, data));
+        } catch (SQLException e) {
+            e.printStackTrace();
+            if (productImport == null) {
+                // Never got as far as reading the file, consume it so the connection stays usable
+                skipImportData(data);
+            }
+            reply.error("Error importing products: " + e.getMessage());
+        } finally {
+            if (productImport != null) {
+                // Ids of loaded rows are not known here, so the name index has to be read back from the table
+                rebuildNameIndexInBackground();
+                changeFeed.resync();
+            }
+        }
+    }
 
-        try (PreparedStatement stmt = connection
-                .prepareStatement("INSERT INTO products (name, category_id, supplier_id, price) VALUES (?, ?, ?, ?)")) {
-            stmt.setString(1, productName);
-            stmt.setInt(2, categoryId);
-            stmt.setInt(3, supplierId);
-            stmt.setDouble(4, price);
+    private static void rebuildNameIndexInBackground() {
+        // A platform thread: the driver blocks inside synchronized code while streaming the table
+        Thread.ofPlatform().name("name-index-rebuild").daemon(true).start(() -> {
+            try {
+                System.out.println(nameIndex.rebuild());
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        });
+    }
 
-            int rows = stmt.executeUpdate();
-            if (rows > 0) {
-                out.writeObject("Product added successfully!");
-            } else {
-                out.writeObject("Error adding product.");
+    /**
+     * Finds products by name in the in-memory name index: names starting with {@code text}, in
+     * name order, or with {@code substring} names containing it. Falls back to the database when
+     * the index is unavailable, where a substring search has to scan the table.
+     */
+    static void searchProductNames(boolean substring, String text, int limit, ResponseWriter reply) throws IOException {
+        int rowLimit = clampBatchSize(limit);
+        List<ProductNameIndex.Match> matches = substring
+                ? nameIndex.substringSearch(text, rowLimit)
+                : nameIndex.prefixSearch(text, rowLimit);
+        if (matches != null) {
+            ResultTable table = newNameTable();
+            for (ProductNameIndex.Match match : matches) {
+                table.addRow(match.id, match.name);
             }
+            reply.table(table);
+            return;
+        }
+
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(substring
+                     ? "SELECT id, name FROM products WHERE name LIKE ? ORDER BY id LIMIT ?"
+                     : "SELECT id, name FROM products WHERE name LIKE ? ORDER BY name, id LIMIT ?")) {
+            stmt.setString(1, (substring ? "%" : "") + escapeLike(text) + "%");
+            stmt.setInt(2, rowLimit);
+            ResultTable table = newNameTable();
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    table.addRow(rs.getInt("id"), rs.getString("name"));
+                }
+            }
+            reply.table(table);
         } catch (SQLException e) {
             e.printStackTrace();
-            out.writeObject("Error adding product.");
+            reply.error("Error searching products.");
         }
     }
 
-    private static void viewProducts(ObjectOutputStream out) throws IOException {
-        try (Statement stmt = connection.createStatement();
-             ResultSet rs = stmt.executeQuery("SELECT id, name, category_id, supplier_id, price FROM products")) {
-            List<Object[]> productData = new ArrayList<>();
-            while (rs.next()) {
-                productData.add(new Object[] {
-                        rs.getInt("id"),
-                        rs.getString("name"),
-                        rs.getInt("category_id"),
-                        rs.getInt("supplier_id"),
-                        rs.getDouble("price")
-                });
-            }
-            out.writeObject(productData.toArray(new Object[0][]));
+    static void rebuildNameIndex(ResponseWriter reply) throws IOException {
+        try {
+            reply.message(nameIndex.rebuild());
         } catch (SQLException e) {
             e.printStackTrace();
-            out.writeObject("Error retrieving products.");
+            reply.error("Error rebuilding the name index.");
+        }
+    }
+
+    private static ResultTable newNameTable() {
+        return new ResultTable(new String[] {"id", "name"}, new byte[] {ResultTable.INT, ResultTable.STRING});
+    }
+
+    private static void skipImportData(FrameSource data) throws IOException {
+        while (data.next().type != WireProtocol.IMPORT_END) {
+            // Discard
+        }
+    }
+
+    /** Returns why a product cannot be inserted, or null if it is fine. */
+    static String checkProduct(String name, int categoryId, int supplierId, BigDecimal price) throws SQLException {
+        String problem = checkProductFields(name, price);
+        if (problem != null) {
+            return problem;
+        }
+        if (!isValidCategory(categoryId)) {
+            return "Invalid category ID: " + categoryId;
+        }
+        if (!isValidSupplier(supplierId)) {
+            return "Invalid supplier ID: " + supplierId;
+        }
+        return null;
+    }
+
+    /** The checks on a product's own fields, which need no database access. */
+    static String checkProductFields(String name, BigDecimal price) {
+        if (name == null || name.isBlank()) {
+            return "Product name is required.";
+        }
+        if (name.length() > 100) {
+            return "Product name is longer than 100 characters.";
         }
+        // products.price is DECIMAL(10, 2)
+        if (price == null || price.signum() < 0 || price.compareTo(MAX_PRICE) > 0) {
+            return "Invalid price: " + price;
+        }
+        return null;
     }
 
-    private static void viewCategories(ObjectOutputStream out) throws IOException {
-        try (Statement stmt = connection.createStatement();
-             ResultSet rs = stmt.executeQuery("SELECT id, name FROM categories")) {
-            List<Object[]> categoryData = new ArrayList<>();
+    static void viewProducts(ResponseWriter reply) throws IOException {
+        try {
+            List<Product> cached = catalogCache.products();
+            if (cached != null) {
+                reply.table(productTable(cached));
+                return;
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            reply.error("Error retrieving products.");
+            return;
+        }
+
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement stmt = connection.prepareStatement("SELECT id, name, category_id, supplier_id, price FROM products");
+             ResultSet rs = stmt.executeQuery()) {
+            ResultTable productData = newProductTable();
             while (rs.next()) {
-                categoryData.add(new Object[] {
-                        rs.getInt("id"),
-                        rs.getString("name")
-                });
+                addProductRow(productData, rs);
             }
-            out.writeObject(categoryData.toArray(new Object[0][]));
+            reply.table(productData);
         } catch (SQLException e) {
             e.printStackTrace();
-            out.writeObject("Error retrieving categories.");
+            reply.error("Error retrieving products.");
         }
     }
 
-    private static void viewSuppliers(ObjectOutputStream out) throws IOException {
-        try (Statement stmt = connection.createStatement();
-             ResultSet rs = stmt.executeQuery("SELECT id, name, contact FROM suppliers")) {
-            List<Object[]> supplierData = new ArrayList<>();
-            while (rs.next()) {
-                supplierData.add(new Object[] {
-                        rs.getInt("id"),
-                        rs.getString("name"),
-                        rs.getString("contact")
-                });
+    /**
+     * Returns up to {@code pageSize} products with an id greater than {@code afterId}. Seeking on
+     * the primary key keeps every page as cheap as the first, however deep the client pages.
+     */
+    static void viewProductsPage(int pageSize, int afterId, ResponseWriter reply) throws IOException {
+        int limit = clampBatchSize(pageSize);
+        try {
+            List<Product> cached = catalogCache.productsAfter(afterId, limit + 1);
+            if (cached != null) {
+                boolean hasMore = cached.size() > limit;
+                List<Product> rows = hasMore ? cached.subList(0, limit) : cached;
+                reply.page(productTable(rows), hasMore, rows.isEmpty() ? afterId : rows.get(rows.size() - 1).getId());
+                return;
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            reply.error("Error retrieving products.");
+            return;
+        }
+
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(
+                     "SELECT id, name, category_id, supplier_id, price FROM products WHERE id > ? ORDER BY id LIMIT ?")) {
+            stmt.setInt(1, afterId);
+            // One extra row tells us whether another page follows
+            stmt.setInt(2, limit + 1);
+
+            ResultTable page = newProductTable();
+            boolean hasMore = false;
+            int lastId = afterId;
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    if (page.getRowCount() == limit) {
+                        hasMore = true;
+                        break;
+                    }
+                    addProductRow(page, rs);
+                    lastId = rs.getInt("id");
+                }
+            }
+            reply.page(page, hasMore, lastId);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            reply.error("Error retrieving products.");
+        }
+    }
+
+    static void countProducts(ResponseWriter reply) throws IOException {
+        try {
+            int cached = catalogCache.productCount();
+            if (cached >= 0) {
+                reply.count(cached);
+                return;
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            reply.error("Error counting products.");
+            return;
+        }
+
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement stmt = connection.prepareStatement("SELECT COUNT(*) FROM products");
+             ResultSet rs = stmt.executeQuery()) {
+            rs.next();
+            reply.count(rs.getLong(1));
+        } catch (SQLException e) {
+            e.printStackTrace();
+            reply.error("Error counting products.");
+        }
+    }
+
+    /**
+     * Returns up to {@code limit} products starting at position {@code offset} in id order, for
+     * clients that jump to arbitrary rows of a scrolled table. Served from the catalog cache when
+     * it holds the products; otherwise the database has to step over {@code offset} rows, so
+     * clients reading in order should prefer {@link #viewProductsPage}.
+     */
+    static void viewProductsWindow(int offset, int limit, ResponseWriter reply) throws IOException {
+        if (offset < 0) {
+            reply.error("Invalid offset: " + offset);
+            return;
+        }
+        int rowLimit = clampBatchSize(limit);
+        try {
+            CatalogCache.ProductWindow cached = catalogCache.productWindow(offset, rowLimit);
+            if (cached != null) {
+                reply.window(cached.totalRows, productTable(cached.rows));
+                return;
             }
-            out.writeObject(supplierData.toArray(new Object[0][]));
         } catch (SQLException e) {
             e.printStackTrace();
-            out.writeObject("Error retrieving suppliers.");
+            reply.error("Error retrieving products.");
+            return;
         }
+
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement countStmt = connection.prepareStatement("SELECT COUNT(*) FROM products");
+             PreparedStatement stmt = connection.prepareStatement(
+                     "SELECT id, name, category_id, supplier_id, price FROM products ORDER BY id LIMIT ? OFFSET ?")) {
+            int total;
+            try (ResultSet rs = countStmt.executeQuery()) {
+                rs.next();
+                total = rs.getInt(1);
+            }
+            stmt.setInt(1, rowLimit);
+            stmt.setInt(2, offset);
+
+            ResultTable window = newProductTable();
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    addProductRow(window, rs);
+                }
+            }
+            reply.window(total, window);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            reply.error("Error retrieving products.");
+        }
+    }
+
+    /**
+     * Answers a product search in the database. Only the filters that are set become conditions,
+     * so MySQL can pick the matching index from {@link #PRODUCT_INDEXES}, and the limit keeps the
+     * reply as small as the caller needs.
+     */
+    static void queryProducts(ProductQuery query, ResponseWriter reply) throws IOException {
+        StringBuilder sql = new StringBuilder("SELECT id, name, category_id, supplier_id, price FROM products");
+        List<Object> parameters = new ArrayList<>();
+        String conjunction = " WHERE ";
+        if (query.categoryId != null) {
+            sql.append(conjunction).append("category_id = ?");
+            parameters.add(query.categoryId);
+            conjunction = " AND ";
+        }
+        if (query.supplierId != null) {
+            sql.append(conjunction).append("supplier_id = ?");
+            parameters.add(query.supplierId);
+            conjunction = " AND ";
+        }
+        if (query.minPrice != null) {
+            sql.append(conjunction).append("price >= ?");
+            parameters.add(query.minPrice);
+            conjunction = " AND ";
+        }
+        if (query.maxPrice != null) {
+            sql.append(conjunction).append("price <= ?");
+            parameters.add(query.maxPrice);
+            conjunction = " AND ";
+        }
+        if (query.namePrefix != null && !query.namePrefix.isEmpty()) {
+            // A prefix pattern, unlike '%x%', can seek on idx_products_name
+            sql.append(conjunction).append("name LIKE ?");
+            parameters.add(escapeLike(query.namePrefix) + "%");
+        }
+
+        String direction = query.descending ? " DESC" : "";
+        switch (query.sortOrder) {
+            case NAME -> sql.append(" ORDER BY name").append(direction).append(", id").append(direction);
+            case PRICE -> sql.append(" ORDER BY price").append(direction).append(", id").append(direction);
+            default -> sql.append(" ORDER BY id").append(direction);
+        }
+        sql.append(" LIMIT ?");
+        parameters.add(clampBatchSize(query.limit));
+
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(sql.toString())) {
+            for (int i = 0; i < parameters.size(); i++) {
+                stmt.setObject(i + 1, parameters.get(i));
+            }
+            ResultTable results = newProductTable();
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    addProductRow(results, rs);
+                }
+            }
+            reply.table(results);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            reply.error("Error searching products.");
+        }
+    }
+
+    private static String escapeLike(String text) {
+        return text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    /**
+     * Sends every product as a series of chunks of at most {@code chunkSize} rows. The driver
+     * streams the result set row by row, so memory stays bounded by one chunk and the first
+     * chunk goes out before the query has finished reading.
+     */
+    static void streamProducts(int chunkSize, ResponseWriter reply) throws IOException {
+        int limit = clampBatchSize(chunkSize);
+        try (Connection connection = dataSource.getConnection();
+             Statement stmt = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            // Connector/J's signal to stream rows instead of buffering the whole result
+            stmt.setFetchSize(Integer.MIN_VALUE);
+
+            long total = 0;
+            ResultTable chunk = newProductTable();
+            try (ResultSet rs = stmt.executeQuery("SELECT id, name, category_id, supplier_id, price FROM products ORDER BY id")) {
+                while (rs.next()) {
+                    addProductRow(chunk, rs);
+                    if (chunk.getRowCount() == limit) {
+                        reply.chunk(chunk);
+                        total += chunk.getRowCount();
+                        chunk.clear();
+                    }
+                }
+            }
+            if (chunk.getRowCount() > 0) {
+                reply.chunk(chunk);
+                total += chunk.getRowCount();
+            }
+            reply.endOfStream(total);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            reply.error("Error retrieving products.");
+        }
+    }
+
+    private static int clampBatchSize(int requested) {
+        if (requested <= 0) {
+            return ServerConfig.DEFAULT_BATCH_SIZE;
+        }
+        return Math.min(requested, ServerConfig.MAX_BATCH_SIZE);
+    }
+
+    private static ResultTable newProductTable() {
+        return new ResultTable(
+                new String[] {"id", "name", "category_id", "supplier_id", "price"},
+                new byte[] {ResultTable.INT, ResultTable.STRING, ResultTable.INT, ResultTable.INT, ResultTable.DECIMAL});
+    }
+
+    private static ResultTable productTable(List<Product> rows) {
+        ResultTable table = newProductTable();
+        for (Product product : rows) {
+            table.addRow(product.getId(), product.getName(), product.getCategoryId(), product.getSupplierId(),
+                    product.getPrice());
+        }
+        return table;
     }
 
-    private static boolean isValidCategory(int categoryId) {
-        return categories.stream().anyMatch(c -> c.getId() == categoryId);
+    private static void addProductRow(ResultTable table, ResultSet rs) throws SQLException {
+        table.addRow(
+                rs.getInt("id"),
+                rs.getString("name"),
+                rs.getInt("category_id"),
+                rs.getInt("supplier_id"),
+                rs.getBigDecimal("price")
+        );
     }
 
-    private static boolean isValidSupplier(int supplierId) {
-        return suppliers.stream().anyMatch(s -> s.getId() == supplierId);
+    static void viewCategories(ResponseWriter reply) throws IOException {
+        try {
+            ResultTable categoryData = new ResultTable(
+                    new String[] {"id", "name"},
+                    new byte[] {ResultTable.INT, ResultTable.STRING});
+            for (Category category : catalogCache.categories()) {
+                categoryData.addRow(
+                        category.getId(),
+                        category.getName()
+                );
+            }
+            reply.table(categoryData);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            reply.error("Error retrieving categories.");
+        }
+    }
+
+    static void viewSuppliers(ResponseWriter reply) throws IOException {
+        try {
+            ResultTable supplierData = new ResultTable(
+                    new String[] {"id", "name", "contact"},
+                    new byte[] {ResultTable.INT, ResultTable.STRING, ResultTable.STRING});
+            for (Supplier supplier : catalogCache.suppliers()) {
+                supplierData.addRow(
+                        supplier.getId(),
+                        supplier.getName(),
+                        supplier.getContact()
+                );
+            }
+            reply.table(supplierData);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            reply.error("Error retrieving suppliers.");
+        }
+    }
+
+    private static boolean isValidCategory(int categoryId) throws SQLException {
+        return catalogCache.isValidCategory(categoryId);
+    }
+
+    private static boolean isValidSupplier(int supplierId) throws SQLException {
+        return catalogCache.isValidSupplier(supplierId);
+    }
+
+    /** Replies with serialized Strings and Object[][] tables, as the original protocol did. */
+    private static class LegacyResponseWriter implements ResponseWriter {
+        private final ObjectOutputStream out;
+
+        LegacyResponseWriter(ObjectOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void message(String text) throws IOException {
+            out.writeObject(text);
+        }
+
+        @Override
+        public void error(String text) throws IOException {
+            ServerMetrics.RequestTimer timer = metrics.current();
+            if (timer != null) {
+                timer.failed();
+            }
+            out.writeObject(text);
+        }
+
+        @Override
+        public void table(ResultTable table) throws IOException {
+            Object[][] rows = new Object[table.getRowCount()][];
+            for (int r = 0; r < rows.length; r++) {
+                Object[] row = table.getRow(r).clone();
+                for (int i = 0; i < row.length; i++) {
+                    // Old clients were sent prices as Double
+                    if (row[i] instanceof BigDecimal decimal) {
+                        row[i] = decimal.doubleValue();
+                    }
+                }
+                rows[r] = row;
+            }
+            out.writeObject(rows);
+        }
     }
 }
@@ -0,0 +1,141 @@
+/**
+ * Server settings. Every value can be overridden with a {@code -D} system property,
+ * e.g. {@code java -Dinventory.server.maxSessions=500 Server}.
+ */
+final class ServerConfig {
+    enum ExecutionMode {
+        VIRTUAL,
+        PLATFORM
+    }
+
+    enum OverloadPolicy {
+        REJECT,
+        QUEUE
+    }
+
+    enum Transport {
+        BLOCKING,
+        NIO
+    }
+
+    static final int PORT = intProperty("inventory.server.port", 6090);
+
+    // Pending connections the OS keeps for us while the accept loop is busy
+    static final int ACCEPT_BACKLOG = intProperty("inventory.server.acceptBacklog", 200);
+
+    static final ExecutionMode EXECUTION_MODE =
+            enumProperty("inventory.server.executionMode", ExecutionMode.class, ExecutionMode.VIRTUAL);
+
+    // Size of the platform thread pool, only used in PLATFORM mode
+    static final int PLATFORM_THREADS = intProperty("inventory.server.platformThreads", 64);
+
+    static final int MAX_SESSIONS = intProperty("inventory.server.maxSessions", 1000);
+
+    static final OverloadPolicy OVERLOAD_POLICY =
+            enumProperty("inventory.server.overloadPolicy", OverloadPolicy.class, OverloadPolicy.QUEUE);
+
+    // Accepted sockets allowed to wait for a free session slot under the QUEUE policy
+    static final int MAX_QUEUED_SESSIONS = intProperty("inventory.server.maxQueuedSessions", 500);
+
+    // Requests a version 2 client may have running at once on one connection
+    static final int MAX_IN_FLIGHT_PER_CONNECTION = intProperty("inventory.server.maxInFlightPerConnection", 16);
+
+    // BLOCKING serves each client on its own thread; NIO multiplexes idle clients on one selector thread
+    static final Transport TRANSPORT = enumProperty("inventory.server.transport", Transport.class, Transport.BLOCKING);
+
+    // NIO transport: open connections allowed, and the pooled direct buffers used for socket I/O
+    static final int NIO_MAX_CONNECTIONS = intProperty("inventory.nio.maxConnections", 50_000);
+    static final int NIO_BUFFER_SIZE = intProperty("inventory.nio.bufferSize", 16 * 1024);
+    static final int NIO_MAX_POOLED_BUFFERS = intProperty("inventory.nio.maxPooledBuffers", 1024);
+
+    // Replies queued for a slow client before the worker producing them waits for it to catch up
+    static final int NIO_MAX_PENDING_WRITE_BYTES = intProperty("inventory.nio.maxPendingWriteBytes", 1024 * 1024);
+
+    static final String DB_SERVER_URL = stringProperty("inventory.db.url", "jdbc:mysql://localhost:3306/");
+    static final String DB_NAME = stringProperty("inventory.db.name", "inventory_db");
+    static final String DB_USER = stringProperty("inventory.db.user", "root");
+    static final String DB_PASSWORD = stringProperty("inventory.db.password", "MySQL@1234");
+
+    // Connector/J options for pooled connections; batches are rewritten into multi-row INSERTs and
+    // statements are prepared on the server once, then only bound and executed
+    static final String DB_URL_OPTIONS = stringProperty("inventory.db.urlOptions",
+            "rewriteBatchedStatements=true&useServerPrepStmts=true&cachePrepStmts=true"
+                    + "&prepStmtCacheSize=256&prepStmtCacheSqlLimit=2048");
+
+    static final int POOL_MIN_SIZE = intProperty("inventory.pool.minSize", 4);
+    static final int POOL_MAX_SIZE = intProperty("inventory.pool.maxSize", 32);
+    static final int POOL_ACQUIRE_TIMEOUT_MS = intProperty("inventory.pool.acquireTimeoutMs", 5000);
+    static final int POOL_IDLE_TIMEOUT_MS = intProperty("inventory.pool.idleTimeoutMs", 600_000);
+
+    // Connections held longer than this are reported as possible leaks with where they were borrowed;
+    // off by default since every borrow then captures a stack trace
+    static final int POOL_LEAK_THRESHOLD_MS = intProperty("inventory.pool.leakThresholdMs", 0);
+    static final int POOL_VALIDATION_TIMEOUT_S = intProperty("inventory.pool.validationTimeoutSeconds", 2);
+
+    // Prepared statements each pooled connection keeps open for reuse, 0 prepares afresh every time
+    static final int POOL_STATEMENT_CACHE_SIZE = intProperty("inventory.pool.statementCacheSize", 64);
+
+    // Rows per page or stream chunk when the client does not ask for a size, and the most it may ask for
+    static final int DEFAULT_BATCH_SIZE = intProperty("inventory.view.defaultBatchSize", 1000);
+    static final int MAX_BATCH_SIZE = intProperty("inventory.view.maxBatchSize", 10_000);
+
+    // Catalog cache: reloaded from the database once older than the TTL (0 = never), products only cached up to the bound
+    static final int CACHE_TTL_MS = intProperty("inventory.cache.ttlMs", 300_000);
+    static final int CACHE_MAX_PRODUCTS = intProperty("inventory.cache.maxProducts", 100_000);
+
+    // Group commit for single-row adds: rows arriving within this many ms share one transaction, 0 = off
+    static final int GROUP_COMMIT_MS = intProperty("inventory.write.groupCommitMs", 0);
+    static final int GROUP_COMMIT_MAX_ROWS = intProperty("inventory.write.groupCommitMaxRows", 500);
+
+    // Memory the in-memory product name index may use; above it name searches go to the database
+    static final int NAME_INDEX_MAX_MB = intProperty("inventory.search.nameIndexMaxMb", 256);
+
+    // Rows per LOAD DATA statement when importing a product file; each statement commits on its own
+    static final int IMPORT_ROWS_PER_LOAD = intProperty("inventory.import.rowsPerLoad", 100_000);
+
+    // Recent changes kept for subscribers; one further behind than this has to reload everything
+    static final int FEED_CAPACITY = intProperty("inventory.feed.capacity", 65_536);
+
+    // Stock changes are journalled to this directory and written to the stock table every flushMs;
+    // stripes spread concurrent changes over that many locks and journal files
+    static final String STOCK_JOURNAL_DIR = stringProperty("inventory.stock.journalDir", "stock-journal");
+    static final int STOCK_FLUSH_MS = intProperty("inventory.stock.flushMs", 1000);
+    static final int STOCK_STRIPES = intProperty("inventory.stock.stripes", 8);
+
+    // Loopback port serving request metrics as text at /metrics, 0 = off (JMX is always on)
+    static final int METRICS_PORT = intProperty("inventory.metrics.port", 6091);
+
+    private ServerConfig() {
+    }
+
+    static String stringProperty(String key, String defaultValue) {
+        String value = System.getProperty(key);
+        return value == null || value.isBlank() ? defaultValue : value.trim();
+    }
+
+    static int intProperty(String key, int defaultValue) {
+        String value = System.getProperty(key);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            System.out.println("Ignoring invalid value for " + key + ": " + value);
+            return defaultValue;
+        }
+    }
+
+    static <E extends Enum<E>> E enumProperty(String key, Class<E> type, E defaultValue) {
+        String value = System.getProperty(key);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Enum.valueOf(type, value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.out.println("Ignoring invalid value for " + key + ": " + value);
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,353 @@
+import com.sun.net.httpserver.HttpServer;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntSupplier;
+
+/**
+ * Request metrics: per opcode, a count, an error count and latency histograms of the whole
+ * request, of the part spent on the database and of the part spent encoding and writing replies;
+ * server-wide, frame bytes in and out and gauges of open sessions and running requests.
+ *
+ * <p>A request is timed from {@link #start} to {@link #finish} on the thread serving it. Work
+ * done on its behalf adds to the timer that {@link #current} returns on that thread, so code
+ * that knows nothing of requests (the connection pool) can still charge its time to one.
+ *
+ * <p>Everything is cumulative since the server started and is published over JMX and, when a
+ * port is configured, as plain text in the Prometheus exposition format on the loopback address.
+ */
+class ServerMetrics implements ServerMetricsMXBean {
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final RequestMetrics[] requests = new RequestMetrics[128];
+    private final RequestMetrics unknownRequests = new RequestMetrics("UNKNOWN");
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final AtomicInteger activeRequests = new AtomicInteger();
+    private volatile IntSupplier activeSessions = () -> 0;
+    private final ThreadLocal<RequestTimer> current = new ThreadLocal<>();
+    private HttpServer httpServer;
+
+    ServerMetrics() {
+        for (int type = 0; type < requests.length; type++) {
+            String name = WireProtocol.requestName((byte) type);
+            if (name != null) {
+                requests[type] = new RequestMetrics(name);
+            }
+        }
+    }
+
+    /** Where the number of open sessions comes from; depends on the transport. */
+    void setSessionGauge(IntSupplier openSessions) {
+        this.activeSessions = openSessions;
+    }
+
+    /** Starts timing a request on this thread. Pass the timer to {@link #finish} in a finally block. */
+    RequestTimer start(byte opcode) {
+        RequestTimer timer = new RequestTimer(opcode >= 0 && requests[opcode] != null ? requests[opcode] : unknownRequests);
+        current.set(timer);
+        activeRequests.incrementAndGet();
+        return timer;
+    }
+
+    void finish(RequestTimer timer) {
+        long elapsed = System.nanoTime() - timer.startedAt;
+        activeRequests.decrementAndGet();
+        current.remove();
+        RequestMetrics metrics = timer.metrics;
+        metrics.latency.record(elapsed);
+        metrics.dbTime.record(timer.dbNanos);
+        metrics.serialization.record(timer.serializationNanos);
+        if (timer.failed) {
+            metrics.errors.increment();
+        }
+    }
+
+    /** The request being served on this thread, or null. */
+    RequestTimer current() {
+        return current.get();
+    }
+
+    /** Charges database time to the request on this thread, if there is one. */
+    void addDbTime(long nanos) {
+        RequestTimer timer = current.get();
+        if (timer != null) {
+            timer.dbNanos += nanos;
+        }
+    }
+
+    void bytesIn(long bytes) {
+        bytesIn.add(bytes);
+    }
+
+    void bytesOut(long bytes) {
+        bytesOut.add(bytes);
+    }
+
+    /** Publishes the metrics over JMX under the {@code inventory} domain. */
+    void registerMBeans() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.registerMBean(new StandardMBean(this, ServerMetricsMXBean.class, true),
+                    new ObjectName("inventory:type=Server"));
+            for (RequestMetrics metrics : requests) {
+                if (metrics != null) {
+                    server.registerMBean(new StandardMBean(metrics, RequestMetricsMXBean.class, true),
+                            new ObjectName("inventory:type=Requests,name=" + metrics.name));
+                }
+            }
+        } catch (JMException e) {
+            System.out.println("Could not register metrics over JMX: " + e.getMessage());
+        }
+    }
+
+    /** Serves the metrics as text at {@code /metrics} on the loopback address. */
+    void startHttpEndpoint(int port) throws IOException {
+        httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        httpServer.setExecutor(Executors.newSingleThreadExecutor(
+                Thread.ofPlatform().name("metrics-http").daemon().factory()));
+        httpServer.createContext("/metrics", exchange -> {
+            try (exchange) {
+                byte[] body = scrape().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+        });
+        httpServer.start();
+        System.out.println("Metrics served on http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":"
+                + httpServer.getAddress().getPort() + "/metrics");
+    }
+
+    void stopHttpEndpoint() {
+        if (httpServer != null) {
+            httpServer.stop(0);
+        }
+    }
+
+    /** The metrics in the Prometheus text format; opcodes not seen yet are left out. */
+    String scrape() {
+        StringBuilder text = new StringBuilder(4096);
+        gauge(text, "inventory_active_sessions", "Open client sessions.", getActiveSessions());
+        gauge(text, "inventory_active_requests", "Requests being served.", getActiveRequests());
+        counter(text, "inventory_bytes_in_total", "Frame bytes received, headers included.", getBytesIn());
+        counter(text, "inventory_bytes_out_total", "Frame bytes sent, headers included.", getBytesOut());
+
+        text.append("# HELP inventory_requests_total Requests served.\n# TYPE inventory_requests_total counter\n");
+        forEachSeen(metrics -> text.append("inventory_requests_total{request=\"").append(metrics.name).append("\"} ")
+                .append(metrics.latency.count()).append('\n'));
+        text.append("# HELP inventory_request_errors_total Requests answered with an error or failed.\n"
+                + "# TYPE inventory_request_errors_total counter\n");
+        forEachSeen(metrics -> text.append("inventory_request_errors_total{request=\"").append(metrics.name)
+                .append("\"} ").append(metrics.errors.sum()).append('\n'));
+
+        summary(text, "inventory_request_latency_seconds", "Time from reading a request to its last reply.",
+                metrics -> metrics.latency);
+        summary(text, "inventory_request_db_seconds", "Part of a request spent on the database.",
+                metrics -> metrics.dbTime);
+        summary(text, "inventory_request_serialization_seconds", "Part of a request spent encoding and writing replies.",
+                metrics -> metrics.serialization);
+        return text.toString();
+    }
+
+    private void summary(StringBuilder text, String name, String help, Function<RequestMetrics, LatencyHistogram> which) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(" summary\n");
+        forEachSeen(metrics -> {
+            LatencyHistogram histogram = which.apply(metrics);
+            for (double quantile : QUANTILES) {
+                text.append(name).append("{request=\"").append(metrics.name).append("\",quantile=\"").append(quantile)
+                        .append("\"} ").append(seconds(histogram.percentileNanos(quantile * 100))).append('\n');
+            }
+            text.append(name).append("_sum{request=\"").append(metrics.name).append("\"} ")
+                    .append(seconds(histogram.totalNanos())).append('\n');
+            text.append(name).append("_count{request=\"").append(metrics.name).append("\"} ")
+                    .append(histogram.count()).append('\n');
+        });
+    }
+
+    private void forEachSeen(Consumer<RequestMetrics> action) {
+        for (RequestMetrics metrics : requests) {
+            if (metrics != null && metrics.latency.count() > 0) {
+                action.accept(metrics);
+            }
+        }
+        if (unknownRequests.latency.count() > 0) {
+            action.accept(unknownRequests);
+        }
+    }
+
+    private static void gauge(StringBuilder text, String name, String help, long value) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(" gauge\n").append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void counter(StringBuilder text, String name, String help, long value) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(" counter\n").append(name).append(' ').append(value).append('\n');
+    }
+
+    private static String seconds(long nanos) {
+        return Double.toString(nanos / 1e9);
+    }
+
+    String describe() {
+        return String.format("metrics requests=%d errors=%d bytesIn=%d bytesOut=%d", getRequests(), getErrors(),
+                getBytesIn(), getBytesOut());
+    }
+
+    @Override
+    public int getActiveSessions() {
+        return activeSessions.getAsInt();
+    }
+
+    @Override
+    public int getActiveRequests() {
+        return activeRequests.get();
+    }
+
+    @Override
+    public long getRequests() {
+        long total = unknownRequests.getCount();
+        for (RequestMetrics metrics : requests) {
+            total += metrics == null ? 0 : metrics.getCount();
+        }
+        return total;
+    }
+
+    @Override
+    public long getErrors() {
+        long total = unknownRequests.getErrors();
+        for (RequestMetrics metrics : requests) {
+            total += metrics == null ? 0 : metrics.getErrors();
+        }
+        return total;
+    }
+
+    @Override
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    /**
+     * One request in progress. Only the thread serving it (and whatever it waits for) touches
+     * it, so the fields are plain.
+     */
+    static final class RequestTimer {
+        private final RequestMetrics metrics;
+        private final long startedAt = System.nanoTime();
+        private long dbNanos;
+        private long serializationNanos;
+        private boolean failed;
+
+        private RequestTimer(RequestMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        void addSerializationTime(long nanos) {
+            serializationNanos += nanos;
+        }
+
+        /** The request was answered with an error or did not complete. */
+        void failed() {
+            failed = true;
+        }
+    }
+
+    private static final class RequestMetrics implements RequestMetricsMXBean {
+        final String name;
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LatencyHistogram dbTime = new LatencyHistogram();
+        final LatencyHistogram serialization = new LatencyHistogram();
+        final LongAdder errors = new LongAdder();
+
+        RequestMetrics(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String getRequest() {
+            return name;
+        }
+
+        @Override
+        public long getCount() {
+            return latency.count();
+        }
+
+        @Override
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        @Override
+        public long getLatencyMeanMicros() {
+            return latency.meanNanos() / 1000;
+        }
+
+        @Override
+        public long getLatencyP50Micros() {
+            return latency.percentileNanos(50) / 1000;
+        }
+
+        @Override
+        public long getLatencyP90Micros() {
+            return latency.percentileNanos(90) / 1000;
+        }
+
+        @Override
+        public long getLatencyP99Micros() {
+            return latency.percentileNanos(99) / 1000;
+        }
+
+        @Override
+        public long getLatencyP999Micros() {
+            return latency.percentileNanos(99.9) / 1000;
+        }
+
+        @Override
+        public long getLatencyMaxMicros() {
+            return latency.maxNanos() / 1000;
+        }
+
+        @Override
+        public long getDbTimeP50Micros() {
+            return dbTime.percentileNanos(50) / 1000;
+        }
+
+        @Override
+        public long getDbTimeP99Micros() {
+            return dbTime.percentileNanos(99) / 1000;
+        }
+
+        @Override
+        public long getSerializationP50Micros() {
+            return serialization.percentileNanos(50) / 1000;
+        }
+
+        @Override
+        public long getSerializationP99Micros() {
+            return serialization.percentileNanos(99) / 1000;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+/** Server-wide gauges and counters of {@link ServerMetrics}, as seen over JMX. */
+public interface ServerMetricsMXBean {
+    int getActiveSessions();
+
+    int getActiveRequests();
+
+    long getRequests();
+
+    long getErrors();
+
+    long getBytesIn();
+
+    long getBytesOut();
+}
@@ -0,0 +1,134 @@
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Runs client sessions with a hard cap on how many are active at once.
+ * Sockets accepted while the server is full are either parked in a bounded queue
+ * until a session finishes, or handed to the reject handler straight away.
+ */
+class SessionExecutor {
+    private final ExecutorService executor;
+    private final Semaphore sessionSlots;
+    private final BlockingQueue<Socket> pending;
+    private final ServerConfig.OverloadPolicy policy;
+    private final Consumer<Socket> sessionHandler;
+    private final Consumer<Socket> rejectHandler;
+
+    private final AtomicInteger activeSessions = new AtomicInteger();
+    private final AtomicLong acceptedSessions = new AtomicLong();
+    private final AtomicLong rejectedSessions = new AtomicLong();
+
+    SessionExecutor(ServerConfig.ExecutionMode mode, int platformThreads, int maxSessions,
+                    ServerConfig.OverloadPolicy policy, int maxQueued,
+                    Consumer<Socket> sessionHandler, Consumer<Socket> rejectHandler) {
+        int slots;
+        if (mode == ServerConfig.ExecutionMode.VIRTUAL) {
+            this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("session-", 0).factory());
+            slots = maxSessions;
+        } else {
+            // No more sessions admitted than there are pool threads, so overflow goes through the
+            // overload policy instead of waiting unseen in the pool's own queue
+            slots = Math.min(platformThreads, maxSessions);
+            this.executor = Executors.newFixedThreadPool(slots, Thread.ofPlatform().name("session-", 0).factory());
+        }
+        this.sessionSlots = new Semaphore(slots);
+        this.pending = new ArrayBlockingQueue<>(Math.max(1, maxQueued));
+        this.policy = policy;
+        this.sessionHandler = sessionHandler;
+        this.rejectHandler = rejectHandler;
+    }
+
+    void submit(Socket socket) {
+        if (sessionSlots.tryAcquire()) {
+            dispatch(socket);
+            return;
+        }
+
+        if (policy == ServerConfig.OverloadPolicy.QUEUE && pending.offer(socket)) {
+            // A session may have finished between the failed tryAcquire and the offer
+            drainPending();
+            return;
+        }
+
+        reject(socket);
+    }
+
+    private void dispatch(Socket socket) {
+        acceptedSessions.incrementAndGet();
+        activeSessions.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                try {
+                    sessionHandler.accept(socket);
+                } finally {
+                    activeSessions.decrementAndGet();
+                    sessionSlots.release();
+                    drainPending();
+                }
+            });
+        } catch (RuntimeException e) {
+            // Executor is shutting down
+            activeSessions.decrementAndGet();
+            sessionSlots.release();
+            reject(socket);
+        }
+    }
+
+    private void drainPending() {
+        while (!pending.isEmpty() && sessionSlots.tryAcquire()) {
+            Socket next = pending.poll();
+            if (next == null) {
+                sessionSlots.release();
+                continue;
+            }
+            dispatch(next);
+        }
+    }
+
+    private void reject(Socket socket) {
+        rejectedSessions.incrementAndGet();
+        rejectHandler.accept(socket);
+    }
+
+    void shutdown() {
+        executor.shutdown();
+        Socket queued;
+        while ((queued = pending.poll()) != null) {
+            try {
+                queued.close();
+            } catch (IOException e) {
+                // Nothing left to do for this client
+            }
+        }
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    int getActiveSessions() {
+        return activeSessions.get();
+    }
+
+    int getQueuedSessions() {
+        return pending.size();
+    }
+
+    long getAcceptedSessions() {
+        return acceptedSessions.get();
+    }
+
+    long getRejectedSessions() {
+        return rejectedSessions.get();
+    }
+}
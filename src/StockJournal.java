@@ -0,0 +1,189 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead journal of one {@link StockLedger} stripe. Every stock change is appended here and
+ * forced to disk before it is acknowledged, so changes the ledger has not flushed to the database
+ * yet survive a crash. The journal is a series of segment files: the ledger starts a new segment
+ * whenever it snapshots its counters for a flush, and deletes the older ones once that flush has
+ * committed.
+ *
+ * <p>Records have a fixed size and end in a CRC, so one torn by a crash is recognised on replay
+ * and ends its segment.
+ *
+ * <p>Appends and rotations are made under the owning stripe's lock; {@link #sync} is not, so
+ * callers waiting for the disk share one force between them.
+ */
+class StockJournal {
+    // Sequence number, product id, on-hand delta, reserved delta, CRC
+    static final int RECORD_BYTES = 8 + 4 + 8 + 8 + 4;
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("stock-(\\d+)-(\\d+)\\.journal");
+
+    private final Path directory;
+    private final int stripe;
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES);
+    private final CRC32 crc = new CRC32();
+
+    private volatile FileChannel channel;
+    private int segment;
+    // Bytes appended over all segments, and how many of them are known to be on disk
+    private volatile long written;
+    private final Object syncLock = new Object();
+    private long synced;
+
+    StockJournal(Path directory, int stripe) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.stripe = stripe;
+    }
+
+    /** One journalled change. */
+    static final class Record {
+        final long sequence;
+        final int productId;
+        final long onHandDelta;
+        final long reservedDelta;
+
+        Record(long sequence, int productId, long onHandDelta, long reservedDelta) {
+            this.sequence = sequence;
+            this.productId = productId;
+            this.onHandDelta = onHandDelta;
+            this.reservedDelta = reservedDelta;
+        }
+    }
+
+    /** The highest stripe number with segments in {@code directory}, or -1 if there are none. */
+    static int highestStripe(Path directory) throws IOException {
+        int highest = -1;
+        if (!Files.isDirectory(directory)) {
+            return highest;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Matcher name = SEGMENT_NAME.matcher(file.getFileName().toString());
+                if (name.matches()) {
+                    highest = Math.max(highest, Integer.parseInt(name.group(1)));
+                }
+            }
+        }
+        return highest;
+    }
+
+    /** Every record left in this stripe's segments, oldest first. Call before {@link #open}. */
+    List<Record> readAll() throws IOException {
+        List<Record> records = new ArrayList<>();
+        for (Path file : segments().values()) {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+            while (buffer.remaining() >= RECORD_BYTES) {
+                crc.reset();
+                crc.update(buffer.array(), buffer.position(), RECORD_BYTES - 4);
+                long sequence = buffer.getLong();
+                int productId = buffer.getInt();
+                long onHandDelta = buffer.getLong();
+                long reservedDelta = buffer.getLong();
+                if (buffer.getInt() != (int) crc.getValue()) {
+                    // Torn by a crash; nothing after it was acknowledged
+                    System.out.println("Stock journal " + file.getFileName() + " ends in a damaged record, ignoring it.");
+                    break;
+                }
+                records.add(new Record(sequence, productId, onHandDelta, reservedDelta));
+            }
+        }
+        return records;
+    }
+
+    /** Starts a new segment after any already on disk, to append to. */
+    void open() throws IOException {
+        TreeMap<Integer, Path> existing = segments();
+        segment = existing.isEmpty() ? 0 : existing.lastKey() + 1;
+        channel = openSegment(segment);
+    }
+
+    /**
+     * Appends a record and returns the journal position to pass to {@link #sync} before the
+     * change may be acknowledged.
+     */
+    long append(long sequence, int productId, long onHandDelta, long reservedDelta) throws IOException {
+        record.clear();
+        record.putLong(sequence).putInt(productId).putLong(onHandDelta).putLong(reservedDelta);
+        crc.reset();
+        crc.update(record.array(), 0, RECORD_BYTES - 4);
+        record.putInt((int) crc.getValue());
+        record.flip();
+        while (record.hasRemaining()) {
+            channel.write(record);
+        }
+        written += RECORD_BYTES;
+        return written;
+    }
+
+    /** Returns once everything up to {@code position} is on disk, forcing it there if no one else has. */
+    void sync(long position) throws IOException {
+        synchronized (syncLock) {
+            if (synced >= position) {
+                return;
+            }
+            long target = written;
+            channel.force(false);
+            synced = target;
+        }
+    }
+
+    /**
+     * Finishes the current segment and starts the next one, returning its number. Segments
+     * before it hold only what was appended so far.
+     */
+    int rotate() throws IOException {
+        synchronized (syncLock) {
+            channel.force(false);
+            synced = written;
+            channel.close();
+            channel = openSegment(++segment);
+        }
+        return segment;
+    }
+
+    /** Deletes the segments before {@code firstKept}, whose changes the database now holds. */
+    void deleteSegmentsBefore(int firstKept) throws IOException {
+        for (Path file : segments().headMap(firstKept).values()) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    void close() throws IOException {
+        synchronized (syncLock) {
+            channel.force(false);
+            synced = written;
+            channel.close();
+        }
+    }
+
+    private FileChannel openSegment(int number) throws IOException {
+        return FileChannel.open(directory.resolve("stock-" + stripe + "-" + number + ".journal"),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    }
+
+    private TreeMap<Integer, Path> segments() throws IOException {
+        TreeMap<Integer, Path> segments = new TreeMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Matcher name = SEGMENT_NAME.matcher(file.getFileName().toString());
+                if (name.matches() && Integer.parseInt(name.group(1)) == stripe) {
+                    segments.put(Integer.parseInt(name.group(2)), file);
+                }
+            }
+        }
+        return segments;
+    }
+}
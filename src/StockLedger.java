@@ -0,0 +1,475 @@
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Stock levels, kept in memory and written to the {@code stock} table in batches. Scanners
+ * adjust the same few popular products all day; applying each change to its row would make them
+ * queue on that row's lock, so changes land on in-memory counters instead and a flusher writes
+ * the accumulated deltas every {@code flushMillis}.
+ *
+ * <p>Changes are spread over stripes, picked by thread, each with its own lock and
+ * {@link StockJournal}. A change is journalled and applied under its stripe's lock and
+ * acknowledged once the journal is on disk, so concurrent changes to one product only meet on
+ * its counter: a {@link LongAdder} for the quantity on hand, which spreads them further, and a
+ * compare-and-set on the reserved quantity.
+ *
+ * <p>To flush, the ledger briefly takes every stripe lock, starts new journal segments and reads
+ * the counters that changed. It writes their deltas together with each stripe's last journalled
+ * sequence number in one transaction, then deletes the segments that transaction covered. On
+ * startup, journal records past the stored sequence numbers are replayed onto the counters loaded
+ * from the table and flushed right away.
+ *
+ * <p>ADJUST is a blind add, as a count from the shelf always wins: it may take the quantity on
+ * hand below what is reserved, or below zero. A reservation is checked against the quantity on
+ * hand at that moment.
+ */
+class StockLedger {
+    private static final String UPSERT_STOCK = "INSERT INTO stock (product_id, quantity, reserved) VALUES (?, ?, ?)"
+            + " ON DUPLICATE KEY UPDATE quantity = quantity + VALUES(quantity), reserved = reserved + VALUES(reserved)";
+    private static final String UPSERT_CHECKPOINT = "INSERT INTO stock_journal (stripe, flushed_sequence) VALUES (?, ?)"
+            + " ON DUPLICATE KEY UPDATE flushed_sequence = VALUES(flushed_sequence)";
+
+    private final DataSource dataSource;
+    private final CatalogCache catalogCache;
+    private final Stripe[] stripes;
+    private final ConcurrentHashMap<Integer, Counter> counters = new ConcurrentHashMap<>();
+    // Counters changed since the last flush snapshot; may hold one twice
+    private final ConcurrentLinkedQueue<Counter> dirty = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final ScheduledExecutorService flusher;
+
+    private final LongAdder changes = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder flushedRows = new LongAdder();
+    private final LongAdder failedFlushes = new LongAdder();
+
+    /**
+     * Loads the stock table, replays the journals in {@code journalDirectory} and starts flushing
+     * every {@code flushMillis}.
+     */
+    StockLedger(DataSource dataSource, CatalogCache catalogCache, Path journalDirectory, int stripeCount,
+                long flushMillis) throws IOException, SQLException {
+        this.dataSource = dataSource;
+        this.catalogCache = catalogCache;
+        // Journals written with more stripes than configured now still have to be replayed
+        int count = Math.max(Math.max(1, stripeCount), StockJournal.highestStripe(journalDirectory) + 1);
+        this.stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe(new StockJournal(journalDirectory, i));
+        }
+        recover();
+
+        // A platform thread: the driver blocks inside synchronized code, which would pin a virtual one
+        flusher = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("stock-flusher").daemon().factory());
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /** A product's stock after a change. */
+    static final class Level {
+        final int productId;
+        final long onHand;
+        final long reserved;
+
+        Level(int productId, long onHand, long reserved) {
+            this.productId = productId;
+            this.onHand = onHand;
+            this.reserved = reserved;
+        }
+    }
+
+    /** A change refused because of the stock it would leave; nothing was changed. */
+    static class RejectedException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        RejectedException(String message) {
+            super(message);
+        }
+    }
+
+    /** Adds {@code delta} (negative to take stock away) to the quantity on hand. */
+    Level adjust(int productId, long delta) throws IOException, SQLException, RejectedException {
+        Counter counter = counter(productId);
+        Stripe stripe = stripe();
+        long position;
+        Level level;
+        stripe.lock.lock();
+        try {
+            position = stripe.journal(productId, delta, 0);
+            counter.onHand.add(delta);
+            level = changed(counter);
+        } finally {
+            stripe.lock.unlock();
+        }
+        stripe.journal.sync(position);
+        return level;
+    }
+
+    /** Sets {@code quantity} aside, if that much is on hand and not reserved yet. */
+    Level reserve(int productId, long quantity) throws IOException, SQLException, RejectedException {
+        if (quantity <= 0) {
+            throw new RejectedException("Quantity to reserve must be positive.");
+        }
+        Counter counter = counter(productId);
+        Stripe stripe = stripe();
+        long position;
+        Level level;
+        stripe.lock.lock();
+        try {
+            while (true) {
+                long reserved = counter.reserved.get();
+                long available = counter.onHand.sum() - reserved;
+                if (quantity > available) {
+                    throw new RejectedException("Only " + Math.max(0, available) + " of product " + productId
+                            + " available.");
+                }
+                if (counter.reserved.compareAndSet(reserved, reserved + quantity)) {
+                    break;
+                }
+            }
+            try {
+                position = stripe.journal(productId, 0, quantity);
+            } catch (IOException e) {
+                counter.reserved.addAndGet(-quantity);
+                throw e;
+            }
+            level = changed(counter);
+        } finally {
+            stripe.lock.unlock();
+        }
+        stripe.journal.sync(position);
+        return level;
+    }
+
+    /** Gives back {@code quantity} of an earlier reservation. */
+    Level release(int productId, long quantity) throws IOException, SQLException, RejectedException {
+        if (quantity <= 0) {
+            throw new RejectedException("Quantity to release must be positive.");
+        }
+        Counter counter = counter(productId);
+        Stripe stripe = stripe();
+        long position;
+        Level level;
+        stripe.lock.lock();
+        try {
+            while (true) {
+                long reserved = counter.reserved.get();
+                if (quantity > reserved) {
+                    throw new RejectedException("Only " + reserved + " of product " + productId + " reserved.");
+                }
+                if (counter.reserved.compareAndSet(reserved, reserved - quantity)) {
+                    break;
+                }
+            }
+            try {
+                position = stripe.journal(productId, 0, -quantity);
+            } catch (IOException e) {
+                counter.reserved.addAndGet(quantity);
+                throw e;
+            }
+            level = changed(counter);
+        } finally {
+            stripe.lock.unlock();
+        }
+        stripe.journal.sync(position);
+        return level;
+    }
+
+    /** Flushes what is left and closes the journals. */
+    void shutdown() {
+        flusher.shutdownNow();
+        try {
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushQuietly();
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                stripe.journal.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+    }
+
+    String describe() {
+        return String.format("stock products=%d stripes=%d changes=%d flushes=%d flushedRows=%d failedFlushes=%d",
+                counters.size(), stripes.length, changes.sum(), flushes.sum(), flushedRows.sum(), failedFlushes.sum());
+    }
+
+    private Counter counter(int productId) throws SQLException, RejectedException {
+        Counter counter = counters.get(productId);
+        if (counter != null) {
+            return counter;
+        }
+        // Only checked the first time, the stock row references the product
+        if (!catalogCache.isValidProduct(productId)) {
+            throw new RejectedException("Invalid product ID: " + productId);
+        }
+        return counters.computeIfAbsent(productId, Counter::new);
+    }
+
+    private Stripe stripe() {
+        return stripes[(int) (Thread.currentThread().threadId() % stripes.length)];
+    }
+
+    // Caller holds the stripe lock
+    private Level changed(Counter counter) {
+        changes.increment();
+        if (!counter.dirty) {
+            counter.dirty = true;
+            dirty.add(counter);
+        }
+        return new Level(counter.productId, counter.onHand.sum(), counter.reserved.get());
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException | SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** Writes the changes made since the last flush to the stock table. */
+    void flush() throws IOException, SQLException {
+        flushLock.lock();
+        try {
+            long[] sequences = new long[stripes.length];
+            int[] firstKeptSegments = new int[stripes.length];
+            List<Snapshot> snapshots = new ArrayList<>();
+
+            for (Stripe stripe : stripes) {
+                stripe.lock.lock();
+            }
+            try {
+                for (int i = 0; i < stripes.length; i++) {
+                    Stripe stripe = stripes[i];
+                    sequences[i] = stripe.sequence;
+                    if (stripe.sequence != stripe.rotatedAtSequence) {
+                        stripe.segment = stripe.journal.rotate();
+                        stripe.rotatedAtSequence = stripe.sequence;
+                    }
+                    firstKeptSegments[i] = stripe.segment;
+                }
+                Counter counter;
+                while ((counter = dirty.poll()) != null) {
+                    if (counter.dirty) {
+                        counter.dirty = false;
+                        snapshots.add(new Snapshot(counter, counter.onHand.sum(), counter.reserved.get()));
+                    }
+                }
+            } finally {
+                for (Stripe stripe : stripes) {
+                    stripe.lock.unlock();
+                }
+            }
+
+            boolean checkpointsBehind = false;
+            for (int i = 0; i < stripes.length; i++) {
+                checkpointsBehind |= sequences[i] != stripes[i].flushedSequence;
+            }
+            if (!snapshots.isEmpty() || checkpointsBehind) {
+                try {
+                    write(snapshots, sequences);
+                } catch (SQLException e) {
+                    failedFlushes.increment();
+                    // Flushed values are unchanged, so the next flush writes these deltas again
+                    for (Snapshot snapshot : snapshots) {
+                        markDirty(snapshot.counter);
+                    }
+                    throw e;
+                }
+                flushes.increment();
+                for (Snapshot snapshot : snapshots) {
+                    snapshot.counter.flushedOnHand = snapshot.onHand;
+                    snapshot.counter.flushedReserved = snapshot.reserved;
+                }
+                for (int i = 0; i < stripes.length; i++) {
+                    stripes[i].flushedSequence = sequences[i];
+                }
+            }
+            // The stock table now holds everything journalled before the new segments
+            for (int i = 0; i < stripes.length; i++) {
+                stripes[i].journal.deleteSegmentsBefore(firstKeptSegments[i]);
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void write(List<Snapshot> snapshots, long[] sequences) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            int rows = 0;
+            try (PreparedStatement stmt = connection.prepareStatement(UPSERT_STOCK)) {
+                for (Snapshot snapshot : snapshots) {
+                    long onHandDelta = snapshot.onHand - snapshot.counter.flushedOnHand;
+                    long reservedDelta = snapshot.reserved - snapshot.counter.flushedReserved;
+                    if (onHandDelta == 0 && reservedDelta == 0) {
+                        continue;
+                    }
+                    stmt.setInt(1, snapshot.counter.productId);
+                    stmt.setLong(2, onHandDelta);
+                    stmt.setLong(3, reservedDelta);
+                    stmt.addBatch();
+                    rows++;
+                }
+                if (rows > 0) {
+                    stmt.executeBatch();
+                }
+            }
+            try (PreparedStatement stmt = connection.prepareStatement(UPSERT_CHECKPOINT)) {
+                for (int i = 0; i < sequences.length; i++) {
+                    if (sequences[i] != stripes[i].flushedSequence) {
+                        stmt.setInt(1, i);
+                        stmt.setLong(2, sequences[i]);
+                        stmt.addBatch();
+                    }
+                }
+                stmt.executeBatch();
+            }
+            connection.commit();
+            flushedRows.add(rows);
+        }
+    }
+
+    private void markDirty(Counter counter) {
+        // Changes on other stripes may race us here; the queue is concurrent and a counter queued
+        // twice is harmless, flush skips entries whose flag it has already cleared. Any stripe
+        // lock keeps flush from draining the queue between our flag check and the add.
+        Stripe stripe = stripe();
+        stripe.lock.lock();
+        try {
+            if (!counter.dirty) {
+                counter.dirty = true;
+                dirty.add(counter);
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /** Loads the stock table, then replays what the journals hold beyond the last flush. */
+    private void recover() throws IOException, SQLException {
+        Map<Integer, Long> checkpoints = new HashMap<>();
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement stockStmt = connection.prepareStatement("SELECT product_id, quantity, reserved FROM stock");
+             PreparedStatement checkpointStmt = connection.prepareStatement("SELECT stripe, flushed_sequence FROM stock_journal")) {
+            try (ResultSet rs = stockStmt.executeQuery()) {
+                while (rs.next()) {
+                    Counter counter = new Counter(rs.getInt("product_id"));
+                    counter.flushedOnHand = rs.getLong("quantity");
+                    counter.flushedReserved = rs.getLong("reserved");
+                    counter.onHand.add(counter.flushedOnHand);
+                    counter.reserved.set(counter.flushedReserved);
+                    counters.put(counter.productId, counter);
+                }
+            }
+            try (ResultSet rs = checkpointStmt.executeQuery()) {
+                while (rs.next()) {
+                    checkpoints.put(rs.getInt("stripe"), rs.getLong("flushed_sequence"));
+                }
+            }
+        }
+
+        long replayed = 0;
+        for (int i = 0; i < stripes.length; i++) {
+            Stripe stripe = stripes[i];
+            stripe.flushedSequence = checkpoints.getOrDefault(i, 0L);
+            stripe.sequence = stripe.flushedSequence;
+            for (StockJournal.Record record : stripe.journal.readAll()) {
+                if (record.sequence <= stripe.flushedSequence) {
+                    continue;
+                }
+                Counter counter = counters.computeIfAbsent(record.productId, Counter::new);
+                counter.onHand.add(record.onHandDelta);
+                counter.reserved.addAndGet(record.reservedDelta);
+                if (!counter.dirty) {
+                    counter.dirty = true;
+                    dirty.add(counter);
+                }
+                stripe.sequence = Math.max(stripe.sequence, record.sequence);
+                replayed++;
+            }
+            stripe.journal.open();
+        }
+        if (replayed > 0) {
+            System.out.println("Replayed " + replayed + " stock changes from the journal.");
+        }
+        // Also deletes the replayed segments; the records past the checkpoint now live on the counters
+        for (Stripe stripe : stripes) {
+            stripe.rotatedAtSequence = -1;
+        }
+        flush();
+    }
+
+    /** One product's stock. */
+    private static final class Counter {
+        final int productId;
+        final LongAdder onHand = new LongAdder();
+        final AtomicLong reserved = new AtomicLong();
+        volatile boolean dirty;
+        // As of the last committed flush, only touched by the flusher
+        long flushedOnHand;
+        long flushedReserved;
+
+        Counter(int productId) {
+            this.productId = productId;
+        }
+    }
+
+    private static final class Stripe {
+        final ReentrantLock lock = new ReentrantLock();
+        final StockJournal journal;
+        // Last sequence number journalled, and the one it was at when the current segment began
+        long sequence;
+        long rotatedAtSequence;
+        int segment;
+        // Last sequence number the stock table holds; only touched by the flusher
+        long flushedSequence;
+
+        Stripe(StockJournal journal) {
+            this.journal = journal;
+        }
+
+        // Caller holds the lock
+        long journal(int productId, long onHandDelta, long reservedDelta) throws IOException {
+            long position = journal.append(sequence + 1, productId, onHandDelta, reservedDelta);
+            sequence++;
+            return position;
+        }
+    }
+
+    private static final class Snapshot {
+        final Counter counter;
+        final long onHand;
+        final long reserved;
+
+        Snapshot(Counter counter, long onHand, long reserved) {
+            this.counter = counter;
+            this.onHand = onHand;
+            this.reserved = reserved;
+        }
+    }
+}
@@ -0,0 +1,379 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The binary client/server protocol.
+ *
+ * <p>A client opens with {@link #MAGIC} and the highest version it speaks; the server answers with
+ * {@link #MAGIC} and the version both sides will use (0 if there is none). After that every
+ * message is a frame: a 4-byte big-endian length, a 1-byte opcode or response type, and the
+ * payload. Integers in payloads are varints, strings are UTF-8 and prices are fixed-scale
+ * decimals. Old clients that open with a Java serialization header are still served by the
+ * legacy ObjectInputStream path on the server.
+ *
+ * <p>Version 2 adds pipelining. The server's hello also carries how many requests a client may
+ * have in flight, and every frame carries a 4-byte request id after its type. Replies (and the
+ * follow-up frames of multi-frame requests) use the id of the request they belong to, may come
+ * back in any order, and requests on one connection may run concurrently. A client that needs
+ * one request to see the effect of another waits for the first one's reply. Request id 0 is
+ * reserved for errors that concern the whole connection.
+ */
+final class WireProtocol {
+    static final int MAGIC = 0x494E5650; // "INVP"
+    static final int VERSION_1 = 1;
+    static final int VERSION_2 = 2;
+    static final int CURRENT_VERSION = VERSION_2;
+    static final int MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+
+    // Request id of frames in version 1, which has none
+    static final int UNTAGGED = -1;
+    static final int CONNECTION_REQUEST_ID = 0;
+
+    // First two bytes written by java.io.ObjectOutputStream
+    private static final int SERIALIZATION_MAGIC = 0xACED;
+
+    // Request opcodes
+    static final byte ADD_CATEGORY = 0x01;
+    static final byte ADD_SUPPLIER = 0x02;
+    static final byte ADD_PRODUCT = 0x03;
+    static final byte ADD_PRODUCTS_BULK = 0x04;
+    static final byte BULK_ROWS = 0x05;
+    static final byte BULK_END = 0x06;
+    static final byte IMPORT_DATA = 0x07;
+    static final byte IMPORT_END = 0x08;
+    static final byte IMPORT_PRODUCTS = 0x09;
+    static final byte ADJUST_STOCK = 0x0A;
+    static final byte RESERVE_STOCK = 0x0B;
+    static final byte RELEASE_STOCK = 0x0C;
+    static final byte VIEW_PRODUCTS = 0x10;
+    static final byte VIEW_CATEGORIES = 0x11;
+    static final byte VIEW_SUPPLIERS = 0x12;
+    static final byte VIEW_PRODUCTS_PAGE = 0x13;
+    static final byte VIEW_PRODUCTS_STREAM = 0x14;
+    static final byte COUNT_PRODUCTS = 0x15;
+    static final byte VIEW_PRODUCTS_WINDOW = 0x16;
+    static final byte QUERY_PRODUCTS = 0x17;
+    static final byte SEARCH_PRODUCT_NAMES = 0x18;
+    static final byte REBUILD_NAME_INDEX = 0x19;
+    // Followed by one UNSUBSCRIBE frame with the same request id when the client is done
+    static final byte SUBSCRIBE = 0x1A;
+    static final byte UNSUBSCRIBE = 0x1B;
+    static final byte PING = 0x20;
+
+    // Response types
+    static final byte MESSAGE = (byte) 0x80;
+    static final byte TABLE = (byte) 0x81;
+    static final byte ERROR = (byte) 0x82;
+    static final byte PAGE = (byte) 0x83;
+    static final byte CHUNK = (byte) 0x84;
+    static final byte END_OF_STREAM = (byte) 0x85;
+    static final byte CHUNK_RESULT = (byte) 0x86;
+    static final byte PROGRESS = (byte) 0x87;
+    static final byte PONG = (byte) 0x88;
+    static final byte COUNT = (byte) 0x89;
+    static final byte WINDOW = (byte) 0x8A;
+    static final byte STOCK_LEVEL = (byte) 0x8B;
+    static final byte FEED_CHANGES = (byte) 0x8C;
+    static final byte FEED_RESYNC = (byte) 0x8D;
+
+    // Kinds of change in a FEED_CHANGES frame, each followed by its fields: ids, names and
+    // prices as in the matching ADD request, stock deltas as signed varlongs
+    static final byte CATEGORY_ADDED = 1;
+    static final byte SUPPLIER_ADDED = 2;
+    static final byte PRODUCT_ADDED = 3;
+    static final byte STOCK_CHANGED = 4;
+    // Only inside the server's feed, sent to subscribers as FEED_RESYNC
+    static final byte RESYNC_MARKER = 5;
+
+    static final int PRICE_SCALE = 2;
+
+    private WireProtocol() {
+    }
+
+    /**
+     * Peeks at the first bytes of a connection to tell an old serialization-based client
+     * from a binary one. The stream is left where it was.
+     */
+    static boolean isLegacyStream(InputStream in) throws IOException {
+        in.mark(2);
+        int first = in.read();
+        int second = in.read();
+        in.reset();
+        if (first < 0 || second < 0) {
+            throw new EOFException("Client closed the connection before sending anything.");
+        }
+        return ((first << 8) | second) == SERIALIZATION_MAGIC;
+    }
+
+    /** Same test as {@link #isLegacyStream} for a connection's first two bytes already in hand. */
+    static boolean isLegacyHeader(short firstTwoBytes) {
+        return (firstTwoBytes & 0xFFFF) == SERIALIZATION_MAGIC;
+    }
+
+    /** Whether a request is followed by more frames from the client (rows, file data or its end). */
+    static boolean startsUpload(byte type) {
+        return type == ADD_PRODUCTS_BULK || type == IMPORT_PRODUCTS || type == SUBSCRIBE;
+    }
+
+    static boolean isUploadFrame(byte type) {
+        return type == BULK_ROWS || type == BULK_END || type == IMPORT_DATA || type == IMPORT_END
+                || type == UNSUBSCRIBE;
+    }
+
+    /** Name of a request opcode for logs and metrics, or null if {@code type} does not start a request. */
+    static String requestName(byte type) {
+        return switch (type) {
+            case ADD_CATEGORY -> "ADD_CATEGORY";
+            case ADD_SUPPLIER -> "ADD_SUPPLIER";
+            case ADD_PRODUCT -> "ADD_PRODUCT";
+            case ADD_PRODUCTS_BULK -> "ADD_PRODUCTS_BULK";
+            case IMPORT_PRODUCTS -> "IMPORT_PRODUCTS";
+            case ADJUST_STOCK -> "ADJUST_STOCK";
+            case RESERVE_STOCK -> "RESERVE_STOCK";
+            case RELEASE_STOCK -> "RELEASE_STOCK";
+            case VIEW_PRODUCTS -> "VIEW_PRODUCTS";
+            case VIEW_CATEGORIES -> "VIEW_CATEGORIES";
+            case VIEW_SUPPLIERS -> "VIEW_SUPPLIERS";
+            case VIEW_PRODUCTS_PAGE -> "VIEW_PRODUCTS_PAGE";
+            case VIEW_PRODUCTS_STREAM -> "VIEW_PRODUCTS_STREAM";
+            case COUNT_PRODUCTS -> "COUNT_PRODUCTS";
+            case VIEW_PRODUCTS_WINDOW -> "VIEW_PRODUCTS_WINDOW";
+            case QUERY_PRODUCTS -> "QUERY_PRODUCTS";
+            case SEARCH_PRODUCT_NAMES -> "SEARCH_PRODUCT_NAMES";
+            case REBUILD_NAME_INDEX -> "REBUILD_NAME_INDEX";
+            case SUBSCRIBE -> "SUBSCRIBE";
+            case PING -> "PING";
+            default -> null;
+        };
+    }
+
+    /** Bytes a frame took on the wire, header included. */
+    static int frameLength(int payloadLength, int requestId) {
+        return 4 + frameHeaderLength(requestId != UNTAGGED) + payloadLength;
+    }
+
+    static void writeHello(DataOutputStream out, int version) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeShort(version);
+        out.flush();
+    }
+
+    /** The server's side of the handshake; from version 2 on it includes the in-flight limit. */
+    static void writeServerHello(DataOutputStream out, int version, int maxInFlight) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeShort(version);
+        if (version >= VERSION_2) {
+            out.writeShort(maxInFlight);
+        }
+        out.flush();
+    }
+
+    static int readHello(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Peer does not speak the inventory protocol.");
+        }
+        return in.readUnsignedShort();
+    }
+
+    /** Bytes in a frame ahead of the payload, excluding the length. */
+    static int frameHeaderLength(boolean tagged) {
+        return tagged ? 5 : 1;
+    }
+
+    static Frame readFrame(DataInputStream in) throws IOException {
+        return readFrame(in, false);
+    }
+
+    /** Reads a frame; {@code tagged} frames (version 2) carry a request id. */
+    static Frame readFrame(DataInputStream in, boolean tagged) throws IOException {
+        int length = in.readInt();
+        if (length < frameHeaderLength(tagged) || length > MAX_FRAME_LENGTH) {
+            throw new IOException("Invalid frame length: " + length);
+        }
+        byte type = in.readByte();
+        int requestId = tagged ? in.readInt() : UNTAGGED;
+        byte[] payload = new byte[length - frameHeaderLength(tagged)];
+        in.readFully(payload);
+        return new Frame(type, requestId, payload);
+    }
+
+    static void writeFrame(DataOutputStream out, byte type, byte[] payload) throws IOException {
+        writeFrame(out, type, payload, payload.length);
+    }
+
+    static void writeFrame(DataOutputStream out, byte type, byte[] payload, int length) throws IOException {
+        writeFrame(out, type, UNTAGGED, payload, length);
+    }
+
+    /** Writes a frame, tagged with {@code requestId} unless it is {@link #UNTAGGED}. */
+    static void writeFrame(DataOutputStream out, byte type, int requestId, byte[] payload, int length)
+            throws IOException {
+        boolean tagged = requestId != UNTAGGED;
+        if (length + frameHeaderLength(tagged) > MAX_FRAME_LENGTH) {
+            throw new IOException("Frame too large: " + length + " bytes");
+        }
+        out.writeInt(length + frameHeaderLength(tagged));
+        out.writeByte(type);
+        if (tagged) {
+            out.writeInt(requestId);
+        }
+        out.write(payload, 0, length);
+    }
+
+    static void writeVarInt(OutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    static int readVarInt(InputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint.");
+    }
+
+    static void writeVarLong(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    static long readVarLong(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint.");
+    }
+
+    // Zigzag keeps small negative numbers small on the wire
+    static void writeSignedVarInt(OutputStream out, int value) throws IOException {
+        writeVarInt(out, (value << 1) ^ (value >> 31));
+    }
+
+    static int readSignedVarInt(InputStream in) throws IOException {
+        int raw = readVarInt(in);
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+
+    static void writeSignedVarLong(OutputStream out, long value) throws IOException {
+        writeVarLong(out, (value << 1) ^ (value >> 63));
+    }
+
+    static long readSignedVarLong(InputStream in) throws IOException {
+        long raw = readVarLong(in);
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+
+    /** Writes a nullable string as varint (byte length + 1), 0 meaning null, followed by UTF-8 bytes. */
+    static void writeString(OutputStream out, String value) throws IOException {
+        if (value == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length + 1);
+        out.write(bytes);
+    }
+
+    static String readString(InputStream in) throws IOException {
+        int length = readVarInt(in);
+        if (length == 0) {
+            return null;
+        }
+        byte[] bytes = in.readNBytes(length - 1);
+        if (bytes.length != length - 1) {
+            throw new EOFException();
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Writes a decimal as its unscaled value at the given scale, rounding half-up if needed. */
+    static void writeDecimal(OutputStream out, BigDecimal value, int scale) throws IOException {
+        writeSignedVarLong(out, value.setScale(scale, RoundingMode.HALF_UP).unscaledValue().longValueExact());
+    }
+
+    static BigDecimal readDecimal(InputStream in, int scale) throws IOException {
+        return BigDecimal.valueOf(readSignedVarLong(in), scale);
+    }
+
+    /** A single decoded frame. */
+    static final class Frame {
+        final byte type;
+        final int requestId;
+        final byte[] payload;
+
+        Frame(byte type, byte[] payload) {
+            this(type, UNTAGGED, payload);
+        }
+
+        Frame(byte type, int requestId, byte[] payload) {
+            this.type = type;
+            this.requestId = requestId;
+            this.payload = payload;
+        }
+
+        DataInputStream reader() {
+            return new DataInputStream(new ByteArrayInputStream(payload));
+        }
+    }
+
+    /** Accumulates a frame payload before it is written out. */
+    static final class PayloadBuilder extends ByteArrayOutputStream {
+        PayloadBuilder() {
+            super(64);
+        }
+
+        PayloadBuilder varInt(int value) throws IOException {
+            writeVarInt(this, value);
+            return this;
+        }
+
+        PayloadBuilder string(String value) throws IOException {
+            writeString(this, value);
+            return this;
+        }
+
+        PayloadBuilder decimal(BigDecimal value, int scale) throws IOException {
+            writeDecimal(this, value, scale);
+            return this;
+        }
+
+        void writeAsFrame(DataOutputStream out, byte type) throws IOException {
+            writeFrame(out, type, buf, count);
+        }
+
+        void writeAsFrame(DataOutputStream out, byte type, int requestId) throws IOException {
+            writeFrame(out, type, requestId, buf, count);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.Socket;
+
+/**
+ * Clients that disconnect in the middle of a bulk upload on the NIO transport must not keep the
+ * upload's handler waiting for rows that will never come. Each such handler holds a pooled
+ * database connection, so this opens twice as many abandoned uploads as the pool has connections
+ * and then checks that an ordinary request still gets one.
+ *
+ * <p>Runs the real {@link Server} on {@link StubDriver}; exits with status 1 on failure.
+ */
+final class NioUploadDisconnectTest {
+    private static final int POOL_SIZE = 2;
+    private static final int ABANDONED_UPLOADS = 2 * POOL_SIZE;
+    private static final long HANDLER_START_MILLIS = 500;
+
+    private NioUploadDisconnectTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("inventory.server.transport", "NIO");
+        System.setProperty("inventory.server.port", "16091");
+        System.setProperty("inventory.pool.minSize", "1");
+        System.setProperty("inventory.pool.maxSize", String.valueOf(POOL_SIZE));
+        System.setProperty("inventory.pool.acquireTimeoutMs", "2000");
+        int port = EmbeddedServer.start();
+        EmbeddedServer.seed(0);
+
+        for (int i = 0; i < ABANDONED_UPLOADS; i++) {
+            abandonUpload(port);
+        }
+
+        try (InventoryClient client = new InventoryClient(EmbeddedServer.HOST, port)) {
+            String reply = client.addProduct("After abandoned uploads", 1, 1, new BigDecimal("1.00"));
+            System.out.println("OK: " + reply);
+        } catch (InventoryClient.ServerException e) {
+            System.out.println("FAILED: " + e.getMessage());
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    // Starts an ADD_PRODUCTS_BULK request, gives its handler time to take a connection, then hangs up
+    private static void abandonUpload(int port) throws IOException, InterruptedException {
+        try (Socket socket = new Socket(EmbeddedServer.HOST, port)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            WireProtocol.writeHello(out, WireProtocol.VERSION_2);
+            if (WireProtocol.readHello(in) != WireProtocol.VERSION_2) {
+                throw new IOException("Server did not accept protocol version 2.");
+            }
+            in.readUnsignedShort();
+
+            new WireProtocol.PayloadBuilder().varInt(100).writeAsFrame(out, WireProtocol.ADD_PRODUCTS_BULK, 1);
+            out.flush();
+            Thread.sleep(HANDLER_START_MILLIS);
+        }
+    }
+}